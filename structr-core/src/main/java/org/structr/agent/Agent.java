@@ -21,11 +21,6 @@ package org.structr.agent;
 
 //~--- JDK imports ------------------------------------------------------------
 
-import java.util.LinkedList;
-import java.util.List;
-import java.util.Queue;
-import java.util.concurrent.ConcurrentLinkedQueue;
-import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import org.structr.core.Services;
@@ -38,169 +33,128 @@ import org.structr.core.graph.Tx;
 /**
  * Abstract base class for all agents.
  *
+ * Agents are executed by the worker threads of the {@link AgentPool} for
+ * their task type, every worker thread has its own agent instance.
+ *
  *
  */
-public abstract class Agent<T extends NodeInterface> extends Thread implements StatusInfo {
+public abstract class Agent<T extends NodeInterface> implements StatusInfo {
 
 	public static final String AVERAGE_EXECUTION_TIME = "average_execution_time";
 	public static final String EXECUTION_STATUS       = "execution_status";
-	public static final String MAX_QUEUE_SIZE         = "max_queue_size";
 	private static final Logger logger                = Logger.getLogger(Agent.class.getName());
 
 	//~--- fields ---------------------------------------------------------
 
-	private final AtomicBoolean acceptingTasks = new AtomicBoolean(true);
+	private final Object suspendLock           = new Object();
 	private AgentService agentService          = null;
-	private long averageExecutionTime          = 0;
-	private Task currentTask                   = null;
-	private long lastStartTime                 = 0;
-	private int maxAgents                      = 4;
-	private int maxQueueSize                   = 10;
-	private final AtomicBoolean suspended      = new AtomicBoolean(false);
-	private final Queue<Task<T>> taskQueue     = new ConcurrentLinkedQueue<>();
+	private volatile long averageExecutionTime = 0;
+	private volatile Task<T> currentTask       = null;
+	private volatile Thread workerThread       = null;
+	private volatile boolean suspended         = false;
 
 	//~--- methods --------------------------------------------------------
 
-	@Override
-	public final void run() {
-
-		agentService.notifyAgentStart(this);
-
-		do {
-
-			while (suspended.get()) {
-
-				Thread.yield();
-
-			}
-
-			synchronized (taskQueue) {
-
-				currentTask = taskQueue.poll();
-
-			}
-
-			if (currentTask != null) {
-
-				lastStartTime = System.nanoTime();
-
-				ReturnValue ret = null;
-
-				// only execute process if Service layer is ready
-				// (and not shutting down right now)
-				if (Services.getInstance().isInitialized()) {
-
-					if (createEnclosingTransaction()) {
+	/**
+	 * Executes the given task, called by the agent pool.
+	 *
+	 * @param task
+	 * @return whether the task was executed without errors
+	 */
+	final boolean execute(final Task<T> task) {
 
-						try (final Tx tx = StructrApp.getInstance().tx()) {
+		final long startTime = System.nanoTime();
+		ReturnValue ret      = null;
+		boolean success      = false;
 
-							ret = processTask(currentTask);
-							tx.success();
+		currentTask = task;
 
-						} catch (Throwable t) {
+		// only execute process if Service layer is ready
+		// (and not shutting down right now)
+		if (Services.getInstance().isInitialized()) {
 
-							// someone killed us or the task processing failed..
-							// Log this!!
-							logger.log(Level.SEVERE, "Processing task {0} failed. Maybe someone killed us?", currentTask.getType());
-							t.printStackTrace();
-						}
+			if (createEnclosingTransaction()) {
 
-					} else {
+				try (final Tx tx = StructrApp.getInstance().tx()) {
 
-						try {
+					ret = processTask(task);
+					tx.success();
 
-							ret = processTask(currentTask);
+					success = true;
 
-						} catch (Throwable t) {
+				} catch (Throwable t) {
 
-							// someone killed us or the task processing failed..
-							// Log this!!
-							logger.log(Level.SEVERE, "Processing task {0} failed. Maybe someone killed us?", currentTask.getType());
-							t.printStackTrace();
-						}
-					}
+					// the task processing failed, log this
+					logger.log(Level.SEVERE, "Processing task {0} failed.", task.getType());
+					t.printStackTrace();
 				}
 
-				if (ret != null) {
-
-					// handle return value
-					switch (ret) {
-
-						case Success :
-						case Abort :
+			} else {
 
-							// task finished, nothing to do in these cases
-							break;
+				try {
 
-						case Retry :
+					ret = processTask(task);
+					success = true;
 
-							// TODO: schedule task for re-execution
-							break;
+				} catch (Throwable t) {
 
-					}
+					// the task processing failed, log this
+					logger.log(Level.SEVERE, "Processing task {0} failed.", task.getType());
+					t.printStackTrace();
 				}
-
-				long endTime = System.nanoTime();
-
-				// calc. average execution time
-				averageExecutionTime += endTime;
-				averageExecutionTime /= 2;
-
-			} else {
-
-				// queue is empty, quit.
-				acceptingTasks.set(false);
 			}
+		}
 
-		} while (acceptingTasks.get());
+		if (ret != null) {
 
-		// call beforeShutdown to allow agents to clean up
-		beforeShutdown();
-		agentService.notifyAgentStop(this);
-	}
+			// handle return value
+			switch (ret) {
 
-	public final boolean assignTask(final Task<T> task) {
+				case Success :
+				case Abort :
 
-		// TODO: do type check here
-		if (canHandleMore() && acceptingTasks.get()) {
+					// task finished, nothing to do in these cases
+					break;
 
-			synchronized (taskQueue) {
+				case Retry :
 
-				taskQueue.add(task);
+					// TODO: schedule task for re-execution
+					break;
 
 			}
+		}
 
-			return (true);
+		final long executionTime = System.nanoTime() - startTime;
 
-		}
+		// calc. average execution time
+		averageExecutionTime = averageExecutionTime == 0 ? executionTime : (averageExecutionTime + executionTime) / 2;
+		currentTask          = null;
 
-		return (false);
+		return success;
 	}
 
 	public final void killAgent() {
 
-		// stop accepting tasks
-		acceptingTasks.set(false);
-
-		// clear queue
-		taskQueue.clear();
-
-		// interrupt running process..
-		// not sure if this works... see Thread.interrupt()'s description!
+		// interrupt the worker thread, the agent is removed from its pool
 		// may not work if the processTask method itself catches the interrupt..
-		this.interrupt();
+		final Thread thread = workerThread;
+		if (thread != null) {
+
+			thread.interrupt();
+		}
 	}
 
 	public final void suspendAgent() {
-
-		acceptingTasks.set(false);
-		suspended.set(true);
+		suspended = true;
 	}
 
 	public final void resumeAgent() {
 
-		acceptingTasks.set(true);
-		suspended.set(false);
+		synchronized (suspendLock) {
+
+			suspended = false;
+			suspendLock.notifyAll();
+		}
 	}
 
 	protected void beforeShutdown() {
@@ -210,52 +164,6 @@ public abstract class Agent<T extends NodeInterface> extends Thread implements S
 
 	// </editor-fold>
 
-	// <editor-fold defaultstate="collapsed" desc="private methods">
-	private boolean canHandleMore() {
-
-//              return (taskQueue.isEmpty());
-		int size = 0;
-
-		synchronized (taskQueue) {
-
-			// FIXME: size may not be a constant time operation! slow?
-			size = taskQueue.size();
-		}
-
-		// queue is empty, assume new agent
-		if (size == 0) {
-
-			return (true);
-
-		}
-
-		long actualExecutionTime = System.nanoTime() - lastStartTime;
-
-		// calculate thresholds for queue size adaption
-		long upperThreshold = averageExecutionTime + (averageExecutionTime / 2);
-		long lowerThreshold = averageExecutionTime - (averageExecutionTime / 2);
-
-		if ((actualExecutionTime > upperThreshold) && (maxQueueSize > 2)) {
-
-			// FIXME
-			maxQueueSize -= 2;
-
-			// do not take the next task
-			return (false);
-		} else if ((actualExecutionTime < lowerThreshold) && (maxQueueSize < 200)) {
-
-			// FIXME
-			maxQueueSize += 2;
-
-			// can take the next task
-			return (true);
-		}
-
-		return (size < maxQueueSize);
-	}
-
-	// </editor-fold>
-
 	/**
 	 * This method will be called by the AgentService
 	 * @param task
@@ -266,29 +174,33 @@ public abstract class Agent<T extends NodeInterface> extends Thread implements S
 		return true;
 	}
 
-	public final Task<T> getCurrentTask() {
-		return (currentTask);
-	}
-
-	public final List<Task<T>> getTaskQueue() {
-
-		List<Task<T>> ret = new LinkedList<Task<T>>();
-
-		ret.addAll(taskQueue);
-
-		return (ret);
+	/**
+	 * Returns the number of worker threads for the task type of this agent
+	 * if it is not configured.
+	 *
+	 * @return the default number of worker threads
+	 */
+	public int getDefaultWorkerCount() {
+		return 2;
 	}
 
-	public final int getMaxQueueSize() {
-		return (maxQueueSize);
+	public final Task<T> getCurrentTask() {
+		return (currentTask);
 	}
 
 	public final long getAverageExecutionTime() {
 		return (averageExecutionTime);
 	}
 
-	public int getMaxAgents() {
-		return (maxAgents);
+	public String getName() {
+
+		final Thread thread = workerThread;
+		if (thread != null) {
+
+			return thread.getName();
+		}
+
+		return getClass().getSimpleName();
 	}
 
 	// ----- interface StatusInfo -----
@@ -299,13 +211,14 @@ public abstract class Agent<T extends NodeInterface> extends Thread implements S
 
 			return (getAverageExecutionTime());
 
-		} else if (key.equals(MAX_QUEUE_SIZE)) {
+		} else if (key.equals(EXECUTION_STATUS)) {
 
-			return (getMaxQueueSize());
+			if (suspended) {
 
-		} else if (key.equals(EXECUTION_STATUS)) {
+				return "suspended";
+			}
 
-			// TODO.
+			return currentTask != null ? "running" : "idle";
 		}
 
 		return (null);
@@ -322,27 +235,35 @@ public abstract class Agent<T extends NodeInterface> extends Thread implements S
 	public abstract Class getSupportedTaskType();
 
 	public final boolean isSuspended() {
-		return (suspended.get());
-	}
-
-	public final boolean isAcceptingTasks() {
-		return (acceptingTasks.get());
+		return (suspended);
 	}
 
 	//~--- set methods ----------------------------------------------------
 
 	// <editor-fold defaultstate="expanded" desc="public methods">
 	public final void setAgentService(AgentService service) {
-
-		// NOTE: this is important! We do not want running tasks to die when the
-		// server is going down!
-		this.setDaemon(false);
-
 		this.agentService = service;
-
-		// initialize lastStartTime
-		lastStartTime = System.nanoTime();
 	}
 
 	// </editor-fold>
+
+	// ----- package-private methods -----
+	void setWorkerThread(final Thread workerThread) {
+		this.workerThread = workerThread;
+	}
+
+	/**
+	 * Blocks the worker thread while this agent is suspended.
+	 *
+	 * @throws InterruptedException
+	 */
+	void awaitResume() throws InterruptedException {
+
+		synchronized (suspendLock) {
+
+			while (suspended) {
+				suspendLock.wait();
+			}
+		}
+	}
 }
@@ -0,0 +1,408 @@
+/**
+ * Copyright (C) 2010-2016 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.agent;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Worker pool for the tasks of a single task type.
+ *
+ * Tasks are kept in a priority queue (higher priority first, tasks with
+ * equal priority in submission order) with a fixed capacity. Worker
+ * threads block on the queue, so an idle pool does not use any CPU, and
+ * exit after some time without work. Each worker thread has its own
+ * agent instance. If the queue is full, callers wait for free capacity
+ * for a limited time and then execute the task themselves. Callers that
+ * cannot do that add the task beyond the capacity of the queue. Worker
+ * threads are daemon threads, on shutdown the pool waits for a limited
+ * time until the queued tasks are finished.
+ *
+ *
+ */
+public class AgentPool {
+
+	private static final Logger logger        = Logger.getLogger(AgentPool.class.getName());
+	private static final long IDLE_MILLIS     = TimeUnit.SECONDS.toMillis(60);
+	private static final long SHUTDOWN_MILLIS = TimeUnit.SECONDS.toMillis(30);
+
+	private final PriorityBlockingQueue<QueuedTask> queue = new PriorityBlockingQueue<>();
+	private final List<Agent> agents                      = new CopyOnWriteArrayList<>();
+	private final List<Thread> threads                    = new CopyOnWriteArrayList<>();
+	private final AtomicLong sequence                     = new AtomicLong(0L);
+	private final AtomicInteger threadCount               = new AtomicInteger(0);
+	private final LongAdder submitted                     = new LongAdder();
+	private final LongAdder completed                     = new LongAdder();
+	private final LongAdder failed                        = new LongAdder();
+	private final LongAdder callerRuns                    = new LongAdder();
+	private final LongAdder overCapacity                  = new LongAdder();
+	private final LongAdder started                       = new LongAdder();
+	private final LongAdder waitNanos                     = new LongAdder();
+	private final LongAdder executionNanos                = new LongAdder();
+	private final AtomicLong maxWaitNanos                 = new AtomicLong(0L);
+	private final AtomicLong maxExecutionNanos            = new AtomicLong(0L);
+	private AgentService agentService                     = null;
+	private Class<? extends Agent> agentClass             = null;
+	private Semaphore capacity                            = null;
+	private String taskType                               = null;
+	private volatile boolean running                      = true;
+	private int maxCapacity                               = 0;
+	private int maxThreads                                = 0;
+	private int workers                                   = 0;
+
+	public AgentPool(final AgentService agentService, final Class<? extends Agent> agentClass, final String taskType, final int maxThreads, final int maxCapacity) {
+
+		this.agentService = agentService;
+		this.agentClass   = agentClass;
+		this.taskType     = taskType;
+		this.maxThreads   = Math.max(1, maxThreads);
+		this.maxCapacity  = Math.max(1, maxCapacity);
+		this.capacity     = new Semaphore(this.maxCapacity);
+	}
+
+	/**
+	 * Adds the given task to the queue of this pool, waiting at most the
+	 * given time for free capacity.
+	 *
+	 * @param task
+	 * @param timeoutMillis
+	 * @return whether the task was queued
+	 * @throws InterruptedException
+	 */
+	public boolean submit(final Task task, final long timeoutMillis) throws InterruptedException {
+
+		if (!running || !capacity.tryAcquire(timeoutMillis, TimeUnit.MILLISECONDS)) {
+			return false;
+		}
+
+		if (!enqueue(task, true)) {
+
+			capacity.release();
+			return false;
+		}
+
+		return true;
+	}
+
+	/**
+	 * Adds the given task to the queue of this pool even if the queue is
+	 * full, used for callers that can neither wait nor execute the task
+	 * themselves.
+	 *
+	 * @param task
+	 * @return whether the task was queued
+	 */
+	public boolean submitOverCapacity(final Task task) {
+
+		if (enqueue(task, false)) {
+
+			overCapacity.increment();
+			return true;
+		}
+
+		return false;
+	}
+
+	/**
+	 * Executes the given task in the calling thread, used as back-pressure
+	 * if the queue is full.
+	 *
+	 * @param task
+	 */
+	public void execute(final Task task) {
+
+		final Agent agent = createAgent();
+		if (agent != null) {
+
+			callerRuns.increment();
+			submitted.increment();
+
+			run(agent, task);
+
+			agent.beforeShutdown();
+		}
+	}
+
+	/**
+	 * Stops accepting tasks. The workers finish the queued tasks and exit.
+	 */
+	public void shutdown() {
+
+		running = false;
+
+		synchronized (this) {
+
+			// one end marker per worker, ordered after all tasks
+			for (int i=0; i<workers; i++) {
+				queue.add(new QueuedTask(null, Long.MAX_VALUE, false));
+			}
+		}
+
+		// workers are daemon threads, so wait for the queued tasks here
+		final long deadline = System.currentTimeMillis() + SHUTDOWN_MILLIS;
+
+		try {
+
+			for (final Thread thread : threads) {
+
+				final long remaining = deadline - System.currentTimeMillis();
+				if (remaining > 0) {
+
+					thread.join(remaining);
+				}
+			}
+
+		} catch (InterruptedException iex) {
+
+			Thread.currentThread().interrupt();
+		}
+
+		final int remaining = getTasks().size();
+		if (remaining > 0) {
+
+			logger.log(Level.WARNING, "{0} tasks of type {1} not processed before shutdown", new Object[] { remaining, taskType });
+		}
+	}
+
+	public String getTaskType() {
+		return taskType;
+	}
+
+	public Collection<Task> getTasks() {
+
+		final List<Task> tasks = new LinkedList<>();
+
+		for (final QueuedTask queued : queue) {
+
+			if (queued.task != null) {
+				tasks.add(queued.task);
+			}
+		}
+
+		return tasks;
+	}
+
+	public List<Agent> getAgents() {
+		return agents;
+	}
+
+	public Map<String, Object> getStatistics() {
+
+		final Map<String, Object> stats = new LinkedHashMap<>();
+		final long done                 = completed.sum() + failed.sum();
+		final long dequeued             = started.sum();
+
+		stats.put("queued",             queue.size());
+		stats.put("capacity",           maxCapacity);
+		stats.put("threads",            agents.size());
+		stats.put("maxThreads",         maxThreads);
+		stats.put("submitted",          submitted.sum());
+		stats.put("completed",          completed.sum());
+		stats.put("failed",             failed.sum());
+		stats.put("callerRuns",         callerRuns.sum());
+		stats.put("overCapacity",       overCapacity.sum());
+		stats.put("avgWaitMicros",      dequeued > 0 ? waitNanos.sum() / dequeued / 1000 : 0L);
+		stats.put("maxWaitMicros",      maxWaitNanos.get() / 1000);
+		stats.put("avgExecutionMicros", done > 0 ? executionNanos.sum() / done / 1000 : 0L);
+		stats.put("maxExecutionMicros", maxExecutionNanos.get() / 1000);
+
+		return stats;
+	}
+
+	// ----- private methods -----
+	private synchronized boolean enqueue(final Task task, final boolean acquired) {
+
+		if (!running) {
+			return false;
+		}
+
+		if (workers < maxThreads) {
+
+			final Agent agent = createAgent();
+			if (agent != null) {
+
+				final Thread worker = new Thread(() -> work(agent), "AgentService-" + taskType + "-" + threadCount.incrementAndGet());
+
+				worker.setDaemon(true);
+				threads.add(worker);
+				worker.start();
+
+				workers++;
+			}
+		}
+
+		// no worker would ever run the task
+		if (workers == 0) {
+			return false;
+		}
+
+		// added under the lock, so that an idle worker cannot exit before it sees the task
+		queue.add(new QueuedTask(task, sequence.incrementAndGet(), acquired));
+		submitted.increment();
+
+		return true;
+	}
+
+	private void work(final Agent agent) {
+
+		boolean idle = false;
+
+		agent.setWorkerThread(Thread.currentThread());
+		agents.add(agent);
+
+		try {
+
+			while (true) {
+
+				final QueuedTask next = queue.poll(IDLE_MILLIS, TimeUnit.MILLISECONDS);
+				if (next == null) {
+
+					synchronized (this) {
+
+						// a task may have been added after the poll timed out
+						if (queue.isEmpty()) {
+
+							workers--;
+							idle = true;
+
+							return;
+						}
+					}
+
+					continue;
+				}
+
+				// end marker
+				if (next.task == null) {
+					return;
+				}
+
+				if (next.acquired) {
+					capacity.release();
+				}
+
+				started.increment();
+
+				final long wait = System.nanoTime() - next.enqueued;
+
+				waitNanos.add(wait);
+				maxWaitNanos.accumulateAndGet(wait, Math::max);
+
+				agent.awaitResume();
+
+				run(agent, next.task);
+			}
+
+		} catch (InterruptedException iex) {
+
+			logger.log(Level.FINE, "Agent worker for {0} interrupted", taskType);
+
+		} finally {
+
+			if (!idle) {
+
+				synchronized (this) {
+					workers--;
+				}
+			}
+
+			agents.remove(agent);
+			threads.remove(Thread.currentThread());
+
+			agent.beforeShutdown();
+		}
+	}
+
+	private void run(final Agent agent, final Task task) {
+
+		final long start = System.nanoTime();
+		final boolean ok = agent.execute(task);
+		final long time  = System.nanoTime() - start;
+
+		executionNanos.add(time);
+		maxExecutionNanos.accumulateAndGet(time, Math::max);
+
+		if (ok) {
+
+			completed.increment();
+
+		} else {
+
+			failed.increment();
+		}
+	}
+
+	private Agent createAgent() {
+
+		try {
+
+			final Agent agent = agentClass.newInstance();
+			agent.setAgentService(agentService);
+
+			return agent;
+
+		} catch (Throwable t) {
+
+			logger.log(Level.WARNING, "Unable to create agent {0}: {1}", new Object[] { agentClass.getName(), t.getMessage() });
+		}
+
+		return null;
+	}
+
+	// ----- nested classes -----
+	private static class QueuedTask implements Comparable<QueuedTask> {
+
+		private Task task        = null;
+		private boolean acquired = false;
+		private long sequence    = 0L;
+		private long enqueued    = 0L;
+		private int priority     = 0;
+
+		public QueuedTask(final Task task, final long sequence, final boolean acquired) {
+
+			this.task     = task;
+			this.acquired = acquired;
+			this.sequence = sequence;
+			this.priority = task != null ? task.priority() : Integer.MIN_VALUE;
+			this.enqueued = System.nanoTime();
+		}
+
+		@Override
+		public int compareTo(final QueuedTask other) {
+
+			if (priority != other.priority) {
+				return priority > other.priority ? -1 : 1;
+			}
+
+			return Long.compare(sequence, other.sequence);
+		}
+	}
+}
@@ -26,19 +26,20 @@ import org.structr.core.Services;
 
 import java.util.Collection;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Properties;
-import java.util.Queue;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import org.structr.api.service.StructrServices;
+import org.structr.core.app.StructrApp;
+import org.structr.core.graph.TransactionCommand;
 import org.structr.schema.ConfigurationProvider;
 
 //~--- classes ----------------------------------------------------------------
@@ -46,94 +47,108 @@ import org.structr.schema.ConfigurationProvider;
 /**
  * The agent service main class.
  *
+ * Tasks are dispatched directly to the {@link AgentPool} for their task
+ * type when they are submitted, so there is no dispatcher thread. The
+ * number of worker threads and the queue capacity of each pool can be
+ * configured globally, or per task type by appending the simple name of
+ * the task class to the configuration key. Tasks that are submitted
+ * within a transaction are never executed in the calling thread, so
+ * agents always run in their own transaction.
+ *
  *
  */
-public class AgentService extends Thread implements RunnableService {
+public class AgentService implements RunnableService {
 
 	private static final Logger logger = Logger.getLogger(AgentService.class.getName());
 
 	//~--- fields ---------------------------------------------------------
 
-	private final int maxAgents                          = 4;    // TODO: make configurable
-	private final Map<String, List<Agent>> runningAgents = new ConcurrentHashMap<>(10, 0.9f, 8);
-	private final Map<String, Class> agentClassCache     = new ConcurrentHashMap<>(10, 0.9f, 8);
-	private final Queue<Task> taskQueue                  = new ConcurrentLinkedQueue<>();
-	private Set<Class> supportedCommands                 = null;
-	private boolean run                                  = false;
+	private final Map<String, AgentPool> pools       = new ConcurrentHashMap<>(10, 0.9f, 8);
+	private final Map<String, Class> agentClassCache = new ConcurrentHashMap<>(10, 0.9f, 8);
+	private Set<Class> supportedCommands             = null;
+	private volatile boolean shutdown                = false;
+	private boolean run                              = false;
+	private long queueTimeout                        = 1000L;
 
 	//~--- constructors ---------------------------------------------------
 
 	public AgentService() {
 
-		super("AgentService");
 		supportedCommands = new LinkedHashSet<>();
 		supportedCommands.add(ProcessTaskCommand.class);
-
-		super.setDaemon(true);
 	}
 
 	//~--- methods --------------------------------------------------------
 
+	/**
+	 * Adds the given task to the queue of its task type. If the queue is
+	 * full, the caller waits for free capacity for a limited time, then
+	 * the task is executed in the calling thread.
+	 *
+	 * @param task
+	 */
 	public void processTask(Task task) {
 
-		synchronized (taskQueue) {
+		if (shutdown) {
 
-			taskQueue.add(task);
-			logger.log(Level.FINE, "Task {0} added to task queue", task);
+			logger.log(Level.FINE, "AgentService is shut down, ignoring task {0}", task);
+			return;
 		}
-	}
 
-	public Agent findAgentForTask(Task task) {
+		final AgentPool pool = getPool(task.getClass());
+		if (pool == null) {
 
-		List<Agent> agents = getRunningAgentsForTask(task.getClass());
+			logger.log(Level.WARNING, "No agent found for task {0}, ignoring", task.getType());
+			return;
+		}
 
-		synchronized (agents) {
+		try {
 
-			for (Agent agent : agents) {
+			// waiting would hold the locks of the transaction
+			final boolean inTransaction = TransactionCommand.inTransaction();
 
-				if (agent.getTaskQueue().contains(task)) {
-					return (agent);
-				}
-			}
-		}
+			if (pool.submit(task, inTransaction ? 0L : queueTimeout)) {
 
-		return (null);
-	}
+				logger.log(Level.FINE, "Task {0} added to task queue", task);
 
-	@Override
-	public void run() {
+			} else if (inTransaction) {
 
-		logger.log(Level.INFO, "AgentService started");
+				logger.log(Level.FINE, "Task queue for {0} is full, adding task in transaction anyway", pool.getTaskType());
 
-		while (run) {
+				if (!pool.submitOverCapacity(task)) {
 
-			Task nextTask = taskQueue.poll();
-			if (nextTask != null) {
+					logger.log(Level.WARNING, "Unable to add task {0} to task queue, ignoring", task);
+				}
 
-				assignNextAgentForTask(nextTask);
-			}
+			} else {
 
-			// let others act
-			try { Thread.sleep(10); } catch(Throwable ignore) {}
-		}
-	}
+				logger.log(Level.FINE, "Task queue for {0} is full, executing task in calling thread", pool.getTaskType());
+
+				pool.execute(task);
+			}
 
-	public void notifyAgentStart(Agent agent) {
+		} catch (InterruptedException iex) {
 
-		List<Agent> agents = getRunningAgentsForTask(agent.getSupportedTaskType());
+			Thread.currentThread().interrupt();
 
-		synchronized (agents) {
-			agents.add(agent);
+			logger.log(Level.WARNING, "Interrupted while waiting for task queue of {0}, task {1} not processed", new Object[] { pool.getTaskType(), task });
 		}
 	}
 
-	public void notifyAgentStop(Agent agent) {
+	public Agent findAgentForTask(Task task) {
+
+		final AgentPool pool = pools.get(task.getClass().getName());
+		if (pool != null) {
 
-		List<Agent> agents = getRunningAgentsForTask(agent.getSupportedTaskType());
+			for (Agent agent : pool.getAgents()) {
 
-		synchronized (agents) {
-			agents.remove(agent);
+				if (task.equals(agent.getCurrentTask())) {
+					return (agent);
+				}
+			}
 		}
+
+		return (null);
 	}
 
 	public Map<String, Class<? extends Agent>> getAgents() {
@@ -147,6 +162,23 @@ public class AgentService extends Thread implements RunnableService {
 		return Collections.emptyMap();
 	}
 
+	/**
+	 * Returns queue depth, wait time and execution time statistics for
+	 * each task type.
+	 *
+	 * @return a map of statistics
+	 */
+	public Map<String, Object> getStatistics() {
+
+		final Map<String, Object> stats = new LinkedHashMap<>();
+
+		for (final AgentPool pool : pools.values()) {
+			stats.put(pool.getTaskType(), pool.getStatistics());
+		}
+
+		return stats;
+	}
+
 	// <editor-fold defaultstate="collapsed" desc="interface RunnableService">
 	@Override
 	public void injectArguments(Command command) {
@@ -155,19 +187,31 @@ public class AgentService extends Thread implements RunnableService {
 
 	@Override
 	public void initialize(final StructrServices services, final Properties config) throws ClassNotFoundException, InstantiationException, IllegalAccessException {
+
+		queueTimeout = Services.parseInt(config.getProperty(Services.APPLICATION_AGENT_QUEUE_TIMEOUT), 1000);
 	}
 
 	@Override
 	public void initialized() {}
 
 	@Override
-	public void shutdown() {}
+	public void shutdown() {
+
+		shutdown = true;
+
+		for (final AgentPool pool : pools.values()) {
+			pool.shutdown();
+		}
+
+		pools.clear();
+	}
 
 	@Override
 	public void startService() {
 
 		run = true;
-		this.start();
+
+		logger.log(Level.INFO, "AgentService started");
 	}
 
 	@Override
@@ -183,89 +227,40 @@ public class AgentService extends Thread implements RunnableService {
 	// </editor-fold>
 
 	// <editor-fold defaultstate="collapsed" desc="private methods">
-	private void assignNextAgentForTask(Task nextTask) {
+	private AgentPool getPool(final Class taskClass) {
 
-		Class taskClass    = nextTask.getClass();
-		List<Agent> agents = getRunningAgentsForTask(taskClass);
+		return pools.computeIfAbsent(taskClass.getName(), key -> {
 
-		// need to synchronize on agents
-		synchronized (agents) {
+			final Class<? extends Agent> agentClass = lookupAgentClass(taskClass);
+			if (agentClass != null) {
 
-			// find next free agent (agents should be sorted by load, so one
-			// of the first should do..
-			for (Agent agent : agents) {
+				try {
 
-				if (agent.assignTask(nextTask)) {
-
-					// ok, task is assigned
-					logger.log(Level.FINE, "Task assigned to agent {0}", agent.getName());
-
-					return;
-				}
-			}
-		}
+					final int threads   = getConfigValue(Services.APPLICATION_AGENT_THREADS, taskClass, agentClass.newInstance().getDefaultWorkerCount());
+					final int queueSize = getConfigValue(Services.APPLICATION_AGENT_QUEUE_SIZE, taskClass, 1000);
 
-		// FIXME: find better solution for hard limit here!
-		if (agents.size() < maxAgents) {
+					return new AgentPool(this, agentClass, taskClass.getSimpleName(), threads, queueSize);
 
-			// if we get here, task was not assigned to any agent, need to
-			// create a new one.
-			Agent agent = createAgent(nextTask);
+				} catch (Throwable t) {
 
-			if ((agent != null) && agent.assignTask(nextTask)) {
-				agent.start();
-			} else {
-
-				// re-add task..
-				synchronized (taskQueue) {
-					taskQueue.add(nextTask);
+					logger.log(Level.WARNING, "Unable to create agent {0}: {1}", new Object[] { agentClass.getName(), t.getMessage() });
 				}
 			}
-		} else {
-
-			logger.log(Level.FINE, "Overall agents limit reached, re-queueing task");
 
-			// re-add task..
-			synchronized (taskQueue) {
-				taskQueue.add(nextTask);
-			}
-		}
+			return null;
+		});
 	}
 
-	/**
-	 * Creates a new agent for the given Task. Note that the agent must be
-	 * started manually after creation.
-	 *
-	 * @param forTask
-	 * @return a new agent for the given task
-	 */
-	private Agent createAgent(Task forTask) {
-
-		Agent agent = null;
-
-		try {
-
-			agent = lookupAgent(forTask);
-
-			if (agent != null) {
+	private int getConfigValue(final String key, final Class taskClass, final int defaultValue) {
 
-				// register us in agent..
-				agent.setAgentService(this);
-			}
-
-		} catch (Exception ex) {
+		final int value = Services.parseInt(StructrApp.getConfigurationValue(key), defaultValue);
 
-			// TODO: handle exception etc..
-		}
-
-		return (agent);
+		return Services.parseInt(StructrApp.getConfigurationValue(key + "." + taskClass.getSimpleName()), value);
 	}
 
-	private Agent lookupAgent(Task task) {
+	private Class<? extends Agent> lookupAgentClass(final Class taskClass) {
 
 		// FIXME: superuser security context
-		Class taskClass  = task.getClass();
-		Agent agent      = null;
 		Class agentClass = agentClassCache.get(taskClass.getName());
 
 		// cache miss
@@ -295,15 +290,7 @@ public class AgentService extends Thread implements RunnableService {
 			}
 		}
 
-		if (agentClass != null) {
-
-			try {
-				agent = (Agent) agentClass.newInstance();
-
-			} catch (Throwable ignore) {}
-		}
-
-		return (agent);
+		return (agentClass);
 	}
 
 	// </editor-fold>
@@ -315,7 +302,14 @@ public class AgentService extends Thread implements RunnableService {
 	 * @return tasks
 	 */
 	public Collection<Task> getTaskQueue() {
-		return (taskQueue);
+
+		final List<Task> tasks = new LinkedList<>();
+
+		for (final AgentPool pool : pools.values()) {
+			tasks.addAll(pool.getTasks());
+		}
+
+		return (tasks);
 	}
 
 	/**
@@ -323,22 +317,14 @@ public class AgentService extends Thread implements RunnableService {
 	 * @return agents
 	 */
 	public Map<String, List<Agent>> getRunningAgents() {
-		return (runningAgents);
-	}
-
-	private List<Agent> getRunningAgentsForTask(Class taskClass) {
-
-		List<Agent> agents = runningAgents.get(taskClass.getName());
 
-		if (agents == null) {
+		final Map<String, List<Agent>> runningAgents = new LinkedHashMap<>();
 
-			agents = Collections.synchronizedList(new LinkedList<Agent>());
-
-			// Hashtable is synchronized
-			runningAgents.put(taskClass.getName(), agents);
+		for (final Entry<String, AgentPool> entry : pools.entrySet()) {
+			runningAgents.put(entry.getKey(), entry.getValue().getAgents());
 		}
 
-		return (agents);
+		return (runningAgents);
 	}
 
 	@Override
@@ -18,34 +18,57 @@
  */
 package org.structr.common;
 
-import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
 import org.structr.api.graph.Node;
 import org.structr.api.graph.PropertyContainer;
 import org.structr.api.graph.Relationship;
+import org.structr.api.util.FixedSizeCache;
+import org.structr.core.Services;
+import org.structr.core.app.StructrApp;
 import org.structr.core.graph.NodeInterface;
 
 /**
+ * Size-bounded cache for permission resolution masks between principals
+ * and nodes.
+ *
+ * Every entry remembers the UUIDs and relationship types of the paths it
+ * was resolved from, and reverse indexes from UUID and relationship type
+ * to cache entries make invalidation proportional to the number of affected
+ * entries instead of the cache size. Entries are created atomically, and
+ * only entries that are still cached are kept in the indexes.
  *
  * @author Christian Morgner
  */
 public class AccessPathCache {
 
-	private static final Map<String, CacheEntry> cache = new ConcurrentHashMap<>();
-	private static final Set<String> allRelTypes       = new HashSet<>();
-	private static final Set<String> allUuids          = new HashSet<>();
+	private static final Map<String, Set<CacheEntry>> uuidIndex    = new ConcurrentHashMap<>();
+	private static final Map<String, Set<CacheEntry>> relTypeIndex = new ConcurrentHashMap<>();
+	private static final FixedSizeCache<CacheKey, CacheEntry> cache;
+	private static final LongAdder hits                            = new LongAdder();
+	private static final LongAdder misses                          = new LongAdder();
+
+	static {
+
+		cache = new FixedSizeCache<>(Services.parseInt(StructrApp.getConfigurationValue(Services.APPLICATION_ACCESS_PATH_CACHE_SIZE), 100000));
+		cache.setEvictionListener((key, entry) -> unindex(entry));
+	}
 
 	public static PermissionResolutionMask get(final NodeInterface startNode, final NodeInterface endNode) {
 
-		final String cacheKey  = cacheKey(startNode, endNode);
-		final CacheEntry entry = cache.get(cacheKey);
+		final CacheEntry entry = cache.get(new CacheKey(startNode, endNode));
 
 		if (entry != null) {
+
+			hits.increment();
 			return entry.mask;
 		}
 
+		misses.increment();
+
 		return null;
 	}
 
@@ -53,10 +76,6 @@ public class AccessPathCache {
 
 		final CacheEntry entry = getOrCreateCacheEntry(startNode, endNode);
 
-		// remember UUIDs
-		allUuids.add(startNode.getUuid());
-		allUuids.add(endNode.getUuid());
-
 		entry.mask = mask;
 	}
 
@@ -65,10 +84,9 @@ public class AccessPathCache {
 		final CacheEntry entry = getOrCreateCacheEntry(startNode, endNode);
 		final String uuid      = getUuid(node);
 
-		if (uuid != null) {
+		if (uuid != null && entry.uuids.add(uuid)) {
 
-			entry.uuids.add(uuid);
-			allUuids.add(uuid);
+			index(uuidIndex, uuid, entry);
 		}
 	}
 
@@ -79,73 +97,146 @@ public class AccessPathCache {
 
 		if (uuid != null) {
 
-			final String relType   = rel.getType().name();
-
-			entry.uuids.add(uuid);
-			allUuids.add(uuid);
+			final String relType = rel.getType().name();
 
-			entry.relTypes.add(relType);
-			allRelTypes.add(relType);
+			if (entry.uuids.add(uuid)) {
+				index(uuidIndex, uuid, entry);
+			}
 
+			if (entry.relTypes.add(relType)) {
+				index(relTypeIndex, relType, entry);
+			}
 		}
 	}
 
 	public static void invalidateForId(final String uuid) {
 
-		if (allUuids.contains(uuid)) {
+		final Set<CacheEntry> entries = uuidIndex.remove(uuid);
+		if (entries != null) {
 
-			for (final CacheEntry entry : cache.values()) {
-
-				if (entry.uuids.contains(uuid)) {
-					cache.remove(entry.key);
-				}
+			for (final CacheEntry entry : entries) {
+				remove(entry);
 			}
-
-			allUuids.remove(uuid);
 		}
 	}
 
 	public static void invalidateForRelType(final String relType) {
 
-		if (allRelTypes.contains(relType)) {
+		final Set<CacheEntry> entries = relTypeIndex.remove(relType);
+		if (entries != null) {
 
-			for (final CacheEntry entry : cache.values()) {
-
-				if (entry.relTypes.contains(relType)) {
-					cache.remove(entry.key);
-				}
+			for (final CacheEntry entry : entries) {
+				remove(entry);
 			}
-
-			allRelTypes.remove(relType);
 		}
 	}
 
 	public static void invalidate() {
 
-		allRelTypes.clear();
-		allUuids.clear();
 		cache.clear();
+		uuidIndex.clear();
+		relTypeIndex.clear();
+	}
+
+	public static int size() {
+		return cache.size();
+	}
+
+	public static Map<String, Object> getStatistics() {
+
+		final Map<String, Object> stats = new LinkedHashMap<>();
+		final long hitCount             = hits.sum();
+		final long totalCount           = hitCount + misses.sum();
+
+		stats.put("size",      cache.size());
+		stats.put("maxSize",   cache.getMaxSize());
+		stats.put("hits",      hitCount);
+		stats.put("misses",    totalCount - hitCount);
+		stats.put("evictions", cache.getEvictionCount());
+		stats.put("hitRatio",  totalCount > 0 ? (double)hitCount / (double)totalCount : 0.0);
+		stats.put("uuids",     uuidIndex.size());
+		stats.put("relTypes",  relTypeIndex.size());
+
+		return stats;
 	}
 
 	// ----- private methods -----
 	private static CacheEntry getOrCreateCacheEntry(final NodeInterface startNode, final NodeInterface endNode) {
 
-		final String cacheKey = cacheKey(startNode, endNode);
-		CacheEntry entry      = cache.get(cacheKey);
+		final CacheKey cacheKey = new CacheKey(startNode, endNode);
+		CacheEntry entry        = cache.get(cacheKey);
 
 		if (entry == null) {
 
-			entry = new CacheEntry();
-			entry.key = cacheKey;
+			final CacheEntry newEntry = new CacheEntry(cacheKey);
 
-			cache.put(cacheKey, entry);
+			// the entry must be invalidated when one of its endpoints changes
+			newEntry.uuids.add(cacheKey.startUuid);
+			newEntry.uuids.add(cacheKey.endUuid);
+
+			entry = cache.putIfAbsent(cacheKey, newEntry);
+			if (entry == null) {
+
+				entry = newEntry;
+
+				index(uuidIndex, cacheKey.startUuid, entry);
+				index(uuidIndex, cacheKey.endUuid, entry);
+			}
 		}
 
 		return entry;
 	}
 
-	private static String cacheKey(final NodeInterface startNode, final NodeInterface endNode) {
-		return startNode.getUuid() + endNode.getUuid();
+	private static void remove(final CacheEntry entry) {
+
+		// an entry for the same key that was created concurrently is removed as well
+		final CacheEntry current = cache.remove(entry.key);
+		if (current != null && current != entry) {
+
+			unindex(current);
+		}
+
+		unindex(entry);
+	}
+
+	private static void index(final Map<String, Set<CacheEntry>> index, final String value, final CacheEntry entry) {
+
+		index.compute(value, (k, entries) -> {
+
+			final Set<CacheEntry> result = entries != null ? entries : ConcurrentHashMap.newKeySet();
+
+			result.add(entry);
+
+			return result;
+		});
+
+		// the entry may have been evicted while it was updated
+		if (!entry.cached) {
+			unindex(index, value, entry);
+		}
+	}
+
+	private static void unindex(final CacheEntry entry) {
+
+		entry.cached = false;
+
+		for (final String uuid : entry.uuids) {
+			unindex(uuidIndex, uuid, entry);
+		}
+
+		for (final String relType : entry.relTypes) {
+			unindex(relTypeIndex, relType, entry);
+		}
+	}
+
+	private static void unindex(final Map<String, Set<CacheEntry>> index, final String value, final CacheEntry entry) {
+
+		index.computeIfPresent(value, (k, entries) -> {
+
+			entries.remove(entry);
+
+			return entries.isEmpty() ? null : entries;
+		});
 	}
 
 	private static String getUuid(final PropertyContainer prop) {
@@ -158,11 +249,48 @@ public class AccessPathCache {
 	}
 
 	// ----- nested classes -----
+	private static class CacheKey {
+
+		private final String startUuid;
+		private final String endUuid;
+		private final int hashCode;
+
+		public CacheKey(final NodeInterface startNode, final NodeInterface endNode) {
+
+			this.startUuid = startNode.getUuid();
+			this.endUuid   = endNode.getUuid();
+			this.hashCode  = 31 * startUuid.hashCode() + endUuid.hashCode();
+		}
+
+		@Override
+		public int hashCode() {
+			return hashCode;
+		}
+
+		@Override
+		public boolean equals(final Object obj) {
+
+			if (obj instanceof CacheKey) {
+
+				final CacheKey other = (CacheKey)obj;
+
+				return startUuid.equals(other.startUuid) && endUuid.equals(other.endUuid);
+			}
+
+			return false;
+		}
+	}
+
 	private static class CacheEntry {
 
-		protected Set<String> uuids             = new HashSet<>();
-		protected Set<String> relTypes          = new HashSet<>();
-		protected PermissionResolutionMask mask = null;
-		protected String key                    = null;
+		protected final Set<String> uuids                = ConcurrentHashMap.newKeySet();
+		protected final Set<String> relTypes             = ConcurrentHashMap.newKeySet();
+		protected volatile PermissionResolutionMask mask = null;
+		protected volatile boolean cached                = true;
+		protected final CacheKey key;
+
+		public CacheEntry(final CacheKey key) {
+			this.key = key;
+		}
 	}
 }
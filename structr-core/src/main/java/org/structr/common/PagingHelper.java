@@ -128,7 +128,8 @@ public class PagingHelper {
 			return result;
 		}
 
-		int pageCount = getPageCount(result.getRawResultCount(), pageSize);
+		final Integer rawResultCount = result.getRawResultCount();
+		int pageCount                = getPageCount(rawResultCount != null ? rawResultCount : result.size(), pageSize);
 
 		if (pageCount > 0) {
 
@@ -151,11 +152,17 @@ public class PagingHelper {
 
 		if (pageSize > 0 && pageSize < Integer.MAX_VALUE) {
 
-			int pageCount = getPageCount(result.getRawResultCount(), pageSize);
+			final Integer rawResultCount = result.getRawResultCount();
 
-			if (pageCount > 0) {
+			// lazy results don't have a result count
+			if (rawResultCount != null) {
 
-				result.setPageCount(pageCount);
+				int pageCount = getPageCount(rawResultCount, pageSize);
+
+				if (pageCount > 0) {
+
+					result.setPageCount(pageCount);
+				}
 			}
 
 			result.setPage(page);
@@ -21,6 +21,7 @@ package org.structr.core;
 import java.util.Date;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import org.structr.api.Predicate;
 import org.structr.api.graph.PropertyContainer;
 import org.structr.cmis.CMISInfo;
@@ -303,6 +304,14 @@ public interface GraphObject {
 	public void removeFromIndex();
 	public void indexPassiveProperties();
 
+	/**
+	 * Updates the index entries of the given keys only, leaving all other
+	 * index entries of this object untouched.
+	 *
+	 * @param keys the keys to update
+	 */
+	public void updateInIndex(final Set<PropertyKey> keys);
+
 	public String getPropertyWithVariableReplacement(final ActionContext renderContext, final PropertyKey<String> key) throws FrameworkException;
 	public Object evaluate(final SecurityContext securityContext, final String key, final String defaultValue) throws FrameworkException;
 	public Object invokeMethod(final String methodName, final Map<String, Object> parameters, final boolean throwExceptionForUnknownMethods) throws FrameworkException;
@@ -214,6 +214,10 @@ public class GraphObjectMap extends PropertyMap implements GraphObject {
 	public void indexPassiveProperties() {
 	}
 
+	@Override
+	public void updateInIndex(final Set<PropertyKey> keys) {
+	}
+
 	@Override
 	public void setSecurityContext(SecurityContext securityContext) {
 	}
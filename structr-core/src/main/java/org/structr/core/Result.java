@@ -25,6 +25,11 @@ import java.util.List;
 /**
  * Encapsulates the result of a query operation.
  *
+ * A result can either hold a materialized list or wrap a lazy iterable
+ * that instantiates its elements on demand. Lazy results can be streamed
+ * exactly once and have no result count; all list-based accessors
+ * materialize them first.
+ *
  *
  *
  */
@@ -37,6 +42,7 @@ public class Result<T extends GraphObject> {
 	private boolean hasPartialContent = false;
 	private String propertyView       = null;
 	private List<T> results           = null;
+	private Iterable<T> lazyResults   = null;
 
 	private String searchString       = null;
 	private String queryTime          = null;
@@ -58,6 +64,13 @@ public class Result<T extends GraphObject> {
 		this.resultCount      = (rawResultCount != null ? rawResultCount : (results != null ? results.size() : 0));
 	}
 
+	public Result(final Iterable<T> lazyResult, final boolean isCollection, final boolean isPrimitiveArray) {
+
+		this.isCollection     = isCollection;
+		this.isPrimitiveArray = isPrimitiveArray;
+		this.lazyResults      = lazyResult;
+	}
+
 	public Result(T singleResult, final boolean isPrimitiveArray) {
 
 		this.isCollection     = false;
@@ -74,21 +87,79 @@ public class Result<T extends GraphObject> {
 
 	@Override
 	public String toString() {
+
+		if (isLazy()) {
+			return "Result(lazy)";
+		}
+
 		return "Result(" + (results != null ? results.size() : 0) + ")";
 	}
 
 	public T get(final int i) {
-		return results.get(i);
+		return getResults().get(i);
 	}
 
 	public boolean isEmpty() {
-		return results == null || results.isEmpty();
+
+		final List<T> list = getResults();
+
+		return list == null || list.isEmpty();
 	}
 
 	public List<T> getResults() {
+
+		if (isLazy()) {
+
+			final List<T> list = new ArrayList<>();
+
+			for (final T item : lazyResults) {
+				list.add(item);
+			}
+
+			results     = list;
+			lazyResults = null;
+		}
+
 		return results;
 	}
 
+	/**
+	 * Returns the elements of this result without materializing them.
+	 * For lazy results, the returned iterable can only be consumed once.
+	 *
+	 * @return the elements of this result
+	 */
+	public Iterable<T> getLazyResults() {
+
+		if (isLazy()) {
+			return lazyResults;
+		}
+
+		return results;
+	}
+
+	public boolean isLazy() {
+		return lazyResults != null;
+	}
+
+	/**
+	 * Releases the underlying query result of a lazy result that has not
+	 * been consumed completely, e.g. because serialization was aborted or
+	 * no content was requested.
+	 */
+	public void close() {
+
+		if (lazyResults instanceof AutoCloseable) {
+
+			try {
+				((AutoCloseable)lazyResults).close();
+
+			} catch (Exception ex) {
+				// lazy results don't throw on close
+			}
+		}
+	}
+
 	public void setQueryTime(final String queryTime) {
 		this.queryTime = queryTime;
 	}
@@ -119,6 +190,11 @@ public class Result<T extends GraphObject> {
 			return resultCount;
 		}
 
+		// don't materialize lazy results just to count them
+		if (isLazy()) {
+			return null;
+		}
+
 		return size();
 	}
 
@@ -108,13 +108,29 @@ public class Services implements StructrServices {
 	public static final String APPLICATION_UUID_CACHE_SIZE               = "application.cache.uuid.size";
 	public static final String APPLICATION_NODE_CACHE_SIZE               = "application.cache.node.size";
 	public static final String APPLICATION_REL_CACHE_SIZE                = "application.cache.relationship.size";
+	public static final String APPLICATION_ACCESS_PATH_CACHE_SIZE        = "application.cache.accesspath.size";
+	public static final String APPLICATION_FRAGMENT_CACHE_SIZE           = "application.cache.fragment.size";
+	public static final String APPLICATION_SESSION_CACHE_SIZE            = "application.cache.session.size";
+	public static final String APPLICATION_INSTANTIATION_THREADS         = "application.instantiation.threads";
+	public static final String APPLICATION_INSTANTIATION_WORKER_ITEMS    = "application.instantiation.worker.items";
+	public static final String APPLICATION_SCRIPTING_OPTIMIZATION_LEVEL  = "application.scripting.optimization.level";
+	public static final String APPLICATION_SCRIPTING_CACHE_SIZE          = "application.scripting.cache.size";
+	public static final String APPLICATION_SCRIPTING_CACHE_WEIGHT        = "application.scripting.cache.weight";
 	public static final String APPLICATION_FILESYSTEM_ENABLED            = "application.filesystem.enabled";
 	public static final String APPLICATION_FILESYSTEM_INDEXING_LIMIT     = "application.filesystem.indexing.limit";
 	public static final String APPLICATION_FILESYSTEM_INDEXING_MINLENGTH = "application.filesystem.indexing.word.minlength";
 	public static final String APPLICATION_FILESYSTEM_INDEXING_MAXLENGTH = "application.filesystem.indexing.word.maxlength";
 	public static final String APPLICATION_FILESYSTEM_UNIQUE_PATHS       = "application.filesystem.unique.paths";
+	public static final String APPLICATION_FILESYSTEM_DEDUPLICATION      = "application.filesystem.deduplication";
+	public static final String APPLICATION_THUMBNAIL_THREADS             = "application.thumbnails.threads";
+	public static final String APPLICATION_THUMBNAIL_QUEUE_SIZE          = "application.thumbnails.queue.size";
+	public static final String APPLICATION_AGENT_THREADS                 = "application.agent.threads";
+	public static final String APPLICATION_AGENT_QUEUE_SIZE              = "application.agent.queue.size";
+	public static final String APPLICATION_AGENT_QUEUE_TIMEOUT           = "application.agent.queue.timeout";
 	public static final String SNAPSHOT_PATH                             = "snapshot.path";
 	public static final String WEBSOCKET_FRONTEND_ACCESS                 = "WebSocketServlet.frontendAccess";
+	public static final String WEBSOCKET_OUTBOUND_QUEUE_SIZE             = "WebSocketServlet.outboundQueueSize";
+	public static final String WEBSOCKET_OUTBOUND_MAX_DROPPED            = "WebSocketServlet.outboundMaxDropped";
 
 	// singleton instance
 	private static int globalSessionTimeout            = -1;
@@ -484,7 +484,7 @@ public class StructrApp implements App {
 		if (nodeUuidMap == null) {
 
 			final int cacheSize = Services.parseInt(StructrApp.getConfigurationValue(Services.APPLICATION_UUID_CACHE_SIZE), 10000);
-			nodeUuidMap = new FixedSizeCache<>(cacheSize);
+			nodeUuidMap = new FixedSizeCache<>("Node UUID cache", cacheSize);
 		}
 
 		return nodeUuidMap.get(uuid);
@@ -495,7 +495,7 @@ public class StructrApp implements App {
 		if (relUuidMap == null) {
 
 			final int cacheSize = Services.parseInt(StructrApp.getConfigurationValue(Services.APPLICATION_UUID_CACHE_SIZE), 10000);
-			relUuidMap = new FixedSizeCache<>(cacheSize);
+			relUuidMap = new FixedSizeCache<>("Relationship UUID cache", cacheSize);
 		}
 
 		return relUuidMap.get(uuid);
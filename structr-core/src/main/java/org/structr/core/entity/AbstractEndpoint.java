@@ -35,6 +35,7 @@ import org.structr.common.PropertyView;
 import org.structr.common.SecurityContext;
 import org.structr.core.GraphObject;
 import org.structr.core.Services;
+import org.structr.core.graph.NodeFactory;
 import org.structr.core.property.PropertyKey;
 import org.structr.core.property.PropertyMap;
 
@@ -62,6 +63,59 @@ public abstract class AbstractEndpoint {
 	}
 
 	// ----- protected methods -----
+	/**
+	 * Returns the relationships of the given type between the two given
+	 * nodes. Only the relationships of the given node are examined, so it
+	 * should be the node with fewer relationships of the given type, i.e.
+	 * the node on the single side of a collection.
+	 *
+	 * @param dbNode the node whose relationships are examined
+	 * @param relationshipType the relationship type
+	 * @param direction the direction of the relationships, seen from dbNode
+	 * @param otherNode the node on the other end of the relationships
+	 *
+	 * @return the relationships, or an empty list
+	 */
+	protected List<Relationship> getRelationships(final Node dbNode, final RelationshipType relationshipType, final Direction direction, final Node otherNode) {
+
+		final List<Relationship> rels = new LinkedList<>();
+		final long otherId            = otherNode.getId();
+
+		for (final Relationship rel : dbNode.getRelationships(direction, relationshipType)) {
+
+			if (rel.getOtherNode(dbNode).getId() == otherId) {
+				rels.add(rel);
+			}
+		}
+
+		return rels;
+	}
+
+	/**
+	 * Indicates whether the given element node is readable through one of
+	 * the given relationships, i.e. whether it would be contained in the
+	 * collection returned by get().
+	 *
+	 * @param securityContext the security context
+	 * @param rels the relationships between the collection owner and the element
+	 * @param element the element node
+	 *
+	 * @return whether the element is visible in the collection
+	 */
+	protected boolean isVisibleElement(final SecurityContext securityContext, final List<Relationship> rels, final Node element) {
+
+		final NodeFactory nodeFactory = new NodeFactory(securityContext);
+
+		for (final Relationship rel : rels) {
+
+			if (nodeFactory.instantiate(element, rel) != null) {
+				return true;
+			}
+		}
+
+		return false;
+	}
+
 	/**
 	 * Loads a PropertyMap from the current security context that was previously stored
 	 * there by one of the Notions that was executed before this relationship creation.
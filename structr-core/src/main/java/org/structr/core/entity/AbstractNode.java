@@ -21,12 +21,14 @@ package org.structr.core.entity;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Date;
 import java.util.GregorianCalendar;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
@@ -41,13 +43,10 @@ import org.apache.chemistry.opencmis.commons.data.AllowableActions;
 import org.apache.chemistry.opencmis.commons.enums.BaseTypeId;
 import org.apache.chemistry.opencmis.commons.enums.PropertyType;
 import org.apache.commons.codec.digest.DigestUtils;
-import org.apache.commons.lang.StringUtils;
 import org.structr.api.DatabaseService;
 import org.structr.api.graph.Direction;
 import org.structr.api.index.Index;
-import org.structr.api.NativeResult;
 import org.structr.api.graph.Node;
-import org.structr.api.graph.Path;
 import org.structr.api.Predicate;
 import org.structr.api.graph.PropertyContainer;
 import org.structr.api.graph.Relationship;
@@ -105,9 +104,12 @@ import org.structr.schema.action.Function;
  */
 public abstract class AbstractNode implements NodeInterface, AccessControllable, CMISInfo, CMISItemInfo {
 
-	private static final FixedSizeCache<String, Object> relationshipTemplateInstanceCache = new FixedSizeCache<>(1000);
+	private static final FixedSizeCache<String, Object> relationshipTemplateInstanceCache = new FixedSizeCache<>("Relationship template cache", 1000);
 	private static final Logger logger = Logger.getLogger(AbstractNode.class.getName());
 
+	// FIXME: make maximum permission path length configurable
+	private static final int MAX_PERMISSION_PATH_LENGTH = 9;
+
 	public static final View defaultView = new View(AbstractNode.class, PropertyView.Public, id, type);
 
 	public static final View uiView = new View(AbstractNode.class, PropertyView.Ui,
@@ -924,137 +926,210 @@ public abstract class AbstractNode implements NodeInterface, AccessControllable,
 			return result;
 		}
 
+		// work on a copy so that the cached mask is only replaced with a complete result
+		final PermissionResolutionMask updated = mask != null ? mask.copy() : new PermissionResolutionMask();
+
 		try {
 
-			if (mask == null) {
+			// store all check attempts in the cache
+			updated.setChecked(permission);
 
-				// store only a single mask for every node
-				mask = new PermissionResolutionMask();
-				AccessPathCache.put(principal, this, mask);
+			final PermissionResolutionMask result = resolvePermissionPath(principal, permission, updated, relFactory);
+			if (result != null) {
+
+				updated.restore(result);
 
 				if (doLog) {
-					System.out.println("        Storing initial mask: " + mask);
+					System.out.println("        Storing mask from path: " + updated);
 				}
+
+				AccessPathCache.put(principal, this, updated);
+
+				return true;
 			}
 
-			// store all check attempts in the cache
-			mask.setChecked(permission);
+		} catch (Throwable t) {
 
-			final DatabaseService db         = StructrApp.getInstance().getDatabaseService();
-			final String relTypes            = getPermissionPropagationRelTypes();
-			final Map<String, Object> params = new HashMap<>();
-			final long principalId           = principal.getId();
+			// an error is not a denial, so nothing is cached and the next check resolves again
+			logger.log(Level.WARNING, "Unable to resolve " + permission.name() + " permission of " + principal.getUuid() + " for " + getUuid(), t);
 
-			params.put("id1", principalId);
-			params.put("id2", this.getId());
+			return false;
+		}
 
-			// FIXME: make fixed path length of 8 configurable
-			for (int i=1; i<10; i++) {
+		updated.setPermission(permission, false);
+		AccessPathCache.put(principal, this, updated);
 
-				final String query        = "MATCH n, m, p = allShortestPaths(n-[" + relTypes + "*.." + i + "]-m) WHERE id(n) = {id1} AND id(m) = {id2} RETURN p";
-				final NativeResult result = db.execute(query, params);
+		if (doLog) {
+			System.out.println("        Storing mask from unsuccessful path: " + updated);
+		}
 
-				while (result.hasNext()) {
+		return false;
+	}
 
-					final Map<String, Object> row = result.next();
-					final Path path               = (Path)row.get("p");
-					Node previousNode             = null;
-					boolean arrived               = true;
+	/**
+	 * Resolves the permission propagation paths between the given principal
+	 * and this node in a single breadth-first traversal.
+	 *
+	 * Only the shortest paths along relationships with propagating types are
+	 * considered, and each path is evaluated step by step in the same way
+	 * as before, so a path dies as soon as its propagation direction does
+	 * not match or its mask no longer allows the requested permission. The
+	 * traversal stops when this node is reached, when no live path is left
+	 * or when the maximum path length is exceeded.
+	 *
+	 * @param principal
+	 * @param permission
+	 * @param initialMask
+	 * @param relFactory
+	 *
+	 * @return the resulting mask of the first allowing path, or null
+	 */
+	private PermissionResolutionMask resolvePermissionPath(final Principal principal, final Permission permission, final PermissionResolutionMask initialMask, final RelationshipFactory relFactory) {
 
-					for (final PropertyContainer container : path) {
+		final boolean doLog                                 = securityContext.hasParameter("debugLoggingEnabled");
+		final DatabaseService db                            = StructrApp.getInstance().getDatabaseService();
+		final List<RelationshipType> relTypes               = new LinkedList<>();
+		final Map<Long, Integer> distances                  = new HashMap<>();
+		final Node startNode                                = principal.getNode();
+		final long targetId                                 = getId();
+		Map<Long, Node> frontier                            = new LinkedHashMap<>();
+		Map<Long, List<PermissionResolutionMask>> liveMasks = new HashMap<>();
 
-						if (container instanceof Node) {
+		for (final String relType : SchemaRelationshipNode.getPropagatingRelationshipTypes()) {
+			relTypes.add(db.forName(RelationshipType.class, relType));
+		}
 
-							// store previous node to determine relationship direction
-							previousNode = (Node)container;
-							AccessPathCache.update(principal, this, previousNode);
+		distances.put(startNode.getId(), 0);
+		frontier.put(startNode.getId(), startNode);
+		liveMasks.put(startNode.getId(), Arrays.asList(initialMask.copy()));
 
-						} else {
+		for (int depth=1; depth<=MAX_PERMISSION_PATH_LENGTH; depth++) {
 
-							final Relationship rel        = (Relationship)container;
-							final RelationshipInterface r = relFactory.instantiate(rel);
+			final Map<Long, Node> nextFrontier                            = new LinkedHashMap<>();
+			final Map<Long, List<PermissionResolutionMask>> nextLiveMasks = new HashMap<>();
+			final Map<Long, Set<String>> seenMasks                        = new HashMap<>();
 
-							if (r instanceof PermissionPropagation) {
+			for (final Node node : frontier.values()) {
 
-								// update cache with relationship type
-								AccessPathCache.update(principal, this, rel);
+				final long nodeId                          = node.getId();
+				final List<PermissionResolutionMask> masks = liveMasks.get(nodeId);
 
-								final PermissionPropagation propagation                     = (PermissionPropagation)r;
-								final long startNodeId                                      = rel.getStartNode().getId();
-								final long thisId                                           = previousNode.getId();
-								final SchemaRelationshipNode.Direction relDirection         = thisId == startNodeId ? SchemaRelationshipNode.Direction.Out : SchemaRelationshipNode.Direction.In;
-								final SchemaRelationshipNode.Direction propagationDirection = propagation.getPropagationDirection();
+				AccessPathCache.update(principal, this, node);
 
-								// check propagation direction
-								if (!propagationDirection.equals(SchemaRelationshipNode.Direction.Both)) {
+				for (final RelationshipType relType : relTypes) {
 
-									if (propagationDirection.equals(SchemaRelationshipNode.Direction.None)) {
+					for (final Relationship rel : node.getRelationships(Direction.BOTH, relType)) {
 
-										mask.clear();
-										arrived = false;
-										break;
-									}
+						final Node otherNode        = rel.getOtherNode(node);
+						final long otherId          = otherNode.getId();
+						final Integer otherDistance = distances.get(otherId);
 
-									if (!relDirection.equals(propagationDirection)) {
+						// only follow relationships that lie on a shortest path
+						if (otherDistance != null && otherDistance < depth) {
+							continue;
+						}
 
-										mask.clear();
-										arrived = false;
-										break;
-									}
+						if (otherDistance == null) {
+
+							distances.put(otherId, depth);
+							nextFrontier.put(otherId, otherNode);
+						}
+
+						// no live path arrived at this node, no need to evaluate
+						if (masks == null || masks.isEmpty()) {
+							continue;
+						}
+
+						final RelationshipInterface r = relFactory.instantiate(rel);
+						if (r instanceof PermissionPropagation) {
+
+							// update cache with relationship type
+							AccessPathCache.update(principal, this, rel);
+
+							final PermissionPropagation propagation                     = (PermissionPropagation)r;
+							final long startNodeId                                      = rel.getStartNode().getId();
+							final SchemaRelationshipNode.Direction relDirection         = nodeId == startNodeId ? SchemaRelationshipNode.Direction.Out : SchemaRelationshipNode.Direction.In;
+							final SchemaRelationshipNode.Direction propagationDirection = propagation.getPropagationDirection();
+
+							// check propagation direction
+							if (!propagationDirection.equals(SchemaRelationshipNode.Direction.Both)) {
+
+								if (propagationDirection.equals(SchemaRelationshipNode.Direction.None)) {
+									continue;
+								}
+
+								if (!relDirection.equals(propagationDirection)) {
+									continue;
 								}
+							}
 
-								applyCurrentStep(propagation, mask);
+							for (final PermissionResolutionMask mask : masks) {
+
+								final PermissionResolutionMask nextMask = mask.copy();
+
+								applyCurrentStep(propagation, nextMask);
 
 								// break early
-								if (!mask.allowsPermission(permission)) {
+								if (!nextMask.allowsPermission(permission)) {
 
 									if (doLog) {
-										System.out.println("        " + permission.name() + " DENIED by " + path);
+										System.out.println("        " + permission.name() + " DENIED by " + rel.getType().name() + " at depth " + depth);
 									}
 
-									arrived = false;
-									break;
+									continue;
 								}
 
-							} else {
+								// paths that arrive with identical masks behave identically from here on
+								Set<String> seen = seenMasks.get(otherId);
+								if (seen == null) {
 
-								if (doLog) {
-									System.out.println("        " + permission.name() + " DENIED by " + path);
+									seen = new HashSet<>();
+									seenMasks.put(otherId, seen);
 								}
 
-								arrived = false;
-								break;
-							}
-						}
-					}
+								if (seen.add(nextMask.toString() + nextMask.getRemovedProperties())) {
 
+									List<PermissionResolutionMask> list = nextLiveMasks.get(otherId);
+									if (list == null) {
 
-					if (arrived && mask.allowsPermission(permission)) {
+										list = new LinkedList<>();
+										nextLiveMasks.put(otherId, list);
+									}
 
-						if (doLog) {
-							System.out.println("        " + permission.name() + " ALLOWED by " + path);
-							System.out.println("        Storing mask from path: " + mask);
+									list.add(nextMask);
+								}
+							}
 						}
+					}
+				}
+			}
+
+			// shortest paths to this node found, no need to look any further
+			if (nextFrontier.containsKey(targetId)) {
 
-						AccessPathCache.put(principal, this, mask);
+				final List<PermissionResolutionMask> arrived = nextLiveMasks.get(targetId);
+				if (arrived != null && !arrived.isEmpty()) {
 
-						return true;
+					if (doLog) {
+						System.out.println("        " + permission.name() + " ALLOWED by path of length " + depth);
 					}
+
+					return arrived.get(0);
 				}
-			}
 
-		} catch (Throwable t) {
-			t.printStackTrace();
-		}
+				return null;
+			}
 
-		mask.setPermission(permission, false);
-		AccessPathCache.put(principal, this, mask);
+			// no live path left
+			if (nextLiveMasks.isEmpty() || nextFrontier.isEmpty()) {
+				return null;
+			}
 
-		if (doLog) {
-			System.out.println("        Storing mask from unsuccessful path: " + mask);
+			frontier  = nextFrontier;
+			liveMasks = nextLiveMasks;
 		}
 
-		return false;
+		return null;
 	}
 
 	private boolean checkPathSegment(final Principal principal, final Permission permission, final RelationshipFactory relFactory) {
@@ -1419,6 +1494,12 @@ public abstract class AbstractNode implements NodeInterface, AccessControllable,
 	}
 
 
+	/**
+	 * Removes this entity from all indexes and adds all indexed properties
+	 * again. This is a full rebuild for maintenance purposes, regular
+	 * modifications update the entries of the modified keys only, see
+	 * {@link #updateInIndex(java.util.Set)}.
+	 */
 	@Override
 	public void updateInIndex() {
 
@@ -1426,6 +1507,19 @@ public abstract class AbstractNode implements NodeInterface, AccessControllable,
 		addToIndex();
 	}
 
+	@Override
+	public void updateInIndex(final Set<PropertyKey> keys) {
+
+		for (final PropertyKey key : keys) {
+
+			if (key.isIndexed()) {
+
+				// replaces the existing entries of this key only
+				key.index(this, this.getPropertyForIndexing(key));
+			}
+		}
+	}
+
 	@Override
 	public void removeFromIndex() {
 
@@ -1720,10 +1814,6 @@ public abstract class AbstractNode implements NodeInterface, AccessControllable,
 		return permissionResolutionMask;
 	}
 
-	private String getPermissionPropagationRelTypes() {
-		return ":" + StringUtils.join(SchemaRelationshipNode.getPropagatingRelationshipTypes(), "|");
-	}
-
 	// ----- Cloud synchronization and replication -----
 	@Override
 	public List<GraphObject> getSyncData() throws FrameworkException {
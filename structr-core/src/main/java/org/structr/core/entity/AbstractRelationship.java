@@ -27,6 +27,7 @@ import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Set;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import org.apache.chemistry.opencmis.commons.enums.PropertyType;
@@ -606,6 +607,12 @@ public abstract class AbstractRelationship<S extends NodeInterface, T extends No
 		}
 	}
 
+	/**
+	 * Removes this entity from all indexes and adds all indexed properties
+	 * again. This is a full rebuild for maintenance purposes, regular
+	 * modifications update the entries of the modified keys only, see
+	 * {@link #updateInIndex(java.util.Set)}.
+	 */
 	@Override
 	public void updateInIndex() {
 
@@ -613,6 +620,19 @@ public abstract class AbstractRelationship<S extends NodeInterface, T extends No
 		addToIndex();
 	}
 
+	@Override
+	public void updateInIndex(final Set<PropertyKey> keys) {
+
+		for (final PropertyKey key : keys) {
+
+			if (key.isIndexed()) {
+
+				// replaces the existing entries of this key only
+				key.index(this, this.getPropertyForIndexing(key));
+			}
+		}
+	}
+
 	@Override
 	public void removeFromIndex() {
 
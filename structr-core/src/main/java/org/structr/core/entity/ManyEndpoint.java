@@ -38,6 +38,7 @@ import org.structr.core.app.App;
 import org.structr.core.app.StructrApp;
 import org.structr.core.graph.NodeFactory;
 import org.structr.core.graph.NodeInterface;
+import org.structr.core.graph.RelationshipFactory;
 
 /**
  *
@@ -96,23 +97,7 @@ public class ManyEndpoint<T extends NodeInterface> extends AbstractEndpoint impl
 		// remove existing relationships
 		for (T targetNode : toBeDeleted) {
 
-			for (AbstractRelationship rel : sourceNode.getOutgoingRelationships()) {
-
-				final String relTypeName    = rel.getRelType().name();
-				final String desiredRelType = relation.name();
-
-				if (sourceNode.equals(targetNode)) {
-
-					logger.log(Level.WARNING, "Preventing deletion of self relationship {0}-[{1}]->{2}. If you experience issue with this, please report to team@structr.com.", new Object[] { sourceNode, rel.getRelType(), targetNode } );
-
-					// skip self relationships
-					continue;
-				}
-
-				if (relTypeName.equals(desiredRelType) && rel.getTargetNode().equals(targetNode)) {
-					app.delete(rel);
-				}
-			}
+			remove(securityContext, sourceNode, targetNode);
 		}
 
 		final List<Relation> createdRelationships = new LinkedList<>();
@@ -123,16 +108,95 @@ public class ManyEndpoint<T extends NodeInterface> extends AbstractEndpoint impl
 
 			if (sourceNode != null && targetNode != null) {
 
-				final String storageKey = sourceNode.getName() + relation.name() + targetNode.getName();
+				createdRelationships.add(create(app, securityContext, sourceNode, targetNode));
+			}
+		}
+
+		return createdRelationships;
+	}
 
-				relation.ensureCardinality(securityContext, sourceNode, targetNode);
+	/**
+	 * Adds the given target node to the collection of the given source
+	 * node, unless it is already contained. Only the relationships of the
+	 * target node are examined, the existing collection is not loaded.
+	 * Relationships that are not visible in the given security context
+	 * don't count, a new relationship is created like in set().
+	 *
+	 * @param securityContext
+	 * @param sourceNode
+	 * @param targetNode
+	 * @return the new relationship, or null if the node was already contained
+	 * @throws FrameworkException
+	 */
+	public Relation add(final SecurityContext securityContext, final NodeInterface sourceNode, final T targetNode) throws FrameworkException {
+
+		if (sourceNode == null || targetNode == null || contains(securityContext, sourceNode, targetNode)) {
+			return null;
+		}
+
+		return create(StructrApp.getInstance(securityContext), securityContext, sourceNode, targetNode);
+	}
+
+	/**
+	 * Removes the given target node from the collection of the given
+	 * source node. Only the relationships of the target node are examined,
+	 * the existing collection is not loaded.
+	 *
+	 * @param securityContext
+	 * @param sourceNode
+	 * @param targetNode
+	 * @return whether the node was contained
+	 * @throws FrameworkException
+	 */
+	public boolean remove(final SecurityContext securityContext, final NodeInterface sourceNode, final T targetNode) throws FrameworkException {
+
+		if (sourceNode == null || targetNode == null) {
+			return false;
+		}
 
-				final Relation newRelation = app.create(sourceNode, targetNode, relation.getClass(), getNotionProperties(securityContext, relation.getClass(), storageKey));
-				createdRelationships.add(newRelation);
+		if (sourceNode.equals(targetNode)) {
+
+			logger.log(Level.WARNING, "Preventing deletion of self relationship {0}-[{1}]->{2}. If you experience issue with this, please report to team@structr.com.", new Object[] { sourceNode, relation.name(), targetNode } );
+
+			// skip self relationships
+			return false;
+		}
+
+		final RelationshipFactory<AbstractRelationship> factory = new RelationshipFactory<>(securityContext);
+		final App app                                           = StructrApp.getInstance(securityContext);
+		boolean removed                                         = false;
+
+		for (final Relationship rel : getRelationships(targetNode.getNode(), relation, Direction.INCOMING, sourceNode.getNode())) {
+
+			final AbstractRelationship existing = factory.instantiate(rel);
+			if (existing != null) {
+
+				app.delete(existing);
+				removed = true;
 			}
 		}
 
-		return createdRelationships;
+		return removed;
+	}
+
+	/**
+	 * Indicates whether the collection of the given source node contains
+	 * the given target node. Only the relationships of the target node are
+	 * examined, the existing collection is not loaded. Like in get(), the
+	 * target node must be visible in the given security context.
+	 *
+	 * @param securityContext
+	 * @param sourceNode
+	 * @param targetNode
+	 * @return whether the node is contained
+	 */
+	public boolean contains(final SecurityContext securityContext, final NodeInterface sourceNode, final T targetNode) {
+
+		if (sourceNode == null || targetNode == null) {
+			return false;
+		}
+
+		return isVisibleElement(securityContext, getRelationships(targetNode.getNode(), relation, Direction.INCOMING, sourceNode.getNode()), targetNode.getNode());
 	}
 
 	@Override
@@ -144,4 +208,14 @@ public class ManyEndpoint<T extends NodeInterface> extends AbstractEndpoint impl
 	public boolean hasElements(SecurityContext securityContext, Node dbNode, final Predicate<GraphObject> predicate) {
 		return getRawSource(securityContext, dbNode, predicate).iterator().hasNext();
 	}
+
+	// ----- private methods -----
+	private Relation create(final App app, final SecurityContext securityContext, final NodeInterface sourceNode, final T targetNode) throws FrameworkException {
+
+		final String storageKey = sourceNode.getName() + relation.name() + targetNode.getName();
+
+		relation.ensureCardinality(securityContext, sourceNode, targetNode);
+
+		return app.create(sourceNode, targetNode, relation.getClass(), getNotionProperties(securityContext, relation.getClass(), storageKey));
+	}
 }
@@ -38,6 +38,7 @@ import org.structr.core.app.App;
 import org.structr.core.app.StructrApp;
 import org.structr.core.graph.NodeFactory;
 import org.structr.core.graph.NodeInterface;
+import org.structr.core.graph.RelationshipFactory;
 
 /**
  *
@@ -96,42 +97,105 @@ public class ManyStartpoint<S extends NodeInterface> extends AbstractEndpoint im
 		// remove existing relationships
 		for (S sourceNode : toBeDeleted) {
 
-			for (AbstractRelationship rel : targetNode.getIncomingRelationships()) {
-
-				final String relTypeName    = rel.getRelType().name();
-				final String desiredRelType = relation.name();
+			remove(securityContext, targetNode, sourceNode);
+		}
 
-				if (sourceNode.equals(targetNode)) {
+		final List<Relation> createdRelationship = new LinkedList<>();
 
-					logger.log(Level.WARNING, "Preventing deletion of self relationship {0}-[{1}]->{2}. If you experience issue with this, please report to team@structr.com.", new Object[] { sourceNode, rel.getRelType(), targetNode } );
+		// create new relationships
+		for (S sourceNode : toBeCreated) {
 
-					// skip self relationships
-					continue;
-				}
+			if (sourceNode != null && targetNode != null) {
 
-				if (relTypeName.equals(desiredRelType) && rel.getSourceNode().equals(sourceNode)) {
-					app.delete(rel);
-				}
+				createdRelationship.add(create(app, securityContext, sourceNode, targetNode));
 			}
 		}
 
-		final List<Relation> createdRelationship = new LinkedList<>();
+		return createdRelationship;
+	}
 
-		// create new relationships
-		for (S sourceNode : toBeCreated) {
+	/**
+	 * Adds the given source node to the collection of the given target
+	 * node, unless it is already contained. Only the relationships of the
+	 * source node are examined, the existing collection is not loaded.
+	 * Relationships that are not visible in the given security context
+	 * don't count, a new relationship is created like in set().
+	 *
+	 * @param securityContext
+	 * @param targetNode
+	 * @param sourceNode
+	 * @return the new relationship, or null if the node was already contained
+	 * @throws FrameworkException
+	 */
+	public Relation add(final SecurityContext securityContext, final NodeInterface targetNode, final S sourceNode) throws FrameworkException {
+
+		if (sourceNode == null || targetNode == null || contains(securityContext, targetNode, sourceNode)) {
+			return null;
+		}
 
-			if (sourceNode != null && targetNode != null) {
+		return create(StructrApp.getInstance(securityContext), securityContext, sourceNode, targetNode);
+	}
 
-				final String storageKey = sourceNode.getName() + relation.name() + targetNode.getName();
+	/**
+	 * Removes the given source node from the collection of the given
+	 * target node. Only the relationships of the source node are examined,
+	 * the existing collection is not loaded.
+	 *
+	 * @param securityContext
+	 * @param targetNode
+	 * @param sourceNode
+	 * @return whether the node was contained
+	 * @throws FrameworkException
+	 */
+	public boolean remove(final SecurityContext securityContext, final NodeInterface targetNode, final S sourceNode) throws FrameworkException {
+
+		if (sourceNode == null || targetNode == null) {
+			return false;
+		}
 
-				relation.ensureCardinality(securityContext, sourceNode, targetNode);
+		if (sourceNode.equals(targetNode)) {
 
-				final Relation newRelation = app.create(sourceNode, targetNode, relation.getClass(), getNotionProperties(securityContext, relation.getClass(), storageKey));
-				createdRelationship.add(newRelation);
+			logger.log(Level.WARNING, "Preventing deletion of self relationship {0}-[{1}]->{2}. If you experience issue with this, please report to team@structr.com.", new Object[] { sourceNode, relation.name(), targetNode } );
+
+			// skip self relationships
+			return false;
+		}
+
+		final RelationshipFactory<AbstractRelationship> factory = new RelationshipFactory<>(securityContext);
+		final App app                                           = StructrApp.getInstance(securityContext);
+		boolean removed                                         = false;
+
+		for (final Relationship rel : getRelationships(sourceNode.getNode(), relation, Direction.OUTGOING, targetNode.getNode())) {
+
+			final AbstractRelationship existing = factory.instantiate(rel);
+			if (existing != null) {
+
+				app.delete(existing);
+				removed = true;
 			}
 		}
 
-		return createdRelationship;
+		return removed;
+	}
+
+	/**
+	 * Indicates whether the collection of the given target node contains
+	 * the given source node. Only the relationships of the source node are
+	 * examined, the existing collection is not loaded. Like in get(), the
+	 * source node must be visible in the given security context.
+	 *
+	 * @param securityContext
+	 * @param targetNode
+	 * @param sourceNode
+	 * @return whether the node is contained
+	 */
+	public boolean contains(final SecurityContext securityContext, final NodeInterface targetNode, final S sourceNode) {
+
+		if (sourceNode == null || targetNode == null) {
+			return false;
+		}
+
+		return isVisibleElement(securityContext, getRelationships(sourceNode.getNode(), relation, Direction.OUTGOING, targetNode.getNode()), sourceNode.getNode());
 	}
 
 	@Override
@@ -147,4 +211,14 @@ public class ManyStartpoint<S extends NodeInterface> extends AbstractEndpoint im
 	public boolean hasElements(final SecurityContext securityContext, final Node dbNode, final Predicate<GraphObject> predicate) {
 		return getRawSource(securityContext, dbNode, predicate).iterator().hasNext();
 	}
+
+	// ----- private methods -----
+	private Relation create(final App app, final SecurityContext securityContext, final S sourceNode, final NodeInterface targetNode) throws FrameworkException {
+
+		final String storageKey = sourceNode.getName() + relation.name() + targetNode.getName();
+
+		relation.ensureCardinality(securityContext, sourceNode, targetNode);
+
+		return app.create(sourceNode, targetNode, relation.getClass(), getNotionProperties(securityContext, relation.getClass(), storageKey));
+	}
 }
@@ -274,6 +274,10 @@ public class SuperUser implements Principal, AccessControllable {
 	public void indexPassiveProperties() {
 	}
 
+	@Override
+	public void updateInIndex(final Set<PropertyKey> keys) {
+	}
+
 	@Override
 	public void init(SecurityContext securityContext, Node dbNode, final Class entityType, final boolean isCreation) {
 		throw new UnsupportedOperationException("Not supported."); //To change body of generated methods, choose Tools | Templates.
@@ -18,18 +18,24 @@
  */
 package org.structr.core.graph;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Queue;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.function.Function;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -42,13 +48,27 @@ import org.structr.common.error.IdNotFoundToken;
 import org.structr.core.Adapter;
 import org.structr.core.GraphObject;
 import org.structr.core.Result;
+import org.structr.core.Services;
 import org.structr.core.app.StructrApp;
 import org.structr.schema.SchemaHelper;
 
 public abstract class Factory<S, T extends GraphObject> implements Adapter<S, T>, Function<S, T> {
 
 	private static final Logger logger = Logger.getLogger(Factory.class.getName());
-	public static final ExecutorService service = Executors.newCachedThreadPool();
+	/**
+	 * Size of the shared instantiation pool, and the maximum number of
+	 * additional instantiation workers over all concurrent requests.
+	 */
+	public static final int POOL_SIZE           = Math.max(1, Services.parseInt(StructrApp.getConfigurationValue(Services.APPLICATION_INSTANTIATION_THREADS), Runtime.getRuntime().availableProcessors()));
+	public static final ExecutorService service = Executors.newWorkStealingPool(POOL_SIZE);
+	public static final int ITEMS_PER_WORKER    = Math.max(1, Services.parseInt(StructrApp.getConfigurationValue(Services.APPLICATION_INSTANTIATION_WORKER_ITEMS), 500));
+
+	private static final Semaphore workerPermits      = new Semaphore(POOL_SIZE);
+	private static final LongAdder workerTasks        = new LongAdder();
+	private static final LongAdder workerQueueWait    = new LongAdder();
+	private static final LongAdder instantiatedItems  = new LongAdder();
+	private static final LongAdder instantiationTime  = new LongAdder();
+
 	public static final int DEFAULT_PAGE_SIZE = Integer.MAX_VALUE;
 	public static final int DEFAULT_PAGE      = 1;
 
@@ -122,6 +142,16 @@ public abstract class Factory<S, T extends GraphObject> implements Adapter<S, T>
 
 		if (input != null) {
 
+			// stream the result lazily if no result count is needed
+			if (isLazyResultPossible()) {
+
+				final int pageSize  = factoryProfile.getPageSize();
+				final int page      = factoryProfile.getPage();
+				final int fromIndex = pageSize == Integer.MAX_VALUE ? 0 : (page - 1) * pageSize;
+
+				return new Result(new LazyPage(input, fromIndex, pageSize), true, false);
+			}
+
 			try (final QueryResult<S> closeable = input) {
 
 				if (factoryProfile.getOffsetId() != null) {
@@ -195,6 +225,26 @@ public abstract class Factory<S, T extends GraphObject> implements Adapter<S, T>
 
 	}
 
+	/**
+	 * Requests a lazy result from {@link #instantiate(QueryResult)}, which
+	 * has no result count and can only be consumed once.
+	 *
+	 * @param lazyResult
+	 */
+	public void setLazyResult(final boolean lazyResult) {
+		factoryProfile.setLazyResult(lazyResult);
+	}
+
+	/**
+	 * Lazy results are only possible for forward paging without offset id,
+	 * and only if the caller explicitly requested a lazy result.
+	 *
+	 * @return whether the result can be instantiated lazily
+	 */
+	protected boolean isLazyResultPossible() {
+		return factoryProfile.isLazyResult() && factoryProfile.getOffsetId() == null && factoryProfile.getPage() > 0;
+	}
+
 	protected Result resultWithOffsetId(final QueryResult<S> input) throws FrameworkException {
 
 		int size                 = input.size();
@@ -348,7 +398,8 @@ public abstract class Factory<S, T extends GraphObject> implements Adapter<S, T>
 		final AtomicInteger overallCount   = new AtomicInteger();
 		final AtomicInteger processedItems = new AtomicInteger();
 
-		final List<Item<T>> nodes = new LinkedList<>();
+		final Queue<Item<T>> nodes = new ConcurrentLinkedQueue<>();
+		int rawCount               = 0;
 
 		try (final QueryResult<S> closeable = input) {
 
@@ -356,32 +407,22 @@ public abstract class Factory<S, T extends GraphObject> implements Adapter<S, T>
 			final boolean preventFullCount             = securityContext.hasParameter("ignoreResultCount");
 			final ConcurrentLinkedQueue<Item<S>> queue = new ConcurrentLinkedQueue<>();
 			final List<Future> futures                 = new LinkedList<>();
+			final long t0                              = System.nanoTime();
 			int threadCount                            = 1;
-			int rawCount                               = 0;
 
 			// fill queue with data and count elements
 			for (final S item : closeable) {
 				queue.add(new Item<>(rawCount++, item));
 			}
 
-			if (rawCount < 100) {
-
-				// do not use multithreading
-				final InstantiationWorker worker = new InstantiationWorker(securityContext, queue, nodes, offset, pageSize, preventFullCount);
-				worker.setProcessedItems(processedItems);
-				worker.setOverallCount(overallCount);
-				worker.setKeepRunning(keepRunning);
+			// the calling thread always takes part, additional workers
+			// are only started if the shared pool has spare capacity
+			final int additionalWorkers = acquireWorkers(rawCount);
 
-				worker.doRun();
+			try {
 
-			} else {
-
-
-				final double t0 = System.nanoTime();
-				threadCount     = 8;
-
-				// submit workers, use multithreading
-				for (int i=0; i<threadCount; i++) {
+				// submit additional workers
+				for (int i=0; i<additionalWorkers; i++) {
 
 					final InstantiationWorker worker = new InstantiationWorker(securityContext, queue, nodes, offset, pageSize, preventFullCount);
 					worker.setProcessedItems(processedItems);
@@ -394,6 +435,16 @@ public abstract class Factory<S, T extends GraphObject> implements Adapter<S, T>
 					futures.add(service.submit(worker));
 				}
 
+				threadCount += additionalWorkers;
+
+				// instantiate in the calling thread
+				final InstantiationWorker worker = new InstantiationWorker(securityContext, queue, nodes, offset, pageSize, preventFullCount);
+				worker.setProcessedItems(processedItems);
+				worker.setOverallCount(overallCount);
+				worker.setKeepRunning(keepRunning);
+
+				worker.doRun();
+
 				// wait for result..
 				for (final Future future : futures) {
 
@@ -406,23 +457,31 @@ public abstract class Factory<S, T extends GraphObject> implements Adapter<S, T>
 					}
 				}
 
-				final double t1 = System.nanoTime();
-				if (t1-t0 > 1000000000) {
-					logger.log(Level.INFO, "Instantiated {0} out of {1} elements in {2} s using {3} threads.", new Object[] { nodes.size(), rawCount, (t1-t0) / 1000000000.0, threadCount } );
-				}
+			} finally {
+
+				workerPermits.release(additionalWorkers);
 			}
 
+			final long t1 = System.nanoTime();
+
+			instantiatedItems.add(processedItems.get());
+			instantiationTime.add(t1 - t0);
+
+			if (t1-t0 > 1000000000) {
+				logger.log(Level.INFO, "Instantiated {0} out of {1} elements in {2} s using {3} threads.", new Object[] { nodes.size(), rawCount, (t1-t0) / 1000000000.0, threadCount } );
+			}
 		}
 
 		// keep initial sort order
-		Collections.sort(nodes);
+		final List<Item<T>> sorted = new ArrayList<>(nodes);
+		Collections.sort(sorted);
 
-		final int size = nodes.size();
+		final int size = sorted.size();
 		final int from = Math.min(offset, size);
 		final int to   = Math.min(offset+pageSize, size);
-		final List<T> output = new LinkedList<>();
+		final List<T> output = new ArrayList<>(Math.max(0, to - from));
 
-		for (final Item<T> item : nodes.subList(from, to)) {
+		for (final Item<T> item : sorted.subList(from, to)) {
 			output.add(item.item);
 		}
 
@@ -430,13 +489,68 @@ public abstract class Factory<S, T extends GraphObject> implements Adapter<S, T>
 		return new Result(output, overallCount.get(), true, false);
 	}
 
+	/**
+	 * Returns the current statistics of the shared instantiation pool.
+	 *
+	 * @return a map with pool size, active workers, queue wait and throughput
+	 */
+	public static Map<String, Object> getInstantiationStatistics() {
+
+		final Map<String, Object> stats = new LinkedHashMap<>();
+		final long tasks                = workerTasks.sum();
+		final long items                = instantiatedItems.sum();
+		final long time                 = instantiationTime.sum();
+
+		stats.put("poolSize",          POOL_SIZE);
+		stats.put("activeWorkers",     POOL_SIZE - workerPermits.availablePermits());
+		stats.put("workerTasks",       tasks);
+		stats.put("avgQueueWaitMs",    tasks > 0 ? (workerQueueWait.sum() / tasks) / 1000000.0 : 0.0);
+		stats.put("instantiatedItems", items);
+		stats.put("itemsPerSecond",    time > 0 ? (items * 1000000000.0) / time : 0.0);
+
+		return stats;
+	}
+
+	/**
+	 * Determines the number of additional workers for the given number
+	 * of items, based on the result size and the current load of the
+	 * shared pool. Never blocks, the caller must release the returned
+	 * number of permits.
+	 *
+	 * @param itemCount
+	 * @return the number of additional workers that may be started
+	 */
+	private static int acquireWorkers(final int itemCount) {
+
+		int desired = Math.min(itemCount / ITEMS_PER_WORKER, POOL_SIZE);
+
+		while (desired > 0) {
+
+			final int available = workerPermits.availablePermits();
+			final int count     = Math.min(desired, available);
+
+			if (count <= 0) {
+				return 0;
+			}
+
+			if (workerPermits.tryAcquire(count)) {
+				return count;
+			}
+
+			desired = count;
+		}
+
+		return 0;
+	}
+
 	//~--- inner classes --------------------------------------------------
 
 	private class InstantiationWorker implements Runnable {
 
 		private final SecurityContext securityContext;
 		private final Queue<Item<S>> source;
-		private final List<Item<T>> nodes;
+		private final Queue<Item<T>> nodes;
+		private final long submitTime        = System.nanoTime();
 
 		private AtomicInteger processedItems = null;
 		private AtomicInteger overallCount   = null;
@@ -446,7 +560,7 @@ public abstract class Factory<S, T extends GraphObject> implements Adapter<S, T>
 		private int pageSize                 = 0;
 		private int offset                   = 0;
 
-		public InstantiationWorker(final SecurityContext securityContext, final Queue<Item<S>> source, final List<Item<T>> nodes, final int offset, final int pageSize, final boolean dontCheckCount) {
+		public InstantiationWorker(final SecurityContext securityContext, final Queue<Item<S>> source, final Queue<Item<T>> nodes, final int offset, final int pageSize, final boolean dontCheckCount) {
 
 			this.securityContext = securityContext;
 			this.offset          = offset;
@@ -459,6 +573,9 @@ public abstract class Factory<S, T extends GraphObject> implements Adapter<S, T>
 		@Override
 		public void run() {
 
+			workerTasks.increment();
+			workerQueueWait.add(System.nanoTime() - submitTime);
+
 			try (final Tx tx = StructrApp.getInstance(securityContext).tx()) {
 
 				// transaction is only needed if we are running multiple threads
@@ -489,10 +606,7 @@ public abstract class Factory<S, T extends GraphObject> implements Adapter<S, T>
 
 						overallCount.incrementAndGet();
 
-						// synchronize access to the target list
-						synchronized (nodes) {
-							nodes.add(new Item<>(item.index, n));
-						}
+						nodes.add(new Item<>(item.index, n));
 
 						// stop evaluation of new nodes if count is not required
 						if (dontCheckCount && overallCount.get() > offset + pageSize) {
@@ -528,6 +642,101 @@ public abstract class Factory<S, T extends GraphObject> implements Adapter<S, T>
 		}
 	}
 
+	/**
+	 * Single-use iterable that instantiates (and thereby security-filters)
+	 * the elements of a query result on demand, skips the first offset
+	 * visible elements and stops after one page. The query result is
+	 * closed as soon as the page is complete or the input is exhausted, or
+	 * when the page is closed before that.
+	 */
+	private class LazyPage implements Iterable<T>, AutoCloseable {
+
+		private QueryResult<S> input = null;
+		private boolean iterated     = false;
+		private boolean closed       = false;
+		private int pageSize         = 0;
+		private int offset           = 0;
+
+		public LazyPage(final QueryResult<S> input, final int offset, final int pageSize) {
+
+			this.input    = input;
+			this.offset   = offset;
+			this.pageSize = pageSize;
+		}
+
+		@Override
+		public Iterator<T> iterator() {
+
+			if (iterated || closed) {
+				throw new IllegalStateException("Lazy result can only be iterated once.");
+			}
+
+			final Iterator<S> iterator = input.iterator();
+
+			iterated = true;
+
+			return new Iterator<T>() {
+
+				private int skipped  = 0;
+				private int returned = 0;
+				private T next       = null;
+
+				@Override
+				public boolean hasNext() {
+
+					while (next == null && !closed) {
+
+						if (returned >= pageSize || !iterator.hasNext()) {
+
+							close();
+							break;
+						}
+
+						final T n = instantiate(iterator.next());
+						if (n != null) {
+
+							if (skipped < offset) {
+
+								skipped++;
+
+							} else {
+
+								next = n;
+							}
+						}
+					}
+
+					return next != null;
+				}
+
+				@Override
+				public T next() {
+
+					if (!hasNext()) {
+						throw new NoSuchElementException();
+					}
+
+					final T current = next;
+
+					next = null;
+					returned++;
+
+					return current;
+				}
+			};
+		}
+
+		@Override
+		public void close() {
+
+			if (!closed) {
+
+				closed = true;
+				input.close();
+			}
+		}
+	}
+
 	private class Item<X> implements Comparable<Item<X>> {
 
 		public int index = 0;
@@ -547,6 +756,7 @@ public abstract class Factory<S, T extends GraphObject> implements Adapter<S, T>
 	protected class FactoryProfile {
 
 		private boolean includeDeletedAndHidden = true;
+		private boolean lazyResult              = false;
 		private String offsetId                 = null;
 		private boolean publicOnly              = false;
 		private int pageSize                    = DEFAULT_PAGE_SIZE;
@@ -659,6 +869,24 @@ public abstract class Factory<S, T extends GraphObject> implements Adapter<S, T>
 
 		}
 
+		/**
+		 * @return whether a lazy result was requested
+		 */
+		public boolean isLazyResult() {
+
+			return lazyResult;
+
+		}
+
+		/**
+		 * @param lazyResult whether a lazy result is requested
+		 */
+		public void setLazyResult(boolean lazyResult) {
+
+			this.lazyResult = lazyResult;
+
+		}
+
 		/**
 		 * @param publicOnly the publicOnly to set
 		 */
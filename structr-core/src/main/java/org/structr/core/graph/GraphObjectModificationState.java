@@ -25,6 +25,7 @@ import com.google.gson.JsonObject;
 import com.google.gson.JsonPrimitive;
 import java.util.Arrays;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -40,6 +41,8 @@ import org.structr.core.Services;
 import org.structr.core.app.StructrApp;
 import org.structr.core.entity.AbstractNode;
 import org.structr.core.entity.Principal;
+import org.structr.core.property.AbstractPrimitiveProperty;
+import org.structr.core.property.AutoStringProperty;
 import org.structr.core.property.PropertyKey;
 import org.structr.core.property.PropertyMap;
 
@@ -67,6 +70,7 @@ public class GraphObjectModificationState implements ModificationEvent {
 	private final PropertyMap newProperties      = new PropertyMap();
 	private StringBuilder changeLog              = null;
 	private RelationshipType relType             = null;
+	private boolean relationshipsModified        = false;
 	private boolean isNode                       = false;
 	private boolean modified                     = false;
 	private GraphObject object                   = null;
@@ -122,6 +126,7 @@ public class GraphObjectModificationState implements ModificationEvent {
 		int statusBefore = status;
 
 		status |= STATE_LOCATION_MODIFIED | STATE_PROPAGATING_MODIFICATION;
+		relationshipsModified = true;
 
 		if (status != statusBefore) {
 			modified = true;
@@ -133,6 +138,7 @@ public class GraphObjectModificationState implements ModificationEvent {
 		int statusBefore = status;
 
 		status |= STATE_SECURITY_MODIFIED | STATE_PROPAGATING_MODIFICATION;
+		relationshipsModified = true;
 
 		if (status != statusBefore) {
 			modified = true;
@@ -144,6 +150,7 @@ public class GraphObjectModificationState implements ModificationEvent {
 		int statusBefore = status;
 
 		status |= STATE_OWNER_MODIFIED | STATE_PROPAGATING_MODIFICATION;
+		relationshipsModified = true;
 
 		if (status != statusBefore) {
 			modified = true;
@@ -195,6 +202,8 @@ public class GraphObjectModificationState implements ModificationEvent {
 		// only update cache if key, prev and new values are null
 		// because that's when a relationship has been created / removed
 		if (key == null && previousValue == null && newValue == null) {
+
+			relationshipsModified = true;
 			updateCache();
 		}
 	}
@@ -336,13 +345,19 @@ public class GraphObjectModificationState implements ModificationEvent {
 
 			case 6: // created, modified => only creation callback will be called
 			case 4: // created => creation callback
-			case 2: // modified => modification callback
 				if (doValidation) {
 					valid &= validate(securityContext, errorBuffer);
 				}
 				object.indexPassiveProperties();
 				break;
 
+			case 2: // modified => modification callback
+				if (doValidation) {
+					valid &= validate(securityContext, errorBuffer);
+				}
+				object.updateInIndex(getModifiedPassiveKeys());
+				break;
+
 			case 1: // deleted => deletion callback
 				object.removeFromIndex();
 				break;
@@ -590,6 +605,43 @@ public class GraphObjectModificationState implements ModificationEvent {
 	}
 
 	// ----- private methods -----
+	/**
+	 * Returns the passively indexed keys of the object whose values can
+	 * have been changed by the modifications recorded in this state.
+	 * Actively indexed keys are already updated when they are set.
+	 *
+	 * @return the keys
+	 */
+	private Set<PropertyKey> getModifiedPassiveKeys() {
+
+		final Set<PropertyKey> keys = new LinkedHashSet<>();
+
+		for (final PropertyKey key : StructrApp.getConfiguration().getPropertySet(object.getClass(), PropertyView.All)) {
+
+			if (key.isPassivelyIndexed() && isInputModified(key)) {
+				keys.add(key);
+			}
+		}
+
+		return keys;
+	}
+
+	private boolean isInputModified(final PropertyKey key) {
+
+		// values of related nodes and notions depend on relationships only
+		if (key.relatedType() != null) {
+			return relationshipsModified;
+		}
+
+		// stored values only change when they are set, the modification date changes with every property
+		if (key instanceof AbstractPrimitiveProperty && !(key instanceof AutoStringProperty)) {
+			return removedProperties.containsKey(key) || (GraphObject.lastModifiedDate.equals(key) && !removedProperties.isEmpty());
+		}
+
+		// computed values can depend on anything
+		return true;
+	}
+
 	/**
 	 * Call validators. This must be synchronized globally
 	 *
@@ -300,6 +300,21 @@ public class ModificationQueue {
 		}
 	}
 
+	public boolean hasModifications() {
+		return !modifications.isEmpty();
+	}
+
+	public boolean isCreated(final Node node) {
+
+		final GraphObjectModificationState state = modifications.get("N" + node.getId());
+		if (state != null) {
+
+			return state.isCreated();
+		}
+
+		return false;
+	}
+
 	public boolean isDeleted(final Node node) {
 
 		final GraphObjectModificationState state = modifications.get("N" + node.getId());
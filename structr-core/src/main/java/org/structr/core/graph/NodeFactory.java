@@ -45,7 +45,7 @@ import org.structr.core.entity.relationship.NodeHasLocation;
  */
 public class NodeFactory<T extends NodeInterface & AccessControllable> extends Factory<Node, T> {
 
-	private static final FixedSizeCache<Long, Class> idTypeMap = new FixedSizeCache<>(Services.parseInt(StructrApp.getConfigurationValue(Services.APPLICATION_NODE_CACHE_SIZE), 10000));
+	private static final FixedSizeCache<Long, Class> idTypeMap = new FixedSizeCache<>("Node type cache", Services.parseInt(StructrApp.getConfigurationValue(Services.APPLICATION_NODE_CACHE_SIZE), 10000));
 
 	public NodeFactory(final SecurityContext securityContext) {
 		super(securityContext);
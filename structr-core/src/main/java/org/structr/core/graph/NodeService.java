@@ -53,7 +53,7 @@ import org.structr.core.entity.AbstractNode;
 public class NodeService implements SingletonService {
 
 	private static final Logger logger                                  = Logger.getLogger(NodeService.class.getName());
-	private static final FixedSizeCache<String, AbstractNode> nodeCache = new FixedSizeCache<>(10000);
+	private static final FixedSizeCache<String, AbstractNode> nodeCache = new FixedSizeCache<>("Node cache", 10000);
 
 	//~--- fields ---------------------------------------------------------
 
@@ -20,6 +20,9 @@ package org.structr.core.graph;
 
 import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.EOFException;
@@ -29,10 +32,16 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.RandomAccessFile;
 import java.io.Serializable;
 import java.lang.reflect.Array;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
 import java.text.DecimalFormat;
 import java.text.DecimalFormatSymbols;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
@@ -43,9 +52,19 @@ import java.util.Locale;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.function.Function;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipInputStream;
 import java.util.zip.ZipOutputStream;
@@ -68,6 +87,7 @@ import org.structr.core.entity.AbstractNode;
 import org.structr.core.entity.AbstractRelationship;
 import org.structr.core.entity.AbstractSchemaNode;
 import org.structr.core.entity.SuperUser;
+import org.structr.schema.importer.FileBasedUuidLongMap;
 
 /**
  *
@@ -80,6 +100,13 @@ public class SyncCommand extends NodeServiceCommand implements MaintenanceComman
 
 	private static final Map<Class, Byte> typeMap     = new HashMap<>();
 	private static final Map<Byte, Class> classMap    = new HashMap<>();
+	private static final String REL_START_KEY         = "__start";
+	private static final String REL_END_KEY           = "__end";
+	private static final String REL_TYPE_KEY          = "__type";
+	private static final String STRUCTR_ZIP_SNAPSHOT  = "db.columnar";
+	private static final long SNAPSHOT_MAGIC          = 0x5374727563747232L;
+	private static final int SNAPSHOT_BLOCK_SIZE      = 4096;
+	private static final int SNAPSHOT_MAX_PENDING     = 16 * SNAPSHOT_BLOCK_SIZE;
 
 	static {
 
@@ -101,6 +128,14 @@ public class SyncCommand extends NodeServiceCommand implements MaintenanceComman
 		typeMap.put(String.class,      (byte)15);
 		typeMap.put(Boolean[].class,   (byte)16);
 		typeMap.put(Boolean.class,     (byte)17);
+		typeMap.put(byte[].class,      (byte)18);
+		typeMap.put(short[].class,     (byte)19);
+		typeMap.put(int[].class,       (byte)20);
+		typeMap.put(long[].class,      (byte)21);
+		typeMap.put(float[].class,     (byte)22);
+		typeMap.put(double[].class,    (byte)23);
+		typeMap.put(char[].class,      (byte)24);
+		typeMap.put(boolean[].class,   (byte)25);
 
 		// build reverse mapping
 		for (Entry<Class, Byte> entry : typeMap.entrySet()) {
@@ -117,7 +152,9 @@ public class SyncCommand extends NodeServiceCommand implements MaintenanceComman
 		String fileName         = (String)attributes.get("file");
 		String validate         = (String)attributes.get("validate");
 		String query            = (String)attributes.get("query");
+		String format           = (String)attributes.get("format");
 		Long batchSize          = (Long)attributes.get("batchSize");
+		boolean columnar        = "columnar".equals(format);
 		boolean doValidation    = true;
 
 		// should we validate imported nodes?
@@ -140,11 +177,11 @@ public class SyncCommand extends NodeServiceCommand implements MaintenanceComman
 
 		if ("export".equals(mode)) {
 
-			exportToFile(graphDb, fileName, query, true);
+			exportToFile(graphDb, fileName, query, true, columnar);
 
 		} else if ("exportDb".equals(mode)) {
 
-			exportToFile(graphDb, fileName, query, false);
+			exportToFile(graphDb, fileName, query, false, columnar);
 
 		} else if ("import".equals(mode)) {
 
@@ -171,6 +208,21 @@ public class SyncCommand extends NodeServiceCommand implements MaintenanceComman
 	 * @throws FrameworkException
 	 */
 	public static void exportToFile(final DatabaseService graphDb, final String fileName, final String query, final boolean includeFiles) throws FrameworkException {
+		exportToFile(graphDb, fileName, query, includeFiles, false);
+	}
+
+	/**
+	 * Exports the whole structr database to a file with the given name,
+	 * optionally in the columnar snapshot format.
+	 *
+	 * @param graphDb
+	 * @param fileName
+	 * @param query
+	 * @param includeFiles
+	 * @param columnar
+	 * @throws FrameworkException
+	 */
+	public static void exportToFile(final DatabaseService graphDb, final String fileName, final String query, final boolean includeFiles, final boolean columnar) throws FrameworkException {
 
 		final App app = StructrApp.getInstance();
 
@@ -209,7 +261,8 @@ public class SyncCommand extends NodeServiceCommand implements MaintenanceComman
 				nodes,
 				rels,
 				null,
-				conditionalIncludeFiles
+				conditionalIncludeFiles,
+				columnar
 			);
 
 			tx.success();
@@ -257,6 +310,24 @@ public class SyncCommand extends NodeServiceCommand implements MaintenanceComman
 	 * @throws FrameworkException
 	 */
 	public static void exportToStream(final OutputStream outputStream, final Iterable<? extends NodeInterface> nodes, final Iterable<? extends RelationshipInterface> relationships, final Iterable<String> filePaths, final boolean includeFiles) throws FrameworkException {
+		exportToStream(outputStream, nodes, relationships, filePaths, includeFiles, false);
+	}
+
+	/**
+	 * Exports the given part of the structr database to the given output
+	 * stream. In columnar mode, the database is written as a block-based
+	 * snapshot with dictionary-encoded keys and types, see
+	 * {@link #exportSnapshot}.
+	 *
+	 * @param outputStream
+	 * @param nodes
+	 * @param relationships
+	 * @param filePaths
+	 * @param includeFiles
+	 * @param columnar
+	 * @throws FrameworkException
+	 */
+	public static void exportToStream(final OutputStream outputStream, final Iterable<? extends NodeInterface> nodes, final Iterable<? extends RelationshipInterface> relationships, final Iterable<String> filePaths, final boolean includeFiles, final boolean columnar) throws FrameworkException {
 
 		try {
 
@@ -284,7 +355,14 @@ public class SyncCommand extends NodeServiceCommand implements MaintenanceComman
 			}
 
 			// export database
-			exportDatabase(zos, new BufferedOutputStream(zos), nodes, relationships);
+			if (columnar) {
+
+				exportSnapshot(zos, nodes, relationships);
+
+			} else {
+
+				exportDatabase(zos, new BufferedOutputStream(zos), nodes, relationships);
+			}
 
 			// finish ZIP file
 			zos.finish();
@@ -330,6 +408,10 @@ public class SyncCommand extends NodeServiceCommand implements MaintenanceComman
 
 					importDatabase(graphDb, securityContext, zis, doValidation, batchSize);
 
+				} else if (STRUCTR_ZIP_SNAPSHOT.equals(entry.getName())) {
+
+					importSnapshot(graphDb, securityContext, zis, doValidation, batchSize);
+
 				} else {
 
 					// store other files in "files" dir..
@@ -374,14 +456,14 @@ public class SyncCommand extends NodeServiceCommand implements MaintenanceComman
 
 				if (clazz.isArray()) {
 
-					Object[] array    = (Object[])obj;
+					final int length = Array.getLength(obj);
 
 					outputStream.writeByte(type);
-					outputStream.writeInt(array.length);
+					outputStream.writeInt(length);
 
-					// serialize array
-					for (Object o : (Object[])obj) {
-						serialize(outputStream, o);
+					// serialize array, elements of primitive arrays are written like their wrapper types
+					for (int i=0; i<length; i++) {
+						serialize(outputStream, Array.get(obj, i));
 					}
 
 				} else {
@@ -411,7 +493,7 @@ public class SyncCommand extends NodeServiceCommand implements MaintenanceComman
 		final int len       = inputStream.readInt();
 		final byte[] buffer = new byte[len];
 
-		inputStream.read(buffer, 0, len);
+		inputStream.readFully(buffer);
 
 		return buffer;
 	}
@@ -427,12 +509,12 @@ public class SyncCommand extends NodeServiceCommand implements MaintenanceComman
 			if (clazz.isArray()) {
 
 				// len is the length of the underlying array
-				final int len        = inputStream.readInt();
-				final Object[] array = (Object[])Array.newInstance(clazz.getComponentType(), len);
+				final int len      = inputStream.readInt();
+				final Object array = Array.newInstance(clazz.getComponentType(), len);
 
 				for (int i=0; i<len; i++) {
 
-					array[i] = deserialize(inputStream);
+					Array.set(array, i, deserialize(inputStream));
 				}
 
 				// set array
@@ -626,34 +708,43 @@ public class SyncCommand extends NodeServiceCommand implements MaintenanceComman
 		}
 	}
 
+	/**
+	 * Imports the database part of a sync file. Nodes are decoded on the
+	 * calling thread and written in batches by a bounded pool of worker
+	 * threads, each batch in its own transaction. Relationships are spooled
+	 * to a temporary file and created after all nodes are imported, with
+	 * endpoints resolved through a memory-mapped uuid to node id map. Heap
+	 * usage therefore does not depend on the size of the import.
+	 *
+	 * Imported schema nodes are merged with existing ones in a last step,
+	 * when their relationships exist, so they are indexed only afterwards.
+	 */
 	private static void importDatabase(final DatabaseService graphDb, final SecurityContext securityContext, final ZipInputStream zis, boolean doValidation, final Long batchSize) throws FrameworkException, IOException {
 
-		final App app                        = StructrApp.getInstance();
-		final DataInputStream dis            = new DataInputStream(new BufferedInputStream(zis));
-		final RelationshipFactory relFactory = new RelationshipFactory(securityContext);
-		final long internalBatchSize         = batchSize != null ? batchSize : 200;
-		final NodeFactory nodeFactory        = new NodeFactory(securityContext);
-		final String uuidPropertyName        = GraphObject.id.dbName();
-		final Map<String, Node> uuidMap      = new LinkedHashMap<>();
-		final Set<Long> deletedNodes         = new HashSet<>();
-		final Set<Long> deletedRels          = new HashSet<>();
-		final SuperUser superUser            = new SuperUser();
-		double t0                            = System.nanoTime();
-		PropertyContainer currentObject      = null;
-		String currentKey                    = null;
-		boolean finished                     = false;
-		long totalNodeCount                  = 0;
-		long totalRelCount                   = 0;
+		final long internalBatchSize           = batchSize != null ? batchSize : 200;
+		final DataInputStream dis              = new DataInputStream(new BufferedInputStream(zis));
+		final Set<Long> schemaNodeIds          = Collections.synchronizedSet(new LinkedHashSet<>());
+		final Set<Long> schemaRelIds           = new LinkedHashSet<>();
+		final AtomicReference<Throwable> error = new AtomicReference<>();
+		final ImportProgress progress          = new ImportProgress();
+		final File tmpDir                      = Files.createTempDirectory("structr-sync-import").toFile();
+		final File relSpoolFile                = new File(tmpDir, "relationships.dat");
+		double t0                              = System.nanoTime();
+		Map<String, Object> currentObject      = null;
+		String currentKey                      = null;
+		List<Map<String, Object>> nodeBatch    = new ArrayList<>();
+		long relCount                          = 0;
 
-		do {
+		final ThreadPoolExecutor executor      = createImportExecutor();
+
+		try (final FileBasedUuidLongMap uuidMap = new FileBasedUuidLongMap(tmpDir.getAbsolutePath())) {
+
+			// phase 1: decode and import nodes, spool relationships
+			try (final DataOutputStream relSpool = new DataOutputStream(new SpoolOutputStream(relSpoolFile))) {
 
-			try (final Tx tx = app.tx(doValidation)) {
-				final List<Relationship> rels = new LinkedList<>();
-				final List<Node> nodes        = new LinkedList<>();
-				long nodeCount                = 0;
-				long relCount                 = 0;
+				Map<String, Object> currentRelProperties = null;
 
-				do {
+				while (true) {
 
 					try {
 
@@ -670,54 +761,32 @@ public class SyncCommand extends NodeServiceCommand implements MaintenanceComman
 
 						if (objectType == 'N') {
 
-							// break loop after 200 objects, commit and restart afterwards
-							 if(nodeCount + relCount >= internalBatchSize) {
-								 dis.reset();
-								 break;
-							 }
+							flushRelationship(relSpool, currentObject, currentRelProperties);
 
-							currentObject = graphDb.createNode();
-							nodeCount++;
+							// the previous node is complete now, so a full batch can be submitted
+							if (nodeBatch.size() >= internalBatchSize) {
 
-							// store for later use
-							nodes.add((Node)currentObject);
-
-						} else if (objectType == 'R') {
-
-							// break look after 200 objects, commit and restart afterwards
-							 if(nodeCount + relCount >= internalBatchSize) {
-								 dis.reset();
-								 break;
-							 }
-
-							String startId     = (String)deserialize(dis);
-							String endId       = (String)deserialize(dis);
-							String relTypeName = (String)deserialize(dis);
-
-							Node endNode   = uuidMap.get(endId);
-							Node startNode = uuidMap.get(startId);
-
-							if (startNode != null && endNode != null) {
-
-								if (deletedNodes.contains(startNode.getId()) || deletedNodes.contains(endNode.getId())) {
+								submitNodeBatch(executor, graphDb, securityContext, doValidation, nodeBatch, uuidMap, schemaNodeIds, error, progress);
+								nodeBatch = new ArrayList<>();
+							}
 
-									System.out.println("NOT creating relationship between deleted nodes..");
+							currentRelProperties = null;
+							currentObject        = new LinkedHashMap<>();
 
-								} else {
+							nodeBatch.add(currentObject);
 
-									RelationshipType relType = RelationshipType.forName(relTypeName);
-									currentObject = startNode.createRelationshipTo(endNode, relType);
+						} else if (objectType == 'R') {
 
-									// store for later use
-									rels.add((Relationship)currentObject);
+							flushRelationship(relSpool, currentObject, currentRelProperties);
 
-									relCount++;
-								}
+							currentObject        = new LinkedHashMap<>();
+							currentRelProperties = new LinkedHashMap<>();
 
-							} else {
+							currentObject.put(REL_START_KEY, deserialize(dis));
+							currentObject.put(REL_END_KEY,   deserialize(dis));
+							currentObject.put(REL_TYPE_KEY,  deserialize(dis));
 
-								System.out.println("NOT creating relationship of type " + relTypeName + ", start: " + startId + ", end: " + endId);
-							}
+							relCount++;
 
 						} else {
 
@@ -732,22 +801,17 @@ public class SyncCommand extends NodeServiceCommand implements MaintenanceComman
 
 								if (currentObject != null) {
 
-									Object obj = deserialize(dis);
+									final Object obj = deserialize(dis);
 
-									if (uuidPropertyName.equals(currentKey) && currentObject instanceof Node) {
+									if (currentKey.length() != 0) {
 
-										String uuid = (String)obj;
-										uuidMap.put(uuid, (Node)currentObject);
-									}
+										if (currentRelProperties != null) {
 
-									if (currentKey.length() != 0) {
+											currentRelProperties.put(currentKey, obj);
 
-										// store object in DB
-										currentObject.setProperty(currentKey, obj);
+										} else {
 
-										// set type label
-										if (currentObject instanceof Node && NodeInterface.type.dbName().equals(currentKey)) {
-											((Node) currentObject).addLabel(graphDb.forName(Label.class, (String) obj));
+											currentObject.put(currentKey, obj);
 										}
 
 									} else {
@@ -766,56 +830,1044 @@ public class SyncCommand extends NodeServiceCommand implements MaintenanceComman
 
 					} catch (EOFException eofex) {
 
-						finished = true;
+						break;
+					}
+				}
+
+				flushRelationship(relSpool, currentObject, currentRelProperties);
+
+				// end marker
+				relSpool.writeBoolean(false);
+			}
+
+			if (!nodeBatch.isEmpty()) {
+				submitNodeBatch(executor, graphDb, securityContext, doValidation, nodeBatch, uuidMap, schemaNodeIds, error, progress);
+			}
+
+			awaitNodeImport(executor, error);
+
+			logger.log(Level.INFO, "Imported {0} nodes, importing {1} relationships..", new Object[] { progress.nodes.sum(), relCount });
+
+			// phase 2: create relationships in the order of the sync file
+			importRelationships(graphDb, securityContext, doValidation, relSpoolFile, internalBatchSize, uuidMap, schemaNodeIds, schemaRelIds, progress);
+
+			// phase 3: merge schema nodes
+			mergeSchemaNodes(graphDb, securityContext, doValidation, schemaNodeIds, schemaRelIds);
+
+		} finally {
+
+			executor.shutdownNow();
+
+			relSpoolFile.delete();
+			tmpDir.delete();
+		}
+
+		double t1   = System.nanoTime();
+		double time = ((t1 - t0) / 1000000000.0);
+
+		DecimalFormat decimalFormat  = new DecimalFormat("0.000000000", DecimalFormatSymbols.getInstance(Locale.ENGLISH));
+		logger.log(Level.INFO, "Import of {0} nodes and {1} rels done in {2} s", new Object[] { progress.nodes.sum(), progress.rels.sum(), decimalFormat.format(time) });
+	}
+
+	private static void submitNodeBatch(final ThreadPoolExecutor executor, final DatabaseService graphDb, final SecurityContext securityContext, final boolean doValidation, final List<Map<String, Object>> batch,
+		final FileBasedUuidLongMap uuidMap, final Set<Long> schemaNodeIds, final AtomicReference<Throwable> error, final ImportProgress progress) throws FrameworkException {
+
+		if (error.get() != null) {
+			throw new FrameworkException(500, "Node import failed: " + error.get().getMessage());
+		}
+
+		executor.execute(() -> {
+
+			try {
+
+				importNodes(graphDb, securityContext, doValidation, batch, uuidMap, schemaNodeIds, progress);
+
+			} catch (Throwable t) {
+
+				logger.log(Level.SEVERE, "Unable to import node batch", t);
+				error.compareAndSet(null, t);
+			}
+		});
+	}
+
+	private static void importNodes(final DatabaseService graphDb, final SecurityContext securityContext, final boolean doValidation, final List<Map<String, Object>> batch,
+		final FileBasedUuidLongMap uuidMap, final Set<Long> schemaNodeIds, final ImportProgress progress) throws FrameworkException, IOException {
+
+		final NodeFactory nodeFactory   = new NodeFactory(securityContext);
+		final String uuidPropertyName   = GraphObject.id.dbName();
+		final String typePropertyName   = NodeInterface.type.dbName();
+		final Map<String, Long> nodeIds = new LinkedHashMap<>();
+		final SuperUser superUser       = new SuperUser();
+
+		try (final Tx tx = StructrApp.getInstance().tx(doValidation)) {
+
+			final List<Node> nodes = new ArrayList<>(batch.size());
+
+			for (final Map<String, Object> properties : batch) {
+
+				final Node node = graphDb.createNode();
+
+				for (final Entry<String, Object> entry : properties.entrySet()) {
+
+					final String key   = entry.getKey();
+					final Object value = entry.getValue();
+
+					// store object in DB
+					node.setProperty(key, value);
+
+					// set type label
+					if (typePropertyName.equals(key)) {
+						node.addLabel(graphDb.forName(Label.class, (String)value));
+					}
+
+					if (uuidPropertyName.equals(key)) {
+						nodeIds.put((String)value, node.getId());
 					}
+				}
+
+				nodes.add(node);
+			}
+
+			for (final Node node : nodes) {
+
+				final NodeInterface entity = nodeFactory.instantiate(node);
+
+				// schema nodes are merged with existing ones after all relationships are imported
+				if (entity instanceof AbstractSchemaNode) {
+
+					schemaNodeIds.add(node.getId());
+
+				} else {
+
+					TransactionCommand.nodeCreated(superUser, entity);
+					entity.addToIndex();
+				}
+			}
+
+			tx.success();
+		}
+
+		// make nodes resolvable only after they were committed
+		for (final Entry<String, Long> entry : nodeIds.entrySet()) {
+			uuidMap.put(entry.getKey(), entry.getValue());
+		}
+
+		progress.nodes.add(batch.size());
+		progress.log();
+	}
+
+	private static void importRelationships(final DatabaseService graphDb, final SecurityContext securityContext, final boolean doValidation, final File spoolFile, final long batchSize,
+		final FileBasedUuidLongMap uuidMap, final Set<Long> schemaNodeIds, final Set<Long> schemaRelIds, final ImportProgress progress) throws FrameworkException, IOException {
+
+		final RelationshipFactory relFactory = new RelationshipFactory(securityContext);
+		final App app                        = StructrApp.getInstance();
+		final SuperUser superUser            = new SuperUser();
+		boolean finished                     = false;
+
+		try (final DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(spoolFile)))) {
+
+			while (!finished) {
 
-				} while (!finished);
+				try (final Tx tx = app.tx(doValidation)) {
 
-				totalNodeCount += nodeCount;
-				totalRelCount  += relCount;
+					final List<Relationship> rels = new ArrayList<>();
+					long count                    = 0;
 
-				for (Node node : nodes) {
+					while (count < batchSize) {
 
-					if (!deletedNodes.contains(node.getId())) {
+						if (!in.readBoolean()) {
 
-						NodeInterface entity = nodeFactory.instantiate(node);
+							finished = true;
+							break;
+						}
+
+						final String startId     = (String)deserialize(in);
+						final String endId       = (String)deserialize(in);
+						final String relTypeName = (String)deserialize(in);
+						final int propertyCount  = in.readInt();
+						final long startNodeId   = uuidMap.get(startId);
+						final long endNodeId     = uuidMap.get(endId);
+						Relationship rel         = null;
+
+						if (startNodeId >= 0 && endNodeId >= 0) {
+
+							rel = graphDb.getNodeById(startNodeId).createRelationshipTo(graphDb.getNodeById(endNodeId), RelationshipType.forName(relTypeName));
+
+							// relationships of schema nodes are indexed after merging
+							if (schemaNodeIds.contains(startNodeId) || schemaNodeIds.contains(endNodeId)) {
+
+								schemaRelIds.add(rel.getId());
+
+							} else {
 
-						// check for existing schema node and merge
-						if (entity instanceof AbstractSchemaNode) {
-							checkAndMerge(entity, deletedNodes, deletedRels);
+								rels.add(rel);
+							}
+
+						} else {
+
+							logger.log(Level.INFO, "NOT creating relationship of type {0}, start: {1}, end: {2}", new Object[] { relTypeName, startId, endId });
 						}
 
-						if (!deletedNodes.contains(node.getId())) {
+						for (int i=0; i<propertyCount; i++) {
 
-							TransactionCommand.nodeCreated(superUser, entity);
-							entity.addToIndex();
+							final String key   = (String)deserialize(in);
+							final Object value = deserialize(in);
+
+							if (rel != null) {
+								rel.setProperty(key, value);
+							}
 						}
+
+						count++;
+					}
+
+					for (final Relationship rel : rels) {
+
+						final RelationshipInterface entity = relFactory.instantiate(rel);
+						TransactionCommand.relationshipCreated(superUser, entity);
+						entity.addToIndex();
 					}
+
+					tx.success();
+
+					progress.rels.add(count);
+					progress.log();
 				}
+			}
+		}
+	}
 
-				for (Relationship rel : rels) {
+	private static void mergeSchemaNodes(final DatabaseService graphDb, final SecurityContext securityContext, final boolean doValidation, final Set<Long> schemaNodeIds, final Set<Long> schemaRelIds) throws FrameworkException {
 
-					if (!deletedRels.contains(rel.getId())) {
+		if (schemaNodeIds.isEmpty()) {
+			return;
+		}
 
-						RelationshipInterface entity = relFactory.instantiate(rel);
-						TransactionCommand.relationshipCreated(superUser, entity);
+		final RelationshipFactory relFactory = new RelationshipFactory(securityContext);
+		final NodeFactory nodeFactory        = new NodeFactory(securityContext);
+		final Set<Long> deletedNodes         = new HashSet<>();
+		final Set<Long> deletedRels          = new HashSet<>();
+		final SuperUser superUser            = new SuperUser();
+
+		try (final Tx tx = StructrApp.getInstance().tx(doValidation)) {
+
+			for (final Long nodeId : schemaNodeIds) {
+
+				if (!deletedNodes.contains(nodeId)) {
+
+					final NodeInterface entity = nodeFactory.instantiate(graphDb.getNodeById(nodeId));
+
+					// check for existing schema node and merge
+					checkAndMerge(entity, deletedNodes, deletedRels);
+
+					if (!deletedNodes.contains(nodeId)) {
+
+						TransactionCommand.nodeCreated(superUser, entity);
 						entity.addToIndex();
 					}
 				}
+			}
 
-				logger.log(Level.INFO, "Imported {0} nodes and {1} rels, committing transaction..", new Object[] { totalNodeCount, totalRelCount } );
+			for (final Long relId : schemaRelIds) {
 
-				tx.success();
+				if (!deletedRels.contains(relId)) {
 
+					final RelationshipInterface entity = relFactory.instantiate(graphDb.getRelationshipById(relId));
+					TransactionCommand.relationshipCreated(superUser, entity);
+					entity.addToIndex();
+				}
 			}
 
-		} while (!finished);
+			tx.success();
+		}
+	}
 
-		double t1   = System.nanoTime();
-		double time = ((t1 - t0) / 1000000000.0);
+	/**
+	 * Imports a columnar snapshot. The zip stream is not seekable, so the
+	 * snapshot is extracted into a temporary file first. Node blocks are
+	 * then decoded and imported in parallel, relationship blocks are
+	 * decoded into the relationship spool and imported like the rows of a
+	 * regular sync file.
+	 */
+	private static void importSnapshot(final DatabaseService graphDb, final SecurityContext securityContext, final ZipInputStream zis, boolean doValidation, final Long batchSize) throws FrameworkException, IOException {
+
+		final int internalBatchSize            = batchSize != null ? batchSize.intValue() : 200;
+		final Set<Long> schemaNodeIds          = Collections.synchronizedSet(new LinkedHashSet<>());
+		final Set<Long> schemaRelIds           = new LinkedHashSet<>();
+		final AtomicReference<Throwable> error = new AtomicReference<>();
+		final ImportProgress progress          = new ImportProgress();
+		final File tmpDir                      = Files.createTempDirectory("structr-sync-import").toFile();
+		final File snapshotFile                = new File(tmpDir, "snapshot.dat");
+		final File relSpoolFile                = new File(tmpDir, "relationships.dat");
+		final ThreadPoolExecutor executor      = createImportExecutor();
+		final long t0                          = System.nanoTime();
 
-		DecimalFormat decimalFormat  = new DecimalFormat("0.000000000", DecimalFormatSymbols.getInstance(Locale.ENGLISH));
-		logger.log(Level.INFO, "Import done in {0} s", decimalFormat.format(time));
+		try {
+
+			Files.copy(zis, snapshotFile.toPath());
+
+			try (final FileBasedUuidLongMap uuidMap = new FileBasedUuidLongMap(tmpDir.getAbsolutePath()); final SnapshotReader reader = new SnapshotReader(snapshotFile)) {
+
+				// phase 1: decode and import node blocks in parallel
+				for (final SnapshotBlock block : reader.getBlocks()) {
+
+					if (block.kind == 'N') {
+
+						if (error.get() != null) {
+							break;
+						}
+
+						executor.execute(() -> {
+
+							try {
+
+								final List<Map<String, Object>> objects = reader.readNodes(block);
+								final int size                          = objects.size();
+
+								for (int i=0; i<size; i+=internalBatchSize) {
+
+									importNodes(graphDb, securityContext, doValidation, objects.subList(i, Math.min(size, i + internalBatchSize)), uuidMap, schemaNodeIds, progress);
+								}
+
+							} catch (Throwable t) {
+
+								logger.log(Level.SEVERE, "Unable to import node block", t);
+								error.compareAndSet(null, t);
+							}
+						});
+					}
+				}
+
+				awaitNodeImport(executor, error);
+
+				try (final DataOutputStream relSpool = new DataOutputStream(new SpoolOutputStream(relSpoolFile))) {
+
+					for (final SnapshotBlock block : reader.getBlocks()) {
+
+						if (block.kind == 'R') {
+							reader.readRelationships(block, relSpool);
+						}
+					}
+
+					// end marker
+					relSpool.writeBoolean(false);
+				}
+
+				// phase 2: create relationships
+				importRelationships(graphDb, securityContext, doValidation, relSpoolFile, internalBatchSize, uuidMap, schemaNodeIds, schemaRelIds, progress);
+
+				// phase 3: merge schema nodes
+				mergeSchemaNodes(graphDb, securityContext, doValidation, schemaNodeIds, schemaRelIds);
+			}
+
+		} finally {
+
+			executor.shutdownNow();
+
+			snapshotFile.delete();
+			relSpoolFile.delete();
+			tmpDir.delete();
+		}
+
+		final DecimalFormat decimalFormat = new DecimalFormat("0.000000000", DecimalFormatSymbols.getInstance(Locale.ENGLISH));
+		logger.log(Level.INFO, "Import of {0} nodes and {1} rels done in {2} s", new Object[] { progress.nodes.sum(), progress.rels.sum(), decimalFormat.format((System.nanoTime() - t0) / 1000000000.0) });
+	}
+
+	/**
+	 * Exports the given nodes and relationships as a columnar snapshot.
+	 * Objects are grouped by type into blocks of up to
+	 * {@link #SNAPSHOT_BLOCK_SIZE} objects, each block stores its
+	 * properties column by column and is compressed separately. Property
+	 * keys and types are stored once in a string dictionary. A block index
+	 * at the end of the snapshot allows to read individual blocks without
+	 * decoding the others.
+	 *
+	 * Objects are only buffered until the block of their type is full (or
+	 * too many objects are pending), so the memory usage does not depend on
+	 * the size of the export. The snapshot is written to a temporary file
+	 * first and stored without additional compression in the zip file.
+	 */
+	private static void exportSnapshot(final ZipOutputStream zos, final Iterable<? extends NodeInterface> nodes, final Iterable<? extends RelationshipInterface> relationships) throws IOException {
+
+		final String uuidPropertyName = GraphObject.id.dbName();
+		final String typePropertyName = NodeInterface.type.dbName();
+		final File tmpFile            = File.createTempFile("structr-sync-export", ".dat");
+		int nodeCount                 = 0;
+		int relCount                  = 0;
+
+		try {
+
+			final CRC32 crc = new CRC32();
+			long length     = 0L;
+
+			try (final SnapshotWriter writer = new SnapshotWriter(new CheckedOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile)), crc))) {
+
+				final PendingBlocks<Node> pendingNodes = new PendingBlocks<>(writer::writeNodes);
+
+				for (final NodeInterface nodeObject : nodes) {
+
+					final Node node = nodeObject.getNode();
+
+					// ignore non-structr nodes
+					if (node.hasProperty(uuidPropertyName)) {
+
+						pendingNodes.add(node.hasProperty(typePropertyName) ? (String)node.getProperty(typePropertyName) : "", node);
+						nodeCount++;
+					}
+				}
+
+				pendingNodes.flush();
+
+				final PendingBlocks<Relationship> pendingRels = new PendingBlocks<>(writer::writeRelationships);
+
+				for (final RelationshipInterface relObject : relationships) {
+
+					final Relationship rel = relObject.getRelationship();
+
+					// ignore non-structr relationships
+					if (rel.hasProperty(uuidPropertyName) && rel.getStartNode().hasProperty(uuidPropertyName) && rel.getEndNode().hasProperty(uuidPropertyName)) {
+
+						pendingRels.add(rel.getType().name(), rel);
+						relCount++;
+					}
+				}
+
+				pendingRels.flush();
+
+				length = writer.finish();
+			}
+
+			// blocks are compressed already
+			final ZipEntry dbEntry = new ZipEntry(STRUCTR_ZIP_SNAPSHOT);
+
+			dbEntry.setMethod(ZipEntry.STORED);
+			dbEntry.setSize(length);
+			dbEntry.setCompressedSize(length);
+			dbEntry.setCrc(crc.getValue());
+
+			zos.putNextEntry(dbEntry);
+			Files.copy(tmpFile.toPath(), zos);
+			zos.closeEntry();
+
+		} finally {
+
+			tmpFile.delete();
+		}
+
+		logger.log(Level.INFO, "Exported {0} nodes and {1} rels", new Object[] { nodeCount, relCount } );
+	}
+
+	private static ThreadPoolExecutor createImportExecutor() {
+
+		final int threadCount = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors()));
+
+		// bounded queue, the reader runs a batch itself when all workers are busy
+		return new ThreadPoolExecutor(threadCount, threadCount, 0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(threadCount * 2), new ThreadPoolExecutor.CallerRunsPolicy());
+	}
+
+	private static void awaitNodeImport(final ThreadPoolExecutor executor, final AtomicReference<Throwable> error) throws FrameworkException {
+
+		executor.shutdown();
+
+		try {
+			executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+
+		} catch (InterruptedException iex) {
+			throw new FrameworkException(500, "Import interrupted");
+		}
+
+		if (error.get() != null) {
+			throw new FrameworkException(500, "Node import failed: " + error.get().getMessage());
+		}
+	}
+
+	private static void writeVarInt(final DataOutputStream out, final int value) throws IOException {
+
+		int v = value;
+
+		while ((v & ~0x7f) != 0) {
+
+			out.writeByte((v & 0x7f) | 0x80);
+			v >>>= 7;
+		}
+
+		out.writeByte(v);
+	}
+
+	private static int readVarInt(final DataInputStream in) throws IOException {
+
+		int value = 0;
+		int shift = 0;
+		int b     = 0;
+
+		do {
+
+			b      = in.readUnsignedByte();
+			value |= (b & 0x7f) << shift;
+			shift += 7;
+
+		} while ((b & 0x80) != 0);
+
+		return value;
+	}
+
+	private static boolean isHexUuid(final String uuid) {
+
+		if (uuid.length() != 32) {
+			return false;
+		}
+
+		for (int i=0; i<32; i++) {
+
+			final char c = uuid.charAt(i);
+
+			// only lowercase digits can be restored exactly
+			if (!((c >= '0' && c <= '9') || (c >= 'a' && c <= 'f'))) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	private static void flushRelationship(final DataOutputStream out, final Map<String, Object> rel, final Map<String, Object> properties) throws IOException {
+
+		if (rel != null && properties != null) {
+
+			out.writeBoolean(true);
+
+			serialize(out, rel.get(REL_START_KEY));
+			serialize(out, rel.get(REL_END_KEY));
+			serialize(out, rel.get(REL_TYPE_KEY));
+
+			out.writeInt(properties.size());
+
+			for (final Entry<String, Object> entry : properties.entrySet()) {
+
+				serialize(out, entry.getKey());
+				serialize(out, entry.getValue());
+			}
+		}
+	}
+
+	// ----- nested classes -----
+	/**
+	 * Buffered output for the relationship spool file. {@link #serialize}
+	 * flushes after every value, so flushing is deferred until close.
+	 */
+	private static class SpoolOutputStream extends BufferedOutputStream {
+
+		public SpoolOutputStream(final File file) throws IOException {
+			super(new FileOutputStream(file), 65536);
+		}
+
+		@Override
+		public void flush() {
+		}
+
+		@Override
+		public void close() throws IOException {
+
+			super.flush();
+			super.close();
+		}
+	}
+
+	private interface BlockWriter<T> {
+
+		void write(final String type, final List<T> objects) throws IOException;
+	}
+
+	/**
+	 * Collects objects by type and writes a block as soon as it is full.
+	 * If too many objects are pending in incomplete blocks, all of them are
+	 * written, so the number of buffered objects is bounded.
+	 */
+	private static class PendingBlocks<T> {
+
+		private final Map<String, List<T>> blocks = new LinkedHashMap<>();
+		private BlockWriter<T> writer             = null;
+		private int pending                       = 0;
+
+		public PendingBlocks(final BlockWriter<T> writer) {
+			this.writer = writer;
+		}
+
+		public void add(final String type, final T obj) throws IOException {
+
+			final List<T> block = blocks.computeIfAbsent(type, k -> new ArrayList<>());
+
+			block.add(obj);
+			pending++;
+
+			if (block.size() >= SNAPSHOT_BLOCK_SIZE) {
+
+				write(type, block);
+
+			} else if (pending >= SNAPSHOT_MAX_PENDING) {
+
+				flush();
+			}
+		}
+
+		public void flush() throws IOException {
+
+			for (final Entry<String, List<T>> entry : blocks.entrySet()) {
+
+				if (!entry.getValue().isEmpty()) {
+					write(entry.getKey(), entry.getValue());
+				}
+			}
+		}
+
+		// ----- private methods -----
+		private void write(final String type, final List<T> block) throws IOException {
+
+			writer.write(type, block);
+
+			pending -= block.size();
+			block.clear();
+		}
+	}
+
+	private static class SnapshotBlock {
+
+		private byte kind   = 0;
+		private int type    = 0;
+		private int count   = 0;
+		private long offset = 0L;
+		private int length  = 0;
+	}
+
+	/**
+	 * Writes the columnar snapshot format:
+	 *
+	 * magic, blocks, string dictionary block, block index, index offset,
+	 * magic
+	 *
+	 * Node blocks consist of the number of nodes, a uuid column and the
+	 * property columns, relationship blocks additionally have start and end
+	 * node uuid columns. Uuids are stored in 16 bytes if possible. Each
+	 * property column consists of the key and one typed value per object,
+	 * see {@link #serialize}. All blocks are deflated.
+	 */
+	private static class SnapshotWriter implements Closeable {
+
+		private final List<SnapshotBlock> blocks = new ArrayList<>();
+		private final Map<String, Integer> dict  = new HashMap<>();
+		private final List<String> dictList      = new ArrayList<>();
+		private DataOutputStream out             = null;
+		private long position                    = 0L;
+
+		public SnapshotWriter(final OutputStream outputStream) throws IOException {
+
+			this.out = new DataOutputStream(outputStream);
+
+			out.writeLong(SNAPSHOT_MAGIC);
+			position += 8;
+		}
+
+		public void writeNodes(final String type, final List<Node> nodes) throws IOException {
+
+			final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+			final DataOutputStream block       = new DataOutputStream(buffer);
+			final String uuidPropertyName      = GraphObject.id.dbName();
+
+			writeVarInt(block, nodes.size());
+
+			for (final Node node : nodes) {
+				writeUuid(block, (String)node.getProperty(uuidPropertyName));
+			}
+
+			writeColumns(block, nodes, uuidPropertyName, NodeInterface.type.dbName());
+
+			writeBlock((byte)'N', type, nodes.size(), buffer.toByteArray());
+		}
+
+		public void writeRelationships(final String type, final List<Relationship> rels) throws IOException {
+
+			final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+			final DataOutputStream block       = new DataOutputStream(buffer);
+			final String uuidPropertyName      = GraphObject.id.dbName();
+
+			writeVarInt(block, rels.size());
+
+			for (final Relationship rel : rels) {
+				writeUuid(block, (String)rel.getProperty(uuidPropertyName));
+			}
+
+			for (final Relationship rel : rels) {
+				writeUuid(block, (String)rel.getStartNode().getProperty(uuidPropertyName));
+			}
+
+			for (final Relationship rel : rels) {
+				writeUuid(block, (String)rel.getEndNode().getProperty(uuidPropertyName));
+			}
+
+			writeColumns(block, rels, uuidPropertyName, null);
+
+			writeBlock((byte)'R', type, rels.size(), buffer.toByteArray());
+		}
+
+		/**
+		 * Writes dictionaries, index and footer.
+		 *
+		 * @return the total length of the snapshot
+		 */
+		public long finish() throws IOException {
+
+			final ByteArrayOutputStream dictBuffer = new ByteArrayOutputStream();
+			final DataOutputStream dictOut         = new DataOutputStream(dictBuffer);
+
+			writeVarInt(dictOut, dictList.size());
+
+			for (final String value : dictList) {
+				serializeData(dictOut, value.getBytes("UTF-8"));
+			}
+
+			final SnapshotBlock dictBlock = writeBlock((byte)'D', null, dictList.size(), dictBuffer.toByteArray());
+			final long indexOffset        = position;
+
+			out.writeInt(blocks.size());
+
+			for (final SnapshotBlock block : blocks) {
+
+				out.writeByte(block.kind);
+				out.writeInt(block.type);
+				out.writeInt(block.count);
+				out.writeLong(block.offset);
+				out.writeInt(block.length);
+			}
+
+			position += 4 + blocks.size() * 21;
+
+			out.writeLong(indexOffset);
+			out.writeLong(SNAPSHOT_MAGIC);
+			position += 16;
+
+			logger.log(Level.FINE, "Snapshot contains {0} blocks and {1} dictionary entries", new Object[] { blocks.size() - 1, dictBlock.count });
+
+			return position;
+		}
+
+		@Override
+		public void close() throws IOException {
+			out.close();
+		}
+
+		// ----- private methods -----
+		private void writeColumns(final DataOutputStream block, final List<? extends PropertyContainer> objects, final String skip1, final String skip2) throws IOException {
+
+			final Set<String> keys = new LinkedHashSet<>();
+
+			for (final PropertyContainer obj : objects) {
+
+				for (final String key : obj.getPropertyKeys()) {
+					keys.add(key);
+				}
+			}
+
+			keys.remove(skip1);
+
+			if (skip2 != null) {
+				keys.remove(skip2);
+			}
+
+			writeVarInt(block, keys.size());
+
+			for (final String key : keys) {
+
+				writeVarInt(block, string(key));
+
+				for (final PropertyContainer obj : objects) {
+
+					final Object value = obj.hasProperty(key) ? obj.getProperty(key) : null;
+
+					if (value != null && !typeMap.containsKey(value.getClass())) {
+						throw new IOException("Unable to export property " + key + " of type " + value.getClass().getName() + ", type not supported");
+					}
+
+					// absent values are written as null to keep the column aligned
+					serialize(block, value);
+				}
+			}
+		}
+
+		private SnapshotBlock writeBlock(final byte kind, final String type, final int count, final byte[] data) throws IOException {
+
+			final ByteArrayOutputStream buffer = new ByteArrayOutputStream(data.length / 4 + 64);
+
+			try (final DeflaterOutputStream deflater = new DeflaterOutputStream(buffer)) {
+				deflater.write(data);
+			}
+
+			final SnapshotBlock block = new SnapshotBlock();
+
+			block.kind   = kind;
+			block.type   = type != null ? string(type) : -1;
+			block.count  = count;
+			block.offset = position;
+			block.length = buffer.size();
+
+			buffer.writeTo(out);
+
+			position += block.length;
+
+			blocks.add(block);
+
+			return block;
+		}
+
+		private int string(final String value) {
+
+			Integer index = dict.get(value);
+			if (index == null) {
+
+				index = dictList.size();
+				dict.put(value, index);
+				dictList.add(value);
+			}
+
+			return index;
+		}
+
+		private void writeUuid(final DataOutputStream block, final String uuid) throws IOException {
+
+			if (isHexUuid(uuid)) {
+
+				block.writeByte(0);
+				block.writeLong(Long.parseUnsignedLong(uuid.substring(0, 16), 16));
+				block.writeLong(Long.parseUnsignedLong(uuid.substring(16), 16));
+
+			} else {
+
+				block.writeByte(1);
+				serializeData(block, uuid.getBytes("UTF-8"));
+			}
+		}
+	}
+
+	/**
+	 * Reads a columnar snapshot file. Blocks are read with positional reads
+	 * so that they can be decoded concurrently.
+	 */
+	private static class SnapshotReader implements Closeable {
+
+		private final List<SnapshotBlock> blocks = new ArrayList<>();
+		private RandomAccessFile file            = null;
+		private FileChannel channel              = null;
+		private String[] dict                    = null;
+
+		public SnapshotReader(final File snapshotFile) throws IOException {
+
+			this.file    = new RandomAccessFile(snapshotFile, "r");
+			this.channel = file.getChannel();
+
+			final long length = file.length();
+
+			file.seek(length - 16);
+
+			final long indexOffset = file.readLong();
+
+			if (file.readLong() != SNAPSHOT_MAGIC) {
+				throw new IOException("Invalid snapshot file");
+			}
+
+			file.seek(indexOffset);
+
+			final int blockCount    = file.readInt();
+			SnapshotBlock dictBlock = null;
+
+			for (int i=0; i<blockCount; i++) {
+
+				final SnapshotBlock block = new SnapshotBlock();
+
+				block.kind   = file.readByte();
+				block.type   = file.readInt();
+				block.count  = file.readInt();
+				block.offset = file.readLong();
+				block.length = file.readInt();
+
+				switch (block.kind) {
+
+					case 'D':
+						dictBlock = block;
+						break;
+
+					default:
+						blocks.add(block);
+						break;
+				}
+			}
+
+			if (dictBlock == null) {
+				throw new IOException("Invalid snapshot file, dictionary missing");
+			}
+
+			final DataInputStream dictIn = open(dictBlock);
+
+			this.dict = new String[readVarInt(dictIn)];
+
+			for (int i=0; i<dict.length; i++) {
+				dict[i] = new String(deserializeData(dictIn), "UTF-8");
+			}
+		}
+
+		public List<SnapshotBlock> getBlocks() {
+			return blocks;
+		}
+
+		public List<Map<String, Object>> readNodes(final SnapshotBlock block) throws IOException {
+
+			final DataInputStream in                = open(block);
+			final List<Map<String, Object>> objects = new ArrayList<>(block.count);
+			final String uuidPropertyName           = GraphObject.id.dbName();
+			final String typePropertyName           = NodeInterface.type.dbName();
+			final String type                       = dict[block.type];
+			final int count                         = readVarInt(in);
+
+			for (int i=0; i<count; i++) {
+
+				final Map<String, Object> properties = new LinkedHashMap<>();
+
+				properties.put(uuidPropertyName, readUuid(in));
+
+				if (!type.isEmpty()) {
+					properties.put(typePropertyName, type);
+				}
+
+				objects.add(properties);
+			}
+
+			readColumns(in, objects);
+
+			return objects;
+		}
+
+		/**
+		 * Decodes the given relationship block into the relationship spool
+		 * format, see {@link #flushRelationship}.
+		 */
+		public void readRelationships(final SnapshotBlock block, final DataOutputStream spool) throws IOException {
+
+			final DataInputStream in                   = open(block);
+			final List<Map<String, Object>> properties = new ArrayList<>(block.count);
+			final List<Map<String, Object>> rels       = new ArrayList<>(block.count);
+			final String type                          = dict[block.type];
+			final int count                            = readVarInt(in);
+
+			for (int i=0; i<count; i++) {
+
+				final Map<String, Object> props = new LinkedHashMap<>();
+				final Map<String, Object> rel   = new LinkedHashMap<>();
+
+				props.put(GraphObject.id.dbName(), readUuid(in));
+				rel.put(REL_TYPE_KEY, type);
+
+				properties.add(props);
+				rels.add(rel);
+			}
+
+			for (int i=0; i<count; i++) {
+				rels.get(i).put(REL_START_KEY, readUuid(in));
+			}
+
+			for (int i=0; i<count; i++) {
+				rels.get(i).put(REL_END_KEY, readUuid(in));
+			}
+
+			readColumns(in, properties);
+
+			for (int i=0; i<count; i++) {
+				flushRelationship(spool, rels.get(i), properties.get(i));
+			}
+		}
+
+		@Override
+		public void close() throws IOException {
+			file.close();
+		}
+
+		// ----- private methods -----
+		private void readColumns(final DataInputStream in, final List<Map<String, Object>> objects) throws IOException {
+
+			final int keyCount = readVarInt(in);
+
+			for (int k=0; k<keyCount; k++) {
+
+				final String key = dict[readVarInt(in)];
+
+				for (final Map<String, Object> properties : objects) {
+
+					final Object value = deserialize(in);
+					if (value != null) {
+
+						properties.put(key, value);
+					}
+				}
+			}
+		}
+
+		private DataInputStream open(final SnapshotBlock block) throws IOException {
+
+			final ByteBuffer buffer = ByteBuffer.allocate(block.length);
+			long position           = block.offset;
+
+			while (buffer.hasRemaining()) {
+
+				final int read = channel.read(buffer, position);
+				if (read < 0) {
+
+					throw new EOFException("Unexpected end of snapshot file");
+				}
+
+				position += read;
+			}
+
+			return new DataInputStream(new BufferedInputStream(new InflaterInputStream(new ByteArrayInputStream(buffer.array()))));
+		}
+
+		private String readUuid(final DataInputStream in) throws IOException {
+
+			if (in.readByte() == 0) {
+
+				return hex(in.readLong()) + hex(in.readLong());
+			}
+
+			return new String(deserializeData(in), "UTF-8");
+		}
+
+		private String hex(final long value) {
+
+			final String hex = Long.toHexString(value);
+
+			return "0000000000000000".substring(hex.length()) + hex;
+		}
+	}
+
+	private static class ImportProgress {
+
+		private static final long LOG_INTERVAL = TimeUnit.SECONDS.toNanos(5);
+
+		private final LongAdder nodes    = new LongAdder();
+		private final LongAdder rels     = new LongAdder();
+		private final AtomicLong lastLog = new AtomicLong(System.nanoTime());
+		private final long start         = System.nanoTime();
+
+		public void log() {
+
+			final long now  = System.nanoTime();
+			final long last = lastLog.get();
+
+			if (now - last > LOG_INTERVAL && lastLog.compareAndSet(last, now)) {
+
+				final double seconds = Math.max(0.001, (now - start) / 1000000000.0);
+				final long nodeCount = nodes.sum();
+				final long relCount  = rels.sum();
+
+				logger.log(Level.INFO, "Imported {0} nodes and {1} rels ({2} objects/s)", new Object[] { nodeCount, relCount, (long)((nodeCount + relCount) / seconds) });
+			}
+		}
 	}
 
 	private static Object readObject(final DataInputStream inputStream, final byte type) throws IOException {
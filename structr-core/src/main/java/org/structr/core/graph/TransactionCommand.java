@@ -384,6 +384,34 @@ public class TransactionCommand extends NodeServiceCommand implements AutoClosea
 		return currentCommand.get() != null;
 	}
 
+	public static boolean hasModifications() {
+
+		if (!inTransaction()) {
+			throw new NotInTransactionException("Not in transaction.");
+		}
+
+		final ModificationQueue queue = queues.get();
+		if (queue != null) {
+			return queue.hasModifications();
+		}
+
+		return false;
+	}
+
+	public static boolean isCreated(final Node node) {
+
+		if (!inTransaction()) {
+			throw new NotInTransactionException("Not in transaction.");
+		}
+
+		final ModificationQueue queue = queues.get();
+		if (queue != null) {
+			return queue.isCreated(node);
+		}
+
+		return false;
+	}
+
 	public static boolean isDeleted(final Node node) {
 
 		if (!inTransaction()) {
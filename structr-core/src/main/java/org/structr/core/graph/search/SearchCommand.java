@@ -89,6 +89,7 @@ public abstract class SearchCommand<S extends PropertyContainer, T extends Graph
 	private boolean sortDescending               = false;
 	private boolean doNotSort                    = false;
 	private boolean exactSearch                  = true;
+	private boolean lazyResult                   = false;
 	private String offsetId                      = null;
 	private int pageSize                         = Integer.MAX_VALUE;
 	private int page                             = 1;
@@ -214,6 +215,9 @@ public abstract class SearchCommand<S extends PropertyContainer, T extends Graph
 				rootGroup.sortDescending(sortDescending);
 			}
 
+			// results that are post-processed below must be complete
+			factory.setLazyResult(lazyResult && !hasEmptySearchFields && !hasGraphSources && !hasSpatialSource);
+
 			// do query
 			final QueryResult hits = getIndex().query(rootGroup);
 			intermediateResult     = factory.instantiate(hits);
@@ -443,6 +447,12 @@ public abstract class SearchCommand<S extends PropertyContainer, T extends Graph
 		return this;
 	}
 
+	@Override
+	public org.structr.core.app.Query<T> lazyResult(final boolean lazyResult) {
+		this.lazyResult = lazyResult;
+		return this;
+	}
+
 	@Override
 	public org.structr.core.app.Query<T> uuid(final String uuid) {
 
@@ -18,14 +18,23 @@
  */
 package org.structr.core.parser;
 
-import java.util.Random;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
 import org.apache.commons.lang3.StringUtils;
+import org.structr.api.util.FixedSizeCache;
 import org.structr.common.error.FrameworkException;
 import org.structr.core.GraphObject;
 import org.structr.core.Services;
+import org.structr.core.app.StructrApp;
 import org.structr.schema.action.ActionContext;
 
 /**
+ * Caches the result of the value expression under the given key. Values
+ * are stored in a size- and weight-bounded cache. When a value expires,
+ * only one caller re-evaluates the value expression while all others
+ * keep getting the stale value until the refresh is done.
  *
  *
  */
@@ -34,6 +43,8 @@ public class CacheExpression extends Expression {
 
 	public static final String ERROR_MESSAGE_CACHE = "Usage: ${cache(key, timeout, valueExpression)}. Example: ${cache('value', 60, GET('http://rate-limited-URL.com'))}";
 
+	private static final long ESTIMATED_ELEMENT_WEIGHT = 16;
+
 	private Expression keyExpression     = null;
 	private Expression timeoutExpression = null;
 	private Expression valueExpression   = null;
@@ -103,32 +114,106 @@ public class CacheExpression extends Expression {
 		final long timeout = ((Number)timeoutValue).longValue();
 
 		// get or create new cached value
-		final Services services = Services.getInstance();
-		CachedValue cachedValue = (CachedValue)services.getAttribute(key);
+		final FixedSizeCache<String, CachedValue> cache = getCache();
+		CachedValue cachedValue                         = cache.get(key);
+
 		if (cachedValue == null) {
 
-			cachedValue = new CachedValue(timeout);
-			services.setAttribute(key, cachedValue);
+			final CachedValue newValue = new CachedValue(timeout);
+			final CachedValue existing = cache.putIfAbsent(key, newValue);
 
-		} else {
-
-			cachedValue.setTimeoutSeconds(timeout);
+			cachedValue = existing != null ? existing : newValue;
 		}
 
+		cachedValue.setTimeoutSeconds(timeout);
+
 		// refresh value from value expression (this is the only place the value expression is evaluated)
 		if (cachedValue.isExpired()) {
-			cachedValue.refresh(valueExpression.evaluate(ctx, entity));
+
+			if (cachedValue.hasValue()) {
+
+				// single-flight: one caller refreshes, all others get the stale value
+				if (cachedValue.beginRefresh()) {
+
+					try {
+
+						cachedValue.refresh(valueExpression.evaluate(ctx, entity));
+						cache.put(key, cachedValue);
+
+					} finally {
+
+						cachedValue.endRefresh();
+					}
+				}
+
+			} else {
+
+				// no value yet, concurrent callers wait for the first evaluation
+				synchronized (cachedValue) {
+
+					if (!cachedValue.hasValue()) {
+
+						cachedValue.refresh(valueExpression.evaluate(ctx, entity));
+						cache.put(key, cachedValue);
+					}
+				}
+			}
 		}
 
 		return cachedValue.getValue();
 	}
 
+	// ----- private methods -----
+	private static FixedSizeCache<String, CachedValue> getCache() {
+		return CacheHolder.cache;
+	}
+
+	/**
+	 * Estimates the weight of a cached value, roughly in characters or
+	 * elements. Collections are not traversed, so nested values count once.
+	 */
+	private static long weigh(final Object value) {
+
+		if (value instanceof CharSequence) {
+			return ((CharSequence)value).length();
+		}
+
+		if (value instanceof Collection) {
+			return ((Collection)value).size() * ESTIMATED_ELEMENT_WEIGHT;
+		}
+
+		if (value instanceof Map) {
+			return ((Map)value).size() * ESTIMATED_ELEMENT_WEIGHT;
+		}
+
+		if (value instanceof Object[]) {
+			return ((Object[])value).length * ESTIMATED_ELEMENT_WEIGHT;
+		}
+
+		return ESTIMATED_ELEMENT_WEIGHT;
+	}
+
+	// ----- nested classes -----
+	/**
+	 * Lazy initialization, so that the configuration is read on first use.
+	 */
+	private static final class CacheHolder {
+
+		private static final FixedSizeCache<String, CachedValue> cache = new FixedSizeCache<>("Cache function values", Services.parseInt(StructrApp.getConfigurationValue(Services.APPLICATION_SCRIPTING_CACHE_SIZE), 10000));
+
+		static {
+
+			cache.setWeigher(v -> weigh(v.getValue()), Services.parseInt(StructrApp.getConfigurationValue(Services.APPLICATION_SCRIPTING_CACHE_WEIGHT), 10000000));
+		}
+	}
+
 	private static final class CachedValue {
 
-		private Random random       = new Random(System.currentTimeMillis());
-		private Object value        = null;
-		private long timeoutSeconds = 0L;
-		private long timeout        = 0L;
+		private final AtomicBoolean refreshing = new AtomicBoolean(false);
+		private volatile Object value          = null;
+		private volatile long timeoutSeconds   = 0L;
+		private volatile long timeout          = 0L;
+		private volatile boolean hasValue      = false;
 
 		public CachedValue(final long timeoutSeconds) {
 			setTimeoutSeconds(timeoutSeconds);
@@ -142,14 +227,27 @@ public class CacheExpression extends Expression {
 			return value;
 		}
 
+		public final boolean hasValue() {
+			return hasValue;
+		}
+
 		public final boolean isExpired() {
 			return System.currentTimeMillis() > timeout;
 		}
 
+		public final boolean beginRefresh() {
+			return refreshing.compareAndSet(false, true);
+		}
+
+		public final void endRefresh() {
+			refreshing.set(false);
+		}
+
 		public final void refresh(final Object value) {
 
-			this.timeout = System.currentTimeMillis() + ((timeoutSeconds + random.nextInt(10)) * 1000);
-			this.value   = value;
+			this.value    = value;
+			this.timeout  = System.currentTimeMillis() + ((timeoutSeconds + ThreadLocalRandom.current().nextInt(10)) * 1000);
+			this.hasValue = true;
 		}
 	}
 
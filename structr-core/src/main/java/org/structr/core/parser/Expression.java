@@ -18,19 +18,23 @@
  */
 package org.structr.core.parser;
 
-import java.util.LinkedList;
+import java.util.ArrayList;
 import java.util.List;
 import org.structr.common.error.FrameworkException;
 import org.structr.core.GraphObject;
 import org.structr.schema.action.ActionContext;
 
 /**
+ * Base class for all nodes of a parsed StructrScript expression tree.
  *
+ * Expression trees are cached and shared between threads, so they must
+ * not be modified after parsing. Implementations keep all evaluation
+ * state in the ActionContext.
  *
  */
 public abstract class Expression {
 
-	protected List<Expression> expressions = new LinkedList<>();
+	protected List<Expression> expressions = new ArrayList<>();
 	protected Expression parent            = null;
 	protected String name                  = null;
 	protected int level                    = 0;
@@ -20,6 +20,7 @@ import java.text.Normalizer;
 import java.util.LinkedHashMap;
 import java.util.Map;
 import org.apache.commons.lang3.StringUtils;
+import org.structr.api.util.FixedSizeCache;
 import org.structr.common.error.FrameworkException;
 import org.structr.core.GraphObject;
 import org.structr.core.parser.function.AbbrFunction;
@@ -141,11 +142,49 @@ public class Functions {
 	public static final Map<String, Function<Object, Object>> functions = new LinkedHashMap<>();
 	public static final String NULL_STRING                              = "___NULL___";
 
+	private static final FixedSizeCache<String, Expression> expressionCache = new FixedSizeCache<>("Expression cache", 10000);
+	private static volatile int cachedFunctionCount                         = 0;
+
 	public static Function<Object, Object> get(final String name) {
 		return functions.get(name);
 	}
 
 	public static Object evaluate(final ActionContext actionContext, final GraphObject entity, final String expression) throws FrameworkException {
+		return parse(expression).evaluate(actionContext, entity);
+	}
+
+	/**
+	 * Returns the expression tree for the given source text, parsing it
+	 * only if it is not cached yet. Expression trees are not modified
+	 * during evaluation, so a cached tree can be evaluated concurrently;
+	 * all evaluation state is kept in the ActionContext.
+	 *
+	 * @param expression
+	 * @return the root of the expression tree
+	 * @throws FrameworkException
+	 */
+	public static Expression parse(final String expression) throws FrameworkException {
+
+		// function names are resolved at parse time, so the cache is
+		// invalid once new functions have been registered
+		final int functionCount = functions.size();
+		if (functionCount != cachedFunctionCount) {
+
+			expressionCache.clear();
+			cachedFunctionCount = functionCount;
+		}
+
+		Expression root = expressionCache.get(expression);
+		if (root == null) {
+
+			root = parseExpression(expression);
+			expressionCache.put(expression, root);
+		}
+
+		return root;
+	}
+
+	private static Expression parseExpression(final String expression) throws FrameworkException {
 
 		final String expressionWithoutNewlines = expression.replace('\n', ' ');
 		final StreamTokenizer tokenizer = new StreamTokenizer(new StringReader(expressionWithoutNewlines));
@@ -272,7 +311,7 @@ public class Functions {
 			throw new FrameworkException(422, "Invalid expression: mismatched closing bracket after " + lastToken);
 		}
 
-		return root.evaluate(actionContext, entity);
+		return root;
 	}
 
 	private static Expression checkReservedWords(final String word) throws FrameworkException {
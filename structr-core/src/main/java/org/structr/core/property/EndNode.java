@@ -214,6 +214,19 @@ public class EndNode<S extends NodeInterface, T extends NodeInterface> extends P
 		setProperty(securityContext, obj, t);
 	}
 
+	@Override
+	public void removeSingleElement(final SecurityContext securityContext, final GraphObject obj, final T t) throws FrameworkException {
+
+		if (containsSingleElement(securityContext, obj, t)) {
+			setProperty(securityContext, obj, null);
+		}
+	}
+
+	@Override
+	public boolean containsSingleElement(final SecurityContext securityContext, final GraphObject obj, final T t) throws FrameworkException {
+		return t != null && t.equals(getProperty(securityContext, obj, false));
+	}
+
 	@Override
 	public Class<T> getTargetType() {
 		return destType;
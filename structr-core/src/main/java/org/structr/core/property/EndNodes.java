@@ -240,11 +240,17 @@ public class EndNodes<S extends NodeInterface, T extends NodeInterface> extends
 
 	@Override
 	public void addSingleElement(final SecurityContext securityContext, final GraphObject obj, final T t) throws FrameworkException {
+		relation.getTarget().add(securityContext, (NodeInterface)obj, t);
+	}
 
-		List<T> list = getProperty(securityContext, obj, false);
-		list.add(t);
+	@Override
+	public void removeSingleElement(final SecurityContext securityContext, final GraphObject obj, final T t) throws FrameworkException {
+		relation.getTarget().remove(securityContext, (NodeInterface)obj, t);
+	}
 
-		setProperty(securityContext, obj, list);
+	@Override
+	public boolean containsSingleElement(final SecurityContext securityContext, final GraphObject obj, final T t) throws FrameworkException {
+		return relation.getTarget().contains(securityContext, (NodeInterface)obj, t);
 	}
 
 	@Override
@@ -219,6 +219,19 @@ public class StartNode<S extends NodeInterface, T extends NodeInterface> extends
 		setProperty(securityContext, obj, s);
 	}
 
+	@Override
+	public void removeSingleElement(final SecurityContext securityContext, final GraphObject obj, final S s) throws FrameworkException {
+
+		if (containsSingleElement(securityContext, obj, s)) {
+			setProperty(securityContext, obj, null);
+		}
+	}
+
+	@Override
+	public boolean containsSingleElement(final SecurityContext securityContext, final GraphObject obj, final S s) throws FrameworkException {
+		return s != null && s.equals(getProperty(securityContext, obj, false));
+	}
+
 	@Override
 	public Class<? extends S> getTargetType() {
 		return destType;
@@ -240,11 +240,17 @@ public class StartNodes<S extends NodeInterface, T extends NodeInterface> extend
 
 	@Override
 	public void addSingleElement(final SecurityContext securityContext, final GraphObject obj, final S s) throws FrameworkException {
+		relation.getSource().add(securityContext, (NodeInterface)obj, s);
+	}
 
-		List<S> list = getProperty(securityContext, obj, false);
-		list.add(s);
+	@Override
+	public void removeSingleElement(final SecurityContext securityContext, final GraphObject obj, final S s) throws FrameworkException {
+		relation.getSource().remove(securityContext, (NodeInterface)obj, s);
+	}
 
-		setProperty(securityContext, obj, list);
+	@Override
+	public boolean containsSingleElement(final SecurityContext securityContext, final GraphObject obj, final S s) throws FrameworkException {
+		return relation.getSource().contains(securityContext, (NodeInterface)obj, s);
 	}
 
 	@Override
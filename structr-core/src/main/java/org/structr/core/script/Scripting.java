@@ -21,12 +21,20 @@ package org.structr.core.script;
 import java.util.Date;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 import org.apache.commons.lang.StringUtils;
 import org.mozilla.javascript.Context;
+import org.mozilla.javascript.RhinoException;
+import org.mozilla.javascript.Script;
 import org.mozilla.javascript.Scriptable;
+import org.mozilla.javascript.ScriptableObject;
 import org.mozilla.javascript.Undefined;
+import org.structr.api.util.FixedSizeCache;
 import org.structr.common.error.FrameworkException;
 import org.structr.core.GraphObject;
+import org.structr.core.Services;
+import org.structr.core.app.StructrApp;
 import org.structr.core.entity.AbstractNode;
 import org.structr.core.parser.Functions;
 import org.structr.core.property.DateProperty;
@@ -39,6 +47,11 @@ import org.structr.schema.parser.DatePropertyParser;
  */
 public class Scripting {
 
+	private static final Logger logger                              = Logger.getLogger(Scripting.class.getName());
+	private static final FixedSizeCache<String, Script> scriptCache = new FixedSizeCache<>("Script cache", 1000);
+	private static ScriptableObject sharedScope                    = null;
+	private static Integer optimizationLevel                       = null;
+
 	public static String replaceVariables(final ActionContext actionContext, final GraphObject entity, final Object rawValue) throws FrameworkException {
 
 		if (rawValue == null) {
@@ -151,14 +164,13 @@ public class Scripting {
 			// Set version to JavaScript1.2 so that we get object-literal style
 			// printing instead of "[object Object]"
 			scriptingContext.setLanguageVersion(Context.VERSION_1_2);
+			scriptingContext.setOptimizationLevel(getOptimizationLevel());
 
-			// Initialize the standard objects (Object, Function, etc.)
-			// This must be done before scripts can be executed.
-			Scriptable scope = scriptingContext.initStandardObjects();
-
-			// set optimization level to interpreter mode to avoid
-			// class loading / PermGen space bug in Rhino
-			//scriptingContext.setOptimizationLevel(-1);
+			// Use a per-call scope on top of the shared, sealed standard objects,
+			// so that top-level variables of one call are not visible in others.
+			final Scriptable scope = scriptingContext.newObject(getSharedScope(scriptingContext));
+			scope.setPrototype(getSharedScope(scriptingContext));
+			scope.setParentScope(null);
 
 			final StructrScriptable scriptable = new StructrScriptable(actionContext, entity, scriptingContext);
 			scriptable.setParentScope(scope);
@@ -169,7 +181,7 @@ public class Scripting {
 			// clear output buffer
 			actionContext.clear();
 
-			Object extractedValue = scriptingContext.evaluateString(scope, embedInFunction(actionContext, script), "script source [" + entityDescription + "], line ", 1, null);
+			Object extractedValue = getCompiledScript(scriptingContext, actionContext, script).exec(scriptingContext, scope);
 
 			if (scriptable.hasException()) {
 				throw scriptable.getException();
@@ -196,6 +208,13 @@ public class Scripting {
 			// just throw the FrameworkException so we dont lose the information contained
 			throw fex;
 
+		} catch (final RhinoException rex) {
+
+			// compiled scripts are shared between entities, so add the entity description here
+			logger.log(Level.FINE, "Error in script source [" + entityDescription + "]", rex);
+
+			throw new FrameworkException(422, rex.details() + " (script source [" + entityDescription + "], line #" + rex.lineNumber() + ")");
+
 		} catch (final Throwable t) {
 
 			// if any other kind of Throwable is encountered throw a new FrameworkException and be done with it
@@ -209,6 +228,49 @@ public class Scripting {
 
 	}
 
+	/**
+	 * Returns the compiled form of the given script, compiling it only
+	 * if it is not cached yet. Compiled scripts don't hold any state and
+	 * can be executed concurrently in different scopes.
+	 */
+	private static Script getCompiledScript(final Context scriptingContext, final ActionContext actionContext, final String script) {
+
+		Script compiled = scriptCache.get(script);
+		if (compiled == null) {
+
+			compiled = scriptingContext.compileString(embedInFunction(actionContext, script), "script source, line ", 1, null);
+			scriptCache.put(script, compiled);
+		}
+
+		return compiled;
+	}
+
+	private static synchronized ScriptableObject getSharedScope(final Context scriptingContext) {
+
+		if (sharedScope == null) {
+
+			// Initialize the standard objects (Object, Function, etc.) once and seal
+			// them so they can safely be shared by all scripts.
+			sharedScope = scriptingContext.initStandardObjects(null, true);
+			sharedScope.sealObject();
+		}
+
+		return sharedScope;
+	}
+
+	private static int getOptimizationLevel() {
+
+		if (optimizationLevel == null) {
+
+			// -1 is interpreter mode, 0 to 9 compile to JVM bytecode
+			final int level = Services.parseInt(StructrApp.getConfigurationValue(Services.APPLICATION_SCRIPTING_OPTIMIZATION_LEVEL), 0);
+
+			optimizationLevel = Math.max(-1, Math.min(9, level));
+		}
+
+		return optimizationLevel;
+	}
+
 	private static String embedInFunction(final ActionContext actionContext, final String source) {
 
 		final StringBuilder buf = new StringBuilder();
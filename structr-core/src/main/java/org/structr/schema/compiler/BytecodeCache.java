@@ -0,0 +1,184 @@
+/**
+ * Copyright (C) 2010-2016 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.schema.compiler;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Two-level cache for the byte code of dynamic types, keyed by a hash of
+ * the source code and the sources of all directly referenced dynamic
+ * types. Entries are kept in memory and, if a directory is configured,
+ * persisted on disk so that a restart with an unchanged schema does not
+ * need to invoke the compiler.
+ *
+ * An entry contains all classes that were compiled from a single source,
+ * i.e. the top-level class and its inner classes.
+ *
+ *
+ */
+public class BytecodeCache {
+
+	private static final Logger logger = Logger.getLogger(BytecodeCache.class.getName());
+	private static final String SUFFIX = ".classes";
+
+	private final Map<String, Map<String, byte[]>> memory = new ConcurrentHashMap<>();
+	private File directory                                = null;
+
+	public BytecodeCache(final String path) {
+
+		if (path != null) {
+
+			final File dir = new File(path);
+			if (dir.isDirectory() || dir.mkdirs()) {
+
+				this.directory = dir;
+
+			} else {
+
+				logger.log(Level.WARNING, "Unable to create schema bytecode cache directory {0}, using in-memory cache only.", path);
+			}
+		}
+	}
+
+	public Map<String, byte[]> get(final String key) {
+
+		Map<String, byte[]> classes = memory.get(key);
+		if (classes == null && directory != null) {
+
+			classes = load(key);
+			if (classes != null) {
+
+				memory.put(key, classes);
+			}
+		}
+
+		return classes;
+	}
+
+	public void put(final String key, final Map<String, byte[]> classes) {
+
+		memory.put(key, classes);
+
+		if (directory != null) {
+			store(key, classes);
+		}
+	}
+
+	/**
+	 * Removes all entries except the ones with the given keys.
+	 *
+	 * @param keys the keys to keep
+	 */
+	public void retainAll(final Set<String> keys) {
+
+		memory.keySet().retainAll(keys);
+
+		if (directory != null) {
+
+			final File[] files = directory.listFiles();
+			if (files != null) {
+
+				for (final File file : files) {
+
+					final String name = file.getName();
+					if (name.endsWith(SUFFIX) && !keys.contains(name.substring(0, name.length() - SUFFIX.length()))) {
+
+						file.delete();
+					}
+				}
+			}
+		}
+	}
+
+	// ----- private methods -----
+	private Map<String, byte[]> load(final String key) {
+
+		final File file = new File(directory, key + SUFFIX);
+		if (file.exists()) {
+
+			try (final DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+
+				final Map<String, byte[]> classes = new LinkedHashMap<>();
+				final int count                   = in.readInt();
+
+				for (int i=0; i<count; i++) {
+
+					final String name  = in.readUTF();
+					final byte[] bytes = new byte[in.readInt()];
+
+					in.readFully(bytes);
+
+					classes.put(name, bytes);
+				}
+
+				return classes;
+
+			} catch (IOException ioex) {
+
+				logger.log(Level.WARNING, "Unable to read cached bytecode from {0}: {1}", new Object[] { file, ioex.getMessage() });
+				file.delete();
+			}
+		}
+
+		return null;
+	}
+
+	private void store(final String key, final Map<String, byte[]> classes) {
+
+		final File file = new File(directory, key + SUFFIX);
+		final File tmp  = new File(directory, key + SUFFIX + ".tmp");
+
+		try (final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+
+			out.writeInt(classes.size());
+
+			for (final Map.Entry<String, byte[]> entry : classes.entrySet()) {
+
+				out.writeUTF(entry.getKey());
+				out.writeInt(entry.getValue().length);
+				out.write(entry.getValue());
+			}
+
+		} catch (IOException ioex) {
+
+			logger.log(Level.WARNING, "Unable to write cached bytecode to {0}: {1}", new Object[] { file, ioex.getMessage() });
+			tmp.delete();
+
+			return;
+		}
+
+		// make the entry visible atomically
+		if (!tmp.renameTo(file)) {
+			tmp.delete();
+		}
+	}
+}
@@ -20,19 +20,25 @@ package org.structr.schema.compiler;
 
 import java.io.IOException;
 import java.security.SecureClassLoader;
+import java.util.ArrayList;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
 import javax.tools.FileObject;
 import javax.tools.ForwardingJavaFileManager;
 import javax.tools.JavaFileObject;
 import javax.tools.JavaFileObject.Kind;
 import javax.tools.StandardJavaFileManager;
+import javax.tools.StandardLocation;
+import org.apache.commons.lang3.StringUtils;
 
 /**
  *
  *
  */
-public class ClassFileManager extends ForwardingJavaFileManager {
+public class ClassFileManager extends ForwardingJavaFileManager<StandardJavaFileManager> {
 
 	/**
 	 * Instance of JavaClassObject that will store the compiled byte code of
@@ -40,6 +46,12 @@ public class ClassFileManager extends ForwardingJavaFileManager {
 	 */
 	private final Map<String, JavaClassObject> objects = new LinkedHashMap<>();
 
+	/**
+	 * Previously compiled classes that are visible to the compiler on the
+	 * class path, so that only changed sources need to be compiled.
+	 */
+	private final Map<String, JavaClassObject> classPath = new LinkedHashMap<>();
+
 	/**
 	 * Will initialize the manager with the specified standard java file
 	 * manager
@@ -51,28 +63,24 @@ public class ClassFileManager extends ForwardingJavaFileManager {
 	}
 
 	/**
-	 * Will be used by us to get the class loader for our compiled class. It
-	 * creates an anonymous class extending the SecureClassLoader which uses
-	 * the byte code created by the compiler and stored in the
-	 * JavaClassObject, and returns the Class for it
-	 * @param location
+	 * Creates a class loader that defines classes from the given byte code.
+	 *
+	 * @param byteCode map of binary class name to byte code
 	 * @return class loader
 	 */
-	@Override
-	public ClassLoader getClassLoader(final Location location) {
-		
+	public static ClassLoader getClassLoader(final Map<String, byte[]> byteCode) {
+
 		return new SecureClassLoader() {
-			
+
 			@Override
 			protected Class<?> findClass(String name) throws ClassNotFoundException {
-				
-				final JavaClassObject obj = objects.get(name);
-				if (obj != null) {
-					
-					byte[] b = obj.getBytes();
-					return super.defineClass(name, obj.getBytes(), 0, b.length);
+
+				final byte[] b = byteCode.get(name);
+				if (b != null) {
+
+					return super.defineClass(name, b, 0, b.length);
 				}
-				
+
 				throw new ClassNotFoundException(name);
 			}
 		};
@@ -97,4 +105,78 @@ public class ClassFileManager extends ForwardingJavaFileManager {
 		
 		return obj;
 	}
-}
\ No newline at end of file
+
+	@Override
+	public Iterable<JavaFileObject> list(final Location location, final String packageName, final Set<Kind> kinds, final boolean recurse) throws IOException {
+
+		final Iterable<JavaFileObject> files = super.list(location, packageName, kinds, recurse);
+
+		if (StandardLocation.CLASS_PATH.equals(location) && kinds.contains(Kind.CLASS) && !classPath.isEmpty()) {
+
+			final List<JavaFileObject> result = new ArrayList<>();
+
+			for (final JavaClassObject obj : classPath.values()) {
+
+				final String name = obj.getBinaryName();
+				if (packageName.equals(StringUtils.substringBeforeLast(name, "."))) {
+
+					result.add(obj);
+				}
+			}
+
+			if (!result.isEmpty()) {
+
+				for (final JavaFileObject file : files) {
+					result.add(file);
+				}
+
+				return result;
+			}
+		}
+
+		return files;
+	}
+
+	@Override
+	public String inferBinaryName(final Location location, final JavaFileObject file) {
+
+		if (file instanceof JavaClassObject) {
+			return ((JavaClassObject)file).getBinaryName();
+		}
+
+		return super.inferBinaryName(location, file);
+	}
+
+	/**
+	 * Sets the previously compiled classes that the compiler can resolve
+	 * instead of compiling their sources again.
+	 *
+	 * @param byteCode map of binary class name to byte code
+	 */
+	public void setClassPath(final Map<String, byte[]> byteCode) {
+
+		classPath.clear();
+
+		for (final Entry<String, byte[]> entry : byteCode.entrySet()) {
+			classPath.put(entry.getKey(), new JavaClassObject(entry.getKey(), entry.getValue()));
+		}
+	}
+
+	/**
+	 * Returns and clears the byte code produced by the last compilation.
+	 *
+	 * @return map of binary class name to byte code
+	 */
+	public Map<String, byte[]> getCompiledClasses() {
+
+		final Map<String, byte[]> result = new LinkedHashMap<>();
+
+		for (final Entry<String, JavaClassObject> entry : objects.entrySet()) {
+			result.put(entry.getKey(), entry.getValue().getBytes());
+		}
+
+		objects.clear();
+
+		return result;
+	}
+}
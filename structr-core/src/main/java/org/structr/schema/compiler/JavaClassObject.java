@@ -18,8 +18,10 @@
  */
 package org.structr.schema.compiler;
 
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.URI;
 import javax.tools.SimpleJavaFileObject;
@@ -38,6 +40,8 @@ public class JavaClassObject extends SimpleJavaFileObject {
 	protected final ByteArrayOutputStream bos =
 		new ByteArrayOutputStream();
 
+	private final String binaryName;
+
 	/**
 	 * Registers the compiled class object under URI containing the class
 	 * full name
@@ -48,6 +52,22 @@ public class JavaClassObject extends SimpleJavaFileObject {
 	public JavaClassObject(String name, Kind kind) {
 		super(URI.create("string:///" + name.replace('.', '/')
 			+ kind.extension), kind);
+
+		this.binaryName = name;
+	}
+
+	/**
+	 * Creates a class object with existing byte code, so that previously
+	 * compiled classes can be put on the class path of the compiler.
+	 *
+	 * @param name Full name of the compiled class
+	 * @param bytes compiled byte code
+	 */
+	public JavaClassObject(final String name, final byte[] bytes) {
+
+		this(name, Kind.CLASS);
+
+		bos.write(bytes, 0, bytes.length);
 	}
 
 	/**
@@ -60,6 +80,19 @@ public class JavaClassObject extends SimpleJavaFileObject {
 		return bos.toByteArray();
 	}
 
+	public String getBinaryName() {
+		return binaryName;
+	}
+
+	/**
+	 * Will provide the compiler with the byte code of a class that is
+	 * referenced by the sources being compiled.
+	 */
+	@Override
+	public InputStream openInputStream() throws IOException {
+		return new ByteArrayInputStream(bos.toByteArray());
+	}
+
 	/**
 	 * Will provide the compiler with an output stream that leads to our
 	 * byte array. This way the compiler will write everything into the byte
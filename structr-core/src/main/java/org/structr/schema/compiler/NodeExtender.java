@@ -18,26 +18,34 @@
  */
 package org.structr.schema.compiler;
 
+import java.io.File;
 import java.io.StringWriter;
 import java.io.Writer;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.Map.Entry;
 import java.util.Set;
 import java.util.TreeMap;
+import java.util.TreeSet;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 import javax.tools.Diagnostic;
 import javax.tools.Diagnostic.Kind;
 import javax.tools.DiagnosticListener;
 import javax.tools.JavaCompiler;
-import javax.tools.JavaFileManager;
 import javax.tools.JavaFileObject;
 import javax.tools.ToolProvider;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.lang3.StringUtils;
 import org.structr.common.error.DiagnosticErrorToken;
 import org.structr.common.error.ErrorBuffer;
 import org.structr.core.Services;
@@ -45,6 +53,13 @@ import org.structr.core.app.StructrApp;
 import org.structr.module.JarConfigurationProvider;
 
 /**
+ * Compiles the sources of dynamic types. Compilation is incremental: the
+ * byte code of each type is cached under a key that is derived from its
+ * source and the sources of all dynamic types it depends on, so only new
+ * and changed types and their dependants are passed to the compiler.
+ * Unchanged types are put on the compiler's class path and loaded from
+ * the cache, which is persisted in the directory configured in
+ * NodeExtender.cache.path (default: schema-cache in the base path).
  *
  *
  */
@@ -52,18 +67,21 @@ public class NodeExtender {
 
 	private static final Logger logger   = Logger.getLogger(NodeExtender.class.getName());
 
-	private static final JavaCompiler compiler       = ToolProvider.getSystemJavaCompiler();
-	private static final JavaFileManager fileManager = new ClassFileManager(compiler.getStandardFileManager(null, null, null));
-	private static final ClassLoader classLoader     = fileManager.getClassLoader(null);
-	private static final Map<String, Class> classes  = new TreeMap<>();
+	public static final String CACHE_PATH = "NodeExtender.cache.path";
 
-	private List<JavaFileObject> jfiles  = null;
-	private Set<String> fqcns            = null;
+	private static final Pattern identifierPattern    = Pattern.compile("[A-Za-z_$][A-Za-z0-9_$]*");
+	private static final JavaCompiler compiler        = ToolProvider.getSystemJavaCompiler();
+	private static final ClassFileManager fileManager = new ClassFileManager(compiler.getStandardFileManager(null, null, null));
+	private static final Map<String, Class> classes   = new TreeMap<>();
+	private static volatile ClassLoader classLoader   = ClassFileManager.getClassLoader(Collections.emptyMap());
+	private static BytecodeCache bytecodeCache        = null;
+	private static String classPathFingerprint        = null;
+
+	private Map<String, String> sources = null;
 
 	public NodeExtender() {
 
-		jfiles      = new ArrayList<>();
-		fqcns       = new LinkedHashSet<>();
+		sources = new LinkedHashMap<>();
 	}
 
 	public static ClassLoader getClassLoader() {
@@ -78,10 +96,7 @@ public class NodeExtender {
 
 		if (className != null && content != null) {
 
-			final String packageName = JarConfigurationProvider.DYNAMIC_TYPES_PACKAGE;
-
-			jfiles.add(new CharSequenceJavaFileObject(className, content));
-			fqcns.add(packageName.concat(".".concat(className)));
+			sources.put(className, content);
 
 			if ("true".equals(Services.getInstance().getConfigurationValue("NodeExtender.log"))) {
 
@@ -96,53 +111,231 @@ public class NodeExtender {
 		final Writer errorWriter     = new StringWriter();
 		final List<Class> newClasses = new LinkedList<>();
 
-		if (!jfiles.isEmpty()) {
+		if (!sources.isEmpty()) {
+
+			synchronized (NodeExtender.class) {
+
+				final String packageName            = JarConfigurationProvider.DYNAMIC_TYPES_PACKAGE;
+				final BytecodeCache cache           = getBytecodeCache();
+				final Map<String, String> keys      = getCacheKeys();
+				final Map<String, byte[]> byteCode  = new LinkedHashMap<>();
+				final List<JavaFileObject> jfiles   = new ArrayList<>();
+				Boolean success                     = true;
+
+				// collect cached byte code, compile the rest
+				for (final Entry<String, String> entry : sources.entrySet()) {
 
-			logger.log(Level.FINE, "Compiling {0} dynamic entities...", jfiles.size());
+					final String className           = entry.getKey();
+					final Map<String, byte[]> cached = cache.get(keys.get(className));
 
-			Boolean success = compiler.getTask(errorWriter, fileManager, new Listener(errorBuffer), null, null, jfiles).call();
+					if (cached != null) {
+
+						byteCode.putAll(cached);
+
+					} else {
+
+						jfiles.add(new CharSequenceJavaFileObject(className, entry.getValue()));
+					}
+				}
 
-			if (success) {
+				if (!jfiles.isEmpty()) {
 
-				final ClassLoader loader = fileManager.getClassLoader(null);
+					logger.log(Level.FINE, "Compiling {0} of {1} dynamic entities...", new Object[] { jfiles.size(), sources.size() });
 
-				for (final String fqcn : fqcns) {
+					fileManager.setClassPath(byteCode);
 
-					try {
+					success = compiler.getTask(errorWriter, fileManager, new Listener(errorBuffer), null, null, jfiles).call();
 
-						newClasses.add(loader.loadClass(fqcn));
+					final Map<String, byte[]> compiled = fileManager.getCompiledClasses();
 
-					} catch (Throwable t) {
+					fileManager.setClassPath(Collections.emptyMap());
 
-						logger.log(Level.WARNING, "Unable to load dynamic entity {0}: {1}", new Object[] { fqcn, t.toString() });
-						t.printStackTrace();
+					if (success) {
 
-						success = false;
+						// group compiled classes by source, i.e. top-level class name
+						final Map<String, Map<String, byte[]>> entries = new LinkedHashMap<>();
+
+						for (final Entry<String, byte[]> entry : compiled.entrySet()) {
+
+							final String topLevelName = StringUtils.substringBefore(StringUtils.substringAfterLast(entry.getKey(), "."), "$");
+							entries.computeIfAbsent(topLevelName, k -> new LinkedHashMap<>()).put(entry.getKey(), entry.getValue());
+						}
+
+						for (final Entry<String, Map<String, byte[]>> entry : entries.entrySet()) {
+
+							final String key = keys.get(entry.getKey());
+							if (key != null) {
+
+								cache.put(key, entry.getValue());
+							}
+						}
+
+						byteCode.putAll(compiled);
 					}
 				}
 
 				if (success) {
 
-					for (final Class oldType : classes.values()) {
-						StructrApp.getConfiguration().unregisterEntityType(oldType);
+					final ClassLoader loader = ClassFileManager.getClassLoader(byteCode);
+
+					for (final String className : sources.keySet()) {
+
+						final String fqcn = packageName.concat(".".concat(className));
+
+						try {
+
+							newClasses.add(loader.loadClass(fqcn));
+
+						} catch (Throwable t) {
+
+							logger.log(Level.WARNING, "Unable to load dynamic entity {0}: {1}", new Object[] { fqcn, t.toString() });
+							t.printStackTrace();
+
+							success = false;
+						}
 					}
 
-					// clear classes map
-					classes.clear();
+					if (success) {
+
+						for (final Class oldType : classes.values()) {
+							StructrApp.getConfiguration().unregisterEntityType(oldType);
+						}
+
+						// clear classes map
+						classes.clear();
+
+						// add new classes to map
+						for (final Class newType : newClasses) {
+							classes.put(newType.getName(), newType);
+						}
+
+						classLoader = loader;
+
+						// remove byte code of outdated sources
+						cache.retainAll(new LinkedHashSet<>(keys.values()));
 
-					// add new classes to map
-					for (final Class newType : newClasses) {
-						classes.put(newType.getName(), newType);
+						logger.log(Level.INFO, "Successfully compiled {0} dynamic entities, {1} loaded from cache: {2}", new Object[] {
+							jfiles.size(),
+							sources.size() - jfiles.size(),
+							jfiles.stream().map(f -> f.getName().replaceFirst("/", "")).collect(Collectors.joining(", "))
+						});
 					}
+				}
+			}
+		}
+
+		return classes;
+	}
+
+	// ----- private methods -----
+	/**
+	 * Computes the cache key of each source. The key covers the source
+	 * itself and the sources of all dynamic types it depends on, directly
+	 * or transitively, so that all dependants of a changed type are
+	 * compiled again as well.
+	 */
+	private Map<String, String> getCacheKeys() {
+
+		final Map<String, String> sourceHashes          = new LinkedHashMap<>();
+		final Map<String, Set<String>> directReferences = new LinkedHashMap<>();
+		final Map<String, String> keys                  = new LinkedHashMap<>();
+
+		for (final Entry<String, String> entry : sources.entrySet()) {
+			sourceHashes.put(entry.getKey(), DigestUtils.sha256Hex(entry.getValue()));
+		}
+
+		for (final Entry<String, String> entry : sources.entrySet()) {
 
-					logger.log(Level.INFO, "Successfully compiled {0} dynamic entities: {1}", new Object[] { jfiles.size(), jfiles.stream().map(f -> f.getName().replaceFirst("/", "")).collect(Collectors.joining(", ")) });
+			final String className       = entry.getKey();
+			final Set<String> references = new LinkedHashSet<>();
+			final Matcher matcher        = identifierPattern.matcher(entry.getValue());
+
+			while (matcher.find()) {
+
+				final String identifier = matcher.group();
+				if (!identifier.equals(className) && sourceHashes.containsKey(identifier)) {
+
+					references.add(identifier);
 				}
+			}
+
+			directReferences.put(className, references);
+		}
+
+		for (final String className : sources.keySet()) {
+
+			final StringBuilder keySource = new StringBuilder(getClassPathFingerprint());
+			final Set<String> references  = new TreeSet<>();
+
+			collectReferences(directReferences, className, references);
+			references.remove(className);
+
+			keySource.append(className).append(":").append(sourceHashes.get(className));
 
+			for (final String reference : references) {
+				keySource.append(",").append(reference).append(":").append(sourceHashes.get(reference));
 			}
 
+			keys.put(className, DigestUtils.sha256Hex(keySource.toString()));
 		}
 
-		return classes;
+		return keys;
+	}
+
+	/**
+	 * Adds the transitive closure of the references of the given class to
+	 * the given set. Cyclic references are followed only once.
+	 */
+	private void collectReferences(final Map<String, Set<String>> directReferences, final String className, final Set<String> references) {
+
+		final LinkedList<String> queue = new LinkedList<>(directReferences.get(className));
+
+		while (!queue.isEmpty()) {
+
+			final String reference = queue.removeFirst();
+			if (references.add(reference)) {
+
+				queue.addAll(directReferences.get(reference));
+			}
+		}
+	}
+
+	private static BytecodeCache getBytecodeCache() {
+
+		if (bytecodeCache == null) {
+
+			final Services services = Services.getInstance();
+			final String basePath   = services.getConfigurationValue(Services.BASE_PATH, "");
+			final String path       = services.getConfigurationValue(CACHE_PATH, new File(basePath, "schema-cache").getAbsolutePath());
+
+			bytecodeCache = new BytecodeCache(path);
+		}
+
+		return bytecodeCache;
+	}
+
+	/**
+	 * Cached byte code must not be used with a different Java version or
+	 * different versions of the classes it was compiled against, so the
+	 * class path and the Java version are part of every cache key.
+	 */
+	private static String getClassPathFingerprint() {
+
+		if (classPathFingerprint == null) {
+
+			final StringBuilder buf = new StringBuilder(System.getProperty("java.version"));
+
+			for (final String entry : System.getProperty("java.class.path", "").split(File.pathSeparator)) {
+
+				final File file = new File(entry);
+
+				buf.append(entry).append(file.lastModified()).append(file.length());
+			}
+
+			classPathFingerprint = DigestUtils.sha256Hex(buf.toString());
+		}
+
+		return classPathFingerprint;
 	}
 
 	private static class Listener implements DiagnosticListener<JavaFileObject> {
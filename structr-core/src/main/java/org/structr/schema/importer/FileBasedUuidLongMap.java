@@ -0,0 +1,298 @@
+/**
+ * Copyright (C) 2010-2016 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.schema.importer;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A hash map from uuid to long that lives in a memory-mapped file instead of
+ * the heap, so that very large imports can resolve uuids to node ids with
+ * constant heap usage. The map uses open addressing with linear probing and
+ * doubles its capacity (into a new file) when it is more than half full.
+ *
+ * Uuids that consist of 32 lowercase hex digits (the format Structr uses)
+ * are stored exactly as two longs in the file. All other keys, including
+ * uuids with uppercase hex digits, are kept unchanged in a map on the heap,
+ * so keys are always compared exactly and case-sensitively. The backing
+ * file is deleted when the map is closed. This class is thread-safe.
+ *
+ *
+ */
+public class FileBasedUuidLongMap implements Closeable {
+
+	private static final int SLOT_SIZE         = 24;
+	private static final int SLOTS_PER_SEGMENT = 1 << 22;
+
+	private final Map<String, Long> otherKeys = new HashMap<>();
+	private final String basePath;
+	private MappedByteBuffer[] segments = null;
+	private RandomAccessFile raf        = null;
+	private File file                   = null;
+	private long capacity               = 0L;
+	private long size                   = 0L;
+	private int generation              = 0;
+
+	public FileBasedUuidLongMap(final String basePath) throws IOException {
+		this(basePath, 1 << 16);
+	}
+
+	public FileBasedUuidLongMap(final String basePath, final long initialCapacity) throws IOException {
+
+		this.basePath = basePath;
+
+		new File(basePath).mkdirs();
+
+		open(Math.max(16, Long.highestOneBit(initialCapacity - 1) << 1));
+	}
+
+	public synchronized void put(final String uuid, final long value) throws IOException {
+
+		if (uuid == null) {
+			return;
+		}
+
+		if (!isHex(uuid)) {
+
+			otherKeys.put(uuid, value);
+			return;
+		}
+
+		if ((size + 1) * 2 > capacity) {
+			grow();
+		}
+
+		final long msb = msb(uuid);
+		final long lsb = lsb(uuid);
+
+		if (insert(msb, lsb, value)) {
+			size++;
+		}
+	}
+
+	/**
+	 * Returns the value for the given uuid, or -1 if no value is stored.
+	 *
+	 * @param uuid
+	 * @return the value or -1
+	 */
+	public synchronized long get(final String uuid) {
+
+		if (uuid == null) {
+			return -1L;
+		}
+
+		if (!isHex(uuid)) {
+
+			final Long value = otherKeys.get(uuid);
+
+			return value != null ? value : -1L;
+		}
+
+		final long msb = msb(uuid);
+		final long lsb = lsb(uuid);
+		long slot      = hash(msb, lsb) & (capacity - 1);
+
+		while (true) {
+
+			final long stored = getLong(slot, 16);
+			if (stored == 0L) {
+
+				return -1L;
+			}
+
+			if (getLong(slot, 0) == msb && getLong(slot, 8) == lsb) {
+
+				return stored - 1;
+			}
+
+			slot = (slot + 1) & (capacity - 1);
+		}
+	}
+
+	public synchronized long size() {
+		return size + otherKeys.size();
+	}
+
+	@Override
+	public synchronized void close() throws IOException {
+
+		// the mapping is released when the buffers are garbage collected
+		segments = null;
+
+		otherKeys.clear();
+
+		if (raf != null) {
+
+			raf.close();
+			raf = null;
+		}
+
+		if (file != null) {
+
+			delete(file);
+			file = null;
+		}
+	}
+
+	// ----- private methods -----
+	private void open(final long newCapacity) throws IOException {
+
+		final File newFile               = new File(basePath, "uuidmap." + (generation++) + ".dat");
+		final RandomAccessFile newRaf    = new RandomAccessFile(newFile, "rw");
+		final long slotsPerSegment       = Math.min(newCapacity, SLOTS_PER_SEGMENT);
+		final int segmentCount           = (int)(newCapacity / slotsPerSegment);
+		final MappedByteBuffer[] buffers = new MappedByteBuffer[segmentCount];
+		final long segmentSize           = slotsPerSegment * SLOT_SIZE;
+
+		newRaf.setLength(newCapacity * SLOT_SIZE);
+
+		for (int i=0; i<segmentCount; i++) {
+			buffers[i] = newRaf.getChannel().map(FileChannel.MapMode.READ_WRITE, i * segmentSize, segmentSize);
+		}
+
+		this.file     = newFile;
+		this.raf      = newRaf;
+		this.segments = buffers;
+		this.capacity = newCapacity;
+	}
+
+	private void grow() throws IOException {
+
+		final RandomAccessFile oldRaf = raf;
+		final File oldFile            = file;
+
+		// no reference to the old buffers may outlive the copy
+		copy(segments, capacity);
+
+		oldRaf.close();
+		delete(oldFile);
+	}
+
+	private void copy(final MappedByteBuffer[] oldSegments, final long oldCapacity) throws IOException {
+
+		final long oldSlotsPerSegment = Math.min(oldCapacity, SLOTS_PER_SEGMENT);
+
+		open(oldCapacity * 2);
+
+		for (long slot=0; slot<oldCapacity; slot++) {
+
+			final MappedByteBuffer buffer = oldSegments[(int)(slot / oldSlotsPerSegment)];
+			final int offset              = (int)((slot % oldSlotsPerSegment) * SLOT_SIZE);
+			final long stored             = buffer.getLong(offset + 16);
+
+			if (stored != 0L) {
+
+				insert(buffer.getLong(offset), buffer.getLong(offset + 8), stored - 1);
+			}
+		}
+	}
+
+	private static void delete(final File file) {
+
+		// a file cannot be deleted on some platforms while it is still mapped
+		if (!file.delete()) {
+			file.deleteOnExit();
+		}
+	}
+
+	private boolean insert(final long msb, final long lsb, final long value) {
+
+		long slot = hash(msb, lsb) & (capacity - 1);
+
+		while (true) {
+
+			final long stored = getLong(slot, 16);
+			if (stored == 0L) {
+
+				putLong(slot, 0, msb);
+				putLong(slot, 8, lsb);
+				putLong(slot, 16, value + 1);
+
+				return true;
+			}
+
+			if (getLong(slot, 0) == msb && getLong(slot, 8) == lsb) {
+
+				putLong(slot, 16, value + 1);
+
+				return false;
+			}
+
+			slot = (slot + 1) & (capacity - 1);
+		}
+	}
+
+	private long getLong(final long slot, final int field) {
+
+		final long slotsPerSegment = Math.min(capacity, SLOTS_PER_SEGMENT);
+
+		return segments[(int)(slot / slotsPerSegment)].getLong((int)((slot % slotsPerSegment) * SLOT_SIZE) + field);
+	}
+
+	private void putLong(final long slot, final int field, final long value) {
+
+		final long slotsPerSegment = Math.min(capacity, SLOTS_PER_SEGMENT);
+
+		segments[(int)(slot / slotsPerSegment)].putLong((int)((slot % slotsPerSegment) * SLOT_SIZE) + field, value);
+	}
+
+	private static long hash(final long msb, final long lsb) {
+
+		long h = msb * 0x9E3779B97F4A7C15L ^ lsb;
+
+		h ^= (h >>> 33);
+		h *= 0xff51afd7ed558ccdL;
+		h ^= (h >>> 33);
+
+		return h;
+	}
+
+	private static boolean isHex(final String uuid) {
+
+		if (uuid.length() != 32) {
+			return false;
+		}
+
+		for (int i=0; i<32; i++) {
+
+			final char c = uuid.charAt(i);
+
+			if ((c < '0' || c > '9') && (c < 'a' || c > 'f')) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	private static long msb(final String uuid) {
+		return Long.parseUnsignedLong(uuid.substring(0, 16), 16);
+	}
+
+	private static long lsb(final String uuid) {
+		return Long.parseUnsignedLong(uuid.substring(16), 16);
+	}
+}
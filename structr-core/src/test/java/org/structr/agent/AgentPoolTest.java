@@ -0,0 +1,240 @@
+/**
+ * Copyright (C) 2010-2016 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.agent;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.structr.common.StructrTest;
+
+/**
+ * Tests the queueing, back-pressure and shutdown behaviour of the
+ * {@link AgentPool}.
+ *
+ *
+ */
+public class AgentPoolTest extends StructrTest {
+
+	private static final List<String> executed        = new CopyOnWriteArrayList<>();
+	private static final Map<String, Thread> threads = new ConcurrentHashMap<>();
+	private static volatile CountDownLatch block     = null;
+	private static volatile CountDownLatch begin     = null;
+
+	public void test01PriorityOrder() {
+
+		final AgentPool pool = new AgentPool(null, TestAgent.class, "TestTask", 1, 10);
+
+		try {
+
+			startBlocker(pool);
+
+			assertTrue(pool.submit(newTask("a", 0), 100));
+			assertTrue(pool.submit(newTask("b", 5), 100));
+			assertTrue(pool.submit(newTask("c", 0), 100));
+			assertTrue(pool.submit(newTask("d", 5), 100));
+
+			block.countDown();
+			pool.shutdown();
+
+			// higher priority first, equal priority in submission order
+			assertEquals("[blocker, b, d, a, c]", executed.toString());
+
+		} catch (InterruptedException iex) {
+
+			fail("Unexpected exception");
+		}
+	}
+
+	public void test02BackPressure() {
+
+		final AgentPool pool = new AgentPool(null, TestAgent.class, "TestTask", 1, 2);
+
+		try {
+
+			startBlocker(pool);
+
+			assertTrue(pool.submit(newTask("a", 0), 100));
+			assertTrue(pool.submit(newTask("b", 0), 100));
+
+			// the queue is full
+			assertFalse(pool.submit(newTask("c", 0), 100));
+
+			// the caller executes the task itself
+			block.countDown();
+			pool.execute(newTask("c", 0));
+
+			assertEquals(Thread.currentThread(), threads.get("c"));
+
+		} catch (InterruptedException iex) {
+
+			fail("Unexpected exception");
+		}
+
+		pool.shutdown();
+
+		assertEquals(4, executed.size());
+		assertEquals(1L, pool.getStatistics().get("callerRuns"));
+	}
+
+	public void test03SubmitOverCapacity() {
+
+		final AgentPool pool = new AgentPool(null, TestAgent.class, "TestTask", 1, 1);
+
+		try {
+
+			startBlocker(pool);
+
+			assertTrue(pool.submit(newTask("a", 0), 100));
+			assertFalse(pool.submit(newTask("b", 0), 100));
+			assertTrue(pool.submitOverCapacity(newTask("b", 0)));
+
+			block.countDown();
+			pool.shutdown();
+
+			assertEquals("[blocker, a, b]", executed.toString());
+			assertEquals(1L, pool.getStatistics().get("overCapacity"));
+
+		} catch (InterruptedException iex) {
+
+			fail("Unexpected exception");
+		}
+	}
+
+	public void test04AgentCreationFails() {
+
+		final AgentPool pool = new AgentPool(null, BrokenAgent.class, "TestTask", 1, 1);
+
+		try {
+
+			assertFalse(pool.submit(newTask("a", 0), 100));
+			assertTrue(pool.getTasks().isEmpty());
+
+			// the capacity is released, so the caller does not wait
+			final long start = System.currentTimeMillis();
+
+			assertFalse(pool.submit(newTask("b", 0), 10000));
+			assertTrue(System.currentTimeMillis() - start < 5000);
+
+		} catch (InterruptedException iex) {
+
+			fail("Unexpected exception");
+		}
+
+		pool.shutdown();
+	}
+
+	public void test05ShutdownDrainsQueue() {
+
+		final AgentPool pool = new AgentPool(null, TestAgent.class, "TestTask", 2, 100);
+
+		try {
+
+			block = new CountDownLatch(0);
+
+			for (int i=0; i<50; i++) {
+				assertTrue(pool.submit(newTask("task" + i, 0), 100));
+			}
+
+			pool.shutdown();
+
+			assertEquals(50, executed.size());
+			assertTrue(pool.getAgents().isEmpty());
+
+			for (final Thread thread : threads.values()) {
+				assertTrue("Worker threads must not keep the JVM alive", thread.isDaemon());
+			}
+
+			// no tasks are accepted after shutdown
+			assertFalse(pool.submit(newTask("late", 0), 100));
+
+		} catch (InterruptedException iex) {
+
+			fail("Unexpected exception");
+		}
+	}
+
+	@Override
+	protected void setUp() throws Exception {
+
+		super.setUp();
+
+		executed.clear();
+		threads.clear();
+
+		block = new CountDownLatch(1);
+		begin = new CountDownLatch(1);
+	}
+
+	// ----- private methods -----
+	private void startBlocker(final AgentPool pool) throws InterruptedException {
+
+		assertTrue(pool.submit(newTask("blocker", 0), 100));
+
+		// wait until the worker has taken the blocker from the queue
+		assertTrue(begin.await(10, TimeUnit.SECONDS));
+	}
+
+	private Task newTask(final String name, final int priority) {
+
+		final AbstractTask task = new AbstractTask(name, null, null);
+
+		task.setPriority(priority);
+
+		return task;
+	}
+
+	// ----- nested classes -----
+	public static class TestAgent extends Agent {
+
+		@Override
+		public ReturnValue processTask(final Task task) throws Throwable {
+
+			if ("blocker".equals(task.getType())) {
+
+				begin.countDown();
+				block.await(10, TimeUnit.SECONDS);
+			}
+
+			threads.put(task.getType(), Thread.currentThread());
+			executed.add(task.getType());
+
+			return ReturnValue.Success;
+		}
+
+		@Override
+		public boolean createEnclosingTransaction() {
+			return false;
+		}
+
+		@Override
+		public Class getSupportedTaskType() {
+			return AbstractTask.class;
+		}
+	}
+
+	public static class BrokenAgent extends TestAgent {
+
+		public BrokenAgent() {
+			throw new IllegalStateException("Broken agent");
+		}
+	}
+}
@@ -0,0 +1,283 @@
+/**
+ * Copyright (C) 2010-2016 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.common;
+
+import java.util.Arrays;
+import java.util.Collections;
+import org.structr.common.error.FrameworkException;
+import org.structr.core.app.StructrApp;
+import org.structr.core.entity.AbstractNode;
+import org.structr.core.entity.Group;
+import org.structr.core.entity.Principal;
+import org.structr.core.entity.SchemaNode;
+import org.structr.core.entity.SchemaRelationshipNode;
+import org.structr.core.entity.SchemaRelationshipNode.Direction;
+import org.structr.core.entity.SchemaRelationshipNode.Propagation;
+import org.structr.core.entity.TestUser;
+import org.structr.core.graph.NodeAttribute;
+import org.structr.core.graph.Tx;
+import org.structr.core.property.PropertyKey;
+import org.structr.core.property.PropertyMap;
+import org.structr.schema.ConfigurationProvider;
+
+/**
+ * Test permission resolution along domain relationships with permission
+ * propagation.
+ *
+ * The schema used in these tests is Team -[MANAGES]-> Project -[HAS]-> Task,
+ * MANAGES adds read and write permissions, HAS keeps them.
+ *
+ *
+ */
+public class PermissionResolutionTest extends StructrTest {
+
+	private Class teamType       = null;
+	private Class projectType    = null;
+	private Class taskType       = null;
+	private PropertyKey teams    = null;
+	private PropertyKey tasks    = null;
+
+	public void test01PropagationAlongPath() {
+
+		try {
+
+			createSchema();
+
+			final Group team;
+			final AbstractNode project;
+			final AbstractNode task;
+			final AbstractNode other;
+
+			try (final Tx tx = app.tx()) {
+
+				team    = (Group)createTestNode(teamType, "team");
+				project = createTestNode(projectType, "project");
+				task    = createTestNode(taskType, "task");
+				other   = createTestNode(taskType, "other");
+
+				project.setProperty(teams, Arrays.asList(team));
+				project.setProperty(tasks, Arrays.asList(task));
+
+				tx.success();
+			}
+
+			try (final Tx tx = app.tx()) {
+
+				assertTrue(isGranted(Permission.read, project, team));
+				assertTrue(isGranted(Permission.write, project, team));
+				assertFalse(isGranted(Permission.delete, project, team));
+				assertFalse(isGranted(Permission.accessControl, project, team));
+
+				assertTrue(isGranted(Permission.read, task, team));
+				assertTrue(isGranted(Permission.write, task, team));
+				assertFalse(isGranted(Permission.delete, task, team));
+
+				// no path to an unrelated node
+				assertFalse(isGranted(Permission.read, other, team));
+
+				tx.success();
+			}
+
+			// cached results must be identical
+			try (final Tx tx = app.tx()) {
+
+				assertTrue(isGranted(Permission.read, task, team));
+				assertTrue(isGranted(Permission.write, task, team));
+				assertFalse(isGranted(Permission.delete, task, team));
+				assertFalse(isGranted(Permission.read, other, team));
+
+				tx.success();
+			}
+
+		} catch (FrameworkException fex) {
+
+			fex.printStackTrace();
+			fail("Unexpected exception");
+		}
+	}
+
+	public void test02GroupMembership() {
+
+		try {
+
+			createSchema();
+
+			final TestUser member;
+			final TestUser nonMember;
+			final AbstractNode task;
+
+			try (final Tx tx = app.tx()) {
+
+				final Group team             = (Group)createTestNode(teamType, "team");
+				final AbstractNode project   = createTestNode(projectType, "project");
+
+				member    = createTestNode(TestUser.class, "member");
+				nonMember = createTestNode(TestUser.class, "nonMember");
+				task      = createTestNode(taskType, "task");
+
+				project.setProperty(teams, Arrays.asList(team));
+				project.setProperty(tasks, Arrays.asList(task));
+
+				team.addMember(member);
+
+				tx.success();
+			}
+
+			try (final Tx tx = app.tx()) {
+
+				// permissions are resolved for the team the member belongs to
+				assertTrue(isGranted(Permission.read, task, member));
+				assertTrue(isGranted(Permission.write, task, member));
+				assertFalse(isGranted(Permission.delete, task, member));
+
+				assertFalse(isGranted(Permission.read, task, nonMember));
+
+				tx.success();
+			}
+
+		} catch (FrameworkException fex) {
+
+			fex.printStackTrace();
+			fail("Unexpected exception");
+		}
+	}
+
+	public void test03PermissionsChangeWithPath() {
+
+		try {
+
+			createSchema();
+
+			final Group team;
+			final AbstractNode project;
+			final AbstractNode task;
+
+			try (final Tx tx = app.tx()) {
+
+				team    = (Group)createTestNode(teamType, "team");
+				project = createTestNode(projectType, "project");
+				task    = createTestNode(taskType, "task");
+
+				project.setProperty(teams, Arrays.asList(team));
+
+				tx.success();
+			}
+
+			// the denied result is cached..
+			try (final Tx tx = app.tx()) {
+
+				assertFalse(isGranted(Permission.read, task, team));
+				tx.success();
+			}
+
+			try (final Tx tx = app.tx()) {
+
+				project.setProperty(tasks, Arrays.asList(task));
+				tx.success();
+			}
+
+			// ..and must not survive a new path
+			try (final Tx tx = app.tx()) {
+
+				assertTrue(isGranted(Permission.read, task, team));
+				tx.success();
+			}
+
+			try (final Tx tx = app.tx()) {
+
+				project.setProperty(tasks, Collections.emptyList());
+				tx.success();
+			}
+
+			// removing the path revokes the permission
+			try (final Tx tx = app.tx()) {
+
+				assertFalse(isGranted(Permission.read, task, team));
+				assertFalse(isGranted(Permission.write, task, team));
+				tx.success();
+			}
+
+		} catch (FrameworkException fex) {
+
+			fex.printStackTrace();
+			fail("Unexpected exception");
+		}
+	}
+
+	// ----- private methods -----
+	private void createSchema() throws FrameworkException {
+
+		try (final Tx tx = app.tx()) {
+
+			final SchemaNode team    = createTestNode(SchemaNode.class, new NodeAttribute(AbstractNode.name, "Team"), new NodeAttribute(SchemaNode.extendsClass, Group.class.getName()));
+			final SchemaNode project = createTestNode(SchemaNode.class, "Project");
+			final SchemaNode task    = createTestNode(SchemaNode.class, "Task");
+
+			createRelationship(team, project, "MANAGES", "teams", "projects", Propagation.Add, Propagation.Add);
+			createRelationship(project, task, "HAS", "project", "tasks", Propagation.Keep, Propagation.Keep);
+
+			tx.success();
+		}
+
+		try (final Tx tx = app.tx()) {
+
+			final ConfigurationProvider config = StructrApp.getConfiguration();
+
+			teamType    = config.getNodeEntityClass("Team");
+			projectType = config.getNodeEntityClass("Project");
+			taskType    = config.getNodeEntityClass("Task");
+			teams       = config.getPropertyKeyForJSONName(projectType, "teams");
+			tasks       = config.getPropertyKeyForJSONName(projectType, "tasks");
+
+			assertNotNull(teamType);
+			assertNotNull(projectType);
+			assertNotNull(taskType);
+
+			tx.success();
+		}
+	}
+
+	private void createRelationship(final SchemaNode source, final SchemaNode target, final String relType, final String sourceJsonName, final String targetJsonName, final Propagation read, final Propagation write) throws FrameworkException {
+
+		final PropertyMap properties = new PropertyMap();
+
+		properties.put(SchemaRelationshipNode.sourceId,                 source.getUuid());
+		properties.put(SchemaRelationshipNode.targetId,                 target.getUuid());
+		properties.put(SchemaRelationshipNode.sourceJsonName,           sourceJsonName);
+		properties.put(SchemaRelationshipNode.targetJsonName,           targetJsonName);
+		properties.put(SchemaRelationshipNode.sourceMultiplicity,       "*");
+		properties.put(SchemaRelationshipNode.targetMultiplicity,       "*");
+		properties.put(SchemaRelationshipNode.relationshipType,         relType);
+		properties.put(SchemaRelationshipNode.permissionPropagation,    Direction.Out);
+		properties.put(SchemaRelationshipNode.readPropagation,          read);
+		properties.put(SchemaRelationshipNode.writePropagation,         write);
+		properties.put(SchemaRelationshipNode.deletePropagation,        Propagation.Remove);
+		properties.put(SchemaRelationshipNode.accessControlPropagation, Propagation.Remove);
+
+		app.create(SchemaRelationshipNode.class, properties);
+	}
+
+	private boolean isGranted(final Permission permission, final AbstractNode node, final Principal principal) throws FrameworkException {
+
+		// use a fresh instance so that creation flags and path segments don't interfere
+		final AbstractNode instance = (AbstractNode)app.get(node.getUuid());
+
+		return instance.isGranted(permission, SecurityContext.getInstance(principal, AccessMode.Backend));
+	}
+}
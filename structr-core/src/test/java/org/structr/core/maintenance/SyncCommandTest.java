@@ -0,0 +1,237 @@
+/**
+ * Copyright (C) 2010-2016 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.core.maintenance;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Objects;
+import org.apache.commons.lang3.StringUtils;
+import org.structr.api.graph.PropertyContainer;
+import org.structr.common.StructrTest;
+import org.structr.common.error.FrameworkException;
+import org.structr.core.entity.SixOneOneToMany;
+import org.structr.core.entity.TestOne;
+import org.structr.core.entity.TestSix;
+import org.structr.core.graph.ClearDatabase;
+import org.structr.core.graph.NodeInterface;
+import org.structr.core.graph.RelationshipInterface;
+import org.structr.core.graph.SyncCommand;
+import org.structr.core.graph.Tx;
+
+/**
+ * Test export and import of the columnar snapshot format of SyncCommand.
+ *
+ *
+ */
+public class SyncCommandTest extends StructrTest {
+
+	public void test01ColumnarRoundtrip() {
+
+		final String fileName                = basePath + "/columnar.zip";
+		final Map<String, Object> nodeValues = createValues();
+		final Map<String, Object> relValues  = createValues();
+		final String sixId;
+		final String oneId;
+		final String emptyId;
+		final String relId;
+
+		try {
+
+			final TestSix testSix     = createTestNode(TestSix.class);
+			final TestOne testOne     = createTestNode(TestOne.class);
+			final TestOne empty       = createTestNode(TestOne.class);
+			final SixOneOneToMany rel = createTestRelationship(testSix, testOne, SixOneOneToMany.class);
+
+			sixId   = testSix.getUuid();
+			oneId   = testOne.getUuid();
+			emptyId = empty.getUuid();
+			relId   = rel.getUuid();
+
+			try (final Tx tx = app.tx()) {
+
+				// use the database API to store every supported value type
+				setValues(testOne.getNode(), nodeValues);
+				setValues(rel.getRelationship(), relValues);
+
+				tx.success();
+			}
+
+			exportAndImport(fileName);
+
+			try (final Tx tx = app.tx()) {
+
+				final NodeInterface importedOne      = app.getNodeById(oneId);
+				final NodeInterface importedEmpty    = app.getNodeById(emptyId);
+				final RelationshipInterface imported = app.getRelationshipById(relId);
+
+				assertNotNull(app.getNodeById(sixId));
+				assertNotNull(importedOne);
+				assertNotNull(importedEmpty);
+				assertNotNull(imported);
+
+				assertValues(importedOne.getNode(), nodeValues);
+				assertValues(imported.getRelationship(), relValues);
+
+				assertEquals(sixId, imported.getSourceNode().getUuid());
+				assertEquals(oneId, imported.getTargetNode().getUuid());
+
+				// values absent in the exported node must not appear after import
+				for (final String key : nodeValues.keySet()) {
+					assertFalse("Unexpected property " + key, importedEmpty.getNode().hasProperty(key));
+				}
+
+				tx.success();
+			}
+
+		} catch (FrameworkException fex) {
+
+			fex.printStackTrace();
+			fail("Unexpected exception");
+		}
+	}
+
+	public void test02ColumnarRoundtripWithMultipleBlocks() {
+
+		final String fileName = basePath + "/columnar.zip";
+		final int count       = 5000;
+
+		try {
+
+			final List<TestOne> testOnes = createTestNodes(TestOne.class, count);
+
+			try (final Tx tx = app.tx()) {
+
+				int i = 0;
+
+				// the column is only set on every other node
+				for (final TestOne testOne : testOnes) {
+
+					if (i % 2 == 0) {
+						testOne.getNode().setProperty("columnValue", i);
+					}
+
+					i++;
+				}
+
+				tx.success();
+			}
+
+			exportAndImport(fileName);
+
+			try (final Tx tx = app.tx()) {
+
+				assertEquals(count, app.nodeQuery(TestOne.class).getAsList().size());
+
+				int i = 0;
+
+				for (final TestOne testOne : testOnes) {
+
+					final NodeInterface imported = app.getNodeById(testOne.getUuid());
+
+					assertNotNull(imported);
+
+					if (i % 2 == 0) {
+
+						assertEquals(i, imported.getNode().getProperty("columnValue"));
+
+					} else {
+
+						assertFalse(imported.getNode().hasProperty("columnValue"));
+					}
+
+					i++;
+				}
+
+				tx.success();
+			}
+
+		} catch (FrameworkException fex) {
+
+			fex.printStackTrace();
+			fail("Unexpected exception");
+		}
+	}
+
+	// ----- private methods -----
+	private void exportAndImport(final String fileName) throws FrameworkException {
+
+		app.command(SyncCommand.class).execute(toMap("mode", "exportDb", "file", fileName, "format", "columnar"));
+		app.command(ClearDatabase.class).execute();
+
+		try (final Tx tx = app.tx()) {
+
+			assertEquals(0, app.nodeQuery(TestOne.class).getAsList().size());
+			tx.success();
+		}
+
+		app.command(SyncCommand.class).execute(toMap("mode", "import", "file", fileName, "validate", "false"));
+	}
+
+	private Map<String, Object> createValues() {
+
+		final Map<String, Object> values = new LinkedHashMap<>();
+
+		values.put("byteValue",         Byte.MIN_VALUE);
+		values.put("shortValue",        Short.MAX_VALUE);
+		values.put("intValue",          Integer.MIN_VALUE);
+		values.put("longValue",         Long.MAX_VALUE);
+		values.put("floatValue",        Float.NaN);
+		values.put("doubleValue",       -Double.MAX_VALUE);
+		values.put("charValue",         'ä');
+		values.put("stringValue",       "Unicode äöü €");
+		values.put("longStringValue",   StringUtils.repeat("0123456789", 10000));
+		values.put("emptyStringValue",  "");
+		values.put("booleanValue",      true);
+		values.put("byteArrayValue",    new byte[] { Byte.MIN_VALUE, 0, Byte.MAX_VALUE });
+		values.put("shortArrayValue",   new short[] { Short.MIN_VALUE, 0, Short.MAX_VALUE });
+		values.put("intArrayValue",     new int[] { Integer.MIN_VALUE, 0, Integer.MAX_VALUE });
+		values.put("longArrayValue",    new long[] { Long.MIN_VALUE, 0L, Long.MAX_VALUE });
+		values.put("floatArrayValue",   new float[] { Float.MIN_VALUE, 0.0f, Float.POSITIVE_INFINITY });
+		values.put("doubleArrayValue",  new double[] { Double.MIN_VALUE, 0.0, Double.NEGATIVE_INFINITY });
+		values.put("charArrayValue",    new char[] { 'a', 'ä', '€' });
+		values.put("booleanArrayValue", new boolean[] { true, false, true });
+		values.put("stringArrayValue",  new String[] { "one", "", "three" });
+		values.put("emptyArrayValue",   new int[0]);
+
+		return values;
+	}
+
+	private void setValues(final PropertyContainer container, final Map<String, Object> values) {
+
+		for (final Entry<String, Object> entry : values.entrySet()) {
+			container.setProperty(entry.getKey(), entry.getValue());
+		}
+	}
+
+	private void assertValues(final PropertyContainer container, final Map<String, Object> values) {
+
+		for (final Entry<String, Object> entry : values.entrySet()) {
+
+			final String key      = entry.getKey();
+			final Object expected = entry.getValue();
+			final Object actual   = container.hasProperty(key) ? container.getProperty(key) : null;
+
+			assertNotNull("Property " + key + " was not imported", actual);
+			assertEquals("Invalid type of property " + key, expected.getClass(), actual.getClass());
+			assertTrue("Invalid value of property " + key, Objects.deepEquals(expected, actual));
+		}
+	}
+}
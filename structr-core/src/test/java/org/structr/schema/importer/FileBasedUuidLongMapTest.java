@@ -0,0 +1,131 @@
+/**
+ * Copyright (C) 2010-2016 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.schema.importer;
+
+import java.io.File;
+import java.util.UUID;
+import static junit.framework.TestCase.assertEquals;
+import static junit.framework.TestCase.fail;
+import org.junit.Test;
+
+/**
+ *
+ *
+ */
+public class FileBasedUuidLongMapTest {
+
+	@Test
+	public void testPutGetAndGrow() {
+
+		final String basePath = "/tmp/" + System.nanoTime() + ".uuidmap";
+
+		try (final FileBasedUuidLongMap map = new FileBasedUuidLongMap(basePath, 16)) {
+
+			final String[] uuids = new String[10000];
+
+			// starts with 16 slots, so the map grows several times
+			for (int i=0; i<uuids.length; i++) {
+
+				uuids[i] = newUuid();
+				map.put(uuids[i], i);
+			}
+
+			assertEquals("Invalid size() result", uuids.length, map.size());
+
+			for (int i=0; i<uuids.length; i++) {
+				assertEquals("Invalid value in map", i, map.get(uuids[i]));
+			}
+
+			// overwrite
+			map.put(uuids[0], 4711L);
+
+			assertEquals("Invalid value in map", 4711L, map.get(uuids[0]));
+			assertEquals("Invalid size() result", uuids.length, map.size());
+
+			// zero and large values
+			map.put(uuids[1], 0L);
+			map.put(uuids[2], Long.MAX_VALUE - 1);
+
+			assertEquals("Invalid value in map", 0L, map.get(uuids[1]));
+			assertEquals("Invalid value in map", Long.MAX_VALUE - 1, map.get(uuids[2]));
+
+		} catch (Exception ex) {
+
+			ex.printStackTrace();
+			fail("Unexpected exception.");
+		}
+
+		final String[] remaining = new File(basePath).list();
+
+		assertEquals("Backing files must be deleted", 0, remaining != null ? remaining.length : 0);
+	}
+
+	@Test
+	public void testMissingKey() {
+
+		try (final FileBasedUuidLongMap map = new FileBasedUuidLongMap("/tmp/" + System.nanoTime() + ".uuidmap")) {
+
+			assertEquals("Invalid get() result", -1L, map.get(newUuid()));
+			assertEquals("Invalid get() result", -1L, map.get("unknown"));
+			assertEquals("Invalid get() result", -1L, map.get(null));
+
+			map.put(newUuid(), 1L);
+			map.put("other", 2L);
+
+			assertEquals("Invalid get() result", -1L, map.get(newUuid()));
+			assertEquals("Invalid get() result", -1L, map.get("unknown"));
+
+		} catch (Exception ex) {
+
+			ex.printStackTrace();
+			fail("Unexpected exception.");
+		}
+	}
+
+	@Test
+	public void testExactKeys() {
+
+		try (final FileBasedUuidLongMap map = new FileBasedUuidLongMap("/tmp/" + System.nanoTime() + ".uuidmap")) {
+
+			final String uuid = newUuid();
+
+			// keys that are not lowercase hex uuids are compared exactly
+			map.put("node-1", 1L);
+			map.put("node-2", 2L);
+			map.put(uuid, 3L);
+			map.put(uuid.toUpperCase(), 4L);
+
+			assertEquals("Invalid value in map", 1L, map.get("node-1"));
+			assertEquals("Invalid value in map", 2L, map.get("node-2"));
+			assertEquals("Invalid value in map", 3L, map.get(uuid));
+			assertEquals("Invalid value in map", 4L, map.get(uuid.toUpperCase()));
+			assertEquals("Invalid get() result", -1L, map.get("NODE-1"));
+			assertEquals("Invalid size() result", 4, map.size());
+
+		} catch (Exception ex) {
+
+			ex.printStackTrace();
+			fail("Unexpected exception.");
+		}
+	}
+
+	private String newUuid() {
+		return UUID.randomUUID().toString().replace("-", "");
+	}
+}
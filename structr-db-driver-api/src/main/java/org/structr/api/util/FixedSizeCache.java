@@ -18,61 +18,491 @@
  */
 package org.structr.api.util;
 
-import java.util.Queue;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiConsumer;
+import java.util.function.ToLongFunction;
 
 /**
+ * A size-bounded concurrent cache with segmented LRU eviction.
+ *
+ * New entries are admitted into a probationary segment and are promoted
+ * into the protected segment on their first hit. Eviction always takes
+ * the least recently used probationary entry first, so a single large
+ * scan of one-time keys cannot push frequently used keys out of the
+ * cache. Lookups are lock-free; recency updates are skipped when the
+ * eviction lock is contended, which only makes the ordering approximate.
+ *
+ * Hit, miss and eviction counts are recorded for every cache and can be
+ * queried per instance or, for named caches, via {@link #getCacheStatistics()}.
+ *
+ * Optionally, a weigher can be set to additionally limit the total weight
+ * of all entries, e.g. for caches that hold values of very different sizes.
  *
  * @author Christian Morgner
  */
 public class FixedSizeCache<K, V> {
 
-	private final ConcurrentHashMap<K, V> cache = new ConcurrentHashMap<>(10000);
-	private final Queue<K> keyQueue             = new ConcurrentLinkedQueue<>();
-	private long maxSize                        = 10000;
+	private static final Map<String, FixedSizeCache> namedCaches = new ConcurrentHashMap<>();
+	private static final double PROTECTED_RATIO                  = 0.8;
+
+	private final ConcurrentHashMap<K, Entry<K, V>> cache = new ConcurrentHashMap<>(10000);
+	private final ReentrantLock lock                      = new ReentrantLock();
+	private final Segment<K, V> probation                 = new Segment<>();
+	private final Segment<K, V> protect                   = new Segment<>();
+	private final LongAdder hits                          = new LongAdder();
+	private final LongAdder misses                        = new LongAdder();
+	private final LongAdder evictions                     = new LongAdder();
+	private BiConsumer<K, V> evictionListener             = null;
+	private ToLongFunction<V> weigher                     = null;
+	private long maxWeight                                = Long.MAX_VALUE;
+	private long weight                                   = 0L;
+	private String name                                   = null;
+	private long maxProtectedSize                         = 8000;
+	private long maxSize                                  = 10000;
 
 	public FixedSizeCache(final long maxSize) {
-		this.maxSize = maxSize;
+
+		this.maxSize          = Math.max(1, maxSize);
+		this.maxProtectedSize = (long)(this.maxSize * PROTECTED_RATIO);
+	}
+
+	/**
+	 * Creates a new cache and registers it under the given name so its
+	 * statistics can be queried via {@link #getCacheStatistics()}.
+	 *
+	 * @param name
+	 * @param maxSize
+	 */
+	public FixedSizeCache(final String name, final long maxSize) {
+
+		this(maxSize);
+
+		this.name = name;
+
+		namedCaches.put(name, this);
 	}
 
 	public void put(final K key, final V value) {
 
-		// only check size restriction if the
-		// put operation does not replace an
-		// existing element
-		if (cache.put(key, value) == null) {
+		final Entry<K, V> newEntry = new Entry<>(key, value);
+		final Entry<K, V> existing = cache.putIfAbsent(key, newEntry);
 
-			// check size
-			if (cache.size() > maxSize) {
+		if (existing != null) {
 
-				// remove eldest entry (head of queue)
-				final K keyToRemove = keyQueue.poll();
-				if (keyToRemove != null) {
+			// replace value, keep position
+			existing.value = value;
 
-					cache.remove(keyToRemove);
-				}
+			if (weigher != null) {
+				reweigh(existing);
 			}
 
-			keyQueue.add(key);
+			touch(existing);
+
+			return;
 		}
+
+		link(newEntry);
+	}
+
+	/**
+	 * Stores the given value only if no value is present for the given key.
+	 *
+	 * @param key
+	 * @param value
+	 * @return the existing value, or null if the given value was stored
+	 */
+	public V putIfAbsent(final K key, final V value) {
+
+		final Entry<K, V> newEntry = new Entry<>(key, value);
+		final Entry<K, V> existing = cache.putIfAbsent(key, newEntry);
+
+		if (existing != null) {
+
+			touch(existing);
+
+			return existing.value;
+		}
+
+		link(newEntry);
+
+		return null;
 	}
 
 	public V get(final K key) {
-		return cache.get(key);
+
+		final Entry<K, V> entry = cache.get(key);
+		if (entry != null) {
+
+			hits.increment();
+			touch(entry);
+
+			return entry.value;
+		}
+
+		misses.increment();
+
+		return null;
 	}
 
-	public void remove(final K key) {
-		cache.remove(key);
-		keyQueue.remove(key);
+	public V remove(final K key) {
+
+		final Entry<K, V> entry = cache.remove(key);
+		if (entry != null) {
+
+			lock.lock();
+			try {
+
+				unlink(entry);
+
+			} finally {
+				lock.unlock();
+			}
+
+			return entry.value;
+		}
+
+		return null;
 	}
 
 	public void clear() {
-		cache.clear();
-		keyQueue.clear();
+
+		lock.lock();
+		try {
+
+			cache.clear();
+			probation.clear();
+			protect.clear();
+
+			weight = 0L;
+
+		} finally {
+			lock.unlock();
+		}
 	}
 
 	public int size() {
 		return cache.size();
 	}
+
+	/**
+	 * Sets a listener that is notified of every entry that is evicted
+	 * because of the size restriction. The listener is called while the
+	 * eviction lock is held, so it must not access this cache.
+	 *
+	 * @param evictionListener
+	 */
+	public void setEvictionListener(final BiConsumer<K, V> evictionListener) {
+		this.evictionListener = evictionListener;
+	}
+
+	/**
+	 * Sets a weigher and limits the total weight of all entries to the
+	 * given value, in addition to the size restriction. Must be called
+	 * before the cache is used.
+	 *
+	 * @param weigher
+	 * @param maxWeight
+	 */
+	public void setWeigher(final ToLongFunction<V> weigher, final long maxWeight) {
+
+		this.weigher   = weigher;
+		this.maxWeight = Math.max(1, maxWeight);
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public long getWeight() {
+		return weight;
+	}
+
+	public long getMaxSize() {
+		return maxSize;
+	}
+
+	public long getHitCount() {
+		return hits.sum();
+	}
+
+	public long getMissCount() {
+		return misses.sum();
+	}
+
+	public long getEvictionCount() {
+		return evictions.sum();
+	}
+
+	public double getHitRatio() {
+
+		final long hitCount   = hits.sum();
+		final long totalCount = hitCount + misses.sum();
+
+		if (totalCount == 0) {
+			return 0.0;
+		}
+
+		return (double)hitCount / (double)totalCount;
+	}
+
+	public void resetStatistics() {
+
+		hits.reset();
+		misses.reset();
+		evictions.reset();
+	}
+
+	public Map<String, Object> getStatistics() {
+
+		final Map<String, Object> stats = new LinkedHashMap<>();
+
+		stats.put("size",      size());
+		stats.put("maxSize",   maxSize);
+		stats.put("hits",      getHitCount());
+		stats.put("misses",    getMissCount());
+		stats.put("evictions", getEvictionCount());
+		stats.put("hitRatio",  getHitRatio());
+
+		if (weigher != null) {
+
+			stats.put("weight",    getWeight());
+			stats.put("maxWeight", maxWeight);
+		}
+
+		return stats;
+	}
+
+	/**
+	 * Returns the statistics of all named caches, sorted by name.
+	 *
+	 * @return a map of cache name to statistics
+	 */
+	public static Map<String, Map<String, Object>> getCacheStatistics() {
+
+		final Map<String, Map<String, Object>> result = new TreeMap<>();
+
+		for (final FixedSizeCache cache : namedCaches.values()) {
+			result.put(cache.getName(), cache.getStatistics());
+		}
+
+		return result;
+	}
+
+	// ----- private methods -----
+	private void link(final Entry<K, V> newEntry) {
+
+		lock.lock();
+		try {
+
+			// entry may have been removed concurrently
+			if (cache.get(newEntry.key) == newEntry) {
+
+				probation.addLast(newEntry);
+
+				if (weigher != null) {
+					reweigh(newEntry);
+				}
+
+				evictIfNecessary();
+			}
+
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private void reweigh(final Entry<K, V> entry) {
+
+		lock.lock();
+		try {
+
+			if (entry.segment != null) {
+
+				final long newWeight = Math.max(0, weigher.applyAsLong(entry.value));
+
+				weight      += newWeight - entry.weight;
+				entry.weight = newWeight;
+
+				evictIfNecessary();
+			}
+
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private void touch(final Entry<K, V> entry) {
+
+		// recency is best-effort, never block readers
+		if (lock.tryLock()) {
+
+			try {
+
+				if (entry.segment == probation) {
+
+					// first hit: promote into protected segment
+					probation.unlink(entry);
+					protect.addLast(entry);
+
+					// demote least recently used protected entries
+					while (protect.size > maxProtectedSize) {
+
+						final Entry<K, V> demoted = protect.removeFirst();
+						if (demoted != null) {
+
+							probation.addLast(demoted);
+						}
+					}
+
+				} else if (entry.segment == protect) {
+
+					protect.unlink(entry);
+					protect.addLast(entry);
+				}
+
+			} finally {
+				lock.unlock();
+			}
+		}
+	}
+
+	private void evictIfNecessary() {
+
+		while (probation.size + protect.size > maxSize || weight > maxWeight) {
+
+			Entry<K, V> victim = probation.removeFirst();
+			if (victim == null) {
+
+				victim = protect.removeFirst();
+			}
+
+			if (victim == null) {
+				break;
+			}
+
+			weight -= victim.weight;
+
+			if (cache.remove(victim.key, victim)) {
+
+				evictions.increment();
+
+				if (evictionListener != null) {
+					evictionListener.accept(victim.key, victim.value);
+				}
+			}
+		}
+	}
+
+	private void unlink(final Entry<K, V> entry) {
+
+		if (entry.segment != null) {
+
+			entry.segment.unlink(entry);
+			weight -= entry.weight;
+		}
+	}
+
+	// ----- nested classes -----
+	private static class Entry<K, V> {
+
+		private final K key;
+		private volatile V value;
+		private Segment<K, V> segment = null;
+		private Entry<K, V> prev      = null;
+		private Entry<K, V> next      = null;
+		private long weight           = 0L;
+
+		public Entry(final K key, final V value) {
+
+			this.key   = key;
+			this.value = value;
+		}
+	}
+
+	/**
+	 * Intrusive doubly-linked list, head is the least recently used entry.
+	 * Must only be accessed while holding the cache lock.
+	 */
+	private static class Segment<K, V> {
+
+		private Entry<K, V> head = null;
+		private Entry<K, V> tail = null;
+		private long size        = 0;
+
+		public void addLast(final Entry<K, V> entry) {
+
+			entry.segment = this;
+			entry.prev    = tail;
+			entry.next    = null;
+
+			if (tail != null) {
+				tail.next = entry;
+			} else {
+				head = entry;
+			}
+
+			tail = entry;
+			size++;
+		}
+
+		public Entry<K, V> removeFirst() {
+
+			final Entry<K, V> first = head;
+			if (first != null) {
+
+				unlink(first);
+			}
+
+			return first;
+		}
+
+		public void unlink(final Entry<K, V> entry) {
+
+			if (entry.segment != this) {
+				return;
+			}
+
+			if (entry.prev != null) {
+				entry.prev.next = entry.next;
+			} else {
+				head = entry.next;
+			}
+
+			if (entry.next != null) {
+				entry.next.prev = entry.prev;
+			} else {
+				tail = entry.prev;
+			}
+
+			entry.segment = null;
+			entry.prev    = null;
+			entry.next    = null;
+
+			size--;
+		}
+
+		public void clear() {
+
+			Entry<K, V> current = head;
+			while (current != null) {
+
+				final Entry<K, V> next = current.next;
+
+				current.segment = null;
+				current.prev    = null;
+				current.next    = null;
+
+				current = next;
+			}
+
+			head = null;
+			tail = null;
+			size = 0;
+		}
+	}
 }
@@ -38,4 +38,104 @@ public class FixedSizeCacheTest {
 		}
 
 	}
+
+	@org.junit.Test
+	public void testScanResistance() {
+
+		final FixedSizeCache<Long, Long> test = new FixedSizeCache<>(10);
+
+		// insert and access a small hot set
+		for (int i=0; i<5; i++) {
+
+			final Long value = Long.valueOf(i);
+			test.put(value, value);
+			test.get(value);
+		}
+
+		// scan a large number of one-time keys
+		for (int i=100; i<1000; i++) {
+
+			final Long value = Long.valueOf(i);
+			test.put(value, value);
+		}
+
+		Assert.assertEquals("Invalid FixedSizeCache size", 10, test.size());
+
+		// check that the hot set survived the scan
+		for (int i=0; i<5; i++) {
+
+			final Long value = Long.valueOf(i);
+			Assert.assertEquals("Invalid FixedSizeCache contents", test.get(value), value);
+		}
+	}
+
+	@org.junit.Test
+	public void testStatistics() {
+
+		final FixedSizeCache<Long, Long> test = new FixedSizeCache<>("test", 10);
+
+		for (int i=0; i<20; i++) {
+
+			final Long value = Long.valueOf(i);
+			test.put(value, value);
+		}
+
+		test.get(0L);
+		test.get(19L);
+		test.get(18L);
+
+		Assert.assertEquals("Invalid FixedSizeCache hit count",      2, test.getHitCount());
+		Assert.assertEquals("Invalid FixedSizeCache miss count",     1, test.getMissCount());
+		Assert.assertEquals("Invalid FixedSizeCache eviction count", 10, test.getEvictionCount());
+
+		test.remove(19L);
+
+		Assert.assertEquals("Invalid FixedSizeCache size", 9, test.size());
+		Assert.assertNull("Invalid FixedSizeCache contents", test.get(19L));
+
+		Assert.assertTrue("Named cache not registered", FixedSizeCache.getCacheStatistics().containsKey("test"));
+	}
+
+	@org.junit.Test
+	public void testWeightLimit() {
+
+		final FixedSizeCache<Long, String> test = new FixedSizeCache<>(100);
+
+		test.setWeigher(String::length, 100);
+
+		for (int i=0; i<10; i++) {
+
+			test.put(Long.valueOf(i), "0123456789");
+		}
+
+		Assert.assertEquals("Invalid FixedSizeCache size",   10, test.size());
+		Assert.assertEquals("Invalid FixedSizeCache weight", 100, test.getWeight());
+
+		// a heavier value must evict the least recently used entries
+		test.put(10L, "01234567890123456789");
+
+		Assert.assertEquals("Invalid FixedSizeCache size",   9, test.size());
+		Assert.assertEquals("Invalid FixedSizeCache weight", 100, test.getWeight());
+		Assert.assertNull("Invalid FixedSizeCache contents", test.get(0L));
+		Assert.assertNull("Invalid FixedSizeCache contents", test.get(1L));
+
+		// replacing a value must update the weight
+		test.put(10L, "0");
+
+		Assert.assertEquals("Invalid FixedSizeCache weight", 81, test.getWeight());
+
+		test.remove(10L);
+
+		Assert.assertEquals("Invalid FixedSizeCache weight", 80, test.getWeight());
+	}
+
+	@org.junit.Test
+	public void testPutIfAbsent() {
+
+		final FixedSizeCache<Long, Long> test = new FixedSizeCache<>(10);
+
+		Assert.assertNull("Invalid putIfAbsent result", test.putIfAbsent(1L, 1L));
+		Assert.assertEquals("Invalid putIfAbsent result", Long.valueOf(1L), test.putIfAbsent(1L, 2L));
+		Assert.assertEquals("Invalid FixedSizeCache contents", Long.valueOf(1L), test.get(1L));
+	}
 }
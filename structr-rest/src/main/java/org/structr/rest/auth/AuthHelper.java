@@ -166,7 +166,7 @@ public class AuthHelper {
 	 * @return principal
 	 */
 	public static Principal getPrincipalForSessionId(final String sessionId) {
-		return getPrincipalForCredential(Principal.sessionIds, new String[]{ sessionId });
+		return SessionRegistry.getInstance().getPrincipal(sessionId);
 	}
 
 	public static void doLogin(final HttpServletRequest request, final Principal user) throws FrameworkException {
@@ -19,7 +19,6 @@
 package org.structr.rest.auth;
 
 import java.util.Date;
-import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.servlet.http.HttpServletRequest;
@@ -27,9 +26,6 @@ import javax.servlet.http.HttpSession;
 import org.eclipse.jetty.server.session.HashSessionManager;
 import org.structr.common.error.FrameworkException;
 import org.structr.core.Services;
-import org.structr.core.app.App;
-import org.structr.core.app.Query;
-import org.structr.core.app.StructrApp;
 import org.structr.core.entity.Principal;
 import org.structr.rest.service.HttpService;
 
@@ -104,22 +100,13 @@ public class SessionHelper {
 	 */
 	public static void clearSession(final String sessionId) {
 
-		final App app = StructrApp.getInstance();
-		final Query<Principal> query = app.nodeQuery(Principal.class).and(Principal.sessionIds, new String[]{ sessionId });
+		// login makes sure that a session ID belongs to a single principal only
+		final Principal principal = SessionRegistry.getInstance().getPrincipal(sessionId);
 
-		try {
-			List<Principal> principals = query.getAsList();
-
-			for (Principal p : principals) {
-
-				p.removeSessionId(sessionId);
-
-			}
+		if (principal != null) {
 
-		} catch (FrameworkException fex) {
+			principal.removeSessionId(sessionId);
 
-			logger.log(Level.WARNING, "Error while removing sessionId " + sessionId + " from all principals", fex);
-			fex.printStackTrace();
 		}
 
 	}
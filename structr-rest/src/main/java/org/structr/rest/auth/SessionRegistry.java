@@ -0,0 +1,210 @@
+/**
+ * Copyright (C) 2010-2016 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.rest.auth;
+
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.apache.commons.lang3.ArrayUtils;
+import org.structr.api.util.FixedSizeCache;
+import org.structr.common.SecurityContext;
+import org.structr.common.error.FrameworkException;
+import org.structr.core.GraphObject;
+import org.structr.core.Services;
+import org.structr.core.StructrTransactionListener;
+import org.structr.core.TransactionSource;
+import org.structr.core.app.App;
+import org.structr.core.app.StructrApp;
+import org.structr.core.entity.Principal;
+import org.structr.core.graph.ModificationEvent;
+import org.structr.core.graph.TransactionCommand;
+import org.structr.core.graph.Tx;
+
+/**
+ * Maps session IDs to the UUID of the principal that is logged in with
+ * the session, so that authenticating a request does not need an index
+ * query on the sessionIds property.
+ *
+ * Entries are created by lookups and updated after every transaction
+ * that changes the session IDs of a principal. A cached principal is
+ * only returned if it still has the session ID, so changes that are not
+ * committed yet are never hidden by the registry. Results are not stored
+ * while the current transaction has modifications of its own, or if a
+ * transaction that changed session IDs has been committed during the
+ * lookup. Unknown session IDs are not cached, they would evict valid
+ * entries and could hide session IDs that are stored without a
+ * modification event, e.g. by an import.
+ *
+ *
+ */
+public class SessionRegistry implements StructrTransactionListener {
+
+	private static final Logger logger      = Logger.getLogger(SessionRegistry.class.getName());
+	private static final Object lock        = new Object();
+	private static SessionRegistry instance = null;
+
+	private final AtomicLong generation               = new AtomicLong(0L);
+	private FixedSizeCache<String, String> principals = null;
+
+	private SessionRegistry() {
+
+		principals = new FixedSizeCache<>("Session cache", Services.parseInt(StructrApp.getConfigurationValue(Services.APPLICATION_SESSION_CACHE_SIZE), 100000));
+	}
+
+	public static SessionRegistry getInstance() {
+
+		synchronized (lock) {
+
+			if (instance == null) {
+
+				instance = new SessionRegistry();
+
+				TransactionCommand.registerTransactionListener(instance);
+			}
+		}
+
+		return instance;
+	}
+
+	/**
+	 * Returns the principal that is logged in with the given session ID,
+	 * or null. Must be called in a transaction.
+	 *
+	 * @param sessionId
+	 * @return the principal or null
+	 */
+	public Principal getPrincipal(final String sessionId) {
+
+		if (sessionId == null) {
+			return null;
+		}
+
+		final App app               = StructrApp.getInstance();
+		final String principalId    = principals.get(sessionId);
+		final long generationBefore = generation.get();
+
+		try {
+
+			if (principalId != null) {
+
+				final Principal principal = app.get(Principal.class, principalId);
+				if (principal != null && ArrayUtils.contains(principal.getProperty(Principal.sessionIds), sessionId)) {
+
+					return principal;
+				}
+			}
+
+			final Principal principal = app.nodeQuery(Principal.class).and(Principal.sessionIds, new String[]{ sessionId }).getFirst();
+
+			// don't store results that depend on uncommitted or concurrently committed changes
+			if (principal != null && !TransactionCommand.hasModifications() && generation.get() == generationBefore) {
+
+				principals.put(sessionId, principal.getUuid());
+			}
+
+			return principal;
+
+		} catch (FrameworkException fex) {
+
+			logger.log(Level.WARNING, "Error while searching for principal", fex);
+		}
+
+		return null;
+	}
+
+	// ----- interface StructrTransactionListener -----
+	@Override
+	public void beforeCommit(final SecurityContext securityContext, final Collection<ModificationEvent> modificationEvents, final TransactionSource source) {
+	}
+
+	@Override
+	public void afterCommit(final SecurityContext securityContext, final Collection<ModificationEvent> modificationEvents, final TransactionSource source) {
+
+		boolean hasSessionChanges = false;
+
+		for (final ModificationEvent event : modificationEvents) {
+
+			if (isSessionChange(event)) {
+
+				hasSessionChanges = true;
+				break;
+			}
+		}
+
+		if (!hasSessionChanges) {
+			return;
+		}
+
+		// invalidate running lookups before the new session IDs are stored
+		generation.incrementAndGet();
+
+		try (final Tx tx = StructrApp.getInstance().tx()) {
+
+			for (final ModificationEvent event : modificationEvents) {
+
+				if (isSessionChange(event)) {
+
+					final String[] previousIds = event.getRemovedProperties().get(Principal.sessionIds);
+					if (previousIds != null) {
+
+						for (final String sessionId : previousIds) {
+							principals.remove(sessionId);
+						}
+					}
+
+					if (!event.isDeleted()) {
+
+						final GraphObject principal = event.getGraphObject();
+						final String[] sessionIds   = principal.getProperty(Principal.sessionIds);
+
+						if (sessionIds != null) {
+
+							for (final String sessionId : sessionIds) {
+								principals.put(sessionId, principal.getUuid());
+							}
+						}
+					}
+				}
+			}
+
+			tx.success();
+
+		} catch (Throwable t) {
+
+			logger.log(Level.WARNING, "Unable to update session registry, clearing it: {0}", t.getMessage());
+
+			principals.clear();
+		}
+	}
+
+	// ----- private methods -----
+	private boolean isSessionChange(final ModificationEvent event) {
+
+		if (event.isNode() && event.getGraphObject() instanceof Principal) {
+
+			return event.isDeleted()
+				|| event.getRemovedProperties().containsKey(Principal.sessionIds)
+				|| event.getModifiedProperties().containsKey(Principal.sessionIds)
+				|| event.getNewProperties().containsKey(Principal.sessionIds);
+		}
+
+		return false;
+	}
+}
@@ -25,10 +25,15 @@ import java.util.Map;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import javax.servlet.http.HttpServletRequest;
+import org.structr.agent.AgentService;
+import org.structr.api.util.FixedSizeCache;
+import org.structr.common.AccessPathCache;
 import org.structr.common.SecurityContext;
 import org.structr.common.error.FrameworkException;
 import org.structr.core.GraphObjectMap;
 import org.structr.core.Result;
+import org.structr.core.Services;
+import org.structr.core.graph.Factory;
 import org.structr.core.property.GenericProperty;
 import org.structr.core.property.PropertyKey;
 import org.structr.core.property.StringProperty;
@@ -97,6 +102,16 @@ public class EnvResource extends Resource {
 
 		info.setProperty(new StringProperty("classPath"), classPath);
 
+		info.setProperty(new GenericProperty("caches"), FixedSizeCache.getCacheStatistics());
+		info.setProperty(new GenericProperty("accessPathCache"), AccessPathCache.getStatistics());
+		info.setProperty(new GenericProperty("instantiation"), Factory.getInstantiationStatistics());
+
+		final AgentService agentService = Services.getInstance().getService(AgentService.class);
+		if (agentService != null) {
+
+			info.setProperty(new GenericProperty("agents"), agentService.getStatistics());
+		}
+
 		resultList.add(info);
 
 		return new Result(resultList, resultList.size(), false, false);
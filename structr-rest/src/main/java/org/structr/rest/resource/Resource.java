@@ -20,6 +20,8 @@ package org.structr.rest.resource;
 
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -47,10 +49,12 @@ import org.structr.core.graph.NodeFactory;
 import org.structr.core.graph.search.SearchCommand;
 import org.structr.core.property.PropertyKey;
 import org.structr.core.property.PropertyMap;
+import org.structr.core.property.RelationProperty;
 import org.structr.rest.RestMethodResult;
 import org.structr.rest.exception.IllegalPathException;
 import org.structr.rest.exception.NoResultsException;
 import org.structr.rest.exception.NotAllowedException;
+import org.structr.rest.exception.NotFoundException;
 import org.structr.rest.servlet.JsonRestServlet;
 import org.structr.schema.ConfigurationProvider;
 
@@ -141,33 +145,22 @@ public abstract class Resource {
 
 	public RestMethodResult doPut(final Map<String, Object> propertySet) throws FrameworkException {
 
-		final Result<GraphObject> result = doGet(null, false, NodeFactory.DEFAULT_PAGE_SIZE, NodeFactory.DEFAULT_PAGE, null);
-		final List<GraphObject> results  = result.getResults();
-
-		if (results != null && !results.isEmpty()) {
-
-			final Class type = results.get(0).getClass();
-
-			PropertyMap properties = PropertyMap.inputTypeToJavaType(securityContext, type, propertySet);
-
-			for (final GraphObject obj : results) {
-
-				if (obj.isNode() && !obj.getSyncNode().isGranted(Permission.write, securityContext)) {
-					throw new FrameworkException(403, "Modification not permitted.");
-				}
-
-				for (final Entry<PropertyKey, Object> attr : properties.entrySet()) {
-
-					obj.setProperty(attr.getKey(), attr.getValue());
-				}
-
-			}
-
-			return new RestMethodResult(HttpServletResponse.SC_OK);
+		return modifyResults(propertySet, false);
+	}
 
-		}
+	/**
+	 * Modifies the objects of this resource like PUT, except that the
+	 * values of relationship collections can be maps with the elements to
+	 * "add" and/or "remove", which are applied incrementally instead of
+	 * replacing the whole collection.
+	 *
+	 * @param propertySet
+	 * @return the result
+	 * @throws FrameworkException
+	 */
+	public RestMethodResult doPatch(final Map<String, Object> propertySet) throws FrameworkException {
 
-		throw new IllegalPathException(getResourceSignature() + " can only be applied to a non-empty resource");
+		return modifyResults(propertySet, true);
 	}
 
 	/**
@@ -352,7 +345,91 @@ public abstract class Resource {
 		return -1;
 	}
 
+	/**
+	 * Adds and removes the elements given in the "add" and "remove"
+	 * entries of the given map to / from the given relationship
+	 * collection, touching only the affected relationships. Elements can
+	 * be given as UUIDs or as objects with an id.
+	 *
+	 * @param obj
+	 * @param relationProperty
+	 * @param operations
+	 * @throws FrameworkException
+	 */
+	protected void patchCollection(final GraphObject obj, final RelationProperty relationProperty, final Map<String, Object> operations) throws FrameworkException {
+
+		for (final String operation : operations.keySet()) {
+
+			if (!"add".equals(operation) && !"remove".equals(operation)) {
+				throw new FrameworkException(422, "Invalid collection operation " + operation + ", expected add or remove");
+			}
+		}
+
+		for (final GraphObject element : getCollectionElements(relationProperty, operations.get("remove"))) {
+			relationProperty.removeSingleElement(securityContext, obj, element);
+		}
+
+		for (final GraphObject element : getCollectionElements(relationProperty, operations.get("add"))) {
+			relationProperty.addSingleElement(securityContext, obj, element);
+		}
+	}
+
 	// ----- private methods -----
+	private RestMethodResult modifyResults(final Map<String, Object> propertySet, final boolean patch) throws FrameworkException {
+
+		final Result<GraphObject> result = doGet(null, false, NodeFactory.DEFAULT_PAGE_SIZE, NodeFactory.DEFAULT_PAGE, null);
+		final List<GraphObject> results  = result.getResults();
+
+		if (results != null && !results.isEmpty()) {
+
+			final Class type                                  = results.get(0).getClass();
+			final Map<String, Object> values                  = new LinkedHashMap<>(propertySet);
+			final Map<RelationProperty, Map> collectionValues = new LinkedHashMap<>();
+
+			if (patch) {
+
+				for (final Iterator<Entry<String, Object>> it = values.entrySet().iterator(); it.hasNext();) {
+
+					final Entry<String, Object> entry = it.next();
+					final PropertyKey key             = StructrApp.getConfiguration().getPropertyKeyForJSONName(type, entry.getKey(), false);
+
+					if (key instanceof RelationProperty && key.isCollection() && entry.getValue() instanceof Map) {
+
+						if (key.isReadOnly()) {
+							throw new NotAllowedException("Property " + key.jsonName() + " is read-only");
+						}
+
+						collectionValues.put((RelationProperty)key, (Map)entry.getValue());
+						it.remove();
+					}
+				}
+			}
+
+			final PropertyMap properties = PropertyMap.inputTypeToJavaType(securityContext, type, values);
+
+			for (final GraphObject obj : results) {
+
+				if (obj.isNode() && !obj.getSyncNode().isGranted(Permission.write, securityContext)) {
+					throw new FrameworkException(403, "Modification not permitted.");
+				}
+
+				for (final Entry<PropertyKey, Object> attr : properties.entrySet()) {
+
+					obj.setProperty(attr.getKey(), attr.getValue());
+				}
+
+				for (final Entry<RelationProperty, Map> entry : collectionValues.entrySet()) {
+
+					patchCollection(obj, entry.getKey(), entry.getValue());
+				}
+			}
+
+			return new RestMethodResult(HttpServletResponse.SC_OK);
+		}
+
+		throw new IllegalPathException(getResourceSignature() + " can only be applied to a non-empty resource");
+	}
+
 	/**
 	 * Returns the first part of the given source string when it contains a "."
 	 *
@@ -370,6 +447,36 @@ public abstract class Resource {
 		return source;
 	}
 
+	private List<GraphObject> getCollectionElements(final RelationProperty relationProperty, final Object value) throws FrameworkException {
+
+		final List<GraphObject> elements = new LinkedList<>();
+
+		if (value != null) {
+
+			final App app          = StructrApp.getInstance(securityContext);
+			final Class targetType = relationProperty.getTargetType();
+
+			for (final Object item : value instanceof Collection ? (Collection)value : Collections.singletonList(value)) {
+
+				final Object id = item instanceof Map ? ((Map)item).get("id") : item;
+				if (id == null) {
+
+					throw new FrameworkException(422, "Missing id of collection element " + item);
+				}
+
+				final GraphObject element = app.get(id.toString());
+				if (element == null || !targetType.isAssignableFrom(element.getClass())) {
+
+					throw new NotFoundException("Object with id " + id + " and type " + targetType.getSimpleName() + " not found");
+				}
+
+				elements.add(element);
+			}
+		}
+
+		return elements;
+	}
+
 	// ----- nested classes -----
 	private static class PropertyKeyProcessingOrderComparator implements Comparator<PropertyKey> {
 
@@ -37,6 +37,7 @@ import org.structr.api.graph.Node;
 import org.structr.api.Predicate;
 
 import org.structr.core.property.PropertyKey;
+import org.structr.common.Permission;
 import org.structr.common.SecurityContext;
 import org.structr.common.error.FrameworkException;
 import org.structr.core.GraphObject;
@@ -52,6 +53,7 @@ import org.structr.core.graph.NodeInterface;
 import org.structr.core.notion.Notion;
 import org.structr.core.property.RelationProperty;
 import org.structr.rest.RestMethodResult;
+import org.structr.rest.exception.IllegalMethodException;
 import org.structr.rest.exception.IllegalPathException;
 import org.structr.rest.exception.NotFoundException;
 //~--- JDK imports ------------------------------------------------------------
@@ -209,6 +211,34 @@ public class StaticRelationshipResource extends SortableResource {
 		return new RestMethodResult(HttpServletResponse.SC_OK);
 	}
 
+	@Override
+	public RestMethodResult doPatch(final Map<String, Object> propertySet) throws FrameworkException {
+
+		if (propertyKey != null && propertyKey instanceof RelationProperty) {
+
+			final GraphObject sourceEntity = typedIdResource.getEntity();
+			if (sourceEntity != null) {
+
+				if (propertyKey.isReadOnly()) {
+
+					logger.log(Level.INFO, "Read-only property on {1}: {0}", new Object[]{sourceEntity.getClass(), typeResource.getRawType()});
+					return new RestMethodResult(HttpServletResponse.SC_FORBIDDEN);
+				}
+
+				if (sourceEntity.isNode() && !sourceEntity.getSyncNode().isGranted(Permission.write, securityContext)) {
+					throw new FrameworkException(403, "Modification not permitted.");
+				}
+
+				// add and remove single elements without loading the collection
+				patchCollection(sourceEntity, (RelationProperty)propertyKey, propertySet);
+
+				return new RestMethodResult(HttpServletResponse.SC_OK);
+			}
+		}
+
+		throw new IllegalMethodException("PATCH not allowed on " + getResourceSignature());
+	}
+
 	@Override
 	public RestMethodResult doPost(final Map<String, Object> propertySet) throws FrameworkException {
 
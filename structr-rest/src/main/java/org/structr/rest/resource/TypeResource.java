@@ -179,6 +179,7 @@ public class TypeResource extends SortableResource {
 				.pageSize(pageSize)
 				.page(page)
 				.offsetId(offsetId)
+				.lazyResult(virtualType == null && securityContext.hasParameter("ignoreResultCount"))
 				.getResult();
 
 			if (virtualType != null) {
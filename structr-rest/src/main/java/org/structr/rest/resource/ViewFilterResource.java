@@ -95,6 +95,18 @@ public class ViewFilterResource extends WrappingResource {
 		throw new IllegalPathException("POST not allowed on " + getResourceSignature());
 	}
 
+	@Override
+	public RestMethodResult doPatch(Map<String, Object> propertySet) throws FrameworkException {
+
+		if (wrappedResource != null) {
+
+			return wrappedResource.doPatch(propertySet);
+
+		}
+
+		throw new IllegalPathException("PATCH not allowed on " + getResourceSignature());
+	}
+
 	@Override
 	public void configurePropertyView(Value<String> propertyView) {
 
@@ -143,7 +143,7 @@ public abstract class StreamingWriter {
 		}
 
 		// result fields in alphabetical order
-		List<? extends GraphObject> results = result.getResults();
+		List<? extends GraphObject> results = result.isLazy() ? null : result.getResults();
 		Integer page = result.getPage();
 		Integer pageCount = result.getPageCount();
 		Integer pageSize = result.getPageSize();
@@ -179,7 +179,29 @@ public abstract class StreamingWriter {
 			writer.name("result_count").value(resultCount);
 		}
 
-		if (results != null) {
+		if (result.isLazy()) {
+
+			// stream lazy results, elements are instantiated on demand
+			long startTime            = System.currentTimeMillis();
+			String localPropertyView  = propertyView.get(null);
+
+			writer.name(resultKeyName).beginArray();
+
+			for (final Object object : result.getLazyResults()) {
+
+				root.serialize(writer, (GraphObject)object, localPropertyView, 0);
+
+				// check for timeout
+				if (System.currentTimeMillis() > startTime + MAX_SERIALIZATION_TIME) {
+
+					logger.log(Level.SEVERE, "JSON serialization took more than {0} ms, aborted. Please review output view size or adjust timeout.", MAX_SERIALIZATION_TIME);
+					break;
+				}
+			}
+
+			writer.endArray();
+
+		} else if (results != null) {
 
 			if (results.isEmpty()) {
 
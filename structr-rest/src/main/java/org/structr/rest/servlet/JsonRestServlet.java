@@ -95,6 +95,7 @@ public class JsonRestServlet extends HttpServlet implements HttpServiceServlet {
 		commonRequestParameters.add(REQUEST_PARAMETER_SORT_KEY);
 		commonRequestParameters.add(REQUEST_PARAMETER_SORT_ORDER);
 		commonRequestParameters.add("debugLoggingEnabled");
+		commonRequestParameters.add("ignoreResultCount");
 
 		// cross reference here, but these need to be added as well..
 		commonRequestParameters.add(SearchCommand.DISTANCE_SEARCH_KEYWORD);
@@ -151,6 +152,22 @@ public class JsonRestServlet extends HttpServlet implements HttpServiceServlet {
 		this.gson                   = new ThreadLocalGson(config.getOutputNestingDepth());
 	}
 
+	// <editor-fold defaultstate="collapsed" desc="service">
+	@Override
+	protected void service(final HttpServletRequest request, final HttpServletResponse response) throws ServletException, IOException {
+
+		// HttpServlet does not dispatch PATCH requests
+		if ("PATCH".equals(request.getMethod())) {
+
+			doPatch(request, response);
+
+		} else {
+
+			super.service(request, response);
+		}
+	}
+	// </editor-fold>
+
 	// <editor-fold defaultstate="collapsed" desc="DELETE">
 	@Override
 	protected void doDelete(final HttpServletRequest request, final HttpServletResponse response) throws ServletException, IOException {
@@ -562,119 +579,15 @@ public class JsonRestServlet extends HttpServlet implements HttpServiceServlet {
 	@Override
 	protected void doPut(final HttpServletRequest request, final HttpServletResponse response) throws ServletException, IOException {
 
-		final SecurityContext securityContext;
-		final Authenticator authenticator;
-		final Resource resource;
-
-		RestMethodResult result = new RestMethodResult(HttpServletResponse.SC_BAD_REQUEST);
-
-		try {
-
-			// first thing to do!
-			request.setCharacterEncoding("UTF-8");
-			response.setCharacterEncoding("UTF-8");
-			response.setContentType("application/json; charset=utf-8;");
-
-			// isolate request authentication in a transaction
-			try (final Tx tx = StructrApp.getInstance().tx()) {
-				authenticator = config.getAuthenticator();
-				securityContext = authenticator.initializeAndExamineRequest(request, response);
-				tx.success();
-			}
-
-			final App app              = StructrApp.getInstance(securityContext);
-			final String input         = IOUtils.toString(request.getReader());
-			final IJsonInput jsonInput = cleanAndParseJsonString(app, input);
-
-			if (securityContext != null) {
-
-				// isolate resource authentication
-				try (final Tx tx = app.tx()) {
-
-					// evaluate constraint chain
-					resource = ResourceHelper.applyViewTransformation(request, securityContext, ResourceHelper.optimizeNestedResourceChain(ResourceHelper.parsePath(securityContext, request, resourceMap, propertyView)), propertyView);
-					authenticator.checkResourceAccess(securityContext, request, resource.getResourceSignature(), propertyView.get(securityContext));
-					tx.success();
-				}
-
-				// isolate doPut
-				boolean retry = true;
-				while (retry) {
-
-					try (final Tx tx = app.tx()) {
-						result = resource.doPut(convertPropertySetToMap(jsonInput.getJsonInputs().get(0)));
-						tx.success();
-						retry = false;
-
-					} catch (DeadlockException ddex) {
-						retry = true;
-					}
-				}
-
-				// isolate write output
-				try (final Tx tx = app.tx()) {
-					result.commitResponse(gson.get(), response);
-					tx.success();
-				}
-
-			} else {
-
-				// isolate write output
-				try (final Tx tx = app.tx()) {
-					result = new RestMethodResult(HttpServletResponse.SC_FORBIDDEN);
-					result.commitResponse(gson.get(), response);
-					tx.success();
-				}
-
-			}
-
-		} catch (FrameworkException frameworkException) {
-
-			// set status & write JSON output
-			response.setStatus(frameworkException.getStatus());
-			gson.get().toJson(frameworkException, response.getWriter());
-			response.getWriter().println();
-
-		} catch (JsonSyntaxException jsex) {
-
-			logger.log(Level.WARNING, "PUT: Invalid JSON syntax", jsex.getMessage());
-
-			int code = HttpServletResponse.SC_BAD_REQUEST;
-
-			response.setStatus(code);
-			response.getWriter().append(RestMethodResult.jsonError(code, "JsonSyntaxException in PUT: " + jsex.getMessage()));
-
-		} catch (JsonParseException jpex) {
-
-			logger.log(Level.WARNING, "PUT: Unable to parse JSON string", jpex.getMessage());
-
-			int code = HttpServletResponse.SC_BAD_REQUEST;
-
-			response.setStatus(code);
-			response.getWriter().append(RestMethodResult.jsonError(code, "JsonSyntaxException in PUT: " + jpex.getMessage()));
-
-		} catch (Throwable t) {
-
-			logger.log(Level.WARNING, "Exception in PUT", t);
-			t.printStackTrace();
-
-			int code = HttpServletResponse.SC_INTERNAL_SERVER_ERROR;
-
-			response.setStatus(code);
-			response.getWriter().append(RestMethodResult.jsonError(code, "JsonSyntaxException in PUT: " + t.getMessage()));
-
-		} finally {
-
-			try {
-				//response.getWriter().flush();
-				response.getWriter().close();
+		doPutOrPatch(request, response, false);
+	}
 
-			} catch (Throwable t) {
+	// </editor-fold>
 
-				logger.log(Level.WARNING, "Unable to flush and close response: {0}", t.getMessage());
-			}
+	// <editor-fold defaultstate="collapsed" desc="PATCH">
+	protected void doPatch(final HttpServletRequest request, final HttpServletResponse response) throws ServletException, IOException {
 
-		}
+		doPutOrPatch(request, response, true);
 	}
 
 	// </editor-fold>
@@ -803,76 +716,55 @@ public class JsonRestServlet extends HttpServlet implements HttpServiceServlet {
 				sortKey = StructrApp.getConfiguration().getPropertyKeyForDatabaseName(type, sortKeyName, false);
 			}
 
-			// isolate doGet
-			boolean retry = true;
-			while (retry) {
+			if (securityContext.hasParameter("ignoreResultCount")) {
 
+				// lazy results are instantiated while they are serialized, so they must be
+				// written in the transaction that created them, which can't be retried
 				try (final Tx tx = app.tx()) {
-					result = resource.doGet(sortKey, sortDescending, pageSize, page, offsetId);
-					tx.success();
-					retry = false;
-
-				} catch (DeadlockException ddex) {
-					retry = true;
-				}
-			}
 
-			if (returnContent) {
-
-				result.setIsCollection(resource.isCollectionResource());
-				result.setIsPrimitiveArray(resource.isPrimitiveArray());
+					result = resource.doGet(sortKey, sortDescending, pageSize, page, offsetId);
 
-				PagingHelper.addPagingParameter(result, pageSize, page);
+					try {
 
-				// timing..
-				double queryTimeEnd = System.nanoTime();
+						if (returnContent) {
 
-				// store property view that will be used to render the results
-				result.setPropertyView(propertyView.get(securityContext));
+							writeResult(request, response, securityContext, resource, result, pageSize, page, queryTimeStart, baseUrl);
+						}
 
-				// allow resource to modify result set
-				resource.postProcessResultSet(result);
+					} finally {
 
-				DecimalFormat decimalFormat = new DecimalFormat("0.000000000", DecimalFormatSymbols.getInstance(Locale.ENGLISH));
-				result.setQueryTime(decimalFormat.format((queryTimeEnd - queryTimeStart) / 1000000000.0));
+						// release the query result if the output was aborted or not requested
+						result.close();
+					}
 
-				String accept = request.getHeader("Accept");
+					tx.success();
+				}
 
-				if (accept != null && accept.contains("text/html")) {
+			} else {
 
-					final StreamingHtmlWriter htmlStreamer = new StreamingHtmlWriter(this.propertyView, indentJson, config.getOutputNestingDepth());
+				// isolate doGet
+				boolean retry = true;
+				while (retry) {
 
-					// isolate write output
 					try (final Tx tx = app.tx()) {
-
-						response.setContentType("text/html; charset=utf-8;");
-
-						try (final Writer writer = response.getWriter()) {
-
-							htmlStreamer.stream(securityContext, writer, result, baseUrl);
-							writer.append("\n");    // useful newline
-						}
-
+						result = resource.doGet(sortKey, sortDescending, pageSize, page, offsetId);
 						tx.success();
-					}
+						retry = false;
 
-				} else {
+					} catch (DeadlockException ddex) {
+						retry = true;
+					}
+				}
 
-					final StreamingJsonWriter jsonStreamer = new StreamingJsonWriter(this.propertyView, indentJson, config.getOutputNestingDepth());
+				if (returnContent) {
 
 					// isolate write output
 					try (final Tx tx = app.tx()) {
 
-						response.setContentType("application/json; charset=utf-8;");
-						try (final Writer writer = response.getWriter()) {
-
-							jsonStreamer.stream(securityContext, writer, result, baseUrl);
-							writer.append("\n");    // useful newline
-						}
+						writeResult(request, response, securityContext, resource, result, pageSize, page, queryTimeStart, baseUrl);
 
 						tx.success();
 					}
-
 				}
 			}
 
@@ -926,6 +818,173 @@ public class JsonRestServlet extends HttpServlet implements HttpServiceServlet {
 		}
 	}
 
+	private void doPutOrPatch(final HttpServletRequest request, final HttpServletResponse response, final boolean patch) throws ServletException, IOException {
+
+		final String method = patch ? "PATCH" : "PUT";
+		final SecurityContext securityContext;
+		final Authenticator authenticator;
+		final Resource resource;
+
+		RestMethodResult result = new RestMethodResult(HttpServletResponse.SC_BAD_REQUEST);
+
+		try {
+
+			// first thing to do!
+			request.setCharacterEncoding("UTF-8");
+			response.setCharacterEncoding("UTF-8");
+			response.setContentType("application/json; charset=utf-8;");
+
+			// isolate request authentication in a transaction
+			try (final Tx tx = StructrApp.getInstance().tx()) {
+				authenticator = config.getAuthenticator();
+				securityContext = authenticator.initializeAndExamineRequest(request, response);
+				tx.success();
+			}
+
+			final App app              = StructrApp.getInstance(securityContext);
+			final String input         = IOUtils.toString(request.getReader());
+			final IJsonInput jsonInput = cleanAndParseJsonString(app, input);
+
+			if (securityContext != null) {
+
+				// isolate resource authentication
+				try (final Tx tx = app.tx()) {
+
+					// evaluate constraint chain
+					resource = ResourceHelper.applyViewTransformation(request, securityContext, ResourceHelper.optimizeNestedResourceChain(ResourceHelper.parsePath(securityContext, request, resourceMap, propertyView)), propertyView);
+					authenticator.checkResourceAccess(securityContext, request, resource.getResourceSignature(), propertyView.get(securityContext));
+					tx.success();
+				}
+
+				// isolate doPut / doPatch
+				boolean retry = true;
+				while (retry) {
+
+					try (final Tx tx = app.tx()) {
+
+						final Map<String, Object> properties = convertPropertySetToMap(jsonInput.getJsonInputs().get(0));
+
+						result = patch ? resource.doPatch(properties) : resource.doPut(properties);
+						tx.success();
+						retry = false;
+
+					} catch (DeadlockException ddex) {
+						retry = true;
+					}
+				}
+
+				// isolate write output
+				try (final Tx tx = app.tx()) {
+					result.commitResponse(gson.get(), response);
+					tx.success();
+				}
+
+			} else {
+
+				// isolate write output
+				try (final Tx tx = app.tx()) {
+					result = new RestMethodResult(HttpServletResponse.SC_FORBIDDEN);
+					result.commitResponse(gson.get(), response);
+					tx.success();
+				}
+
+			}
+
+		} catch (FrameworkException frameworkException) {
+
+			// set status & write JSON output
+			response.setStatus(frameworkException.getStatus());
+			gson.get().toJson(frameworkException, response.getWriter());
+			response.getWriter().println();
+
+		} catch (JsonSyntaxException jsex) {
+
+			logger.log(Level.WARNING, "{0}: Invalid JSON syntax: {1}", new Object[] { method, jsex.getMessage() });
+
+			int code = HttpServletResponse.SC_BAD_REQUEST;
+
+			response.setStatus(code);
+			response.getWriter().append(RestMethodResult.jsonError(code, "JsonSyntaxException in " + method + ": " + jsex.getMessage()));
+
+		} catch (JsonParseException jpex) {
+
+			logger.log(Level.WARNING, "{0}: Unable to parse JSON string: {1}", new Object[] { method, jpex.getMessage() });
+
+			int code = HttpServletResponse.SC_BAD_REQUEST;
+
+			response.setStatus(code);
+			response.getWriter().append(RestMethodResult.jsonError(code, "JsonSyntaxException in " + method + ": " + jpex.getMessage()));
+
+		} catch (Throwable t) {
+
+			logger.log(Level.WARNING, "Exception in " + method, t);
+
+			int code = HttpServletResponse.SC_INTERNAL_SERVER_ERROR;
+
+			response.setStatus(code);
+			response.getWriter().append(RestMethodResult.jsonError(code, "Exception in " + method + ": " + t.getMessage()));
+
+		} finally {
+
+			try {
+				//response.getWriter().flush();
+				response.getWriter().close();
+
+			} catch (Throwable t) {
+
+				logger.log(Level.WARNING, "Unable to flush and close response: {0}", t.getMessage());
+			}
+
+		}
+	}
+
+	private void writeResult(final HttpServletRequest request, final HttpServletResponse response, final SecurityContext securityContext, final Resource resource, final Result result, final int pageSize, final int page, final double queryTimeStart, final String baseUrl) throws FrameworkException, IOException {
+
+		result.setIsCollection(resource.isCollectionResource());
+		result.setIsPrimitiveArray(resource.isPrimitiveArray());
+
+		PagingHelper.addPagingParameter(result, pageSize, page);
+
+		// timing..
+		double queryTimeEnd = System.nanoTime();
+
+		// store property view that will be used to render the results
+		result.setPropertyView(propertyView.get(securityContext));
+
+		// allow resource to modify result set
+		resource.postProcessResultSet(result);
+
+		DecimalFormat decimalFormat = new DecimalFormat("0.000000000", DecimalFormatSymbols.getInstance(Locale.ENGLISH));
+		result.setQueryTime(decimalFormat.format((queryTimeEnd - queryTimeStart) / 1000000000.0));
+
+		String accept = request.getHeader("Accept");
+
+		if (accept != null && accept.contains("text/html")) {
+
+			final StreamingHtmlWriter htmlStreamer = new StreamingHtmlWriter(this.propertyView, indentJson, config.getOutputNestingDepth());
+
+			response.setContentType("text/html; charset=utf-8;");
+
+			try (final Writer writer = response.getWriter()) {
+
+				htmlStreamer.stream(securityContext, writer, result, baseUrl);
+				writer.append("\n");    // useful newline
+			}
+
+		} else {
+
+			final StreamingJsonWriter jsonStreamer = new StreamingJsonWriter(this.propertyView, indentJson, config.getOutputNestingDepth());
+
+			response.setContentType("application/json; charset=utf-8;");
+
+			try (final Writer writer = response.getWriter()) {
+
+				jsonStreamer.stream(securityContext, writer, result, baseUrl);
+				writer.append("\n");    // useful newline
+			}
+		}
+	}
+
 	// </editor-fold>
 
 	// <editor-fold defaultstate="collapsed" desc="nested classes">
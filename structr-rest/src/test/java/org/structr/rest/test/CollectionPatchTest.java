@@ -0,0 +1,247 @@
+/**
+ * Copyright (C) 2010-2016 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.rest.test;
+
+import com.jayway.restassured.RestAssured;
+import com.jayway.restassured.filter.log.ResponseLoggingFilter;
+import static org.hamcrest.Matchers.equalTo;
+import org.structr.common.AccessMode;
+import org.structr.common.SecurityContext;
+import org.structr.common.error.FrameworkException;
+import org.structr.core.GraphObject;
+import org.structr.core.graph.Tx;
+import org.structr.core.property.RelationProperty;
+import org.structr.rest.common.StructrRestTest;
+import org.structr.rest.entity.TestEight;
+import org.structr.rest.entity.TestSix;
+
+/**
+ * Tests adding and removing single elements of relationship collections,
+ * directly and with PATCH.
+ *
+ *
+ */
+public class CollectionPatchTest extends StructrRestTest {
+
+	public void test01AddRemoveContains() {
+
+		try {
+
+			final TestSix testSix             = createTestNodes(TestSix.class, 1).get(0);
+			final TestEight testEight         = createTestNodes(TestEight.class, 1).get(0);
+			final RelationProperty endNodes   = (RelationProperty)TestSix.testEights;
+			final RelationProperty startNodes = (RelationProperty)TestEight.testSixs;
+
+			try (final Tx tx = app.tx()) {
+
+				assertFalse(endNodes.containsSingleElement(securityContext, testSix, testEight));
+				assertFalse(startNodes.containsSingleElement(securityContext, testEight, testSix));
+
+				endNodes.addSingleElement(securityContext, testSix, testEight);
+
+				assertTrue(endNodes.containsSingleElement(securityContext, testSix, testEight));
+				assertTrue(startNodes.containsSingleElement(securityContext, testEight, testSix));
+
+				// adding an element twice must not create a second relationship
+				endNodes.addSingleElement(securityContext, testSix, testEight);
+				startNodes.addSingleElement(securityContext, testEight, testSix);
+
+				assertEquals(1, testSix.getProperty(TestSix.testEights).size());
+				assertEquals(1, testEight.getProperty(TestEight.testSixs).size());
+
+				tx.success();
+			}
+
+			try (final Tx tx = app.tx()) {
+
+				startNodes.removeSingleElement(securityContext, testEight, testSix);
+
+				assertFalse(endNodes.containsSingleElement(securityContext, testSix, testEight));
+				assertTrue(testSix.getProperty(TestSix.testEights).isEmpty());
+
+				// removing an element that is not contained does nothing
+				endNodes.removeSingleElement(securityContext, testSix, testEight);
+
+				tx.success();
+			}
+
+		} catch (FrameworkException fex) {
+
+			fex.printStackTrace();
+			fail("Unexpected exception");
+		}
+	}
+
+	public void test02ContainsOnlyVisibleElements() {
+
+		try {
+
+			final TestSix testSix               = createTestNodes(TestSix.class, 1).get(0);
+			final TestEight testEight           = createTestNodes(TestEight.class, 1).get(0);
+			final RelationProperty endNodes     = (RelationProperty)TestSix.testEights;
+			final SecurityContext publicContext = SecurityContext.getInstance(null, AccessMode.Frontend);
+
+			try (final Tx tx = app.tx()) {
+
+				testSix.setProperty(GraphObject.visibleToPublicUsers, true);
+				endNodes.addSingleElement(securityContext, testSix, testEight);
+
+				tx.success();
+			}
+
+			try (final Tx tx = app.tx()) {
+
+				// the element is not visible to public users, so it is not in their collection
+				assertTrue(endNodes.containsSingleElement(securityContext, testSix, testEight));
+				assertFalse(endNodes.containsSingleElement(publicContext, testSix, testEight));
+
+				testEight.setProperty(GraphObject.visibleToPublicUsers, true);
+
+				assertTrue(endNodes.containsSingleElement(publicContext, testSix, testEight));
+
+				tx.success();
+			}
+
+		} catch (FrameworkException fex) {
+
+			fex.printStackTrace();
+			fail("Unexpected exception");
+		}
+	}
+
+	public void test03PatchCollectionResource() {
+
+		final String testSix    = createEntity("/test_six", "{ \"name\": \"TestSix\" }");
+		final String testEight1 = createEntity("/test_eight", "{ \"name\": \"TestEight1\" }");
+		final String testEight2 = createEntity("/test_eight", "{ \"name\": \"TestEight2\" }");
+
+		RestAssured
+			.given()
+				.contentType("application/json; charset=UTF-8")
+				.filter(ResponseLoggingFilter.logResponseIfStatusCodeIs(422))
+				.body("{ \"add\": [ \"" + testEight1 + "\", \"" + testEight2 + "\" ] }")
+			.expect()
+				.statusCode(200)
+			.when()
+				.patch("/test_sixs/" + testSix + "/test_eights");
+
+		RestAssured
+			.given()
+				.contentType("application/json; charset=UTF-8")
+			.expect()
+				.statusCode(200)
+				.body("result_count", equalTo(2))
+			.when()
+				.get("/test_sixs/" + testSix + "/test_eights");
+
+		// adding a contained element again and removing another one
+		RestAssured
+			.given()
+				.contentType("application/json; charset=UTF-8")
+				.body("{ \"add\": [ \"" + testEight2 + "\" ], \"remove\": [ { \"id\": \"" + testEight1 + "\" } ] }")
+			.expect()
+				.statusCode(200)
+			.when()
+				.patch("/test_sixs/" + testSix + "/test_eights");
+
+		RestAssured
+			.given()
+				.contentType("application/json; charset=UTF-8")
+			.expect()
+				.statusCode(200)
+				.body("result_count", equalTo(1))
+				.body("result[0].id", equalTo(testEight2))
+			.when()
+				.get("/test_sixs/" + testSix + "/test_eights");
+
+		// invalid operation
+		RestAssured
+			.given()
+				.contentType("application/json; charset=UTF-8")
+				.body("{ \"replace\": [ \"" + testEight1 + "\" ] }")
+			.expect()
+				.statusCode(422)
+			.when()
+				.patch("/test_sixs/" + testSix + "/test_eights");
+
+		// unknown element
+		RestAssured
+			.given()
+				.contentType("application/json; charset=UTF-8")
+				.body("{ \"add\": [ \"" + testSix + "\" ] }")
+			.expect()
+				.statusCode(404)
+			.when()
+				.patch("/test_sixs/" + testSix + "/test_eights");
+	}
+
+	public void test04PatchEntity() {
+
+		final String testSix   = createEntity("/test_six", "{ \"name\": \"TestSix\" }");
+		final String testEight = createEntity("/test_eight", "{ \"name\": \"TestEight\" }");
+
+		// collection maps are applied incrementally, other values are set like with PUT
+		RestAssured
+			.given()
+				.contentType("application/json; charset=UTF-8")
+				.filter(ResponseLoggingFilter.logResponseIfStatusCodeIs(422))
+				.body("{ \"aString\": \"patched\", \"testEights\": { \"add\": [ \"" + testEight + "\" ] } }")
+			.expect()
+				.statusCode(200)
+			.when()
+				.patch("/test_sixs/" + testSix);
+
+		RestAssured
+			.given()
+				.contentType("application/json; charset=UTF-8")
+			.expect()
+				.statusCode(200)
+				.body("result.aString", equalTo("patched"))
+			.when()
+				.get("/test_sixs/" + testSix);
+
+		RestAssured
+			.given()
+				.contentType("application/json; charset=UTF-8")
+			.expect()
+				.statusCode(200)
+				.body("result_count", equalTo(1))
+				.body("result[0].id", equalTo(testEight))
+			.when()
+				.get("/test_sixs/" + testSix + "/test_eights");
+
+		RestAssured
+			.given()
+				.contentType("application/json; charset=UTF-8")
+				.body("{ \"testEights\": { \"remove\": [ \"" + testEight + "\" ] } }")
+			.expect()
+				.statusCode(200)
+			.when()
+				.patch("/test_sixs/" + testSix);
+
+		RestAssured
+			.given()
+				.contentType("application/json; charset=UTF-8")
+			.expect()
+				.statusCode(200)
+				.body("result_count", equalTo(0))
+			.when()
+				.get("/test_sixs/" + testSix + "/test_eights");
+	}
+}
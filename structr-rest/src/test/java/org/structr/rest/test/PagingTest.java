@@ -225,4 +225,48 @@ public class PagingTest extends StructrRestTest {
 	
 	}
 		
+	/**
+	 * Test lazy paging without result count
+	 */
+	public void test02LazyPaging() {
+
+		String resource = "/test_one";
+
+		for (int i=0; i<8; i++) {
+
+			RestAssured.given().contentType("application/json; charset=UTF-8")
+				.filter(ResponseLoggingFilter.logResponseIfStatusCodeIs(422))
+				.body(" { 'name' : 'TestOne-" + i + "', 'anInt' : " + i + " } ")
+				.expect().statusCode(201).when().post(resource);
+		}
+
+		RestAssured
+
+			.given()
+				.contentType("application/json; charset=UTF-8")
+			.expect()
+				.statusCode(200)
+				.body("result",			hasSize(2))
+				.body("result_count",		nullValue())
+
+				.body("result[0]",		isEntity(TestOne.class))
+				.body("result[0].name ",	equalTo("TestOne-4"))
+
+				.body("result[1]",		isEntity(TestOne.class))
+				.body("result[1].name ",	equalTo("TestOne-5"))
+
+			.when()
+				.get(resource + "?sort=name&pageSize=2&page=3&ignoreResultCount=true");
+
+		RestAssured
+
+			.given()
+				.contentType("application/json; charset=UTF-8")
+			.expect()
+				.statusCode(200)
+				.body("result",			hasSize(0))
+
+			.when()
+				.get(resource + "?sort=name&pageSize=2&page=5&ignoreResultCount=true");
+	}
 }
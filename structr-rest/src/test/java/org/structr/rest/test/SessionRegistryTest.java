@@ -0,0 +1,201 @@
+/**
+ * Copyright (C) 2010-2016 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.rest.test;
+
+import java.util.UUID;
+import org.apache.commons.lang3.ArrayUtils;
+import org.structr.common.error.FrameworkException;
+import org.structr.core.entity.Principal;
+import org.structr.core.graph.Tx;
+import org.structr.rest.auth.SessionHelper;
+import org.structr.rest.auth.SessionRegistry;
+import org.structr.rest.common.StructrRestTest;
+import org.structr.rest.entity.TestUser;
+
+/**
+ * Tests that the session registry never returns a principal for a
+ * session ID that has been removed from it.
+ *
+ *
+ */
+public class SessionRegistryTest extends StructrRestTest {
+
+	public void test01UnknownSessionId() {
+
+		final String sessionId = newSessionId();
+
+		try {
+
+			final TestUser user = createTestNodes(TestUser.class, 1).get(0);
+
+			// an unknown session ID must not hide a session ID that is added later
+			assertNull(getPrincipal(sessionId));
+
+			try (final Tx tx = app.tx()) {
+
+				user.addSessionId(sessionId);
+				tx.success();
+			}
+
+			assertEquals(user, getPrincipal(sessionId));
+
+		} catch (FrameworkException fex) {
+
+			fex.printStackTrace();
+			fail("Unexpected exception");
+		}
+	}
+
+	public void test02EvictionOnLogout() {
+
+		final String sessionId = newSessionId();
+
+		try {
+
+			final TestUser user  = createTestNodes(TestUser.class, 1).get(0);
+			final TestUser other = createTestNodes(TestUser.class, 1).get(0);
+
+			try (final Tx tx = app.tx()) {
+
+				user.addSessionId(sessionId);
+				tx.success();
+			}
+
+			assertEquals(user, getPrincipal(sessionId));
+
+			// logout clears the session ID
+			try (final Tx tx = app.tx()) {
+
+				SessionHelper.clearSession(sessionId);
+				tx.success();
+			}
+
+			assertNull(getPrincipal(sessionId));
+
+			// the session ID can be used by another principal afterwards
+			try (final Tx tx = app.tx()) {
+
+				other.addSessionId(sessionId);
+				tx.success();
+			}
+
+			assertEquals(other, getPrincipal(sessionId));
+
+		} catch (FrameworkException fex) {
+
+			fex.printStackTrace();
+			fail("Unexpected exception");
+		}
+	}
+
+	public void test03EvictionOnTimeout() {
+
+		final String timedOut = newSessionId();
+		final String active   = newSessionId();
+
+		try {
+
+			final TestUser user = createTestNodes(TestUser.class, 1).get(0);
+
+			try (final Tx tx = app.tx()) {
+
+				user.addSessionId(timedOut);
+				user.addSessionId(active);
+				tx.success();
+			}
+
+			assertEquals(user, getPrincipal(timedOut));
+			assertEquals(user, getPrincipal(active));
+
+			// a timed out session is cleared when it is used again
+			try (final Tx tx = app.tx()) {
+
+				SessionHelper.clearSession(timedOut);
+				tx.success();
+			}
+
+			assertNull(getPrincipal(timedOut));
+			assertEquals(user, getPrincipal(active));
+
+		} catch (FrameworkException fex) {
+
+			fex.printStackTrace();
+			fail("Unexpected exception");
+		}
+	}
+
+	public void test04EvictionOnClearInvalidSessions() {
+
+		final String first  = newSessionId();
+		final String second = newSessionId();
+
+		try {
+
+			final TestUser user = createTestNodes(TestUser.class, 1).get(0);
+
+			try (final Tx tx = app.tx()) {
+
+				user.addSessionId(first);
+				user.addSessionId(second);
+				tx.success();
+			}
+
+			assertEquals(user, getPrincipal(first));
+			assertEquals(user, getPrincipal(second));
+
+			// neither session exists in the session manager
+			try (final Tx tx = app.tx()) {
+
+				SessionHelper.clearInvalidSessions(user);
+				tx.success();
+			}
+
+			assertNull(getPrincipal(first));
+			assertNull(getPrincipal(second));
+
+			try (final Tx tx = app.tx()) {
+
+				assertTrue(ArrayUtils.isEmpty(user.getProperty(Principal.sessionIds)));
+				tx.success();
+			}
+
+		} catch (FrameworkException fex) {
+
+			fex.printStackTrace();
+			fail("Unexpected exception");
+		}
+	}
+
+	// ----- private methods -----
+	private Principal getPrincipal(final String sessionId) throws FrameworkException {
+
+		try (final Tx tx = app.tx()) {
+
+			final Principal principal = SessionRegistry.getInstance().getPrincipal(sessionId);
+
+			tx.success();
+
+			return principal;
+		}
+	}
+
+	private String newSessionId() {
+		return UUID.randomUUID().toString().replace("-", "");
+	}
+}
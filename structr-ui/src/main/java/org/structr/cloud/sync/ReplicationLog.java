@@ -0,0 +1,595 @@
+/**
+ * Copyright (C) 2010-2016 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.cloud.sync;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only, segmented on-disk log of committed transactions for
+ * replication.
+ *
+ * Every entry has a sequence number, the commit timestamp and a list of
+ * records that identify the modified objects and property keys. The
+ * current state of the objects is read when an entry is replicated, so
+ * entries stay small. Each slave reads the log through its own
+ * {@link Reader} whose position is stored in a cursor file, so unsynced
+ * transactions survive a restart. Segments that have been acknowledged
+ * by all readers can be deleted.
+ *
+ * Entry format: length, CRC32, sequence number, timestamp, records.
+ * Incomplete entries at the end of the log (e.g. after a crash) are
+ * discarded on startup.
+ *
+ *
+ */
+public class ReplicationLog {
+
+	private static final Logger logger      = Logger.getLogger(ReplicationLog.class.getName());
+	private static final long SEGMENT_SIZE  = 16 * 1024 * 1024;
+	private static final int ENTRY_OVERHEAD = 12;
+
+	private final TreeMap<Long, File> segments = new TreeMap<>();
+	private FileOutputStream fileOut           = null;
+	private DataOutputStream out               = null;
+	private File directory                     = null;
+	private boolean fsync                      = false;
+	private long segmentSize                   = 0L;
+	private long nextSequence                  = 0L;
+	private long lastTimestamp                 = 0L;
+
+	public ReplicationLog(final File directory, final boolean fsync) throws IOException {
+
+		this.directory = directory;
+		this.fsync     = fsync;
+
+		directory.mkdirs();
+
+		final File[] files = directory.listFiles((dir, name) -> name.matches("[0-9]+\\.log"));
+		if (files != null) {
+
+			for (final File file : files) {
+				segments.put(Long.valueOf(file.getName().substring(0, file.getName().length() - 4)), file);
+			}
+		}
+
+		recover();
+	}
+
+	/**
+	 * Appends a new entry to the log.
+	 *
+	 * @param timestamp the commit timestamp
+	 * @param records the records of the transaction
+	 * @return the sequence number of the new entry
+	 * @throws IOException
+	 */
+	public synchronized long append(final long timestamp, final List<Record> records) throws IOException {
+
+		final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+		final DataOutputStream data        = new DataOutputStream(buffer);
+		final long sequence                = nextSequence;
+
+		data.writeLong(sequence);
+		data.writeLong(timestamp);
+		data.writeInt(records.size());
+
+		for (final Record record : records) {
+
+			data.writeByte(record.kind);
+			data.writeUTF(record.uuid);
+			data.writeInt(record.keys.size());
+
+			for (final String key : record.keys) {
+				data.writeUTF(key);
+			}
+		}
+
+		final byte[] bytes = buffer.toByteArray();
+		final CRC32 crc    = new CRC32();
+
+		crc.update(bytes);
+
+		if (out == null || segmentSize >= SEGMENT_SIZE) {
+			openSegment(sequence);
+		}
+
+		out.writeInt(bytes.length);
+		out.writeLong(crc.getValue());
+		out.write(bytes);
+		out.flush();
+
+		if (fsync) {
+			fileOut.getChannel().force(false);
+		}
+
+		segmentSize  += ENTRY_OVERHEAD + bytes.length;
+		nextSequence  = sequence + 1;
+		lastTimestamp = timestamp;
+
+		return sequence;
+	}
+
+	/**
+	 * Returns the sequence number of the last entry, or -1 if the log is
+	 * empty.
+	 *
+	 * @return the last sequence number
+	 */
+	public synchronized long getLastSequence() {
+		return nextSequence - 1;
+	}
+
+	public synchronized long getLastTimestamp() {
+		return lastTimestamp;
+	}
+
+	/**
+	 * Opens a reader with the given name, the position of the reader is
+	 * restored from its cursor file if it exists.
+	 *
+	 * @param name
+	 * @return the reader
+	 * @throws IOException
+	 */
+	public Reader openReader(final String name) throws IOException {
+		return new Reader(new File(directory, name.replaceAll("[^a-zA-Z0-9._-]", "_") + ".cursor"));
+	}
+
+	/**
+	 * Deletes all segments that only contain entries up to and including
+	 * the given sequence number. The current segment is never deleted.
+	 *
+	 * @param sequence
+	 */
+	public synchronized void deleteSegmentsUpTo(final long sequence) {
+
+		while (segments.size() > 1) {
+
+			final Map.Entry<Long, File> first = segments.firstEntry();
+			final long nextFirstSequence      = segments.higherKey(first.getKey());
+
+			if (nextFirstSequence - 1 > sequence) {
+				break;
+			}
+
+			if (!first.getValue().delete()) {
+
+				logger.log(Level.WARNING, "Unable to delete replication log segment {0}", first.getValue());
+				break;
+			}
+
+			segments.remove(first.getKey());
+		}
+	}
+
+	public synchronized void close() {
+
+		if (out != null) {
+
+			try {
+				out.close();
+
+			} catch (IOException ioex) {
+				logger.log(Level.WARNING, "Unable to close replication log: {0}", ioex.getMessage());
+			}
+
+			out     = null;
+			fileOut = null;
+		}
+	}
+
+	// ----- private methods -----
+	private void recover() throws IOException {
+
+		if (segments.isEmpty()) {
+			return;
+		}
+
+		final Map.Entry<Long, File> last = segments.lastEntry();
+		final File file                  = last.getValue();
+		long sequence                    = last.getKey() - 1;
+		long position                    = 0L;
+
+		try (final RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+
+			final long length = raf.length();
+
+			while (true) {
+
+				final Entry entry = readEntry(raf, last.getKey(), position, length);
+				if (entry == null) {
+					break;
+				}
+
+				sequence      = entry.sequence;
+				lastTimestamp = entry.timestamp;
+				position      = entry.nextPosition;
+			}
+
+			if (position < length) {
+
+				logger.log(Level.WARNING, "Discarding {0} bytes of incomplete data at the end of replication log segment {1}", new Object[] { length - position, file });
+				raf.setLength(position);
+			}
+		}
+
+		nextSequence = sequence + 1;
+		segmentSize  = position;
+
+		fileOut = new FileOutputStream(file, true);
+		out     = new DataOutputStream(new BufferedOutputStream(fileOut));
+	}
+
+	private void openSegment(final long firstSequence) throws IOException {
+
+		close();
+
+		final File file = new File(directory, String.format("%020d.log", firstSequence));
+
+		fileOut     = new FileOutputStream(file, true);
+		out         = new DataOutputStream(new BufferedOutputStream(fileOut));
+		segmentSize = 0L;
+
+		segments.put(firstSequence, file);
+	}
+
+	private synchronized File getSegment(final long firstSequence) {
+		return segments.get(firstSequence);
+	}
+
+	private synchronized Long getNextSegment(final long firstSequence) {
+		return segments.higherKey(firstSequence);
+	}
+
+	private synchronized Long getSegmentFor(final long sequence) {
+
+		final Long key = segments.floorKey(sequence);
+		if (key != null) {
+
+			return key;
+		}
+
+		return segments.isEmpty() ? null : segments.firstKey();
+	}
+
+	private synchronized long getEndPosition() {
+		return segmentSize;
+	}
+
+	private synchronized Long getLastSegment() {
+		return segments.isEmpty() ? null : segments.lastKey();
+	}
+
+	private synchronized boolean contains(final long sequence) {
+		return segments.isEmpty() ? sequence == nextSequence : segments.firstKey() <= sequence;
+	}
+
+	/**
+	 * Reads the entry at the given position, or returns null if there is
+	 * no complete and valid entry at this position.
+	 */
+	private static Entry readEntry(final RandomAccessFile raf, final long segment, final long position, final long length) throws IOException {
+
+		if (position + ENTRY_OVERHEAD > length) {
+			return null;
+		}
+
+		raf.seek(position);
+
+		final int size = raf.readInt();
+		final long crc = raf.readLong();
+
+		if (size < 0 || position + ENTRY_OVERHEAD + size > length) {
+			return null;
+		}
+
+		final byte[] bytes = new byte[size];
+		final CRC32 check  = new CRC32();
+
+		raf.readFully(bytes);
+		check.update(bytes);
+
+		if (check.getValue() != crc) {
+			return null;
+		}
+
+		final DataInputStream data = new DataInputStream(new ByteArrayInputStream(bytes));
+		final Entry entry          = new Entry();
+
+		entry.sequence     = data.readLong();
+		entry.timestamp    = data.readLong();
+		entry.segment      = segment;
+		entry.nextPosition = position + ENTRY_OVERHEAD + size;
+
+		final int recordCount = data.readInt();
+
+		for (int i=0; i<recordCount; i++) {
+
+			final byte kind        = data.readByte();
+			final String uuid      = data.readUTF();
+			final int keyCount     = data.readInt();
+			final Set<String> keys = new LinkedHashSet<>();
+
+			for (int j=0; j<keyCount; j++) {
+				keys.add(data.readUTF());
+			}
+
+			entry.records.add(new Record(kind, uuid, keys));
+		}
+
+		return entry;
+	}
+
+	// ----- nested classes -----
+	/**
+	 * A single modified object of a transaction.
+	 */
+	public static class Record {
+
+		public static final byte NODE         = 'N';
+		public static final byte RELATIONSHIP = 'R';
+		public static final byte DELETE       = 'D';
+
+		private Set<String> keys = null;
+		private String uuid      = null;
+		private byte kind        = 0;
+
+		public Record(final byte kind, final String uuid, final Set<String> keys) {
+
+			this.kind = kind;
+			this.uuid = uuid;
+			this.keys = keys;
+		}
+
+		public byte getKind() {
+			return kind;
+		}
+
+		public String getUuid() {
+			return uuid;
+		}
+
+		public Set<String> getKeys() {
+			return keys;
+		}
+	}
+
+	/**
+	 * A committed transaction.
+	 */
+	public static class Entry {
+
+		private final List<Record> records = new ArrayList<>();
+		private long sequence              = 0L;
+		private long timestamp             = 0L;
+		private long segment               = 0L;
+		private long nextPosition          = 0L;
+
+		public long getSequence() {
+			return sequence;
+		}
+
+		public long getTimestamp() {
+			return timestamp;
+		}
+
+		public List<Record> getRecords() {
+			return records;
+		}
+	}
+
+	/**
+	 * Reads the log on behalf of a single slave. Entries are returned
+	 * until they are acknowledged, so a failed transmission is simply
+	 * repeated by reading again.
+	 */
+	public class Reader {
+
+		private File cursorFile     = null;
+		private boolean hasCursor   = false;
+		private long sequence       = -1L;
+		private long timestamp      = 0L;
+		private Long segment        = null;
+		private long position       = 0L;
+
+		private Reader(final File cursorFile) throws IOException {
+
+			this.cursorFile = cursorFile;
+
+			if (cursorFile.exists()) {
+
+				try (final DataInputStream in = new DataInputStream(Files.newInputStream(cursorFile.toPath()))) {
+
+					this.sequence  = in.readLong();
+					this.timestamp = in.readLong();
+					this.hasCursor = true;
+				}
+			}
+
+			this.segment = getSegmentFor(sequence + 1);
+		}
+
+		/**
+		 * Indicates whether this reader has a stored position from which
+		 * all following entries are still available in the log.
+		 *
+		 * @return whether this reader can continue where it left off
+		 */
+		public synchronized boolean canResume() {
+			return hasCursor && contains(sequence + 1);
+		}
+
+		/**
+		 * Returns up to the given number of entries after the last
+		 * acknowledged entry. Entries are never skipped: the reader only
+		 * moves on to the next segment when the current one has been
+		 * completed by the writer and read up to its end.
+		 *
+		 * @param maxEntries
+		 * @return a list of entries, empty if there are no new entries
+		 * @throws IOException
+		 */
+		public synchronized List<Entry> read(final int maxEntries) throws IOException {
+
+			final List<Entry> entries = new ArrayList<>();
+			long currentPosition      = position;
+			Long currentSegment       = segment;
+
+			if (currentSegment == null) {
+
+				// log was empty when this reader was created
+				currentSegment  = getSegmentFor(sequence + 1);
+				currentPosition = 0L;
+			}
+
+			while (currentSegment != null && entries.size() < maxEntries) {
+
+				final File file = getSegment(currentSegment);
+				if (file == null) {
+					break;
+				}
+
+				// the writer never appends to a segment again once the next one exists
+				final Long next = getNextSegment(currentSegment);
+
+				try (final RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+
+					final long length = raf.length();
+
+					currentPosition = readEntries(raf, currentSegment, currentPosition, length, maxEntries, entries);
+
+					if (entries.size() >= maxEntries || next == null) {
+
+						// an incomplete entry at the end of the current segment is read again next time
+						break;
+					}
+
+					if (currentPosition < length) {
+
+						logger.log(Level.SEVERE, "Unreadable entry at position {0} of replication log segment {1}, replication is stopped", new Object[] { currentPosition, file });
+						break;
+					}
+				}
+
+				currentSegment  = next;
+				currentPosition = 0L;
+			}
+
+			return entries;
+		}
+
+		/**
+		 * Marks the given entry and all entries before it as replicated.
+		 *
+		 * @param entry
+		 * @throws IOException
+		 */
+		public synchronized void acknowledge(final Entry entry) throws IOException {
+
+			this.segment  = entry.segment;
+			this.position = entry.nextPosition;
+
+			storeCursor(entry.sequence, entry.timestamp);
+		}
+
+		/**
+		 * Moves this reader to the end of the log, e.g. after the whole
+		 * database was copied to the slave.
+		 *
+		 * @param timestamp
+		 * @throws IOException
+		 */
+		public synchronized void skipToEnd(final long timestamp) throws IOException {
+
+			synchronized (ReplicationLog.this) {
+
+				this.segment  = getLastSegment();
+				this.position = getEndPosition();
+
+				storeCursor(getLastSequence(), timestamp);
+			}
+		}
+
+		public synchronized long getSequence() {
+			return sequence;
+		}
+
+		public synchronized long getTimestamp() {
+			return timestamp;
+		}
+
+		// ----- private methods -----
+		private long readEntries(final RandomAccessFile raf, final long currentSegment, final long startPosition, final long length, final int maxEntries, final List<Entry> entries) throws IOException {
+
+			long currentPosition = startPosition;
+
+			while (entries.size() < maxEntries) {
+
+				final Entry entry = readEntry(raf, currentSegment, currentPosition, length);
+				if (entry == null) {
+					break;
+				}
+
+				if (entry.sequence > sequence) {
+					entries.add(entry);
+				}
+
+				currentPosition = entry.nextPosition;
+			}
+
+			return currentPosition;
+		}
+
+		private void storeCursor(final long newSequence, final long newTimestamp) throws IOException {
+
+			final File tmpFile = new File(cursorFile.getAbsolutePath() + ".tmp");
+
+			try (final DataOutputStream cursorOut = new DataOutputStream(new FileOutputStream(tmpFile))) {
+
+				cursorOut.writeLong(newSequence);
+				cursorOut.writeLong(newTimestamp);
+			}
+
+			Files.move(tmpFile.toPath(), cursorFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+			this.sequence  = newSequence;
+			this.timestamp = newTimestamp;
+			this.hasCursor = true;
+		}
+	}
+}
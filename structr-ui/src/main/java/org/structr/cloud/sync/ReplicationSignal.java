@@ -0,0 +1,121 @@
+/**
+ * Copyright (C) 2010-2016 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.cloud.sync;
+
+/**
+ * Wakes up a replicator when new entries have been appended to the
+ * replication log.
+ *
+ * A signal ends an idle wait immediately, but it never shortens the
+ * backoff after a failed transmission. Signals that arrive during the
+ * backoff are remembered and seen by the next idle wait, so a slave that
+ * is unreachable is not contacted once per commit.
+ *
+ *
+ */
+class ReplicationSignal {
+
+	private final Object lock = new Object();
+	private boolean pending   = false;
+	private boolean closed    = false;
+
+	/**
+	 * Signals that new entries are available.
+	 */
+	public void signal() {
+
+		synchronized (lock) {
+
+			pending = true;
+			lock.notifyAll();
+		}
+	}
+
+	/**
+	 * Ends all current and future waits.
+	 */
+	public void close() {
+
+		synchronized (lock) {
+
+			closed = true;
+			lock.notifyAll();
+		}
+	}
+
+	/**
+	 * Waits until a signal arrives, this signal is closed or the given
+	 * timeout has elapsed. Returns immediately if a signal has arrived
+	 * since the last call.
+	 *
+	 * @param timeout the timeout in milliseconds
+	 * @return whether a signal has arrived
+	 * @throws InterruptedException
+	 */
+	public boolean awaitSignal(final long timeout) throws InterruptedException {
+
+		final long deadline = System.nanoTime() + timeout * 1000000L;
+
+		synchronized (lock) {
+
+			long remaining = timeout;
+
+			while (!pending && !closed && remaining > 0) {
+
+				lock.wait(remaining);
+				remaining = (deadline - System.nanoTime() + 999999L) / 1000000L;
+			}
+
+			final boolean signalled = pending;
+			pending                 = false;
+
+			return signalled;
+		}
+	}
+
+	/**
+	 * Waits for the given time, regardless of signals. Returns early only
+	 * if this signal is closed.
+	 *
+	 * @param millis the backoff in milliseconds
+	 * @throws InterruptedException
+	 */
+	public void backoff(final long millis) throws InterruptedException {
+
+		final long deadline = System.nanoTime() + millis * 1000000L;
+
+		synchronized (lock) {
+
+			long remaining = millis;
+
+			while (!closed && remaining > 0) {
+
+				lock.wait(remaining);
+				remaining = (deadline - System.nanoTime() + 999999L) / 1000000L;
+			}
+		}
+	}
+
+	public boolean isClosed() {
+
+		synchronized (lock) {
+			return closed;
+		}
+	}
+}
@@ -18,15 +18,19 @@
  */
 package org.structr.cloud.sync;
 
+import java.io.File;
+import java.io.IOException;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
-import java.util.concurrent.ArrayBlockingQueue;
-import java.util.concurrent.BlockingQueue;
+import java.util.Set;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import org.apache.commons.lang.StringUtils;
@@ -39,6 +43,8 @@ import org.structr.common.error.FrameworkException;
 import org.structr.api.service.Command;
 import org.structr.api.service.RunnableService;
 import org.structr.api.service.StructrServices;
+import org.structr.core.GraphObject;
+import org.structr.core.Services;
 import org.structr.core.StructrTransactionListener;
 import org.structr.core.TransactionSource;
 import org.structr.core.app.App;
@@ -46,15 +52,26 @@ import org.structr.core.app.StructrApp;
 import org.structr.core.graph.ModificationEvent;
 import org.structr.core.graph.TransactionCommand;
 import org.structr.core.graph.Tx;
+import org.structr.core.property.PropertyKey;
 
 /**
+ * Replicates committed transactions from a master to its slaves.
+ *
+ * Transactions are appended to a durable {@link ReplicationLog}. Each
+ * slave is served by its own replicator thread that reads the log from
+ * the slave's cursor and sends up to sync.batch.size transactions in a
+ * single transmission, so slaves are synchronized in parallel and a
+ * restart of the master does not lose unsynced transactions. Failed
+ * transmissions are retried with exponential backoff up to the retry
+ * interval.
  *
  *
  */
 public class SyncService extends Thread  implements RunnableService, StructrTransactionListener {
 
-	private static final BlockingQueue<List<ModificationEvent>> syncQueue = new ArrayBlockingQueue<>(1000);
-	private static final Logger logger                                    = Logger.getLogger(CloudService.class.getName());
+	private static final Logger logger        = Logger.getLogger(CloudService.class.getName());
+	private static final long STATUS_INTERVAL = 60000L;
+	private static final long MIN_BACKOFF     = 100L;
 
 	public enum SyncRole {
 		master,
@@ -62,12 +79,16 @@ public class SyncService extends Thread  implements RunnableService, StructrTran
 	};
 
 	private final List<SyncHostInfo> syncHosts = new LinkedList<>();
-	private boolean running                    = false;
+	private final List<Replicator> replicators = new LinkedList<>();
+	private final Object monitor               = new Object();
+	private ReplicationLog replicationLog      = null;
+	private volatile boolean running           = false;
 	private boolean active                     = false;
 	private String allowedMaster               = null;
 	private SyncRole role                      = null;
 	private int requiredSyncCount              = 0;
 	private int retryInterval                  = 60;
+	private int batchSize                      = 100;
 
 	public SyncService() {
 
@@ -100,10 +121,28 @@ public class SyncService extends Thread  implements RunnableService, StructrTran
 			final String users   = config.getProperty("sync.users");
 			final String pwds    = config.getProperty("sync.passwords");
 			final String ports   = config.getProperty("sync.ports");
+			final String batch   = config.getProperty("sync.batch.size", "100");
+			final String logPath = config.getProperty("sync.log.path", config.getProperty(Services.BASE_PATH, ".") + "/sync-log");
+			final boolean fsync  = "true".equals(config.getProperty("sync.log.fsync", "false"));
+
+			if (StringUtils.isNotBlank(retry)) {
+				this.retryInterval = Integer.valueOf(retry);
+			}
+
+			if (StringUtils.isNotBlank(batch)) {
+				this.batchSize = Math.max(1, Integer.valueOf(batch));
+			}
 
 			// check only if we are a replication master
 			if (SyncRole.master.equals(role)) {
 
+				try {
+					replicationLog = new ReplicationLog(new File(logPath), fsync);
+
+				} catch (IOException ioex) {
+					throw new IllegalStateException("unable to open replication log in " + logPath + ": " + ioex.getMessage());
+				}
+
 				if (StringUtils.isEmpty(hosts)) {
 					throw new IllegalStateException("no slave hosts set for this master, please set sync.hosts in structr.conf.");
 				}
@@ -168,10 +207,6 @@ public class SyncService extends Thread  implements RunnableService, StructrTran
 				}
 			}
 
-			if (StringUtils.isNotBlank(retry)) {
-				this.retryInterval = Integer.valueOf(retry);
-			}
-
 			logger.log(Level.INFO, "Retry interval is set to {0} seconds", retryInterval);
 		}
 	}
@@ -181,7 +216,20 @@ public class SyncService extends Thread  implements RunnableService, StructrTran
 
 	@Override
 	public void shutdown() {
+
 		running = false;
+
+		synchronized (monitor) {
+			monitor.notifyAll();
+		}
+
+		for (final Replicator replicator : replicators) {
+			replicator.stopReplication();
+		}
+
+		if (replicationLog != null) {
+			replicationLog.close();
+		}
 	}
 
 	@Override
@@ -192,64 +240,76 @@ public class SyncService extends Thread  implements RunnableService, StructrTran
 	@Override
 	public void startService() {
 
-		TransactionCommand.registerTransactionListener(this);
-
 		running = true;
 		start();
 
+		for (final SyncHostInfo host : syncHosts) {
+
+			if (host.getReader() != null) {
+
+				final Replicator replicator = new Replicator(host);
+
+				replicators.add(replicator);
+				replicator.start();
+			}
+		}
+
+		// register after all replicators are started
+		TransactionCommand.registerTransactionListener(this);
+
 		logger.log(Level.INFO, "SyncService successfully started.");
 	}
 
 	@Override
 	public void run() {
 
+		long lastStatus = System.currentTimeMillis();
+
 		while (running) {
 
 			try {
 
-				// wait to be notified when new data is available
-				synchronized (syncQueue) {
-
-					while (syncQueue.isEmpty()) {
-						syncQueue.wait();
-					}
+				synchronized (monitor) {
+					monitor.wait(10000);
 				}
 
-				// load the head of the queue without removing it
-				// (will be removed later if sync was successful)
-				final List<ModificationEvent> transaction = syncQueue.peek();
-				if (transaction != null) {
+				if (replicationLog != null && !replicators.isEmpty()) {
 
-					// define success as "at least one sync process was successful"
-					final SyncListener successListener = new SyncListener(requiredSyncCount);
+					long minSequence = Long.MAX_VALUE;
+
+					for (final Replicator replicator : replicators) {
+						minSequence = Math.min(minSequence, replicator.host.getReader().getSequence());
+					}
 
-					final SyncTransmission transmission = new SyncTransmission(transaction);
+					// remove segments that all slaves have received
+					replicationLog.deleteSegmentsUpTo(minSequence);
 
-					for (final SyncHostInfo info : syncHosts) {
+					if (System.currentTimeMillis() - lastStatus > STATUS_INTERVAL) {
 
-						try {
+						int reachable = 0;
 
-							CloudService.doRemote(SecurityContext.getSuperUserInstance(), transmission, info, successListener);
+						for (final Replicator replicator : replicators) {
 
-						} catch (FrameworkException fex) {
-							logger.log(Level.WARNING, "Unable to synchronize with host {0}: {1}", new Object[] { info, fex.getMessage() } );
+							if (replicator.failures == 0) {
+								reachable++;
+							}
 						}
-					}
 
-					// remove sync changeset from queue when sync
-					// was successful (see above)
-					if (successListener.wasSuccessful()) {
+						if (reachable < requiredSyncCount) {
+							logger.log(Level.WARNING, "Synchronization to {0} hosts required, but only {1} are reachable", new Object[] { requiredSyncCount, reachable } );
+						}
 
-						syncQueue.remove(transaction);
+						for (final Map.Entry<String, Map<String, Object>> entry : getReplicationLag().entrySet()) {
 
-					} else {
+							final Map<String, Object> lag = entry.getValue();
+							if (((Long)lag.get("entries")) > 0) {
 
-						logger.log(Level.WARNING, "Unable to synchronize with required number of hosts, retrying in {0} seconds..", retryInterval);
+								logger.log(Level.INFO, "Replication host {0} is {1} transactions ({2} ms) behind", new Object[] { entry.getKey(), lag.get("entries"), lag.get("millis") } );
+							}
+						}
 
-						// sleep
-						try { Thread.sleep(retryInterval * 1000); } catch (Throwable t) {}
+						lastStatus = System.currentTimeMillis();
 					}
-
 				}
 
 			} catch (Throwable t) {
@@ -274,6 +334,39 @@ public class SyncService extends Thread  implements RunnableService, StructrTran
 		return true;
 	}
 
+	/**
+	 * Returns the replication lag of all slaves, i.e. the number of
+	 * transactions that have not been acknowledged yet and the time
+	 * between the last local commit and the last replicated commit.
+	 *
+	 * @return a map of slave host to lag information
+	 */
+	public Map<String, Map<String, Object>> getReplicationLag() {
+
+		final Map<String, Map<String, Object>> result = new LinkedHashMap<>();
+
+		if (replicationLog != null) {
+
+			final long lastSequence  = replicationLog.getLastSequence();
+			final long lastTimestamp = replicationLog.getLastTimestamp();
+
+			for (final Replicator replicator : replicators) {
+
+				final ReplicationLog.Reader reader = replicator.host.getReader();
+				final Map<String, Object> lag      = new LinkedHashMap<>();
+				final long entries                 = Math.max(0L, lastSequence - reader.getSequence());
+
+				lag.put("entries",  entries);
+				lag.put("millis",   entries > 0 ? Math.max(0L, lastTimestamp - reader.getTimestamp()) : 0L);
+				lag.put("failures", replicator.failures);
+
+				result.put(replicator.host.toString(), lag);
+			}
+		}
+
+		return result;
+	}
+
 	// ----- interface StructrTransactionListener -----
 	@Override
 	public void beforeCommit(final SecurityContext securityContext, final Collection<ModificationEvent> modificationEvents, final TransactionSource source) throws FrameworkException {
@@ -296,31 +389,61 @@ public class SyncService extends Thread  implements RunnableService, StructrTran
 		}
 
 		// only react if desired
-		if (active && running && !modificationEvents.isEmpty()) {
+		if (active && running && replicationLog != null && !modificationEvents.isEmpty()) {
+
+			final long timestamp = System.currentTimeMillis();
 
 			try {
 				// store last sync timestamp for the given instance ID
 				final App app = StructrApp.getInstance();
-				app.setGlobalSetting(app.getInstanceId() + ".lastModified", System.currentTimeMillis());
+				app.setGlobalSetting(app.getInstanceId() + ".lastModified", timestamp);
 
 			} catch (FrameworkException fex) {
 
 				logger.log(Level.SEVERE, "Unable to store last modified date for current instance.", fex);
 			}
 
-
 			try {
 
-				// copy all modification events and return quickly
-				syncQueue.put(new ArrayList<>(modificationEvents));
+				final List<ReplicationLog.Record> records = new ArrayList<>();
 
-				// notify sync queue of new input
-				synchronized (syncQueue) { syncQueue.notify(); }
+				for (final ModificationEvent event : modificationEvents) {
 
-			} catch (InterruptedException iex) {
-				iex.printStackTrace();
-			}
+					if (event.isDeleted()) {
+
+						final String id = event.getRemovedProperties().get(GraphObject.id);
+						if (id != null) {
+
+							records.add(new ReplicationLog.Record(ReplicationLog.Record.DELETE, id, new LinkedHashSet<>()));
+						}
+
+					} else {
+
+						final Set<String> propertyKeys = new LinkedHashSet<>();
+
+						// collect all possibly modified property keys
+						mapPropertyKeysToStrings(propertyKeys, event.getNewProperties().keySet());
+						mapPropertyKeysToStrings(propertyKeys, event.getModifiedProperties().keySet());
+						mapPropertyKeysToStrings(propertyKeys, event.getRemovedProperties().keySet());
+
+						records.add(new ReplicationLog.Record(event.isNode() ? ReplicationLog.Record.NODE : ReplicationLog.Record.RELATIONSHIP, event.getUuid(), propertyKeys));
+					}
+				}
+
+				if (!records.isEmpty()) {
+
+					replicationLog.append(timestamp, records);
+
+					// notify replicators of new input
+					for (final Replicator replicator : replicators) {
+						replicator.wakeUp();
+					}
+				}
 
+			} catch (IOException ioex) {
+
+				logger.log(Level.SEVERE, "Unable to append transaction to replication log.", ioex);
+			}
 		}
 	}
 
@@ -406,6 +529,35 @@ public class SyncService extends Thread  implements RunnableService, StructrTran
 		final SimpleDateFormat df     = new SimpleDateFormat("yyyy/MM/dd HH:mm:ss");
 		final long localSyncTimestamp = StructrApp.getInstance().getGlobalSetting(masterId + ".lastModified", 0L);
 
+		try {
+
+			final ReplicationLog.Reader reader = replicationLog.openReader(host.toString());
+
+			host.setReader(reader);
+
+			// slave can be caught up from the replication log
+			if (reader.canResume() && host.getLastSyncTimestamp() == reader.getTimestamp()) {
+
+				logger.log(Level.INFO, "Replication host {0} will be synchronized from the replication log, {1} transactions pending",
+					new Object[] { host, Math.max(0L, replicationLog.getLastSequence() - reader.getSequence()) }
+				);
+
+				return;
+			}
+
+			checkAndInitializeSyncHost(host, masterId, df, localSyncTimestamp);
+
+			// all transactions up to now are contained in the slave database
+			reader.skipToEnd(localSyncTimestamp);
+
+		} catch (IOException ioex) {
+
+			throw new FrameworkException(500, "Unable to open replication log for host " + host + ": " + ioex.getMessage());
+		}
+	}
+
+	private void checkAndInitializeSyncHost(final SyncHostInfo host, final String masterId, final SimpleDateFormat df, final long localSyncTimestamp) throws FrameworkException {
+
 		if (localSyncTimestamp == 0L) {
 
 			// no synchronization with this slave yet, clear and initialize slave database
@@ -447,7 +599,102 @@ public class SyncService extends Thread  implements RunnableService, StructrTran
 		logger.log(Level.INFO, "Done.");
 	}
 
+	private void mapPropertyKeysToStrings(final Set<String> propertyKeys, final Set<PropertyKey> source) {
+
+		for (final PropertyKey key : source) {
+			propertyKeys.add(key.dbName());
+		}
+	}
+
 	// ----- nested classes -----
+	/**
+	 * Sends the replication log to a single slave.
+	 */
+	private class Replicator extends Thread {
+
+		private final ReplicationSignal signal = new ReplicationSignal();
+		private SyncHostInfo host              = null;
+		private volatile int failures          = 0;
+
+		public Replicator(final SyncHostInfo host) {
+
+			super("Replicator(" + host + ")");
+			this.setDaemon(true);
+
+			this.host = host;
+		}
+
+		public void wakeUp() {
+			signal.signal();
+		}
+
+		public void stopReplication() {
+			signal.close();
+		}
+
+		@Override
+		public void run() {
+
+			final ReplicationLog.Reader reader = host.getReader();
+
+			while (running) {
+
+				try {
+
+					final List<ReplicationLog.Entry> entries = reader.read(batchSize);
+					if (entries.isEmpty()) {
+
+						signal.awaitSignal(1000);
+						continue;
+					}
+
+					final SyncListener successListener = new SyncListener(1);
+
+					try {
+
+						CloudService.doRemote(SecurityContext.getSuperUserInstance(), new SyncTransmission(entries), host, successListener);
+
+					} catch (FrameworkException fex) {
+						logger.log(Level.WARNING, "Unable to synchronize with host {0}: {1}", new Object[] { host, fex.getMessage() } );
+					}
+
+					if (successListener.wasSuccessful()) {
+
+						reader.acknowledge(entries.get(entries.size() - 1));
+						failures = 0;
+
+					} else {
+
+						waitAfterFailure();
+					}
+
+				} catch (Throwable t) {
+
+					logger.log(Level.WARNING, "Error while synchronizing with host " + host, t);
+
+					waitAfterFailure();
+				}
+			}
+		}
+
+		// ----- private methods -----
+		private void waitAfterFailure() {
+
+			final long backoff = Math.min(retryInterval * 1000L, MIN_BACKOFF << Math.min(failures++, 20));
+
+			logger.log(Level.WARNING, "Unable to synchronize with host {0}, retrying in {1} ms..", new Object[] { host, backoff });
+
+			try {
+
+				// commits during the backoff don't cut it short
+				signal.backoff(backoff);
+
+			} catch (InterruptedException iex) {
+				// service is being stopped
+			}
+		}
+	}
+
 	private static class SyncListener implements CloudListener {
 
 		private int successCount         = 0;
@@ -481,12 +728,13 @@ public class SyncService extends Thread  implements RunnableService, StructrTran
 
 	private static class SyncHostInfo implements CloudHost {
 
-		private ReplicationStatus status = null;
-		private String instanceId        = null;
-		private String host              = null;
-		private String user              = null;
-		private String pwd               = null;
-		private int port                 = -1;
+		private ReplicationLog.Reader reader = null;
+		private ReplicationStatus status     = null;
+		private String instanceId            = null;
+		private String host                  = null;
+		private String user                  = null;
+		private String pwd                   = null;
+		private int port                     = -1;
 
 		public SyncHostInfo(final String host, final String user, final String pwd, final String portSource) {
 
@@ -534,6 +782,14 @@ public class SyncService extends Thread  implements RunnableService, StructrTran
 		public String getInstanceId() {
 			return instanceId;
 		}
+
+		public void setReader(final ReplicationLog.Reader reader) {
+			this.reader = reader;
+		}
+
+		public ReplicationLog.Reader getReader() {
+			return reader;
+		}
 	}
 
 	private class LoggingListener implements CloudListener {
@@ -19,9 +19,7 @@
 package org.structr.cloud.sync;
 
 import java.io.IOException;
-import java.util.LinkedHashSet;
 import java.util.List;
-import java.util.Set;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import org.structr.api.NotFoundException;
@@ -36,79 +34,78 @@ import org.structr.cloud.message.NodeDataContainer;
 import org.structr.cloud.message.RelationshipDataContainer;
 import org.structr.common.error.FrameworkException;
 import org.structr.core.GraphObject;
+import org.structr.core.app.App;
 import org.structr.core.app.StructrApp;
-import org.structr.core.graph.ModificationEvent;
 import org.structr.core.graph.Tx;
-import org.structr.core.property.PropertyKey;
 import org.structr.dynamic.File;
 
 /**
+ * Transmits a batch of replication log entries to a slave within a single
+ * connection. The current state of the modified objects is sent, objects
+ * that were deleted in the meantime are skipped since their deletion is
+ * part of a later entry.
  *
  *
  */
 public class SyncTransmission implements CloudTransmission {
 
-	private static final Logger logger = Logger.getLogger(SyncTransmission.class.getName());
-	private List<ModificationEvent> transaction = null;
+	private static final Logger logger         = Logger.getLogger(SyncTransmission.class.getName());
+	private List<ReplicationLog.Entry> entries = null;
 
-	public SyncTransmission(final List<ModificationEvent> transaction) {
+	public SyncTransmission(final List<ReplicationLog.Entry> entries) {
 
-		this.transaction = transaction;
+		this.entries = entries;
 	}
 
 	@Override
 	public Boolean doRemote(final CloudConnection client) throws IOException, FrameworkException {
 
-		int count = 0;
+		final App app = StructrApp.getInstance();
+		int count     = 0;
 
-		try (final Tx tx = StructrApp.getInstance().tx()) {
+		try (final Tx tx = app.tx()) {
 
-			for (final ModificationEvent event : transaction) {
+			for (final ReplicationLog.Entry entry : entries) {
 
-				final GraphObject graphObject  = event.getGraphObject();
+				for (final ReplicationLog.Record record : entry.getRecords()) {
 
-				if (event.isDeleted()) {
+					if (record.getKind() == ReplicationLog.Record.DELETE) {
 
-					final String id = event.getRemovedProperties().get(GraphObject.id);
-					if (id != null) {
+						client.send(new Delete(record.getUuid()));
 
-						client.send(new Delete(id));
-					}
+					} else {
+
+						try {
 
-				} else {
+							final GraphObject graphObject = app.get(record.getUuid());
+							if (graphObject == null) {
 
-					try {
+								logger.log(Level.FINE, "Entity {0} was deleted before it could be synchronized, ignoring", record.getUuid());
 
-						final Set<String> propertyKeys = new LinkedHashSet<>();
+							} else if (graphObject.isNode()) {
 
-						// collect all possibly modified property keys
-						mapPropertyKeysToStrings(propertyKeys, event.getNewProperties().keySet());
-						mapPropertyKeysToStrings(propertyKeys, event.getModifiedProperties().keySet());
-						mapPropertyKeysToStrings(propertyKeys, event.getRemovedProperties().keySet());
+								if (graphObject instanceof File) {
 
-						if (graphObject.isNode()) {
+									sendFile(client, (File)graphObject, CloudService.CHUNK_SIZE);
 
-							if (graphObject instanceof File) {
+								} else {
 
-								sendFile(client, (File)graphObject, CloudService.CHUNK_SIZE);
+									client.send(new NodeDataContainer(graphObject.getSyncNode(), count, record.getKeys()));
+								}
 
 							} else {
 
-								client.send(new NodeDataContainer(graphObject.getSyncNode(), count, propertyKeys));
+								client.send(new RelationshipDataContainer(graphObject.getSyncRelationship(), count, record.getKeys()));
 							}
 
-						} else {
+						} catch (NotFoundException nfex) {
 
-							client.send(new RelationshipDataContainer(graphObject.getSyncRelationship(), count, propertyKeys));
+							logger.log(Level.INFO, "Trying to synchronize deleted entity, ignoring");
 						}
-
-					} catch (NotFoundException nfex) {
-
-						logger.log(Level.INFO, "Trying to synchronize deleted entity, ignoring");
 					}
-				}
 
-				count++;
+					count++;
+				}
 			}
 
 			tx.success();
@@ -116,8 +113,8 @@ public class SyncTransmission implements CloudTransmission {
 
 		// synchronize last sync timestamp with slave instance
 		// (we're sending out own instance ID (master) for the slave to store)
-		final String masterId = StructrApp.getInstance().getInstanceId();
-		client.send(new ReplicationStatus(masterId, StructrApp.getInstance().getGlobalSetting(masterId + ".lastModified", 0L)));
+		final String masterId = app.getInstanceId();
+		client.send(new ReplicationStatus(masterId, entries.get(entries.size() - 1).getTimestamp()));
 
 		// wait for end of transmission
 		client.waitForTransmission();
@@ -150,12 +147,4 @@ public class SyncTransmission implements CloudTransmission {
 		// mark end of file with special chunk
 		client.send(new FileNodeEndChunk(container.getSourceNodeId(), container.getFileSize()));
 	}
-
-	// ----- private methods -----
-	private void mapPropertyKeysToStrings(final Set<String> propertyKeys, final Set<PropertyKey> source) {
-
-		for (final PropertyKey key : source) {
-			propertyKeys.add(key.dbName());
-		}
-	}
 }
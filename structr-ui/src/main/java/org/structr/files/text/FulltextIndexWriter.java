@@ -0,0 +1,217 @@
+/**
+ * Copyright (C) 2010-2016 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.files.text;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.structr.api.graph.Node;
+import org.structr.api.index.Index;
+import org.structr.common.error.FrameworkException;
+import org.structr.core.Services;
+import org.structr.core.app.StructrApp;
+import org.structr.core.graph.NodeService;
+import org.structr.core.graph.Tx;
+import org.structr.web.entity.Indexable;
+
+/**
+ * Writes the results of fulltext extraction to the database.
+ *
+ * The extraction threads hand over their results and continue with the
+ * next file. Whichever thread finds the writer idle becomes the writer
+ * and applies all pending results in batches, one transaction per batch.
+ * Only the difference to the words that are already indexed is written
+ * to the fulltext index.
+ *
+ *
+ */
+public class FulltextIndexWriter {
+
+	private static final Logger logger          = Logger.getLogger(FulltextIndexWriter.class.getName());
+	private static final int MAX_BATCH_FILES    = 100;
+	private static final int MAX_BATCH_WORDS    = 100_000;
+	private static final Object lock            = new Object();
+	private static FulltextIndexWriter instance = null;
+
+	private final Queue<IndexUpdate> pending = new ConcurrentLinkedQueue<>();
+	private final ReentrantLock writeLock    = new ReentrantLock();
+
+	private FulltextIndexWriter() {}
+
+	public static FulltextIndexWriter getInstance() {
+
+		synchronized (lock) {
+
+			if (instance == null) {
+				instance = new FulltextIndexWriter();
+			}
+		}
+
+		return instance;
+	}
+
+	/**
+	 * Adds the given update to the pending updates and writes all pending
+	 * updates if no other thread is currently writing.
+	 *
+	 * @param update
+	 */
+	public void add(final IndexUpdate update) {
+
+		pending.add(update);
+
+		// re-check after unlocking, an update may have been added in between
+		while (!pending.isEmpty() && writeLock.tryLock()) {
+
+			try {
+
+				List<IndexUpdate> batch = nextBatch();
+				while (!batch.isEmpty()) {
+
+					write(batch);
+
+					batch = nextBatch();
+				}
+
+			} finally {
+
+				writeLock.unlock();
+			}
+		}
+	}
+
+	// ----- private methods -----
+	private List<IndexUpdate> nextBatch() {
+
+		final List<IndexUpdate> batch = new LinkedList<>();
+		int words                     = 0;
+
+		while (batch.size() < MAX_BATCH_FILES && words < MAX_BATCH_WORDS) {
+
+			final IndexUpdate update = pending.poll();
+			if (update == null) {
+				break;
+			}
+
+			batch.add(update);
+			words += update.words.size();
+		}
+
+		return batch;
+	}
+
+	private void write(final List<IndexUpdate> batch) {
+
+		try (final Tx tx = StructrApp.getInstance().tx()) {
+
+			for (final IndexUpdate update : batch) {
+				apply(update);
+			}
+
+			tx.success();
+
+			return;
+
+		} catch (Throwable t) {
+
+			if (batch.size() == 1) {
+
+				logger.log(Level.WARNING, "Indexing of {0} failed: {1}", new Object[] { batch.get(0).fileName, t.getMessage() });
+				return;
+			}
+
+			logger.log(Level.FINE, "Writing batch of {0} index updates failed, retrying individually: {1}", new Object[] { batch.size(), t.getMessage() });
+		}
+
+		// a single failing update (e.g. a deleted file) must not discard the whole batch
+		for (final IndexUpdate update : batch) {
+			write(Collections.singletonList(update));
+		}
+	}
+
+	private void apply(final IndexUpdate update) throws FrameworkException {
+
+		final NodeService nodeService   = Services.getInstance().getService(NodeService.class);
+		final Index<Node> fulltextIndex = nodeService.getNodeIndex(NodeService.NodeIndex.fulltext);
+		final String indexKeyName       = Indexable.indexedWords.jsonName();
+		final Indexable file            = update.file;
+		final Node node                 = file.getNode();
+		final String[] existing         = file.getProperty(Indexable.indexedWords);
+		final Set<String> indexedWords  = existing != null ? new LinkedHashSet<>(Arrays.asList(existing)) : Collections.<String>emptySet();
+
+		if (update.words.containsAll(indexedWords)) {
+
+			// add new words only
+			for (final String word : update.words) {
+
+				if (!indexedWords.contains(word)) {
+					fulltextIndex.add(node, indexKeyName, word, String.class);
+				}
+			}
+
+		} else {
+
+			// the index cannot remove single values, so words that are gone require a full update
+			fulltextIndex.remove(node, indexKeyName);
+
+			for (final String word : update.words) {
+				fulltextIndex.add(node, indexKeyName, word, String.class);
+			}
+		}
+
+		// don't modify access time when indexing is finished
+		file.getSecurityContext().preventModificationOfAccessTime();
+
+		file.setProperty(Indexable.extractedContent, update.extractedContent);
+		file.setProperty(Indexable.indexedChecksum, update.checksum);
+
+		if (!update.words.equals(indexedWords)) {
+			file.setProperty(Indexable.indexedWords, (String[]) update.words.toArray(new String[update.words.size()]));
+		}
+
+		logger.log(Level.INFO, "Indexing of {0} finished, {1} words indexed", new Object[] { update.fileName, update.words.size() } );
+	}
+
+	// ----- nested classes -----
+	public static class IndexUpdate {
+
+		private Indexable file          = null;
+		private String fileName         = null;
+		private String extractedContent = null;
+		private Set<String> words       = null;
+		private long checksum           = 0L;
+
+		public IndexUpdate(final Indexable file, final String fileName, final String extractedContent, final Set<String> words, final long checksum) {
+
+			this.file             = file;
+			this.fileName         = fileName;
+			this.extractedContent = extractedContent;
+			this.words            = words;
+			this.checksum         = checksum;
+		}
+	}
+}
@@ -21,14 +21,19 @@ package org.structr.files.text;
 import java.io.BufferedInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.Iterator;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipInputStream;
 import org.apache.commons.lang3.StringUtils;
@@ -39,14 +44,12 @@ import org.apache.tika.sax.BodyContentHandler;
 import org.structr.agent.Agent;
 import org.structr.agent.ReturnValue;
 import org.structr.agent.Task;
-import org.structr.api.graph.Node;
-import org.structr.api.index.Index;
-import org.structr.core.Services;
 import org.structr.core.app.StructrApp;
 import org.structr.core.entity.Principal;
 import static org.structr.core.graph.NodeInterface.owner;
-import org.structr.core.graph.NodeService;
 import org.structr.core.graph.Tx;
+import org.structr.files.text.FulltextIndexWriter.IndexUpdate;
+import org.structr.web.entity.FileBase;
 import org.structr.web.entity.Indexable;
 import org.structr.web.entity.User;
 
@@ -87,135 +90,132 @@ public class FulltextIndexingAgent extends Agent<Indexable> {
 		return false;
 	}
 
+	@Override
+	public int getDefaultWorkerCount() {
+
+		// text extraction is CPU-bound
+		return Runtime.getRuntime().availableProcessors();
+	}
+
 	// ----- private methods -----
 	private void doIndexing(final Indexable file) {
 
-		boolean parsingSuccessful         = false;
-		InputStream inputStream           = null;
-		String fileName                   = "unknown file";
+		final List<String> metadata = new LinkedList<>();
+		InputStream inputStream     = null;
+		String fileName             = "unknown file";
+		Long knownChecksum          = null;
+		Long indexedChecksum        = null;
 
 		try {
 
 			try (final Tx tx = StructrApp.getInstance().tx()) {
 
-				inputStream = file.getInputStream();
-				fileName = file.getName();
+				fileName        = file.getName();
+				indexedChecksum = file.getProperty(Indexable.indexedChecksum);
 
-				tx.success();
-			}
-
-			if (inputStream != null) {
-
-				final FulltextTokenizer tokenizer = new FulltextTokenizer(fileName);
+				if (file instanceof FileBase) {
+					knownChecksum = ((FileBase)file).getChecksum();
+				}
 
-				try (final InputStream is = inputStream) {
+				// name and owner are indexed as well
+				metadata.add(fileName);
 
-					final AutoDetectParser parser = new AutoDetectParser();
+				final Principal _owner = file.getProperty(owner);
+				if (_owner != null) {
 
-					parser.parse(is, new BodyContentHandler(tokenizer), new Metadata());
-					parsingSuccessful = true;
+					metadata.add(_owner.getName());
+					metadata.add(_owner.getProperty(User.eMail));
+					metadata.add(_owner.getProperty(User.twitterName));
 				}
 
-				// only do indexing when parsing was successful
-				if (parsingSuccessful) {
+				// content and metadata unchanged since the last run
+				if (knownChecksum != null && indexedChecksum != null && indexedChecksum == getIndexChecksum(knownChecksum, metadata)) {
 
-					try (Tx tx = StructrApp.getInstance().tx()) {
+					logger.log(Level.FINE, "{0} is unchanged, not indexing", fileName);
+					return;
+				}
 
-						// don't modify access time when indexing is finished
-						file.getSecurityContext().preventModificationOfAccessTime();
+				inputStream = file.getInputStream();
 
-						// save raw extracted text
-						file.setProperty(Indexable.extractedContent, tokenizer.getRawText());
+				tx.success();
+			}
 
-						// tokenize name
-						tokenizer.write(getName());
+			if (inputStream != null) {
 
-						// tokenize owner name
-						final Principal _owner = file.getProperty(owner);
-						if (_owner != null) {
+				final FulltextTokenizer tokenizer = new FulltextTokenizer(fileName);
+				final CRC32 crc                   = new CRC32();
 
-							final String ownerName = _owner.getName();
-							if (ownerName != null) {
+				logger.log(Level.INFO, "Indexing {0}..", fileName);
 
-								tokenizer.write(ownerName);
-							}
+				try (final InputStream is = new CheckedInputStream(inputStream, crc)) {
 
-							final String eMail = _owner.getProperty(User.eMail);
-							if (eMail != null) {
+					final AutoDetectParser parser = new AutoDetectParser();
 
-								tokenizer.write(eMail);
-							}
+					parser.parse(is, new BodyContentHandler(tokenizer), new Metadata());
+				}
 
-							final String twitterName = _owner.getProperty(User.twitterName);
-							if (twitterName != null) {
+				for (final String value : metadata) {
 
-								tokenizer.write(twitterName);
-							}
-						}
+					if (value != null) {
 
-						tx.success();
+						// separate from previous word
+						tokenizer.flush();
+						tokenizer.write(value);
 					}
+				}
 
-					// index document excluding stop words
-					final NodeService nodeService       = Services.getInstance().getService(NodeService.class);
-					final Index<Node> fulltextIndex     = nodeService.getNodeIndex(NodeService.NodeIndex.fulltext);
-					final Set<String> stopWords         = languageStopwordMap.get(tokenizer.getLanguage());
-					final String indexKeyName           = Indexable.indexedWords.jsonName();
-					final Iterator<String> wordIterator = tokenizer.getWords().iterator();
-					final Node node                     = file.getNode();
-					final Set<String> indexedWords      = new TreeSet<>();
-
-					logger.log(Level.INFO, "Indexing {0}..", fileName);
-
-					while (wordIterator.hasNext()) {
+				// flush last word and identify language
+				tokenizer.close();
 
-						try (Tx tx = StructrApp.getInstance().tx()) {
+				final long checksum = getIndexChecksum(knownChecksum != null ? knownChecksum : crc.getValue(), metadata);
+				if (indexedChecksum != null && indexedChecksum == checksum) {
 
-							// remove node from index (in case of previous indexing runs)
-							fulltextIndex.remove(node, indexKeyName);
+					logger.log(Level.FINE, "{0} is unchanged, not indexing", fileName);
+					return;
+				}
 
-							while (wordIterator.hasNext()) {
+				// index document excluding stop words
+				final Set<String> stopWords = languageStopwordMap.getOrDefault(tokenizer.getLanguage(), Collections.emptySet());
+				final Set<String> words     = new TreeSet<>();
 
-								// strip double quotes
-								final String word = StringUtils.strip(wordIterator.next(), "\"");
+				for (final String token : tokenizer.getWords()) {
 
-								if (!stopWords.contains(word)) {
+					// strip double quotes
+					final String word = StringUtils.strip(token, "\"");
 
-									indexedWords.add(word);
-									fulltextIndex.add(node, indexKeyName, word, String.class);
+					if (!stopWords.contains(word)) {
+						words.add(word);
+					}
+				}
 
-//									if (indexedWords > 1000) {
-//										indexedWords = 0;
-//										break;
-//									}
-								}
-							}
+				// the index is updated in batches across files
+				FulltextIndexWriter.getInstance().add(new IndexUpdate(file, fileName, tokenizer.getRawText(), words, checksum));
+			}
 
-							tx.success();
-						}
-					}
+		} catch (final Throwable t) {
 
-					// store indexed words separately
-					try (Tx tx = StructrApp.getInstance().tx()) {
+			logger.log(Level.WARNING, "Indexing of {0} failed: {1}", new Object[] { fileName, t.getMessage() } );
+		}
+	}
 
-						// don't modify access time when indexing is finished
-						file.getSecurityContext().preventModificationOfAccessTime();
+	private long getIndexChecksum(final long contentChecksum, final List<String> metadata) {
 
-						// store indexed words
-						file.setProperty(Indexable.indexedWords, (String[]) indexedWords.toArray(new String[indexedWords.size()]));
+		final CRC32 crc = new CRC32();
 
-						tx.success();
-					}
+		for (int i=0; i<8; i++) {
+			crc.update((int)(contentChecksum >>> (i * 8)));
+		}
 
-					logger.log(Level.INFO, "Indexing of {0} finished, {1} words extracted", new Object[] { fileName, tokenizer.getWordCount() } );
+		for (final String value : metadata) {
 
-				}
+			if (value != null) {
+				crc.update(value.getBytes(StandardCharsets.UTF_8));
 			}
 
-		} catch (final Throwable t) {
-
-			logger.log(Level.WARNING, "Indexing of {0} failed: {1}", new Object[] { fileName, t.getMessage() } );
+			crc.update(0);
 		}
+
+		return crc.getValue();
 	}
 
 	static {
@@ -36,6 +36,7 @@ import org.structr.core.app.StructrApp;
 public class FulltextTokenizer extends Writer {
 
 	private static final Logger logger = Logger.getLogger(FulltextTokenizer.class.getName());
+	private static final int LANGUAGE_SAMPLE_SIZE = 65536;
 	public static final Set<Character> SpecialChars = new LinkedHashSet<>();
 
 	private final int wordCountLimit         = Services.parseInt(StructrApp.getConfigurationValue(Services.APPLICATION_FILESYSTEM_INDEXING_LIMIT), 50_000);
@@ -184,7 +185,8 @@ public class FulltextTokenizer extends Writer {
 
 		flush();
 
-		final LanguageIdentifier identifier = new LanguageIdentifier(rawText.toString());
+		// a sample of the text is sufficient to identify the language
+		final LanguageIdentifier identifier = new LanguageIdentifier(rawText.substring(0, Math.min(rawText.length(), LANGUAGE_SAMPLE_SIZE)));
 		if (identifier.isReasonablyCertain()) {
 
 			language = identifier.getLanguage();
@@ -78,6 +78,9 @@ public class UiAuthenticator implements Authenticator {
 		methods.put("DELETE", Method.DELETE);
 		methods.put("OPTIONS", Method.OPTIONS);
 
+		// PATCH modifies like PUT and requires the same grants
+		methods.put("PATCH", Method.PUT);
+
 	}
 
 	// access flags
@@ -18,31 +18,192 @@
  */
 package org.structr.web.common;
 
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayDeque;
 import java.util.Queue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
 
 /**
  * Special buffer for asynchronous streaming of chunked output.
  *
+ * Without a data listener, all fragments are collected in a queue that
+ * can be read after rendering. Once a data listener is set, the buffer
+ * switches to streaming mode: the rendering thread (the only producer)
+ * encodes its output into UTF-8 chunks and hands them over to a single
+ * consumer through a bounded lock-free ring. The listener is notified
+ * whenever a chunk becomes available, and the producer is parked while
+ * the ring is full, so a slow client slows down rendering instead of
+ * filling up the heap.
+ *
  *
  */
 public class AsyncBuffer {
 
-	private final Queue<String> queue = new ArrayDeque<>(1000);
+	private static final int CHUNK_SIZE    = 8192;
+	private static final int RING_CAPACITY = 64;
+	private static final int RING_MASK     = RING_CAPACITY - 1;
+	private static final long PARK_NANOS   = TimeUnit.MILLISECONDS.toNanos(10);
+
+	private final Queue<String> queue      = new ArrayDeque<>(1000);
+	private final ByteBuffer[] ring        = new ByteBuffer[RING_CAPACITY];
+	private final AtomicLong head          = new AtomicLong(0);
+	private final AtomicLong tail          = new AtomicLong(0);
+	private final StringBuilder pending    = new StringBuilder(CHUNK_SIZE);
+	private volatile Runnable dataListener = null;
+	private volatile Thread producer       = null;
+	private volatile boolean finished      = false;
+	private volatile boolean aborted       = false;
 
 	public AsyncBuffer append(final String s) {
 
-		synchronized(queue) {
-			
-			if (s != null) {
+		if (s != null) {
+
+			if (dataListener == null) {
+
 				queue.add(s);
+
+			} else if (!aborted) {
+
+				pending.append(s);
+
+				if (pending.length() >= CHUNK_SIZE) {
+					flush();
+				}
 			}
 		}
 
 		return this;
 	}
 
+	/**
+	 * Returns the collected fragments. Only contains data if this buffer
+	 * is not in streaming mode.
+	 *
+	 * @return the fragment queue
+	 */
 	public Queue<String> getQueue() {
 		return queue;
 	}
+
+	/**
+	 * Switches this buffer to streaming mode. The given listener is called
+	 * from the rendering thread every time new data is available and when
+	 * the buffer is finished, so it must not block.
+	 *
+	 * @param dataListener
+	 */
+	public void setDataListener(final Runnable dataListener) {
+		this.dataListener = dataListener;
+	}
+
+	/**
+	 * Marks the end of the output, must be called by the producer when
+	 * rendering is done.
+	 */
+	public void finish() {
+
+		flush();
+
+		finished = true;
+
+		signal();
+	}
+
+	/**
+	 * Discards all further output and releases a waiting producer, called
+	 * by the consumer if the client went away.
+	 */
+	public void abort() {
+
+		aborted = true;
+
+		final Thread waiting = producer;
+		if (waiting != null) {
+
+			LockSupport.unpark(waiting);
+		}
+	}
+
+	/**
+	 * Removes and returns the next chunk of encoded output, or null if no
+	 * chunk is available. Must only be called by a single consumer.
+	 *
+	 * @return the next chunk or null
+	 */
+	public ByteBuffer poll() {
+
+		final long h = head.get();
+		if (h == tail.get()) {
+			return null;
+		}
+
+		final int index         = (int)(h & RING_MASK);
+		final ByteBuffer chunk  = ring[index];
+
+		ring[index] = null;
+		head.lazySet(h + 1);
+
+		// release producer if it is waiting for free space
+		final Thread waiting = producer;
+		if (waiting != null) {
+
+			LockSupport.unpark(waiting);
+		}
+
+		return chunk;
+	}
+
+	/**
+	 * Indicates that the producer is done and all chunks have been consumed.
+	 *
+	 * @return whether all output was consumed
+	 */
+	public boolean isDrained() {
+		return finished && head.get() == tail.get();
+	}
+
+	// ----- private methods -----
+	private void flush() {
+
+		if (pending.length() == 0 || aborted) {
+			return;
+		}
+
+		final ByteBuffer chunk = ByteBuffer.wrap(pending.toString().getBytes(StandardCharsets.UTF_8));
+		pending.setLength(0);
+
+		final long t = tail.get();
+
+		// back-pressure: wait for the consumer while the ring is full
+		while (t - head.get() >= RING_CAPACITY) {
+
+			if (aborted) {
+				return;
+			}
+
+			producer = Thread.currentThread();
+			signal();
+
+			LockSupport.parkNanos(this, PARK_NANOS);
+		}
+
+		producer = null;
+
+		ring[(int)(t & RING_MASK)] = chunk;
+		tail.lazySet(t + 1);
+
+		signal();
+	}
+
+	private void signal() {
+
+		final Runnable listener = dataListener;
+		if (listener != null) {
+
+			listener.run();
+		}
+	}
 }
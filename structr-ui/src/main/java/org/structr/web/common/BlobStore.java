@@ -0,0 +1,533 @@
+/**
+ * Copyright (C) 2010-2016 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.web.common;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collection;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.structr.common.SecurityContext;
+import org.structr.common.error.FrameworkException;
+import org.structr.core.Services;
+import org.structr.core.StructrTransactionListener;
+import org.structr.core.TransactionSource;
+import org.structr.core.app.StructrApp;
+import org.structr.core.graph.ModificationEvent;
+import org.structr.core.graph.TransactionCommand;
+import org.structr.web.entity.FileBase;
+
+/**
+ * Content-addressed storage for file contents.
+ *
+ * If enabled, the contents of files are stored in blobs that are named
+ * after the SHA-256 hash of their content, so identical content is only
+ * stored once and shared by all file nodes that have it. File nodes
+ * reference their blob by relativeFilePath and contentHash, the number
+ * of file nodes with a given contentHash is the reference count of the
+ * blob. Blobs are never modified, writing to a shared file first gives
+ * it a private copy (copy-on-write).
+ *
+ * Blobs that are released by a file node are collected after a later
+ * transaction has been committed, if no file node references them any
+ * more. Blobs that were stored recently are kept for a grace period, so
+ * that a blob that is referenced by a transaction that has not been
+ * committed yet is never collected. The private content a file node had
+ * before it was moved into the store is deleted after the transaction
+ * that replaced it has been committed, and kept if it was rolled back.
+ *
+ * Storing and collecting a blob is serialized per hash, and a blob is
+ * only deleted if it is still unreferenced and outside the grace period
+ * while its lock is held. Released private contents are recorded in a
+ * journal, and all existing blobs are checked once after a restart, so
+ * that nothing that was released before a restart is leaked.
+ *
+ *
+ */
+public class BlobStore implements StructrTransactionListener {
+
+	private static final Logger logger     = Logger.getLogger(BlobStore.class.getName());
+	private static final long GRACE_PERIOD = TimeUnit.MINUTES.toMillis(10);
+	private static final String BLOB_PATH  = "blobs";
+	private static final String TEMP_PATH  = BLOB_PATH + "/tmp";
+	private static final String JOURNAL    = BLOB_PATH + "/released";
+	private static final int STRIPES       = 64;
+	private static final int MAX_COLLECT   = 1000;
+	private static final Object lock       = new Object();
+	private static BlobStore instance      = null;
+
+	private final Queue<PrivateContent> privateContents = new ConcurrentLinkedQueue<>();
+	private final Queue<String> candidates              = new ConcurrentLinkedQueue<>();
+	private final Object[] stripes                      = new Object[STRIPES];
+	private final Object journalLock                    = new Object();
+
+	private BlobStore() {
+
+		for (int i=0; i<STRIPES; i++) {
+			stripes[i] = new Object();
+		}
+	}
+
+	public static BlobStore getInstance() {
+
+		synchronized (lock) {
+
+			if (instance == null) {
+
+				instance = new BlobStore();
+				instance.recover();
+
+				TransactionCommand.registerTransactionListener(instance);
+			}
+		}
+
+		return instance;
+	}
+
+	public static boolean isEnabled() {
+		return "true".equals(StructrApp.getConfigurationValue(Services.APPLICATION_FILESYSTEM_DEDUPLICATION, "false"));
+	}
+
+	public static MessageDigest createDigest() {
+
+		try {
+
+			return MessageDigest.getInstance("SHA-256");
+
+		} catch (NoSuchAlgorithmException nex) {
+
+			// every Java platform must support SHA-256
+			throw new IllegalStateException(nex);
+		}
+	}
+
+	public static String toHex(final byte[] hash) {
+
+		final StringBuilder buf = new StringBuilder(hash.length * 2);
+
+		for (final byte b : hash) {
+
+			buf.append(Character.forDigit((b >> 4) & 0xf, 16));
+			buf.append(Character.forDigit(b & 0xf, 16));
+		}
+
+		return buf.toString();
+	}
+
+	/**
+	 * Returns the path of the blob with the given hash, relative to the
+	 * files path.
+	 *
+	 * @param hash
+	 * @return the relative path
+	 */
+	public static String getRelativePath(final String hash) {
+		return BLOB_PATH + "/" + hash.substring(0, 2) + "/" + hash.substring(2, 4) + "/" + hash;
+	}
+
+	/**
+	 * Creates a new temporary file on the same file system as the blobs,
+	 * so that it can be moved into the store without copying.
+	 *
+	 * @return the temporary file
+	 * @throws IOException
+	 */
+	public File createTempFile() throws IOException {
+
+		final File tempFile = new File(FileHelper.getFilePath(TEMP_PATH + "/" + UUID.randomUUID().toString()));
+
+		tempFile.getParentFile().mkdirs();
+		tempFile.createNewFile();
+
+		return tempFile;
+	}
+
+	/**
+	 * Moves the given file into the store as the blob with the given
+	 * hash. If the blob already exists, the file is deleted instead.
+	 *
+	 * @param file the file with the content, must not be used afterwards
+	 * @param hash the SHA-256 hash of the content
+	 * @return the relative path of the blob
+	 * @throws IOException
+	 */
+	public String store(final File file, final String hash) throws IOException {
+
+		final String relativePath = getRelativePath(hash);
+		final File blob           = new File(FileHelper.getFilePath(relativePath));
+
+		synchronized (getStripe(hash)) {
+
+			if (blob.exists()) {
+
+				// protect existing blob from being collected
+				blob.setLastModified(System.currentTimeMillis());
+				file.delete();
+
+			} else {
+
+				blob.getParentFile().mkdirs();
+
+				try {
+
+					Files.move(file.toPath(), blob.toPath(), StandardCopyOption.ATOMIC_MOVE);
+
+				} catch (FileAlreadyExistsException fex) {
+
+					// stored concurrently
+					blob.setLastModified(System.currentTimeMillis());
+					file.delete();
+				}
+			}
+		}
+
+		return relativePath;
+	}
+
+	/**
+	 * Marks the blob with the given hash as a candidate for collection.
+	 * The blob is deleted after the next commit if it is not referenced
+	 * any more.
+	 *
+	 * @param hash
+	 */
+	public void release(final String hash) {
+
+		if (hash != null) {
+			candidates.add(hash);
+		}
+	}
+
+	/**
+	 * Marks the private content at the given path as replaced by a blob.
+	 * The content is deleted after the next commit in which the file node
+	 * does not reference it any more.
+	 *
+	 * @param file the file node that had the content
+	 * @param relativePath the path of the content, relative to the files path
+	 */
+	public void releasePrivateContent(final FileBase file, final String relativePath) {
+
+		if (relativePath != null) {
+
+			final PrivateContent content = new PrivateContent(file.getUuid(), relativePath, System.currentTimeMillis());
+
+			synchronized (journalLock) {
+
+				privateContents.add(content);
+				appendToJournal(content);
+			}
+		}
+	}
+
+	// ----- interface StructrTransactionListener -----
+	@Override
+	public void beforeCommit(final SecurityContext securityContext, final Collection<ModificationEvent> modificationEvents, final TransactionSource source) {
+	}
+
+	@Override
+	public void afterCommit(final SecurityContext securityContext, final Collection<ModificationEvent> modificationEvents, final TransactionSource source) {
+
+		collectPrivateContents();
+		collectBlobs();
+	}
+
+	// ----- private methods -----
+	private Object getStripe(final String hash) {
+		return stripes[hash.hashCode() & (STRIPES - 1)];
+	}
+
+	/**
+	 * Restores the state of the store after a restart: reads the journal
+	 * of released private contents, removes stale temporary files and
+	 * makes all existing blobs candidates for collection, so that blobs
+	 * that were released before the restart are collected as well.
+	 */
+	private void recover() {
+
+		privateContents.addAll(readJournal());
+
+		final long now = System.currentTimeMillis();
+		final File tmp = new File(FileHelper.getFilePath(TEMP_PATH));
+		final File[] tempFiles = tmp.listFiles();
+
+		if (tempFiles != null) {
+
+			for (final File tempFile : tempFiles) {
+
+				if (tempFile.lastModified() + GRACE_PERIOD <= now) {
+					tempFile.delete();
+				}
+			}
+		}
+
+		final File[] level1 = new File(FileHelper.getFilePath(BLOB_PATH)).listFiles();
+		if (level1 != null) {
+
+			for (final File dir1 : level1) {
+
+				final File[] level2 = dir1.getName().length() == 2 ? dir1.listFiles() : null;
+				if (level2 != null) {
+
+					for (final File dir2 : level2) {
+
+						final String[] blobs = dir2.list();
+						if (blobs != null) {
+
+							for (final String hash : blobs) {
+								candidates.add(hash);
+							}
+						}
+					}
+				}
+			}
+		}
+	}
+
+	private void collectPrivateContents() {
+
+		if (privateContents.isEmpty()) {
+			return;
+		}
+
+		synchronized (journalLock) {
+
+			final List<PrivateContent> deferred = new LinkedList<>();
+			final long now                      = System.currentTimeMillis();
+			PrivateContent content              = null;
+
+			while ((content = privateContents.poll()) != null) {
+
+				try {
+
+					final FileBase file = StructrApp.getInstance().get(FileBase.class, content.uuid);
+					if (file == null || !content.relativePath.equals(file.getRelativeFilePath())) {
+
+						final File privateFile = new File(FileHelper.getFilePath(content.relativePath));
+						if (privateFile.isFile()) {
+
+							logger.log(Level.FINE, "Deleting private content {0} of file {1}", new Object[] { content.relativePath, content.uuid });
+
+							privateFile.delete();
+						}
+
+					} else if (content.timestamp + GRACE_PERIOD > now) {
+
+						// the transaction that released the content has not been committed yet
+						deferred.add(content);
+					}
+
+					// otherwise the transaction has been rolled back and the content is still in use
+
+				} catch (FrameworkException fex) {
+
+					logger.log(Level.WARNING, "Unable to check references of private content {0}: {1}", new Object[] { content.relativePath, fex.getMessage() });
+					deferred.add(content);
+				}
+			}
+
+			privateContents.addAll(deferred);
+			writeJournal(deferred);
+		}
+	}
+
+	private void collectBlobs() {
+
+		if (candidates.isEmpty()) {
+			return;
+		}
+
+		final List<String> deferred = new LinkedList<>();
+		String hash                 = null;
+		int count                   = 0;
+
+		// the remaining candidates are collected after the next commit
+		while (count++ < MAX_COLLECT && (hash = candidates.poll()) != null) {
+
+			final File blob = new File(FileHelper.getFilePath(getRelativePath(hash)));
+
+			synchronized (getStripe(hash)) {
+
+				// the blob may have been stored again since it was released
+				if (!blob.exists()) {
+					continue;
+				}
+
+				if (blob.lastModified() + GRACE_PERIOD > System.currentTimeMillis()) {
+
+					deferred.add(hash);
+					continue;
+				}
+
+				try {
+
+					if (StructrApp.getInstance().nodeQuery(FileBase.class).and(FileBase.contentHash, hash).getFirst() == null) {
+
+						logger.log(Level.FINE, "Deleting unreferenced blob {0}", hash);
+
+						blob.delete();
+					}
+
+				} catch (FrameworkException fex) {
+
+					logger.log(Level.WARNING, "Unable to check references of blob {0}: {1}", new Object[] { hash, fex.getMessage() });
+					deferred.add(hash);
+				}
+			}
+		}
+
+		candidates.addAll(deferred);
+	}
+
+	private List<PrivateContent> readJournal() {
+
+		final List<PrivateContent> contents = new LinkedList<>();
+		final File journal                  = new File(FileHelper.getFilePath(JOURNAL));
+
+		if (journal.isFile()) {
+
+			try (final BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(journal), StandardCharsets.UTF_8))) {
+
+				String line = null;
+
+				while ((line = reader.readLine()) != null) {
+
+					final PrivateContent content = PrivateContent.fromString(line);
+					if (content != null) {
+
+						contents.add(content);
+					}
+				}
+
+			} catch (IOException ioex) {
+
+				logger.log(Level.WARNING, "Unable to read journal of released private contents", ioex);
+			}
+		}
+
+		return contents;
+	}
+
+	private void appendToJournal(final PrivateContent content) {
+
+		final File journal = new File(FileHelper.getFilePath(JOURNAL));
+
+		journal.getParentFile().mkdirs();
+
+		try (final Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(journal, true), StandardCharsets.UTF_8))) {
+
+			writer.write(content.toString());
+			writer.write("\n");
+
+		} catch (IOException ioex) {
+
+			logger.log(Level.WARNING, "Unable to write journal of released private contents", ioex);
+		}
+	}
+
+	private void writeJournal(final List<PrivateContent> contents) {
+
+		final File journal = new File(FileHelper.getFilePath(JOURNAL));
+
+		if (contents.isEmpty()) {
+
+			journal.delete();
+			return;
+		}
+
+		final File tempFile = new File(FileHelper.getFilePath(JOURNAL + ".tmp"));
+
+		try (final Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(tempFile), StandardCharsets.UTF_8))) {
+
+			for (final PrivateContent content : contents) {
+
+				writer.write(content.toString());
+				writer.write("\n");
+			}
+
+		} catch (IOException ioex) {
+
+			logger.log(Level.WARNING, "Unable to write journal of released private contents", ioex);
+			return;
+		}
+
+		try {
+
+			Files.move(tempFile.toPath(), journal.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+		} catch (IOException ioex) {
+
+			logger.log(Level.WARNING, "Unable to write journal of released private contents", ioex);
+		}
+	}
+
+	// ----- nested classes -----
+	private static class PrivateContent {
+
+		private String uuid         = null;
+		private String relativePath = null;
+		private long timestamp      = 0L;
+
+		public PrivateContent(final String uuid, final String relativePath, final long timestamp) {
+
+			this.uuid         = uuid;
+			this.relativePath = relativePath;
+			this.timestamp    = timestamp;
+		}
+
+		@Override
+		public String toString() {
+			return uuid + "\t" + timestamp + "\t" + relativePath;
+		}
+
+		public static PrivateContent fromString(final String line) {
+
+			final String[] parts = line.split("\t", 3);
+			if (parts.length == 3) {
+
+				try {
+
+					return new PrivateContent(parts[0], parts[2], Long.parseLong(parts[1]));
+
+				} catch (NumberFormatException nfex) {}
+			}
+
+			return null;
+		}
+	}
+}
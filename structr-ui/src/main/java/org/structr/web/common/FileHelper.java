@@ -18,16 +18,27 @@
  */
 package org.structr.web.common;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.net.URLConnection;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
 import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
 import java.text.SimpleDateFormat;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.List;
 import java.util.UUID;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.zip.CRC32;
 import javax.activation.MimetypesFileTypeMap;
 import net.sf.jmimemagic.Magic;
 import net.sf.jmimemagic.MagicException;
@@ -61,6 +72,8 @@ import org.structr.web.entity.Folder;
 public class FileHelper {
 
 	private static final String UNKNOWN_MIME_TYPE = "application/octet-stream";
+	private static final int BUFFER_SIZE          = 65536;
+	private static final int HEAD_SIZE            = 4096;
 	private static final Logger logger = Logger.getLogger(FileHelper.class.getName());
 	private static final MimetypesFileTypeMap mimeTypeMap = new MimetypesFileTypeMap(FileHelper.class.getResourceAsStream("/mime.types"));
 
@@ -131,8 +144,15 @@ public class FileHelper {
 	public static <T extends org.structr.dynamic.File> T createFile(final SecurityContext securityContext, final InputStream fileStream, final String contentType, final Class<T> fileType, final String name)
 		throws FrameworkException, IOException {
 
-		final byte[] data = IOUtils.toByteArray(fileStream);
-		return createFile(securityContext, data, contentType, fileType, name);
+		final PropertyMap props = new PropertyMap();
+
+		props.put(AbstractNode.name, name);
+
+		final T newFile = (T) StructrApp.getInstance(securityContext).create(fileType, props);
+
+		setFileData(newFile, fileStream, contentType);
+
+		return newFile;
 
 	}
 
@@ -210,15 +230,26 @@ public class FileHelper {
 	public static void setFileData(final org.structr.dynamic.File file, final byte[] fileData, final String contentType)
 		throws FrameworkException, IOException {
 
-		FileHelper.writeToFile(file, fileData);
+		setFileData(file, new ByteArrayInputStream(fileData), contentType);
 
-		file.setProperty(org.structr.dynamic.File.contentType, contentType != null ? contentType : getContentMimeType(file));
+	}
 
-		file.unlockReadOnlyPropertiesOnce();
-		file.setProperty(org.structr.dynamic.File.checksum, FileHelper.getChecksum(file));
+	/**
+	 * Write the contents of the given stream to the given file node and set
+	 * checksum, size and content type, in a single pass over the data.
+	 *
+	 * @param file
+	 * @param fileStream
+	 * @param contentType if null, try to auto-detect content type
+	 * @throws FrameworkException
+	 * @throws IOException
+	 */
+	public static void setFileData(final org.structr.dynamic.File file, final InputStream fileStream, final String contentType)
+		throws FrameworkException, IOException {
 
-		file.unlockReadOnlyPropertiesOnce();
-		file.setProperty(org.structr.dynamic.File.size, FileHelper.getSize(file));
+		final ContentInfo info = FileHelper.writeToFile(file, fileStream);
+
+		file.setProperty(org.structr.dynamic.File.contentType, contentType != null ? contentType : getContentMimeType(info.getHead(), file.getProperty(AbstractNode.name)));
 
 		file.unlockReadOnlyPropertiesOnce();
 		file.setProperty(org.structr.dynamic.File.version, 1);
@@ -261,6 +292,36 @@ public class FileHelper {
 	}
 
 	//~--- inner classes --------------------------------------------------
+	/**
+	 * Checksum, size and the first bytes of data that was written to a
+	 * file, computed while writing.
+	 */
+	public static class ContentInfo {
+
+		private byte[] head   = null;
+		private long checksum = 0L;
+		private long size     = 0L;
+
+		public ContentInfo(final long checksum, final long size, final byte[] head) {
+
+			this.checksum = checksum;
+			this.size     = size;
+			this.head     = head;
+		}
+
+		public long getChecksum() {
+			return checksum;
+		}
+
+		public long getSize() {
+			return size;
+		}
+
+		public byte[] getHead() {
+			return head;
+		}
+	}
+
 	public static class Base64URIData {
 
 		private String contentType = null;
@@ -308,18 +369,81 @@ public class FileHelper {
 	}
 
 	/**
-	 * Write binary data to a file and reference the file on disk at the
-	 * given file node
+	 * Stream binary data to a file, reference the file on disk at the given
+	 * file node and set checksum and size. The data is never held in memory
+	 * as a whole, checksum and size are computed while writing.
+	 *
+	 * If content deduplication is enabled, the data is stored in the
+	 * {@link BlobStore} and shared with all other files with the same
+	 * content.
 	 *
 	 * @param fileNode
 	 * @param inStream
 	 * @throws FrameworkException
 	 * @throws IOException
+	 * @return checksum, size and the first bytes of the data
 	 */
-	public static void writeToFile(final org.structr.dynamic.File fileNode, final InputStream inStream) throws FrameworkException, IOException {
+	public static ContentInfo writeToFile(final org.structr.dynamic.File fileNode, final InputStream inStream) throws FrameworkException, IOException {
+
+		// shared content is never overwritten
+		detachContent(fileNode, false);
+
+		final boolean deduplicate     = BlobStore.isEnabled();
+		final java.io.File fileOnDisk = deduplicate ? BlobStore.getInstance().createTempFile() : prepareFileOnDisk(fileNode);
+		final MessageDigest digest    = deduplicate ? BlobStore.createDigest() : null;
+		final ReadableByteChannel in  = Channels.newChannel(inStream);
+		final ByteBuffer buffer       = ByteBuffer.allocate(BUFFER_SIZE);
+		final byte[] head             = new byte[HEAD_SIZE];
+		final CRC32 crc               = new CRC32();
+		int headLength                = 0;
+		long size                     = 0L;
+
+		// the input stream is not closed here, it is owned by the caller
+		try (final FileChannel out = FileChannel.open(fileOnDisk.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+
+			while (in.read(buffer) >= 0) {
+
+				buffer.flip();
+
+				if (headLength < HEAD_SIZE) {
+
+					final int count = Math.min(HEAD_SIZE - headLength, buffer.remaining());
+					buffer.duplicate().get(head, headLength, count);
+					headLength += count;
+				}
 
-		writeToFile(fileNode, IOUtils.toByteArray(inStream));
+				crc.update(buffer.duplicate());
 
+				if (digest != null) {
+					digest.update(buffer.duplicate());
+				}
+
+				size += buffer.remaining();
+
+				while (buffer.hasRemaining()) {
+					out.write(buffer);
+				}
+
+				buffer.clear();
+			}
+		}
+
+		final ContentInfo info = new ContentInfo(crc.getValue(), size, Arrays.copyOf(head, headLength));
+
+		logger.log(Level.FINE, "Wrote {0} bytes with checksum {1} to {2}", new Object[]{size, info.getChecksum(), fileOnDisk});
+
+		if (deduplicate) {
+
+			assignBlob(fileNode, fileOnDisk, BlobStore.toHex(digest.digest()));
+		}
+
+		fileNode.unlockReadOnlyPropertiesOnce();
+		fileNode.setProperty(org.structr.dynamic.File.checksum, info.getChecksum());
+
+		fileNode.unlockReadOnlyPropertiesOnce();
+		fileNode.setProperty(org.structr.dynamic.File.size, info.getSize());
+
+		return info;
 	}
 
 	/**
@@ -334,6 +458,171 @@ public class FileHelper {
 	 */
 	public static File writeToFile(final org.structr.dynamic.File fileNode, final byte[] data) throws FrameworkException, IOException {
 
+		writeToFile(fileNode, new ByteArrayInputStream(data));
+
+		return fileNode.getFileOnDisk();
+
+	}
+
+	/**
+	 * Gives the given file a private copy of its content if it references
+	 * shared content in the {@link BlobStore}, so the content can be
+	 * modified. Does nothing if the content is not shared.
+	 *
+	 * @param file
+	 * @param copy whether to copy the content, or start with an empty file
+	 * @throws FrameworkException
+	 * @throws IOException
+	 */
+	public static void detachContent(final FileBase file, final boolean copy) throws FrameworkException, IOException {
+
+		final String hash = file.getProperty(FileBase.contentHash);
+		if (hash == null) {
+			return;
+		}
+
+		final java.io.File blob       = file.getFileOnDisk();
+		final java.io.File fileOnDisk = prepareFileOnDisk(file);
+
+		if (copy && blob != null && blob.exists()) {
+
+			Files.copy(blob.toPath(), fileOnDisk.toPath(), StandardCopyOption.REPLACE_EXISTING);
+
+		} else {
+
+			fileOnDisk.delete();
+			fileOnDisk.createNewFile();
+		}
+
+		file.unlockReadOnlyPropertiesOnce();
+		file.setProperty(FileBase.contentHash, null);
+
+		BlobStore.getInstance().release(hash);
+	}
+
+	/**
+	 * Moves the private content of the given file into the {@link BlobStore}
+	 * if content deduplication is enabled. The content is read once to
+	 * compute its hash. Errors are logged, the file keeps its private
+	 * content in that case.
+	 *
+	 * @param file
+	 */
+	public static void deduplicate(final FileBase file) {
+
+		if (!BlobStore.isEnabled() || file.getProperty(FileBase.contentHash) != null) {
+			return;
+		}
+
+		final java.io.File fileOnDisk = file.getFileOnDisk();
+		if (fileOnDisk == null || !fileOnDisk.exists()) {
+			return;
+		}
+
+		try {
+
+			final MessageDigest digest = BlobStore.createDigest();
+			final ByteBuffer buffer    = ByteBuffer.allocate(BUFFER_SIZE);
+
+			try (final FileChannel in = FileChannel.open(fileOnDisk.toPath(), StandardOpenOption.READ)) {
+
+				while (in.read(buffer) >= 0) {
+
+					buffer.flip();
+					digest.update(buffer);
+					buffer.clear();
+				}
+			}
+
+			// the private content is kept until the transaction is committed
+			final java.io.File copy = BlobStore.getInstance().createTempFile();
+			Files.copy(fileOnDisk.toPath(), copy.toPath(), StandardCopyOption.REPLACE_EXISTING);
+
+			assignBlob(file, copy, BlobStore.toHex(digest.digest()));
+
+		} catch (FrameworkException | IOException ex) {
+
+			logger.log(Level.WARNING, "Unable to deduplicate content of file {0}: {1}", new Object[]{file.getUuid(), ex.getMessage()});
+		}
+	}
+
+	//~--- get methods ----------------------------------------------------
+	/**
+	 * Return mime type of given file
+	 *
+	 * @param file
+	 * @return content type
+	 * @throws java.io.IOException
+	 */
+	public static String getContentMimeType(final org.structr.web.entity.FileBase file) throws IOException {
+		return getContentMimeType(file.getFileOnDisk(), file.getProperty(AbstractNode.name));
+	}
+
+	/**
+	 * Return mime type of the given data, using the name and the first
+	 * bytes of the data.
+	 *
+	 * @param head the first bytes of the data
+	 * @param name
+	 * @return content type
+	 * @throws java.io.IOException
+	 */
+	public static String getContentMimeType(final byte[] head, final String name) throws IOException {
+
+		String mimeType;
+
+		// try name first, if not null
+		if (name != null) {
+			mimeType = mimeTypeMap.getContentType(name);
+			if (mimeType != null && !UNKNOWN_MIME_TYPE.equals(mimeType)) {
+				return mimeType;
+			}
+		}
+
+		// then file content
+		mimeType = URLConnection.guessContentTypeFromStream(new ByteArrayInputStream(head));
+		if (mimeType != null && !UNKNOWN_MIME_TYPE.equals(mimeType)) {
+
+			return mimeType;
+		}
+
+		// fallback: jmimemagic
+		try {
+			final MagicMatch match = Magic.getMagicMatch(head, true);
+			if (match != null) {
+
+				return match.getMimeType();
+			}
+
+		} catch (MagicParseException | MagicMatchNotFoundException | MagicException ignore) {
+			// mex.printStackTrace();
+		}
+
+		// no success :(
+		return UNKNOWN_MIME_TYPE;
+	}
+
+	// ----- private methods -----
+	private static void assignBlob(final FileBase file, final java.io.File content, final String hash) throws FrameworkException, IOException {
+
+		final String previousPath = file.getRelativeFilePath();
+		final String path         = BlobStore.getInstance().store(content, hash);
+
+		file.unlockReadOnlyPropertiesOnce();
+		file.setProperty(FileBase.relativeFilePath, path);
+
+		file.unlockReadOnlyPropertiesOnce();
+		file.setProperty(FileBase.contentHash, hash);
+
+		// remove the private content the file had before, but only after commit
+		if (previousPath != null && !previousPath.equals(path)) {
+
+			BlobStore.getInstance().releasePrivateContent(file, previousPath);
+		}
+	}
+
+	private static java.io.File prepareFileOnDisk(final FileBase fileNode) throws FrameworkException {
+
 		String id = fileNode.getProperty(GraphObject.id);
 		if (id == null) {
 
@@ -352,23 +641,11 @@ public class FileHelper {
 		java.io.File fileOnDisk = new java.io.File(filesPath + "/" + fileNode.getRelativeFilePath());
 
 		fileOnDisk.getParentFile().mkdirs();
-		FileUtils.writeByteArrayToFile(fileOnDisk, data);
 
 		return fileOnDisk;
-
 	}
 
 	//~--- get methods ----------------------------------------------------
-	/**
-	 * Return mime type of given file
-	 *
-	 * @param file
-	 * @return content type
-	 * @throws java.io.IOException
-	 */
-	public static String getContentMimeType(final org.structr.web.entity.FileBase file) throws IOException {
-		return getContentMimeType(file.getFileOnDisk(), file.getProperty(AbstractNode.name));
-	}
 
 	/**
 	 * Return mime type of given file
@@ -0,0 +1,540 @@
+/**
+ * Copyright (C) 2010-2016 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.web.common;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.commons.lang3.StringUtils;
+import org.structr.common.SecurityContext;
+import org.structr.common.error.FrameworkException;
+import org.structr.core.GraphObject;
+import org.structr.core.Services;
+import org.structr.core.StructrTransactionListener;
+import org.structr.core.TransactionSource;
+import org.structr.core.app.StructrApp;
+import org.structr.core.entity.Principal;
+import org.structr.core.graph.ModificationEvent;
+import org.structr.core.graph.RelationshipInterface;
+import org.structr.core.graph.TransactionCommand;
+import org.structr.core.graph.Tx;
+import org.structr.web.common.RenderContext.EditMode;
+import org.structr.web.entity.Component;
+import org.structr.web.entity.dom.Content;
+import org.structr.web.entity.dom.DOMElement;
+import org.structr.web.entity.dom.DOMNode;
+import org.structr.web.entity.dom.Template;
+import org.structr.web.entity.dom.relationship.DOMChildren;
+
+/**
+ * Cache for the rendered output of static DOM subtrees.
+ *
+ * A subtree is static if none of its nodes has data binding (data key,
+ * queries, show or hide conditions), no property of its nodes contains
+ * a template expression and it consists of elements and content nodes
+ * only. The rendered output of a static subtree depends only on the
+ * locale, the detail mode and the indentation depth, and, if not all of
+ * its nodes are visible to everyone, on the user. These are the inputs
+ * the cached fragments are keyed by.
+ *
+ * Whether a node is the root of a static subtree is computed once and
+ * kept until the node or one of its descendants is modified. All cache
+ * entries that depend on a modified node are removed after the
+ * modifying transaction has been committed. Only frontend output is
+ * cached, the edit modes of the backend always render the full tree.
+ *
+ * The analyses and the parent relations between nodes are kept for at
+ * most ten times as many nodes as there are fragments. If that limit is
+ * exceeded, the least recently used node is treated as if it had been
+ * modified, so that no fragment outlives the information it depends on.
+ *
+ *
+ */
+public class FragmentCache implements StructrTransactionListener {
+
+	private static final String SHARED_SCOPE = "*";
+	private static final int NODES_PER_ENTRY = 10;
+	private static final Object lock         = new Object();
+	private static FragmentCache instance    = null;
+
+	private final ThreadLocal<Boolean> capturing   = new ThreadLocal<>();
+	private final Map<String, Analysis> analyses   = new LinkedHashMap<>(16, 0.75f, true);
+	private final Map<String, Set<String>> parents = new LinkedHashMap<>(16, 0.75f, true);
+	private final Map<String, Set<String>> keys    = new HashMap<>();
+	private final AtomicLong generation            = new AtomicLong(0L);
+	private Map<String, Fragment> fragments        = null;
+	private int maxSize                            = 0;
+
+	private FragmentCache() {
+
+		maxSize   = Services.parseInt(StructrApp.getConfigurationValue(Services.APPLICATION_FRAGMENT_CACHE_SIZE), 1000);
+		fragments = new LinkedHashMap<String, Fragment>(16, 0.75f, true) {
+
+			@Override
+			protected boolean removeEldestEntry(final Map.Entry<String, Fragment> eldest) {
+
+				if (size() > maxSize) {
+
+					removeKey(eldest.getValue());
+					return true;
+				}
+
+				return false;
+			}
+		};
+	}
+
+	public static FragmentCache getInstance() {
+
+		synchronized (lock) {
+
+			if (instance == null) {
+
+				instance = new FragmentCache();
+
+				TransactionCommand.registerTransactionListener(instance);
+			}
+		}
+
+		return instance;
+	}
+
+	/**
+	 * Renders the content of the given node, using the cached output if
+	 * the node is the root of a static subtree.
+	 *
+	 * @param node
+	 * @param renderContext
+	 * @param depth
+	 * @throws FrameworkException
+	 */
+	public void render(final DOMNode node, final RenderContext renderContext, final int depth) throws FrameworkException {
+
+		final SecurityContext securityContext = renderContext.getSecurityContext();
+
+		// the output of nested nodes is part of the enclosing fragment
+		if (maxSize <= 0 || capturing.get() != null || !EditMode.NONE.equals(renderContext.getEditMode(securityContext.getUser(false))) || TransactionCommand.hasModifications()) {
+
+			node.renderContent(renderContext, depth);
+			return;
+		}
+
+		final Analysis analysis = getAnalysis(node, generation.get());
+
+		if (!analysis.isStatic) {
+
+			node.renderContent(renderContext, depth);
+			return;
+		}
+
+		final Principal user = securityContext.getUser(false);
+		final String scope   = analysis.isShared ? SHARED_SCOPE : (user != null ? user.getUuid() : "");
+		final String key     = getKey(node.getUuid(), scope, renderContext, depth);
+		final Fragment cached;
+
+		synchronized (this) {
+			cached = fragments.get(key);
+		}
+
+		if (cached != null) {
+
+			renderContext.getBuffer().append(cached.content);
+			return;
+		}
+
+		// render into a separate buffer to capture the output
+		final AsyncBuffer out        = renderContext.getBuffer();
+		final AsyncBuffer capture    = new AsyncBuffer();
+		final boolean inBody         = renderContext.inBody();
+		final boolean appLibRendered = renderContext.appLibRendered();
+
+		renderContext.setBuffer(capture);
+		capturing.set(Boolean.TRUE);
+
+		try {
+
+			node.renderContent(renderContext, depth);
+
+		} finally {
+
+			capturing.remove();
+			renderContext.setBuffer(out);
+		}
+
+		final StringBuilder buf = new StringBuilder();
+		for (final String part : capture.getQueue()) {
+
+			buf.append(part);
+		}
+
+		final String content = buf.toString();
+
+		out.append(content);
+
+		// output that changed the state of the render context cannot be replayed
+		if (inBody == renderContext.inBody() && appLibRendered == renderContext.appLibRendered()) {
+
+			synchronized (this) {
+
+				// the analysis is removed if the subtree was modified while it was rendered
+				if (analyses.get(node.getUuid()) == analysis) {
+
+					final Fragment fragment = new Fragment(key, node.getUuid(), !analysis.isShared, content);
+
+					fragments.put(key, fragment);
+					keys.computeIfAbsent(fragment.uuid, k -> new HashSet<>()).add(key);
+				}
+			}
+		}
+	}
+
+	public synchronized void clear() {
+
+		analyses.clear();
+		parents.clear();
+		keys.clear();
+		fragments.clear();
+
+		generation.incrementAndGet();
+	}
+
+	public synchronized int size() {
+		return fragments.size();
+	}
+
+	// ----- interface StructrTransactionListener -----
+	@Override
+	public void beforeCommit(final SecurityContext securityContext, final Collection<ModificationEvent> modificationEvents, final TransactionSource source) {
+	}
+
+	@Override
+	public void afterCommit(final SecurityContext securityContext, final Collection<ModificationEvent> modificationEvents, final TransactionSource source) {
+
+		final Set<String> modified = new LinkedHashSet<>();
+		boolean principals         = false;
+
+		try (final Tx tx = StructrApp.getInstance().tx()) {
+
+			for (final ModificationEvent event : modificationEvents) {
+
+				final GraphObject obj = event.getGraphObject();
+
+				if (event.isNode()) {
+
+					modified.add(event.getUuid());
+
+					principals |= obj instanceof Principal;
+
+				} else if (obj instanceof RelationshipInterface) {
+
+					final RelationshipInterface rel = (RelationshipInterface)obj;
+
+					try {
+
+						for (final GraphObject node : new GraphObject[] { rel.getSourceNodeAsSuperUser(), rel.getTargetNodeAsSuperUser() }) {
+
+							if (node != null) {
+
+								modified.add(node.getUuid());
+
+								principals |= node instanceof Principal;
+							}
+						}
+
+					} catch (Throwable t) {
+
+						// relationship not accessible anymore, be conservative
+						clear();
+						return;
+					}
+				}
+			}
+
+			tx.success();
+
+		} catch (FrameworkException fex) {
+
+			clear();
+			return;
+		}
+
+		if (!modified.isEmpty()) {
+
+			invalidate(modified, principals);
+		}
+	}
+
+	// ----- private methods -----
+	private synchronized void invalidate(final Set<String> modified, final boolean principals) {
+
+		generation.incrementAndGet();
+
+		remove(modified);
+
+		// users and groups determine the visibility of user-specific fragments
+		if (principals) {
+
+			final Iterator<Fragment> it = fragments.values().iterator();
+			while (it.hasNext()) {
+
+				final Fragment fragment = it.next();
+				if (fragment.userSpecific) {
+
+					removeKey(fragment);
+					it.remove();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Removes the analyses and fragments of the given nodes and their
+	 * ancestors. Must be called while holding the lock.
+	 */
+	private void remove(final Collection<String> uuids) {
+
+		final List<String> queue = new LinkedList<>(uuids);
+		final Set<String> seen   = new HashSet<>();
+
+		while (!queue.isEmpty()) {
+
+			final String uuid = queue.remove(0);
+
+			if (seen.add(uuid)) {
+
+				analyses.remove(uuid);
+
+				final Set<String> fragmentKeys = keys.remove(uuid);
+				if (fragmentKeys != null) {
+
+					for (final String key : fragmentKeys) {
+						fragments.remove(key);
+					}
+				}
+
+				final Set<String> dependents = parents.remove(uuid);
+				if (dependents != null) {
+
+					queue.addAll(dependents);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Removes the least recently used nodes if there are too many. Must
+	 * be called while holding the lock.
+	 */
+	private void trim() {
+
+		final int maxNodes = maxSize * NODES_PER_ENTRY;
+
+		if (analyses.size() > maxNodes || parents.size() > maxNodes) {
+
+			// analyses that are being computed must not be stored
+			generation.incrementAndGet();
+
+			while (analyses.size() > maxNodes) {
+				remove(Collections.singleton(analyses.keySet().iterator().next()));
+			}
+
+			while (parents.size() > maxNodes) {
+				remove(Collections.singleton(parents.keySet().iterator().next()));
+			}
+		}
+	}
+
+	private Analysis getAnalysis(final DOMNode node, final long startGeneration) {
+
+		final String uuid = node.getUuid();
+
+		synchronized (this) {
+
+			final Analysis existing = analyses.get(uuid);
+			if (existing != null) {
+
+				return existing;
+			}
+		}
+
+		final Analysis analysis = analyze(node, startGeneration);
+
+		synchronized (this) {
+
+			// do not store results that were computed from outdated data
+			if (generation.get() == startGeneration) {
+
+				analyses.put(uuid, analysis);
+				trim();
+			}
+		}
+
+		return analysis;
+	}
+
+	private Analysis analyze(final DOMNode node, final long startGeneration) {
+
+		if (!isStatic(node)) {
+			return new Analysis(false, false);
+		}
+
+		final List<DOMNode> children = new LinkedList<>();
+
+		for (final DOMChildren rel : node.getChildRelationships()) {
+			children.add(rel.getTargetNode());
+		}
+
+		if (children.isEmpty() && node instanceof DOMElement) {
+
+			// shared component instances render the children of the shared component
+			final DOMNode sharedComponent = node.getProperty(DOMNode.sharedComponent);
+			if (sharedComponent != null) {
+
+				addParent(sharedComponent.getUuid(), node.getUuid());
+
+				for (final DOMChildren rel : sharedComponent.getChildRelationships()) {
+					children.add(rel.getTargetNode());
+				}
+			}
+		}
+
+		boolean isStatic = true;
+		boolean isShared = node.isVisibleToPublicUsers() && node.isVisibleToAuthenticatedUsers();
+
+		for (final DOMNode child : children) {
+
+			addParent(child.getUuid(), node.getUuid());
+
+			final Analysis childAnalysis = getAnalysis(child, startGeneration);
+
+			isStatic &= childAnalysis.isStatic;
+			isShared &= childAnalysis.isShared;
+
+			if (!isStatic) {
+				break;
+			}
+		}
+
+		return new Analysis(isStatic, isShared);
+	}
+
+	private boolean isStatic(final DOMNode node) {
+
+		if (node instanceof Template || node instanceof Component || !(node instanceof Content || node instanceof DOMElement)) {
+			return false;
+		}
+
+		if (StringUtils.isNotBlank(node.getProperty(DOMNode.dataKey))
+			|| StringUtils.isNotBlank(node.getProperty(DOMNode.restQuery))
+			|| StringUtils.isNotBlank(node.getProperty(DOMNode.cypherQuery))
+			|| StringUtils.isNotBlank(node.getProperty(DOMNode.xpathQuery))
+			|| StringUtils.isNotBlank(node.getProperty(DOMNode.functionQuery))
+			|| StringUtils.isNotBlank(node.getProperty(DOMNode.showConditions))
+			|| StringUtils.isNotBlank(node.getProperty(DOMNode.hideConditions))) {
+
+			return false;
+		}
+
+		final org.structr.api.graph.Node dbNode = node.getNode();
+
+		for (final String key : dbNode.getPropertyKeys()) {
+
+			// attributes for the structr app library
+			if (key.startsWith("data-structr-")) {
+				return false;
+			}
+
+			final Object value = dbNode.getProperty(key);
+			if (value instanceof String && ((String)value).contains("${")) {
+
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	private synchronized void addParent(final String child, final String parent) {
+
+		parents.computeIfAbsent(child, k -> new HashSet<>()).add(parent);
+		trim();
+	}
+
+	/**
+	 * Must be called while holding the lock.
+	 */
+	private void removeKey(final Fragment fragment) {
+
+		final Set<String> fragmentKeys = keys.get(fragment.uuid);
+		if (fragmentKeys != null) {
+
+			fragmentKeys.remove(fragment.key);
+
+			if (fragmentKeys.isEmpty()) {
+				keys.remove(fragment.uuid);
+			}
+		}
+	}
+
+	private String getKey(final String uuid, final String scope, final RenderContext renderContext, final int depth) {
+
+		final Locale locale = renderContext.getLocale();
+
+		return uuid + "|" + scope + "|" + (locale != null ? locale.toString() : "") + "|" + depth + "|" + (renderContext.getDetailsDataObject() != null ? "d" : "i");
+	}
+
+	// ----- nested classes -----
+	private static class Analysis {
+
+		private boolean isStatic = false;
+		private boolean isShared = false;
+
+		public Analysis(final boolean isStatic, final boolean isShared) {
+
+			this.isStatic = isStatic;
+			this.isShared = isShared;
+		}
+	}
+
+	private static class Fragment {
+
+		private String key           = null;
+		private String uuid          = null;
+		private String content       = null;
+		private boolean userSpecific = false;
+
+		public Fragment(final String key, final String uuid, final boolean userSpecific, final String content) {
+
+			this.key          = key;
+			this.uuid         = uuid;
+			this.userSpecific = userSpecific;
+			this.content      = content;
+		}
+	}
+}
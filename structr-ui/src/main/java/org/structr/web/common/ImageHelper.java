@@ -28,9 +28,13 @@ import java.awt.image.BufferedImage;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.Iterator;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
 import org.apache.commons.io.IOUtils;
 import org.structr.common.SecurityContext;
 import org.structr.core.app.StructrApp;
@@ -68,7 +72,20 @@ public abstract class ImageHelper extends FileHelper {
 	public static Image createImage(final SecurityContext securityContext, final InputStream imageStream, final String contentType, final Class<? extends Image> imageType, final String name, final boolean markAsThumbnail)
 		throws FrameworkException, IOException {
 
-		return createImage(securityContext, IOUtils.toByteArray(imageStream), contentType, imageType, name, markAsThumbnail);
+		final PropertyMap props = new PropertyMap();
+
+		props.put(AbstractNode.type, imageType == null ? Image.class.getSimpleName() : imageType.getSimpleName());
+		props.put(Image.isThumbnail, markAsThumbnail);
+		props.put(AbstractNode.name, name);
+
+		final Image newImage = StructrApp.getInstance(securityContext).create(imageType, props);
+
+		if (imageStream != null) {
+
+			setFileData(newImage, imageStream, contentType);
+		}
+
+		return newImage;
 
 	}
 
@@ -142,15 +159,46 @@ public abstract class ImageHelper extends FileHelper {
 				return null;
 			}
 
-			final long start     = System.nanoTime();
-			BufferedImage source = null;
+			final long start          = System.nanoTime();
+			final ImageInputStream is = ImageIO.createImageInputStream(in);
+			BufferedImage source      = null;
+			int sourceWidth           = 0;
+			int sourceHeight          = 0;
 
-			// read image
-			source = ImageIO.read(in);
-			if (source != null) {
+			// read image, large images are decoded with subsampling
+			final Iterator<ImageReader> readers = is != null ? ImageIO.getImageReaders(is) : null;
+			if (readers != null && readers.hasNext()) {
+
+				final ImageReader reader = readers.next();
+				try {
+
+					reader.setInput(is, true, true);
 
-				int sourceWidth  = source.getWidth();
-				int sourceHeight = source.getHeight();
+					sourceWidth  = reader.getWidth(0);
+					sourceHeight = reader.getHeight(0);
+
+					final ImageReadParam param = reader.getDefaultReadParam();
+					final int subsampling      = getSubsampling(sourceWidth, sourceHeight, maxWidth, maxHeight, crop);
+
+					if (subsampling > 1) {
+
+						param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+					}
+
+					source = reader.read(0, param);
+
+				} finally {
+
+					reader.dispose();
+					is.close();
+				}
+
+			} else if (is != null) {
+
+				is.close();
+			}
+
+			if (source != null) {
 
 				// Update image dimensions
 				originalImage.setProperty(Image.width, sourceWidth);
@@ -234,6 +282,31 @@ public abstract class ImageHelper extends FileHelper {
 		return null;
 	}
 
+	/**
+	 * Returns the subsampling factor for decoding an image of the given
+	 * size. The decoded image is kept at least twice as large as the
+	 * thumbnail so that resampling still produces a smooth result.
+	 *
+	 * @param sourceWidth
+	 * @param sourceHeight
+	 * @param maxWidth
+	 * @param maxHeight
+	 * @param crop
+	 * @return the subsampling factor, 1 for no subsampling
+	 */
+	public static int getSubsampling(final int sourceWidth, final int sourceHeight, final int maxWidth, final int maxHeight, final boolean crop) {
+
+		if (maxWidth <= 0 || maxHeight <= 0) {
+			return 1;
+		}
+
+		final float scaleX = 1.0f * sourceWidth / maxWidth;
+		final float scaleY = 1.0f * sourceHeight / maxHeight;
+		final float scale  = crop ? Math.min(scaleX, scaleY) : Math.max(scaleX, scaleY);
+
+		return Math.max(1, (int)(scale / 2.0f));
+	}
+
 	/**
 	 * Let ImageIO read and write a JPEG image. This should normalize all types of weird
 	 * image sub formats, e.g. when extracting images from a flash file.
@@ -0,0 +1,552 @@
+/**
+ * Copyright (C) 2010-2016 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.web.common;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.servlet.http.HttpServletRequest;
+import org.apache.commons.lang3.StringUtils;
+import org.structr.common.GraphObjectComparator;
+import org.structr.common.PathHelper;
+import org.structr.common.SecurityContext;
+import org.structr.common.error.FrameworkException;
+import org.structr.core.GraphObject;
+import org.structr.core.StructrTransactionListener;
+import org.structr.core.TransactionSource;
+import org.structr.core.app.App;
+import org.structr.core.app.StructrApp;
+import org.structr.core.entity.AbstractNode;
+import org.structr.core.graph.ModificationEvent;
+import org.structr.core.graph.Tx;
+import org.structr.core.property.PropertyKey;
+import org.structr.dynamic.File;
+import org.structr.web.entity.FileBase;
+import org.structr.web.entity.Folder;
+import org.structr.web.entity.Site;
+import org.structr.web.entity.dom.Page;
+import org.structr.web.entity.relation.Pages;
+
+/**
+ * In-memory routing table that maps paths, names and uuids to pages and
+ * files, so that request routing does not need to load and scan all pages
+ * or query the database for files.
+ *
+ * The table only stores uuids and precomputed site information, entities
+ * are resolved in the security context of the request. It is kept current
+ * by listening to transactions: creating or deleting pages and sites,
+ * modifying the properties the page table contains or changing the site of
+ * a page cause a lazy rebuild of the page table, which is done once for
+ * all concurrent lookups. The file table is built once and then updated
+ * incrementally after each commit, files are re-indexed when they are
+ * modified and all files below a folder when the path of the folder has
+ * changed. File lookups never wait for updates.
+ *
+ *
+ */
+public class RoutingTable implements StructrTransactionListener {
+
+	private static final Logger logger = Logger.getLogger(RoutingTable.class.getName());
+
+	private static final PropertyKey[] pageKeys = { AbstractNode.name, Page.path, Page.position };
+	private static final PropertyKey[] siteKeys = { Site.hostname, Site.port };
+
+	private final Object pageLock        = new Object();
+	private final Object fileLock        = new Object();
+	private final AtomicLong pageVersion = new AtomicLong(0);
+	private volatile PageTable pageTable = null;
+	private volatile FileTable fileTable = null;
+
+	/**
+	 * Returns the first page with the given path, name or uuid (in order of
+	 * their position) that is visible for the current site and readable in
+	 * the given security context.
+	 *
+	 * @param securityContext
+	 * @param request
+	 * @param path
+	 * @param ignoreSite
+	 * @return page or null
+	 * @throws FrameworkException
+	 */
+	public Page getPage(final SecurityContext securityContext, final HttpServletRequest request, final String path, final boolean ignoreSite) throws FrameworkException {
+
+		final Set<PageEntry> candidates = new TreeSet<>();
+		final PageTable table           = getPageTable();
+		final String name               = PathHelper.getName(path);
+
+		addAll(candidates, table.byPath.get(path));
+		addAll(candidates, table.byName.get(name));
+		addAll(candidates, table.byUuid.get(name));
+
+		final App app = StructrApp.getInstance(securityContext);
+
+		for (final PageEntry entry : candidates) {
+
+			if (ignoreSite || entry.isVisibleForSite(request)) {
+
+				final Page page = app.get(Page.class, entry.uuid);
+				if (page != null) {
+
+					return page;
+				}
+			}
+		}
+
+		return null;
+	}
+
+	/**
+	 * Returns the page with the lowest non-empty position value which is
+	 * visible in the given security context and for the current site.
+	 *
+	 * @param securityContext
+	 * @param request
+	 * @param ignoreSite
+	 * @return page or null
+	 * @throws FrameworkException
+	 */
+	public Page getIndexPage(final SecurityContext securityContext, final HttpServletRequest request, final boolean ignoreSite) throws FrameworkException {
+
+		final App app = StructrApp.getInstance(securityContext);
+
+		for (final PageEntry entry : getPageTable().indexPages) {
+
+			final Page page = app.get(Page.class, entry.uuid);
+			if (page != null && ((page.getProperty(Page.enableBasicAuth) != null && page.getProperty(Page.visibleToAuthenticatedUsers)) || securityContext.isVisible(page) || ignoreSite || entry.isVisibleForSite(request))) {
+
+				return page;
+			}
+		}
+
+		return null;
+	}
+
+	/**
+	 * Returns the file with the given path (or the given uuid if the path
+	 * consists of a single part), taking whitespace variants of the path
+	 * into account.
+	 *
+	 * @param securityContext
+	 * @param path
+	 * @return file or null
+	 * @throws FrameworkException
+	 */
+	public File getFile(final SecurityContext securityContext, final String path) throws FrameworkException {
+
+		final FileTable table = getFileTable();
+		final App app         = StructrApp.getInstance(securityContext);
+
+		for (final String variant : new String[] { path, PathHelper.replaceWhitespaceByPlus(path), PathHelper.replaceWhitespaceByPercentTwenty(path) }) {
+
+			final Set<String> uuids = table.filesByPath.get(variant);
+			if (uuids != null) {
+
+				for (final String uuid : uuids) {
+
+					final File file = app.get(File.class, uuid);
+					if (file != null && path.equals(file.getPath())) {
+
+						return file;
+					}
+				}
+			}
+		}
+
+		// uuid lookup for single-part paths
+		final String[] parts = PathHelper.getParts(path);
+		if (parts.length == 1) {
+
+			final String uuid = PathHelper.getName(path);
+			if (table.filePathsByUuid.containsKey(uuid)) {
+
+				return app.get(File.class, uuid);
+			}
+		}
+
+		return null;
+	}
+
+	public void invalidate() {
+
+		pageVersion.incrementAndGet();
+
+		synchronized (fileLock) {
+			fileTable = null;
+		}
+	}
+
+	// ----- interface StructrTransactionListener -----
+	@Override
+	public void beforeCommit(final SecurityContext securityContext, final Collection<ModificationEvent> modificationEvents, final TransactionSource source) throws FrameworkException {
+	}
+
+	@Override
+	public void afterCommit(final SecurityContext securityContext, final Collection<ModificationEvent> modificationEvents, final TransactionSource source) {
+
+		final Set<String> files   = new LinkedHashSet<>();
+		final Set<String> folders = new LinkedHashSet<>();
+		boolean pagesModified     = false;
+
+		try (final Tx tx = StructrApp.getInstance().tx()) {
+
+			for (final ModificationEvent event : modificationEvents) {
+
+				final GraphObject obj = event.getGraphObject();
+
+				if (event.isNode()) {
+
+					if (obj instanceof Page) {
+
+						pagesModified |= isModified(event, pageKeys);
+
+					} else if (obj instanceof Site) {
+
+						pagesModified |= isModified(event, siteKeys);
+
+					} else if (obj instanceof File) {
+
+						// relationship changes (e.g. moving the file) are reported for both end nodes
+						files.add(event.getUuid());
+
+					} else if (obj instanceof Folder) {
+
+						folders.add(event.getUuid());
+					}
+
+				} else if (obj instanceof Pages) {
+
+					// site of a page changed
+					pagesModified = true;
+				}
+			}
+
+			if (!files.isEmpty() || !folders.isEmpty()) {
+				updateFileTable(files, folders);
+			}
+
+			tx.success();
+
+		} catch (FrameworkException fex) {
+
+			logger.log(Level.WARNING, "Unable to process modification events, invalidating routing table: {0}", fex.getMessage());
+
+			invalidate();
+		}
+
+		if (pagesModified) {
+			pageVersion.incrementAndGet();
+		}
+	}
+
+	// ----- private methods -----
+	private PageTable getPageTable() throws FrameworkException {
+
+		PageTable table = pageTable;
+		if (table == null || table.version != pageVersion.get()) {
+
+			// only one rebuild at a time, concurrent lookups use its result
+			synchronized (pageLock) {
+
+				final long version = pageVersion.get();
+
+				table = pageTable;
+				if (table == null || table.version != version) {
+
+					table     = new PageTable(version);
+					pageTable = table;
+				}
+			}
+		}
+
+		return table;
+	}
+
+	private FileTable getFileTable() throws FrameworkException {
+
+		FileTable table = fileTable;
+		if (table == null) {
+
+			synchronized (fileLock) {
+
+				table = fileTable;
+				if (table == null) {
+
+					table     = new FileTable();
+					fileTable = table;
+				}
+			}
+		}
+
+		return table;
+	}
+
+	private void updateFileTable(final Set<String> files, final Set<String> folders) throws FrameworkException {
+
+		final App app = StructrApp.getInstance();
+
+		synchronized (fileLock) {
+
+			final FileTable table = fileTable;
+			if (table == null) {
+
+				// not built yet, the initial build will see the committed state
+				return;
+			}
+
+			for (final String uuid : folders) {
+
+				final Folder folder = app.get(Folder.class, uuid);
+				if (folder == null || folder.getProperty(GraphObject.deleted)) {
+
+					// contained files are modified as well if they lose their parent
+					table.folderPathsByUuid.remove(uuid);
+					continue;
+				}
+
+				final String path     = folder.getPath();
+				final String previous = path != null ? table.folderPathsByUuid.put(uuid, path) : table.folderPathsByUuid.remove(uuid);
+
+				if (path != null && !path.equals(previous)) {
+
+					// folder moved or renamed
+					table.addFolderContents(folder, files);
+				}
+			}
+
+			for (final String uuid : files) {
+
+				table.removeFile(uuid);
+
+				final File file = app.get(File.class, uuid);
+				if (isRoutable(file)) {
+
+					table.addFile(uuid, file.getPath());
+				}
+			}
+		}
+	}
+
+	private static boolean isModified(final ModificationEvent event, final PropertyKey[] keys) {
+
+		if (event.isCreated() || event.isDeleted()) {
+			return true;
+		}
+
+		for (final PropertyKey key : keys) {
+
+			if (event.getModifiedProperties().containsKey(key) || event.getRemovedProperties().containsKey(key)) {
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	private static boolean isRoutable(final File file) {
+		return file != null && !file.getProperty(GraphObject.deleted) && !file.getProperty(GraphObject.hidden);
+	}
+
+	private void addAll(final Set<PageEntry> candidates, final List<PageEntry> entries) {
+
+		if (entries != null) {
+			candidates.addAll(entries);
+		}
+	}
+
+	// ----- nested classes -----
+	/**
+	 * Immutable snapshot of all pages, built in position order.
+	 */
+	private static class PageTable {
+
+		private final Map<String, List<PageEntry>> byPath = new HashMap<>();
+		private final Map<String, List<PageEntry>> byName = new HashMap<>();
+		private final Map<String, List<PageEntry>> byUuid = new HashMap<>();
+		private final List<PageEntry> indexPages          = new ArrayList<>();
+		private final long version;
+
+		public PageTable(final long version) throws FrameworkException {
+
+			this.version = version;
+
+			final List<Page> pages = StructrApp.getInstance().nodeQuery(Page.class).getAsList();
+			Collections.sort(pages, new GraphObjectComparator(Page.position, GraphObjectComparator.ASCENDING));
+
+			int ordinal = 0;
+
+			for (final Page page : pages) {
+
+				final PageEntry entry = new PageEntry(page, ordinal++);
+
+				if (entry.path != null) {
+					byPath.computeIfAbsent(entry.path, k -> new ArrayList<>()).add(entry);
+				}
+
+				if (entry.name != null) {
+					byName.computeIfAbsent(entry.name, k -> new ArrayList<>()).add(entry);
+				}
+
+				byUuid.computeIfAbsent(entry.uuid, k -> new ArrayList<>()).add(entry);
+
+				if (page.getProperty(Page.position) != null) {
+					indexPages.add(entry);
+				}
+			}
+
+			logger.log(Level.FINE, "Routing table built with {0} pages", pages.size());
+		}
+	}
+
+	/**
+	 * Index of all files by path and of all folder paths, built once and
+	 * updated under the file lock. The maps are concurrent so that lookups
+	 * never have to wait for an update.
+	 */
+	private static class FileTable {
+
+		private final Map<String, Set<String>> filesByPath  = new ConcurrentHashMap<>();
+		private final Map<String, String> filePathsByUuid   = new ConcurrentHashMap<>();
+		private final Map<String, String> folderPathsByUuid = new ConcurrentHashMap<>();
+
+		public FileTable() throws FrameworkException {
+
+			final App app = StructrApp.getInstance();
+
+			for (final File file : app.nodeQuery(File.class).getAsList()) {
+
+				if (isRoutable(file)) {
+
+					addFile(file.getUuid(), file.getPath());
+				}
+			}
+
+			for (final Folder folder : app.nodeQuery(Folder.class).getAsList()) {
+
+				final String path = folder.getPath();
+				if (path != null) {
+
+					folderPathsByUuid.put(folder.getUuid(), path);
+				}
+			}
+
+			logger.log(Level.FINE, "Routing table built with {0} files", filePathsByUuid.size());
+		}
+
+		public void addFolderContents(final Folder folder, final Set<String> files) {
+
+			for (final FileBase file : folder.getProperty(Folder.files)) {
+
+				if (file instanceof File) {
+					files.add(file.getUuid());
+				}
+			}
+
+			for (final Folder child : folder.getProperty(Folder.folders)) {
+
+				final String path = child.getPath();
+				if (path != null) {
+
+					folderPathsByUuid.put(child.getUuid(), path);
+				}
+
+				addFolderContents(child, files);
+			}
+		}
+
+		public void addFile(final String uuid, final String path) {
+
+			if (path != null) {
+
+				filesByPath.computeIfAbsent(path, k -> ConcurrentHashMap.newKeySet()).add(uuid);
+				filePathsByUuid.put(uuid, path);
+			}
+		}
+
+		public void removeFile(final String uuid) {
+
+			final String path = filePathsByUuid.remove(uuid);
+			if (path != null) {
+
+				filesByPath.computeIfPresent(path, (k, uuids) -> {
+
+					uuids.remove(uuid);
+					return uuids.isEmpty() ? null : uuids;
+				});
+			}
+		}
+	}
+
+	private static class PageEntry implements Comparable<PageEntry> {
+
+		private String uuid     = null;
+		private String name     = null;
+		private String path     = null;
+		private String hostname = null;
+		private Integer port    = null;
+		private boolean hasSite = false;
+		private int ordinal     = 0;
+
+		public PageEntry(final Page page, final int ordinal) {
+
+			this.uuid    = page.getUuid();
+			this.name    = page.getName();
+			this.path    = page.getPath();
+			this.ordinal = ordinal;
+
+			final Site site = page.getProperty(Page.site);
+			if (site != null) {
+
+				this.hasSite  = true;
+				this.hostname = site.getProperty(Site.hostname);
+				this.port     = site.getProperty(Site.port);
+			}
+		}
+
+		public boolean isVisibleForSite(final HttpServletRequest request) {
+
+			if (!hasSite) {
+				return true;
+			}
+
+			final String serverName = request.getServerName();
+
+			if (StringUtils.isNotBlank(serverName) && !serverName.equals(hostname)) {
+				return false;
+			}
+
+			return port == null || request.getServerPort() == port;
+		}
+
+		@Override
+		public int compareTo(final PageEntry other) {
+			return Integer.compare(ordinal, other.ordinal);
+		}
+	}
+}
@@ -0,0 +1,155 @@
+/**
+ * Copyright (C) 2010-2016 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.web.common;
+
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.structr.common.SecurityContext;
+import org.structr.core.Services;
+import org.structr.core.app.App;
+import org.structr.core.app.StructrApp;
+import org.structr.core.graph.Tx;
+import org.structr.web.entity.Image;
+
+/**
+ * Generates thumbnails in the background, using a bounded pool of worker
+ * threads.
+ *
+ * Requests for the same image, size and crop mode are deduplicated, so
+ * concurrent readers of a thumbnail property cause only one generation.
+ * If the work queue is full, the request is discarded and scheduled
+ * again by the next reader.
+ *
+ *
+ */
+public class ThumbnailGenerator {
+
+	private static final Logger logger         = Logger.getLogger(ThumbnailGenerator.class.getName());
+	private static final Object lock           = new Object();
+	private static ThumbnailGenerator instance = null;
+
+	private final Map<String, Boolean> pending = new ConcurrentHashMap<>();
+	private final AtomicInteger threadCount    = new AtomicInteger(0);
+	private ThreadPoolExecutor executor        = null;
+
+	private ThumbnailGenerator() {
+
+		final int threads   = Math.max(1, Services.parseInt(StructrApp.getConfigurationValue(Services.APPLICATION_THUMBNAIL_THREADS), 2));
+		final int queueSize = Math.max(1, Services.parseInt(StructrApp.getConfigurationValue(Services.APPLICATION_THUMBNAIL_QUEUE_SIZE), 1000));
+
+		executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new ArrayBlockingQueue<>(queueSize), r -> {
+
+			final Thread thread = new Thread(r, "ThumbnailGenerator-" + threadCount.incrementAndGet());
+			thread.setDaemon(true);
+
+			return thread;
+		});
+
+		executor.allowCoreThreadTimeOut(true);
+	}
+
+	public static ThumbnailGenerator getInstance() {
+
+		synchronized (lock) {
+
+			if (instance == null) {
+				instance = new ThumbnailGenerator();
+			}
+		}
+
+		return instance;
+	}
+
+	/**
+	 * Schedules the generation of a thumbnail of the given image, unless
+	 * a generation with the same parameters is already pending.
+	 *
+	 * @param image
+	 * @param maxWidth
+	 * @param maxHeight
+	 * @param cropToFit
+	 * @return true if the thumbnail was scheduled or is already pending
+	 */
+	public boolean schedule(final Image image, final int maxWidth, final int maxHeight, final boolean cropToFit) {
+
+		final String uuid = image.getUuid();
+		final String key  = uuid + "_" + maxWidth + "x" + maxHeight + (cropToFit ? "c" : "");
+
+		if (pending.putIfAbsent(key, Boolean.TRUE) != null) {
+			return true;
+		}
+
+		try {
+
+			executor.execute(() -> {
+
+				try {
+
+					generate(uuid, maxWidth, maxHeight, cropToFit);
+
+				} finally {
+
+					pending.remove(key);
+				}
+			});
+
+			return true;
+
+		} catch (RejectedExecutionException rex) {
+
+			pending.remove(key);
+
+			logger.log(Level.FINE, "Thumbnail queue is full, not scheduling thumbnail for {0}", uuid);
+		}
+
+		return false;
+	}
+
+	public int getPendingCount() {
+		return pending.size();
+	}
+
+	// ----- private methods -----
+	private void generate(final String uuid, final int maxWidth, final int maxHeight, final boolean cropToFit) {
+
+		final App app = StructrApp.getInstance(SecurityContext.getSuperUserInstance());
+
+		try (final Tx tx = app.tx()) {
+
+			final Image image = app.get(Image.class, uuid);
+			if (image != null) {
+
+				image.createScaledImage(maxWidth, maxHeight, cropToFit);
+			}
+
+			tx.success();
+
+		} catch (Throwable t) {
+
+			logger.log(Level.WARNING, "Unable to create thumbnail for image " + uuid, t);
+		}
+	}
+}
@@ -59,6 +59,7 @@ import org.structr.core.property.Property;
 import org.structr.core.property.StringProperty;
 import org.structr.files.text.FulltextIndexingTask;
 import org.structr.schema.action.JavaScriptSource;
+import org.structr.web.common.BlobStore;
 import org.structr.web.common.DownloadHelper;
 import org.structr.web.common.FileHelper;
 import org.structr.web.common.ImageHelper;
@@ -78,6 +79,7 @@ public class FileBase extends AbstractFile implements Indexable, Linkable, JavaS
 	public static final Property<Long> size                      = new LongProperty("size").indexed().readOnly();
 	public static final Property<String> url                     = new StringProperty("url");
 	public static final Property<Long> checksum                  = new LongProperty("checksum").indexed().unvalidated().readOnly();
+	public static final Property<String> contentHash             = new StringProperty("contentHash").indexed().unvalidated().readOnly();
 	public static final Property<Integer> cacheForSeconds        = new IntProperty("cacheForSeconds").cmis();
 	public static final Property<Integer> version                = new IntProperty("version").indexed().readOnly();
 	public static final Property<Boolean> isFile                 = new BooleanProperty("isFile").defaultValue(true).readOnly();
@@ -85,7 +87,7 @@ public class FileBase extends AbstractFile implements Indexable, Linkable, JavaS
 	public static final View publicView = new View(FileBase.class, PropertyView.Public, type, name, contentType, size, url, owner, path, isFile);
 	//public static final View uiView = new View(FileBase.class, PropertyView.Ui, type, contentType, relativeFilePath, size, url, parent, checksum, version, cacheForSeconds, owner, isFile, hasParent, extractedContent, indexedWords);
 	public static final View uiView = new View(FileBase.class, PropertyView.Ui, type, contentType, relativeFilePath, size, url, parent, checksum,
-		version, cacheForSeconds, owner, isFile, hasParent, extractedContent);
+		contentHash, version, cacheForSeconds, owner, isFile, hasParent, extractedContent);
 
 	@Override
 	public boolean onCreation(final SecurityContext securityContext, final ErrorBuffer errorBuffer) throws FrameworkException {
@@ -141,6 +143,14 @@ public class FileBase extends AbstractFile implements Indexable, Linkable, JavaS
 	@Override
 	public void onNodeDeletion() {
 
+		// shared content is collected when it is no longer referenced
+		final String hash = getProperty(contentHash);
+		if (hash != null) {
+
+			BlobStore.getInstance().release(hash);
+			return;
+		}
+
 		String filePath = null;
 		try {
 			final String path = getRelativeFilePath();
@@ -336,6 +346,18 @@ public class FileBase extends AbstractFile implements Indexable, Linkable, JavaS
 
 	public OutputStream getOutputStream(final boolean notifyIndexerAfterClosing) {
 
+		// shared content must not be modified, write to a private copy
+		try (final Tx tx = StructrApp.getInstance().tx()) {
+
+			FileHelper.detachContent(this, false);
+			tx.success();
+
+		} catch (Throwable t) {
+
+			logger.log(Level.SEVERE, "Could not detach shared content before writing", t);
+			return null;
+		}
+
 		final String path = getRelativeFilePath();
 		if (path != null) {
 
@@ -377,6 +399,8 @@ public class FileBase extends AbstractFile implements Indexable, Linkable, JavaS
 
 							increaseVersion();
 
+							FileHelper.deduplicate(FileBase.this);
+
 							if (notifyIndexerAfterClosing) {
 								notifyUploadCompletion();
 							}
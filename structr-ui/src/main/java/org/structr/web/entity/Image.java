@@ -33,6 +33,7 @@ import org.structr.core.entity.AbstractRelationship;
 import org.structr.core.entity.Relation;
 import static org.structr.core.graph.NodeInterface.name;
 import static org.structr.core.graph.NodeInterface.owner;
+import org.structr.core.graph.TransactionCommand;
 import org.structr.core.property.BooleanProperty;
 import org.structr.core.property.IntProperty;
 import org.structr.core.property.Property;
@@ -42,6 +43,7 @@ import org.structr.schema.SchemaService;
 import org.structr.web.common.FileHelper;
 import org.structr.web.common.ImageHelper;
 import org.structr.web.common.ImageHelper.Thumbnail;
+import org.structr.web.common.ThumbnailGenerator;
 import static org.structr.web.entity.FileBase.relativeFilePath;
 import static org.structr.web.entity.FileBase.size;
 import org.structr.web.entity.relation.Thumbnails;
@@ -169,7 +171,10 @@ public class Image extends File {
 	/**
 	 * Get (down-)scaled image of this image
 	 *
-	 * If no scaled image of the requested size exists or the image is newer than the scaled image, create a new one.
+	 * If no scaled image of the requested size exists or the image is newer than the scaled image, a new one
+	 * is created in the background by the {@link ThumbnailGenerator}, and the last valid scaled image (or null
+	 * if none exists) is returned in the meantime. Scaled images of images that were created in the current
+	 * transaction are created synchronously, because the background threads cannot see them.
 	 *
 	 * Default behaviour is to make the scaled image complete fit inside a rectangle of maxWidth x maxHeight.
 	 *
@@ -181,6 +186,63 @@ public class Image extends File {
 	 */
 	public Image getScaledImage(final int maxWidth, final int maxHeight, final boolean cropToFit) {
 
+		final Integer origWidth  = getWidth();
+		final Integer origHeight = getHeight();
+		final Long checksum      = getProperty(Image.checksum);
+		Image lastThumbnail      = null;
+
+		if (origWidth != null && origHeight != null) {
+
+			for (final Thumbnails r : getThumbnailRelationships()) {
+
+				final Integer w = r.getProperty(Image.width);
+				final Integer h = r.getProperty(Image.height);
+
+				if (w != null && h != null) {
+
+					if (((w == maxWidth) && (h <= maxHeight)) || ((w <= maxWidth) && (h == maxHeight)) || ((origWidth <= w) && (origHeight <= h))) {
+
+						final Long storedChecksum = r.getProperty(Image.checksum);
+
+						if (checksum != null && checksum.equals(storedChecksum)) {
+
+							return r.getTargetNode();
+						}
+
+						lastThumbnail = r.getTargetNode();
+					}
+				}
+			}
+
+			// no thumbnail needed
+			if (checksum != null && origWidth <= maxWidth && origHeight <= maxHeight) {
+
+				return this;
+			}
+		}
+
+		if (TransactionCommand.isCreated(getNode())) {
+
+			return createScaledImage(maxWidth, maxHeight, cropToFit);
+		}
+
+		ThumbnailGenerator.getInstance().schedule(this, maxWidth, maxHeight, cropToFit);
+
+		return lastThumbnail;
+	}
+
+	/**
+	 * Create (down-)scaled image of this image synchronously, unless a scaled image of the requested size
+	 * exists that matches the checksum of this image.
+	 *
+	 * @param maxWidth
+	 * @param maxHeight
+	 * @param cropToFit if true, scale down until the shorter edge fits inside the rectangle, and then crop
+	 *
+	 * @return scaled image
+	 */
+	public Image createScaledImage(final int maxWidth, final int maxHeight, final boolean cropToFit) {
+
 		Iterable<Thumbnails> thumbnailRelationships = getThumbnailRelationships();
 		final List<Image> oldThumbnails             = new LinkedList<>();
 		Image thumbnail                             = null;
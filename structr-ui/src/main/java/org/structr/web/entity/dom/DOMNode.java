@@ -61,6 +61,7 @@ import org.structr.core.property.StartNode;
 import org.structr.core.property.StringProperty;
 import org.structr.core.script.Scripting;
 import org.structr.function.*;
+import org.structr.web.common.FragmentCache;
 import org.structr.web.common.GraphDataSource;
 import org.structr.web.common.RenderContext;
 import org.structr.web.common.RenderContext.EditMode;
@@ -397,7 +398,7 @@ public abstract class DOMNode extends LinkedTreeNode<DOMChildren, DOMSiblings, D
 
 			} else {
 
-				renderContent(renderContext, depth);
+				FragmentCache.getInstance().render(this, renderContext, depth);
 			}
 		}
 
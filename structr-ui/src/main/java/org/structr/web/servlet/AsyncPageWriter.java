@@ -0,0 +1,135 @@
+/**
+ * Copyright (C) 2010-2016 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.web.servlet;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.servlet.AsyncContext;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import org.structr.web.common.AsyncBuffer;
+
+/**
+ * Event-driven writer that streams the chunks of an {@link AsyncBuffer}
+ * to the client. Writing is triggered by the container when the output
+ * stream becomes ready and by the rendering thread when new data is
+ * available, but only one thread at a time drains the buffer.
+ *
+ *
+ */
+public class AsyncPageWriter implements WriteListener, Runnable {
+
+	private static final Logger logger = Logger.getLogger(AsyncPageWriter.class.getName());
+
+	private final AtomicBoolean completed = new AtomicBoolean(false);
+	private final AtomicInteger wip       = new AtomicInteger(0);
+	private final AsyncBuffer buffer;
+	private final AsyncContext async;
+	private final ServletOutputStream out;
+
+	public AsyncPageWriter(final AsyncBuffer buffer, final AsyncContext async, final ServletOutputStream out) {
+
+		this.buffer = buffer;
+		this.async  = async;
+		this.out    = out;
+	}
+
+	@Override
+	public void onWritePossible() throws IOException {
+		drain();
+	}
+
+	@Override
+	public void onError(final Throwable t) {
+
+		logger.log(Level.WARNING, "Async error: {0}", t.getMessage());
+
+		buffer.abort();
+		complete();
+	}
+
+	/**
+	 * Data listener callback, called by the rendering thread.
+	 */
+	@Override
+	public void run() {
+		drain();
+	}
+
+	// ----- private methods -----
+	private void drain() {
+
+		// another thread is already writing, make it loop once more
+		if (wip.getAndIncrement() != 0) {
+			return;
+		}
+
+		int missed = 1;
+
+		do {
+
+			try {
+
+				write();
+
+			} catch (Throwable t) {
+
+				logger.log(Level.WARNING, "Unable to write async response: {0}", t.getMessage());
+
+				buffer.abort();
+				complete();
+			}
+
+			missed = wip.addAndGet(-missed);
+
+		} while (missed != 0);
+	}
+
+	private void write() throws IOException {
+
+		// if isReady() returns false, the container calls onWritePossible() later
+		while (!completed.get() && out.isReady()) {
+
+			final ByteBuffer chunk = buffer.poll();
+			if (chunk == null) {
+
+				if (buffer.isDrained()) {
+					complete();
+				}
+
+				// wait for the next data signal
+				return;
+			}
+
+			out.write(chunk.array(), chunk.arrayOffset() + chunk.position(), chunk.remaining());
+		}
+	}
+
+	private void complete() {
+
+		if (completed.compareAndSet(false, true)) {
+
+			async.complete();
+		}
+	}
+}
@@ -19,8 +19,13 @@
 package org.structr.web.servlet;
 
 import java.io.IOException;
-import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
 import java.nio.charset.Charset;
+import java.nio.file.StandardOpenOption;
 import java.text.DateFormat;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
@@ -31,37 +36,35 @@ import java.util.Date;
 import java.util.GregorianCalendar;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
-import java.util.Queue;
 import java.util.Set;
 import java.util.TimeZone;
+import java.util.UUID;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 import javax.servlet.AsyncContext;
 import javax.servlet.ServletException;
 import javax.servlet.ServletOutputStream;
-import javax.servlet.WriteListener;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
-import org.apache.commons.collections.CollectionUtils;
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.time.DateUtils;
+import org.eclipse.jetty.server.HttpOutput;
 import org.structr.common.AccessMode;
-import org.structr.common.GraphObjectComparator;
 import org.structr.common.PathHelper;
 import org.structr.common.SecurityContext;
 import org.structr.common.ThreadLocalMatcher;
 import org.structr.common.error.FrameworkException;
-import org.structr.core.GraphObject;
 import org.structr.core.Result;
 import org.structr.core.Services;
 import org.structr.core.app.App;
@@ -71,6 +74,7 @@ import org.structr.core.auth.Authenticator;
 import org.structr.core.converter.PropertyConverter;
 import org.structr.core.entity.AbstractNode;
 import org.structr.core.entity.Principal;
+import org.structr.core.graph.TransactionCommand;
 import org.structr.core.graph.Tx;
 import org.structr.core.property.PropertyKey;
 import org.structr.dynamic.File;
@@ -81,12 +85,13 @@ import org.structr.rest.service.StructrHttpServiceConfig;
 import org.structr.schema.ConfigurationProvider;
 import org.structr.util.Base64;
 import org.structr.web.auth.UiAuthenticator;
+import org.structr.web.common.AsyncBuffer;
 import org.structr.web.common.FileHelper;
 import org.structr.web.common.RenderContext;
 import org.structr.web.common.RenderContext.EditMode;
+import org.structr.web.common.RoutingTable;
 import org.structr.web.common.StringRenderBuffer;
 import org.structr.web.entity.Linkable;
-import org.structr.web.entity.Site;
 import org.structr.web.entity.User;
 import org.structr.web.entity.dom.DOMNode;
 import org.structr.web.entity.dom.Page;
@@ -114,6 +119,7 @@ public class HtmlServlet extends HttpServlet implements HttpServiceServlet {
 
 	public static final String CUSTOM_RESPONSE_HEADERS      = "HtmlServlet.customResponseHeaders";
 	public static final String OBJECT_RESOLUTION_PROPERTIES = "HtmlServlet.resolveProperties";
+	public static final String ASYNC_RENDER_THREADS         = "HtmlServlet.asyncRenderThreads";
 
 	private static final String defaultCustomResponseHeaders = "Strict-Transport-Security:max-age=60,"
 				+ "X-Content-Type-Options:nosniff,"
@@ -121,13 +127,19 @@ public class HtmlServlet extends HttpServlet implements HttpServiceServlet {
 				+ "X-XSS-Protection:1;mode=block";
 	private static List<String> customResponseHeaders = Collections.EMPTY_LIST;
 
-	private static final ThreadLocalMatcher threadLocalUUIDMatcher = new ThreadLocalMatcher("[a-fA-F0-9]{32}");
-	private static final ExecutorService threadPool = Executors.newCachedThreadPool();
+	private static final ThreadLocalMatcher threadLocalUUIDMatcher  = new ThreadLocalMatcher("[a-fA-F0-9]{32}");
+	private static final ThreadLocalMatcher threadLocalRangeMatcher = new ThreadLocalMatcher("(?<start>\\d*)-(?<end>\\d*)");
+	private static final int MAX_RANGES                             = 32;
+	private static final int TRANSFER_BUFFER_SIZE                   = 64 * 1024;
+
+	private static final ThreadLocal<ByteBuffer> threadLocalTransferBuffer = ThreadLocal.withInitial(() -> ByteBuffer.allocateDirect(TRANSFER_BUFFER_SIZE));
 
 	private final StructrHttpServiceConfig config = new StructrHttpServiceConfig();
+	private final RoutingTable routingTable       = new RoutingTable();
 	private final Set<String> possiblePropertyNamesForEntityResolving   = new LinkedHashSet<>();
 
-	private boolean isAsync = false;
+	private ExecutorService threadPool = null;
+	private boolean isAsync            = false;
 
 
 	@Override
@@ -160,17 +172,30 @@ public class HtmlServlet extends HttpServlet implements HttpServiceServlet {
 		}
 
 		this.isAsync = Services.parseBoolean(Services.getBaseConfiguration().getProperty(HttpService.ASYNC), true);
+
+		// bounded pool for async rendering, idle threads are released
+		final int renderThreads = Math.max(1, Services.parseInt(Services.getBaseConfiguration().getProperty(ASYNC_RENDER_THREADS), Runtime.getRuntime().availableProcessors() * 2));
+		final ThreadPoolExecutor executor = new ThreadPoolExecutor(renderThreads, renderThreads, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>());
+
+		executor.allowCoreThreadTimeOut(true);
+
+		this.threadPool = executor;
+
+		// keep page and file routing current
+		TransactionCommand.registerTransactionListener(routingTable);
 	}
 
 	@Override
 	public void destroy() {
+
+		TransactionCommand.removeTransactionListener(routingTable);
+		threadPool.shutdown();
 	}
 
 	@Override
 	protected void doGet(final HttpServletRequest request, final HttpServletResponse response) {
 
 		final Authenticator auth        = getConfig().getAuthenticator();
-		List<Page> pages                = null;
 		boolean requestUriContainsUuids = false;
 
 		SecurityContext securityContext;
@@ -241,7 +266,7 @@ public class HtmlServlet extends HttpServlet implements HttpServiceServlet {
 				if ((uriParts == null) || (uriParts.length == 0)) {
 
 					// find a visible page
-					rootElement = findIndexPage(securityContext, pages, edit);
+					rootElement = findIndexPage(securityContext, edit);
 
 					logger.log(Level.FINE, "No path supplied, trying to find index page");
 
@@ -249,7 +274,7 @@ public class HtmlServlet extends HttpServlet implements HttpServiceServlet {
 
 					if (rootElement == null) {
 
-						rootElement = findPage(securityContext, pages, path, edit);
+						rootElement = findPage(securityContext, path, edit);
 
 					} else {
 						dontCache = true;
@@ -300,7 +325,7 @@ public class HtmlServlet extends HttpServlet implements HttpServiceServlet {
 						// clear possible entry points
 						request.removeAttribute(POSSIBLE_ENTRY_POINTS_KEY);
 
-						rootElement = findPage(securityContext, pages, StringUtils.substringBeforeLast(path, PathHelper.PATH_SEP), edit);
+						rootElement = findPage(securityContext, StringUtils.substringBeforeLast(path, PathHelper.PATH_SEP), edit);
 
 						renderContext.setDetailsDataObject(dataNode);
 
@@ -413,10 +438,16 @@ public class HtmlServlet extends HttpServlet implements HttpServiceServlet {
 						// async or not?
 						if (isAsync && !createsRawData) {
 
-							final AsyncContext async = request.startAsync();
-							final ServletOutputStream out = async.getResponse().getOutputStream();
-							final AtomicBoolean finished = new AtomicBoolean(false);
-							final DOMNode rootNode = rootElement;
+							final AsyncContext async       = request.startAsync();
+							final ServletOutputStream out  = async.getResponse().getOutputStream();
+							final AsyncBuffer buffer       = renderContext.getBuffer();
+							final AsyncPageWriter writer   = new AsyncPageWriter(buffer, async, out);
+							final DOMNode rootNode         = rootElement;
+
+							// switch buffer to streaming mode and start output write listener
+							response.setStatus(HttpServletResponse.SC_OK);
+							buffer.setDataListener(writer);
+							out.setWriteListener(writer);
 
 							threadPool.submit(new Runnable() {
 
@@ -425,75 +456,31 @@ public class HtmlServlet extends HttpServlet implements HttpServiceServlet {
 
 									try (final Tx tx = app.tx()) {
 
-										//final long start = System.currentTimeMillis();
 										// render
 										rootNode.render(renderContext, 0);
-										finished.set(true);
 
-										//final long end = System.currentTimeMillis();
-										//System.out.println("Done in " + (end-start) + " ms");
 										tx.success();
 
 									} catch (Throwable t) {
-										t.printStackTrace();
-										final String errorMsg = t.getMessage();
-										try {
-											//response.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
-											response.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR, errorMsg);
-											finished.set(true);
-										} catch (IOException ex) {
-											ex.printStackTrace();
-										}
-									}
-								}
 
-							});
+										logger.log(Level.WARNING, "Unable to render page", t);
 
-							// start output write listener
-							out.setWriteListener(new WriteListener() {
-
-								@Override
-								public void onWritePossible() throws IOException {
-
-									try {
-
-										final Queue<String> queue = renderContext.getBuffer().getQueue();
-										while (out.isReady()) {
-
-											String buffer = null;
+										try {
 
-											synchronized (queue) {
-												buffer = queue.poll();
+											if (!response.isCommitted()) {
+												response.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR, t.getMessage());
 											}
 
-											if (buffer != null) {
-
-												out.print(buffer);
-
-											} else {
-
-												if (finished.get()) {
-
-													async.complete();
-													response.setStatus(HttpServletResponse.SC_OK);
-
-													// prevent this block from being called again
-													break;
-												}
-
-												Thread.sleep(1);
-											}
+										} catch (IOException ex) {
+											logger.log(Level.WARNING, "Unable to send error response: {0}", ex.getMessage());
 										}
 
-									} catch (Throwable t) {
-										t.printStackTrace();
+									} finally {
+
+										buffer.finish();
 									}
 								}
 
-								@Override
-								public void onError(Throwable t) {
-									t.printStackTrace();
-								}
 							});
 
 						} else {
@@ -544,7 +531,6 @@ public class HtmlServlet extends HttpServlet implements HttpServiceServlet {
 
 		final Authenticator auth = getConfig().getAuthenticator();
 		SecurityContext securityContext;
-		List<Page> pages                = null;
 		boolean requestUriContainsUuids = false;
 		final App app;
 
@@ -602,7 +588,7 @@ public class HtmlServlet extends HttpServlet implements HttpServiceServlet {
 				if ((uriParts == null) || (uriParts.length == 0)) {
 
 					// find a visible page
-					rootElement = findIndexPage(securityContext, pages, edit);
+					rootElement = findIndexPage(securityContext, edit);
 
 					logger.log(Level.FINE, "No path supplied, trying to find index page");
 
@@ -610,7 +596,7 @@ public class HtmlServlet extends HttpServlet implements HttpServiceServlet {
 
 					if (rootElement == null) {
 
-						rootElement = findPage(securityContext, pages, path, edit);
+						rootElement = findPage(securityContext, path, edit);
 
 					} else {
 						dontCache = true;
@@ -660,7 +646,7 @@ public class HtmlServlet extends HttpServlet implements HttpServiceServlet {
 						// clear possible entry points
 						request.removeAttribute(POSSIBLE_ENTRY_POINTS_KEY);
 
-						rootElement = findPage(securityContext, pages, StringUtils.substringBeforeLast(path, PathHelper.PATH_SEP), edit);
+						rootElement = findPage(securityContext, StringUtils.substringBeforeLast(path, PathHelper.PATH_SEP), edit);
 
 						renderContext.setDetailsDataObject(dataNode);
 
@@ -939,26 +925,7 @@ public class HtmlServlet extends HttpServlet implements HttpServiceServlet {
 	 * @throws FrameworkException
 	 */
 	private File findFile(final SecurityContext securityContext, final HttpServletRequest request, final String path) throws FrameworkException {
-
-		List<Linkable> entryPoints = findPossibleEntryPoints(securityContext, request, path);
-
-		// If no results were found, try to replace whitespace by '+' or '%20'
-		if (entryPoints.isEmpty()) {
-			entryPoints = findPossibleEntryPoints(securityContext, request, PathHelper.replaceWhitespaceByPlus(path));
-		}
-
-		if (entryPoints.isEmpty()) {
-			entryPoints = findPossibleEntryPoints(securityContext, request, PathHelper.replaceWhitespaceByPercentTwenty(path));
-		}
-
-		for (Linkable node : entryPoints) {
-
-			if (node instanceof File && (path.equals(node.getPath()) || node.getUuid().equals(PathHelper.getName(path)))) {
-				return (File) node;
-			}
-		}
-
-		return null;
+		return routingTable.getFile(securityContext, path);
 	}
 
 	/**
@@ -967,30 +934,13 @@ public class HtmlServlet extends HttpServlet implements HttpServiceServlet {
 	 * To be compatible with older versions, fallback to name-only lookup.
 	 *
 	 * @param securityContext
-	 * @param pages
 	 * @param path
 	 * @param edit
 	 * @return page
 	 * @throws FrameworkException
 	 */
-	private Page findPage(final SecurityContext securityContext, List<Page> pages, final String path, final EditMode edit) throws FrameworkException {
-
-		if (pages == null) {
-			pages = StructrApp.getInstance(securityContext).nodeQuery(Page.class).getAsList();
-			Collections.sort(pages, new GraphObjectComparator(Page.position, GraphObjectComparator.ASCENDING));
-		}
-
-		for (final Page page : pages) {
-
-			final String pagePath = page.getPath();
-			final String name     = PathHelper.getName(path);
-
-			if (((pagePath != null && pagePath.equals(path)) || name.equals(page.getName()) || name.equals(page.getUuid()) ) && (EditMode.CONTENT.equals(edit) || isVisibleForSite(securityContext.getRequest(), page))) {
-				return page;
-			}
-		}
-
-		return null;
+	private Page findPage(final SecurityContext securityContext, final String path, final EditMode edit) throws FrameworkException {
+		return routingTable.getPage(securityContext, securityContext.getRequest(), path, EditMode.CONTENT.equals(edit));
 	}
 
 	/**
@@ -998,27 +948,12 @@ public class HtmlServlet extends HttpServlet implements HttpServiceServlet {
 	 * current security context and for the given site.
 	 *
 	 * @param securityContext
-	 * @param pages
 	 * @param edit
 	 * @return page
 	 * @throws FrameworkException
 	 */
-	private Page findIndexPage(final SecurityContext securityContext, List<Page> pages, final EditMode edit) throws FrameworkException {
-
-		if (pages == null) {
-			pages = StructrApp.getInstance(securityContext).nodeQuery(Page.class).getAsList();
-			Collections.sort(pages, new GraphObjectComparator(Page.position, GraphObjectComparator.ASCENDING));
-		}
-
-		for (Page page : pages) {
-			
-			if (page.getProperty(Page.position) != null && ((page.getProperty(Page.enableBasicAuth) != null && page.getProperty(Page.visibleToAuthenticatedUsers)) ||  securityContext.isVisible(page) || (EditMode.CONTENT.equals(edit) || isVisibleForSite(securityContext.getRequest(), page)))) {
-				
-				return page;
-			}
-		}
-
-		return null;
+	private Page findIndexPage(final SecurityContext securityContext, final EditMode edit) throws FrameworkException {
+		return routingTable.getIndexPage(securityContext, securityContext.getRequest(), EditMode.CONTENT.equals(edit));
 	}
 
 	/**
@@ -1158,90 +1093,6 @@ public class HtmlServlet extends HttpServlet implements HttpServiceServlet {
 		return false;
 	}
 
-	private List<Linkable> findPossibleEntryPointsByUuid(final SecurityContext securityContext, final HttpServletRequest request, final String uuid) throws FrameworkException {
-
-		final List<Linkable> possibleEntryPoints = (List<Linkable>) request.getAttribute(POSSIBLE_ENTRY_POINTS_KEY);
-
-		if (CollectionUtils.isNotEmpty(possibleEntryPoints)) {
-			return possibleEntryPoints;
-		}
-
-		if (uuid.length() > 0) {
-
-			logger.log(Level.FINE, "Requested id: {0}", uuid);
-
-			final Query query = StructrApp.getInstance(securityContext).nodeQuery();
-
-			query.and(GraphObject.id, uuid);
-			query.and().orType(Page.class).orTypes(File.class);
-
-			// Searching for pages needs super user context anyway
-			Result results = query.getResult();
-
-			logger.log(Level.FINE, "{0} results", results.size());
-			request.setAttribute(POSSIBLE_ENTRY_POINTS_KEY, results.getResults());
-
-			return (List<Linkable>) results.getResults();
-		}
-
-		return Collections.EMPTY_LIST;
-	}
-
-	private List<Linkable> findPossibleEntryPointsByPath(final SecurityContext securityContext, final HttpServletRequest request, final String path) throws FrameworkException {
-
-		final List<Linkable> possibleEntryPoints = (List<Linkable>) request.getAttribute(POSSIBLE_ENTRY_POINTS_KEY);
-
-		if (CollectionUtils.isNotEmpty(possibleEntryPoints)) {
-			return possibleEntryPoints;
-		}
-
-		if (path.length() > 0) {
-
-			logger.log(Level.FINE, "Requested path: {0}", path);
-
-			final Query query = StructrApp.getInstance(securityContext).nodeQuery();
-
-			query.and(Page.path, path);
-			query.and().orType(Page.class).orTypes(File.class);
-
-			// Searching for pages needs super user context anyway
-			Result results = query.getResult();
-
-			logger.log(Level.FINE, "{0} results", results.size());
-			request.setAttribute(POSSIBLE_ENTRY_POINTS_KEY, results.getResults());
-
-			return (List<Linkable>) results.getResults();
-		}
-
-		return Collections.EMPTY_LIST;
-	}
-
-	private List<Linkable> findPossibleEntryPoints(final SecurityContext securityContext, final HttpServletRequest request, final String path) throws FrameworkException {
-
-		List<Linkable> possibleEntryPoints = (List<Linkable>) request.getAttribute(POSSIBLE_ENTRY_POINTS_KEY);
-
-		if (CollectionUtils.isNotEmpty(possibleEntryPoints)) {
-			return possibleEntryPoints;
-		}
-
-		final int numberOfParts = PathHelper.getParts(path).length;
-
-		if (numberOfParts > 0) {
-
-			logger.log(Level.FINE, "Requested name {0}", path);
-
-			possibleEntryPoints = findPossibleEntryPointsByPath(securityContext, request, path);
-
-			if (possibleEntryPoints.isEmpty() && numberOfParts == 1) {
-				possibleEntryPoints = findPossibleEntryPointsByUuid(securityContext, request, PathHelper.getName(path));
-			}
-
-			return possibleEntryPoints;
-		}
-
-		return Collections.EMPTY_LIST;
-	}
-
 	//~--- set methods ----------------------------------------------------
 	public static void setNoCacheHeaders(final HttpServletResponse response) {
 
@@ -1265,6 +1116,15 @@ public class HtmlServlet extends HttpServlet implements HttpServiceServlet {
 	}
 
 	private static boolean notModifiedSince(final HttpServletRequest request, HttpServletResponse response, final AbstractNode node, final boolean dontCache) {
+		return notModifiedSince(request, response, node, dontCache, null);
+	}
+
+	/**
+	 * Sets caching headers and checks the conditional request headers. If
+	 * an entity tag is given and the request has an If-None-Match header,
+	 * the entity tag takes precedence over If-Modified-Since.
+	 */
+	private static boolean notModifiedSince(final HttpServletRequest request, HttpServletResponse response, final AbstractNode node, final boolean dontCache, final String etag) {
 
 		boolean notModified = false;
 		final Date lastModified = node.getLastModifiedDate();
@@ -1295,6 +1155,21 @@ public class HtmlServlet extends HttpServlet implements HttpServiceServlet {
 
 		}
 
+		final String ifNoneMatch = request.getHeader("If-None-Match");
+
+		if (etag != null) {
+
+			response.setHeader("ETag", etag);
+
+			if (StringUtils.isNotBlank(ifNoneMatch) && matchesETag(ifNoneMatch, etag)) {
+
+				notModified = true;
+
+				response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+				response.setHeader("Vary", "Accept-Encoding");
+			}
+		}
+
 		if (lastModified != null) {
 
 			final Date roundedLastModified = DateUtils.round(lastModified, Calendar.SECOND);
@@ -1302,7 +1177,7 @@ public class HtmlServlet extends HttpServlet implements HttpServiceServlet {
 
 			final String ifModifiedSince = request.getHeader("If-Modified-Since");
 
-			if (StringUtils.isNotBlank(ifModifiedSince)) {
+			if (StringUtils.isNotBlank(ifModifiedSince) && (etag == null || StringUtils.isBlank(ifNoneMatch))) {
 
 				try {
 
@@ -1330,6 +1205,219 @@ public class HtmlServlet extends HttpServlet implements HttpServiceServlet {
 		return notModified;
 	}
 
+	/**
+	 * Returns an entity tag for the content of the given file, or null if
+	 * the file has no checksum. The tag is strong if it is derived from the
+	 * SHA-256 hash of the content, and weak if it is derived from the
+	 * CRC32 checksum and the size, which don't identify the content
+	 * reliably.
+	 */
+	private static String getETag(final File file) {
+
+		final String hash = file.getProperty(File.contentHash);
+		if (hash != null) {
+
+			return "\"" + hash + "\"";
+		}
+
+		final Long checksum = file.getChecksum();
+		final Long size     = file.getSize();
+
+		if (checksum != null && size != null) {
+
+			return "W/\"" + Long.toHexString(checksum) + "-" + Long.toHexString(size) + "\"";
+		}
+
+		return null;
+	}
+
+	/**
+	 * Weak comparison of the given If-None-Match header with the given
+	 * entity tag.
+	 */
+	private static boolean matchesETag(final String header, final String etag) {
+
+		final String opaqueTag = StringUtils.removeStart(etag, "W/");
+
+		for (final String candidate : header.split(",")) {
+
+			final String value = candidate.trim();
+			if ("*".equals(value) || opaqueTag.equals(StringUtils.removeStart(value, "W/"))) {
+
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	/**
+	 * Returns the byte ranges requested by the Range header, or null if
+	 * the whole content is to be sent. An empty list means that none of
+	 * the ranges can be satisfied.
+	 */
+	private static List<long[]> getRanges(final HttpServletRequest request, final HttpServletResponse response, final long len, final String etag) {
+
+		final String range = request.getHeader("Range");
+		if (StringUtils.isEmpty(range) || !range.startsWith("bytes=")) {
+			return null;
+		}
+
+		// send the whole content if it has changed since the client fetched the first part,
+		// If-Range requires a strong comparison, so weak entity tags never match
+		final String ifRange = request.getHeader("If-Range");
+		if (StringUtils.isNotBlank(ifRange) && !(etag != null && !etag.startsWith("W/") && ifRange.equals(etag)) && !ifRange.equals(response.getHeader("Last-Modified"))) {
+			return null;
+		}
+
+		final List<long[]> ranges = new LinkedList<>();
+		final Matcher matcher     = threadLocalRangeMatcher.get();
+		final String[] specs      = range.substring(6).split(",");
+
+		if (specs.length > MAX_RANGES) {
+			return null;
+		}
+
+		for (final String spec : specs) {
+
+			matcher.reset(spec.trim());
+
+			if (!matcher.matches()) {
+				return null;
+			}
+
+			final String startGroup = matcher.group("start");
+			final String endGroup   = matcher.group("end");
+			long start              = 0;
+			long end                = len - 1;
+
+			if (startGroup.isEmpty()) {
+
+				if (endGroup.isEmpty()) {
+					return null;
+				}
+
+				// suffix range: last n bytes
+				start = Math.max(0, len - Long.valueOf(endGroup));
+
+			} else {
+
+				start = Long.valueOf(startGroup);
+
+				if (!endGroup.isEmpty()) {
+					end = Math.min(end, Long.valueOf(endGroup));
+				}
+			}
+
+			if (start <= end && start < len) {
+
+				ranges.add(new long[] { start, end });
+			}
+		}
+
+		return coalesce(ranges);
+	}
+
+	/**
+	 * Merges overlapping and adjacent ranges, so that no byte is sent
+	 * more than once. The ranges are returned in ascending order.
+	 */
+	private static List<long[]> coalesce(final List<long[]> ranges) {
+
+		if (ranges.size() < 2) {
+			return ranges;
+		}
+
+		final List<long[]> merged = new LinkedList<>();
+		long[] current            = null;
+
+		Collections.sort(ranges, (a, b) -> Long.compare(a[0], b[0]));
+
+		for (final long[] range : ranges) {
+
+			if (current != null && range[0] <= current[1] + 1) {
+
+				current[1] = Math.max(current[1], range[1]);
+
+			} else {
+
+				current = range;
+				merged.add(current);
+			}
+		}
+
+		return merged;
+	}
+
+	/**
+	 * Sends a region of the given file channel to the client as the whole
+	 * response body. On Jetty, the region is read into pooled direct
+	 * buffers and written to the socket without copying it into the heap.
+	 */
+	private static void sendRegion(final FileChannel channel, final ServletOutputStream out, final long start, final long length) throws IOException {
+
+		if (out instanceof HttpOutput) {
+
+			((HttpOutput)out).sendContent(new RegionChannel(channel, start, length));
+
+		} else {
+
+			transfer(channel, out, start, length);
+		}
+	}
+
+	/**
+	 * Sends a region of the given file channel to the client as a part of
+	 * the response body. On Jetty, the region is read into a direct buffer
+	 * that is reused by the request thread and written to the socket
+	 * without copying it into the heap. Other streams, e.g. wrapped by a
+	 * filter, are written to through FileChannel.transferTo, which copies
+	 * the content through a temporary buffer.
+	 */
+	private static void transfer(final FileChannel channel, final ServletOutputStream out, final long start, final long length) throws IOException {
+
+		long position  = start;
+		long remaining = length;
+
+		if (out instanceof HttpOutput) {
+
+			final HttpOutput httpOutput = (HttpOutput)out;
+			final ByteBuffer buffer     = threadLocalTransferBuffer.get();
+
+			while (remaining > 0) {
+
+				buffer.clear();
+				buffer.limit((int)Math.min(buffer.capacity(), remaining));
+
+				final int count = channel.read(buffer, position);
+				if (count <= 0) {
+					break;
+				}
+
+				buffer.flip();
+				httpOutput.write(buffer);
+
+				position  += count;
+				remaining -= count;
+			}
+
+		} else {
+
+			final WritableByteChannel target = Channels.newChannel(out);
+
+			while (remaining > 0) {
+
+				final long count = channel.transferTo(position, remaining, target);
+				if (count <= 0) {
+					break;
+				}
+
+				position  += count;
+				remaining -= count;
+			}
+		}
+	}
+
 	private void streamFile(SecurityContext securityContext, final File file, HttpServletRequest request, HttpServletResponse response, final EditMode edit) throws IOException {
 
 		if (!securityContext.isVisible(file)) {
@@ -1359,7 +1447,9 @@ public class HtmlServlet extends HttpServlet implements HttpServiceServlet {
 			callbackMap.put("requestedFileName", downloadAsFilename);
 		}
 
-		if (!EditMode.WIDGET.equals(edit) && notModifiedSince(request, response, file, false)) {
+		final String etag = getETag(file);
+
+		if (!EditMode.WIDGET.equals(edit) && notModifiedSince(request, response, file, false, etag)) {
 
 			out.flush();
 			out.close();
@@ -1383,68 +1473,86 @@ public class HtmlServlet extends HttpServlet implements HttpServiceServlet {
 			} else {
 
 				// 2b: stream file to response
-				final InputStream in = file.getInputStream();
-				final String contentType = file.getContentType();
+				final java.io.File fileOnDisk = file.getFileOnDisk();
+				final String contentType      = file.getContentType();
 
-				if (contentType != null) {
+				if (fileOnDisk == null || !fileOnDisk.isFile()) {
 
-					response.setContentType(contentType);
+					response.sendError(HttpServletResponse.SC_NOT_FOUND);
+					callbackMap.put("statusCode", HttpServletResponse.SC_NOT_FOUND);
 
 				} else {
 
-					// Default
-					response.setContentType("application/octet-stream");
-				}
+					if (contentType != null) {
 
-				final String range = request.getHeader("Range");
+						response.setContentType(contentType);
 
-				try {
+					} else {
 
-					if (StringUtils.isNotEmpty(range)) {
+						// Default
+						response.setContentType("application/octet-stream");
+					}
 
-						final long len = file.getSize();
-						long start     = 0;
-						long end       = len - 1;
+					// Tell the client that we support byte ranges
+					response.setHeader("Accept-Ranges", "bytes");
 
-						final Matcher matcher = Pattern.compile("bytes=(?<start>\\d*)-(?<end>\\d*)").matcher(range);
+					try (final FileChannel channel = FileChannel.open(fileOnDisk.toPath(), StandardOpenOption.READ)) {
 
-						if (matcher.matches()) {
-							String startGroup = matcher.group("start");
-							start = startGroup.isEmpty() ? start : Long.valueOf(startGroup);
-							start = Math.max(0, start);
+						final long len            = channel.size();
+						final List<long[]> ranges = getRanges(request, response, len, etag);
 
-							String endGroup = matcher.group("end");
-							end = endGroup.isEmpty() ? end : Long.valueOf(endGroup);
-							end = end > len - 1 ? len - 1 : end;
-						}
+						if (ranges == null) {
 
-						long contentLength = end - start + 1;
+							response.setStatus(HttpServletResponse.SC_OK);
+							response.setHeader("Content-Length", Long.toString(len));
+							callbackMap.put("statusCode", HttpServletResponse.SC_OK);
 
-						// Tell the client that we support byte ranges
-						response.setHeader("Accept-Ranges", "bytes");
-						response.setHeader("Content-Range", String.format("bytes %s-%s/%s", start, end, len));
-						response.setHeader("Content-Length", String.format("%s", contentLength));
+							sendRegion(channel, out, 0, len);
 
-						response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
-						callbackMap.put("statusCode", HttpServletResponse.SC_PARTIAL_CONTENT);
+						} else if (ranges.isEmpty()) {
 
-						IOUtils.copyLarge(in, out, start, contentLength);
+							response.setStatus(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+							response.setHeader("Content-Range", "bytes */" + len);
+							callbackMap.put("statusCode", HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
 
-					} else {
+						} else if (ranges.size() == 1) {
 
-						response.setStatus(HttpServletResponse.SC_OK);
-						callbackMap.put("statusCode", HttpServletResponse.SC_OK);
+							final long start = ranges.get(0)[0];
+							final long end   = ranges.get(0)[1];
 
-						IOUtils.copyLarge(in, out);
+							response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+							response.setHeader("Content-Range", String.format("bytes %s-%s/%s", start, end, len));
+							response.setHeader("Content-Length", Long.toString(end - start + 1));
+							callbackMap.put("statusCode", HttpServletResponse.SC_PARTIAL_CONTENT);
 
-					}
+							sendRegion(channel, out, start, end - start + 1);
 
+						} else {
+
+							final String boundary = UUID.randomUUID().toString().replace("-", "");
+							final String partType = contentType != null ? contentType : "application/octet-stream";
+
+							response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+							response.setContentType("multipart/byteranges; boundary=" + boundary);
+							callbackMap.put("statusCode", HttpServletResponse.SC_PARTIAL_CONTENT);
 
-				} catch (Throwable t) {
+							for (final long[] range : ranges) {
 
-				} finally {
+								out.print("\r\n--" + boundary + "\r\n");
+								out.print("Content-Type: " + partType + "\r\n");
+								out.print(String.format("Content-Range: bytes %s-%s/%s\r\n\r\n", range[0], range[1], len));
+
+								transfer(channel, out, range[0], range[1] - range[0] + 1);
+							}
+
+							out.print("\r\n--" + boundary + "--\r\n");
+						}
+
+					} catch (Throwable t) {
 
-					if (out != null) {
+						logger.log(Level.FINE, "Unable to stream file {0}: {1}", new Object[] { file.getUuid(), t.getMessage() });
+
+					} finally {
 
 						try {
 							// 3: output content
@@ -1454,12 +1562,6 @@ public class HtmlServlet extends HttpServlet implements HttpServiceServlet {
 						} catch (Throwable t) {
 						}
 					}
-
-					if (in != null) {
-						in.close();
-					}
-
-					response.setStatus(HttpServletResponse.SC_OK);
 				}
 			}
 		}
@@ -1479,48 +1581,6 @@ public class HtmlServlet extends HttpServlet implements HttpServiceServlet {
 		}
 	}
 
-	/**
-	 * Check if the given page is visible for the requested site defined by
-	 * a hostname and a port.
-	 *
-	 * @param request
-	 * @param page
-	 * @return
-	 */
-	private boolean isVisibleForSite(final HttpServletRequest request, final Page page) {
-
-		logger.log(Level.FINE, "Page: {0} [{1}], server name: {2}, server port: {3}", new Object[]{page.getName(), page.getUuid(), request.getServerName(), request.getServerPort()});
-
-		final Site site = page.getProperty(Page.site);
-
-		if (site == null) {
-			logger.log(Level.FINE, "Page {0} [{1}] has no site assigned.", new Object[]{page.getName(), page.getUuid()});
-			return true;
-		}
-
-		logger.log(Level.FINE, "Checking site: {0} [{1}], hostname: {2}, port: {3}", new Object[]{site.getName(), site.getUuid(), site.getProperty(Site.hostname), site.getProperty(Site.port)});
-
-		final String serverName = request.getServerName();
-		final int serverPort = request.getServerPort();
-
-		if (StringUtils.isNotBlank(serverName) && !serverName.equals(site.getProperty(Site.hostname))) {
-			logger.log(Level.INFO, "Server name {0} does not fit site hostname {1}", new Object[]{serverName, site.getProperty(Site.hostname)});
-			return false;
-		}
-
-		final Integer sitePort = site.getProperty(Site.port);
-
-		if (sitePort != null && serverPort != sitePort) {
-			logger.log(Level.INFO, "Server port {0} does not match site port {1}", new Object[]{serverPort, sitePort});
-			return false;
-		}
-
-		logger.log(Level.FINE, "Matching site: {0} [{1}], hostname: {2}, port: {3}", new Object[]{site.getName(), site.getUuid(), site.getProperty(Site.hostname), site.getProperty(Site.port)});
-
-		return true;
-
-	}
-
 	private void resolvePossiblePropertyNamesForObjectResolution(final ConfigurationProvider config, final Query query, final String name) {
 
 		for (final String possiblePropertyName : possiblePropertyNamesForEntityResolving) {
@@ -1720,4 +1780,62 @@ public class HtmlServlet extends HttpServlet implements HttpServiceServlet {
 			return rootElement;
 		}
 	}
+
+	/**
+	 * Read-only view of a region of a file channel, so that Jetty can send
+	 * the region with its own buffers.
+	 */
+	private static class RegionChannel implements ReadableByteChannel {
+
+		private FileChannel channel = null;
+		private long position       = 0L;
+		private long remaining      = 0L;
+
+		public RegionChannel(final FileChannel channel, final long start, final long length) {
+
+			this.channel   = channel;
+			this.position  = start;
+			this.remaining = length;
+		}
+
+		@Override
+		public int read(final ByteBuffer dst) throws IOException {
+
+			if (remaining <= 0) {
+				return -1;
+			}
+
+			final int limit = dst.limit();
+
+			if (dst.remaining() > remaining) {
+				dst.limit(dst.position() + (int)remaining);
+			}
+
+			try {
+
+				final int count = channel.read(dst, position);
+				if (count > 0) {
+
+					position  += count;
+					remaining -= count;
+				}
+
+				return count;
+
+			} finally {
+
+				dst.limit(limit);
+			}
+		}
+
+		@Override
+		public boolean isOpen() {
+			return channel.isOpen();
+		}
+
+		@Override
+		public void close() throws IOException {
+			// the channel is closed by the caller
+		}
+	}
 }
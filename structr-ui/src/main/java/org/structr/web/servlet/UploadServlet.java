@@ -36,7 +36,6 @@ import org.apache.commons.fileupload.FileItem;
 import org.apache.commons.fileupload.FileUploadException;
 import org.apache.commons.fileupload.disk.DiskFileItemFactory;
 import org.apache.commons.fileupload.servlet.ServletFileUpload;
-import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang.StringUtils;
 import org.structr.common.AccessMode;
 import org.structr.common.PathHelper;
@@ -200,7 +199,7 @@ public class UploadServlet extends HttpServlet implements HttpServiceServlet {
 
 						final String name = item.getName().replaceAll("\\\\", "/");
 
-						final org.structr.dynamic.File newFile = FileHelper.createFile(securityContext, IOUtils.toByteArray(item.getInputStream()), contentType, cls);
+						final org.structr.dynamic.File newFile = FileHelper.createFile(securityContext, item.getInputStream(), contentType, cls, null);
 						newFile.setProperty(AbstractNode.name, PathHelper.getName(name));
 
 						if (!newFile.validatePath(securityContext, null)) {
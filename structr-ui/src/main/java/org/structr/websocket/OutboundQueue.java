@@ -0,0 +1,297 @@
+/**
+ * Copyright (C) 2010-2016 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.websocket;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.eclipse.jetty.websocket.api.Session;
+import org.eclipse.jetty.websocket.api.StatusCode;
+import org.eclipse.jetty.websocket.api.WriteCallback;
+
+/**
+ * Bounded outbound message queue of a single websocket client.
+ *
+ * All messages of a client are sent through this queue, one at a time,
+ * using the asynchronous send method of the remote endpoint, so that
+ * neither the committing thread nor other clients wait for a slow
+ * client. Broadcast messages are coalesced with an identical message at
+ * the end of the queue. If the queue is full, the oldest broadcast
+ * message is dropped. Clients that drop too many messages without
+ * catching up in between are disconnected so that they reconnect and
+ * reload their state. Direct responses to a client are never dropped.
+ *
+ *
+ */
+public class OutboundQueue implements WriteCallback {
+
+	private static final Logger logger = Logger.getLogger(OutboundQueue.class.getName());
+
+	private final Deque<Outbound> queue    = new ArrayDeque<>();
+	private WebsocketController controller = null;
+	private StructrWebSocket socket        = null;
+	private Session session                = null;
+	private Outbound current               = null;
+	private boolean completedInline        = false;
+	private boolean inWrite                = false;
+	private boolean sending                = false;
+	private boolean closed                 = false;
+	private int capacity                   = 0;
+	private int maxDropped                 = 0;
+	private int dropped                    = 0;
+
+	public OutboundQueue(final WebsocketController controller, final StructrWebSocket socket, final Session session, final int capacity, final int maxDropped) {
+
+		this.controller = controller;
+		this.socket     = socket;
+		this.session    = session;
+		this.capacity   = Math.max(1, capacity);
+		this.maxDropped = maxDropped;
+	}
+
+	/**
+	 * Sends a direct response to the client.
+	 *
+	 * @param message
+	 */
+	public void send(final String message) {
+		enqueue(new Outbound(message, 0L, false));
+	}
+
+	/**
+	 * Sends a broadcast message to the client. Broadcast messages can be
+	 * coalesced or dropped if the client does not keep up.
+	 *
+	 * @param message
+	 * @param timestamp the time the broadcast was started, in nanoseconds
+	 */
+	public void broadcast(final String message, final long timestamp) {
+		enqueue(new Outbound(message, timestamp, true));
+	}
+
+	public void close() {
+
+		synchronized (this) {
+
+			closed = true;
+			queue.clear();
+		}
+	}
+
+	public synchronized int size() {
+		return queue.size();
+	}
+
+	// ----- interface WriteCallback -----
+	@Override
+	public void writeSuccess() {
+
+		final Outbound sent = current;
+		Outbound next       = null;
+
+		if (sent != null && sent.broadcast) {
+			controller.recordLatency(System.nanoTime() - sent.timestamp);
+		}
+
+		synchronized (this) {
+
+			// completion on the sending thread, let the send loop continue
+			if (inWrite) {
+
+				completedInline = true;
+				return;
+			}
+
+			next = pollNext();
+		}
+
+		drain(next);
+	}
+
+	@Override
+	public void writeFailed(final Throwable t) {
+
+		logger.log(Level.FINE, "Error sending message to client: {0}", t.getMessage());
+
+		synchronized (this) {
+
+			closed  = true;
+			sending = false;
+			inWrite = false;
+
+			queue.clear();
+		}
+
+		controller.unregisterClient(socket);
+	}
+
+	// ----- private methods -----
+	private void enqueue(final Outbound outbound) {
+
+		boolean disconnect = false;
+		Outbound next      = null;
+
+		synchronized (this) {
+
+			if (closed) {
+				return;
+			}
+
+			if (outbound.broadcast) {
+
+				// coalesce identical consecutive broadcasts
+				final Outbound last = queue.peekLast();
+				if (last != null && last.broadcast && last.message.equals(outbound.message)) {
+
+					controller.recordCoalesced();
+					return;
+				}
+
+				if (queue.size() >= capacity && dropOldestBroadcast()) {
+
+					controller.recordDropped();
+
+					if (++dropped > maxDropped) {
+						disconnect = true;
+					}
+				}
+			}
+
+			if (!disconnect) {
+
+				queue.add(outbound);
+
+				if (!sending) {
+
+					sending = true;
+					next    = queue.poll();
+				}
+			}
+		}
+
+		if (disconnect) {
+
+			logger.log(Level.WARNING, "Websocket client {0} does not keep up with broadcast messages, disconnecting.", session.getRemoteAddress());
+
+			close();
+
+			session.close(StatusCode.SHUTDOWN, "Client too slow");
+
+			controller.unregisterClient(socket);
+
+			return;
+		}
+
+		drain(next);
+	}
+
+	private void drain(final Outbound first) {
+
+		Outbound next = first;
+
+		while (next != null) {
+
+			synchronized (this) {
+
+				if (closed) {
+
+					sending = false;
+					return;
+				}
+
+				current         = next;
+				inWrite         = true;
+				completedInline = false;
+			}
+
+			try {
+
+				session.getRemote().sendString(next.message, this);
+
+			} catch (Throwable t) {
+
+				writeFailed(t);
+				return;
+			}
+
+			synchronized (this) {
+
+				inWrite = false;
+
+				// write completes asynchronously
+				if (!completedInline) {
+					return;
+				}
+
+				next = pollNext();
+			}
+		}
+	}
+
+	/**
+	 * Must be called while holding the lock.
+	 */
+	private Outbound pollNext() {
+
+		final Outbound next = closed ? null : queue.poll();
+		if (next == null) {
+
+			// the client has caught up
+			sending = false;
+			dropped = 0;
+		}
+
+		return next;
+	}
+
+	/**
+	 * Must be called while holding the lock.
+	 */
+	private boolean dropOldestBroadcast() {
+
+		final Iterator<Outbound> it = queue.iterator();
+		while (it.hasNext()) {
+
+			if (it.next().broadcast) {
+
+				it.remove();
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	// ----- nested classes -----
+	private static class Outbound {
+
+		private String message    = null;
+		private long timestamp    = 0L;
+		private boolean broadcast = false;
+
+		public Outbound(final String message, final long timestamp, final boolean broadcast) {
+
+			this.message   = message;
+			this.timestamp = timestamp;
+			this.broadcast = broadcast;
+		}
+	}
+}
@@ -69,6 +69,7 @@ public class StructrWebSocket implements WebSocketListener {
 	private Map<String, FileUploadHandler> uploads = null;
 	private Authenticator authenticator            = null;
 	private String pagePath                        = null;
+	private OutboundQueue outbound                 = null;
 
 	//~--- constructors ---------------------------------------------------
 
@@ -93,7 +94,8 @@ public class StructrWebSocket implements WebSocketListener {
 
 		logger.log(Level.FINE, "New connection with protocol {0}", session.getProtocolVersion());
 
-		this.session = session;
+		this.session  = session;
+		this.outbound = syncController.createOutboundQueue(this, session);
 
 		syncController.registerClient(this);
 
@@ -114,6 +116,12 @@ public class StructrWebSocket implements WebSocketListener {
 
 			syncController.unregisterClient(this);
 
+			if (outbound != null) {
+
+				outbound.close();
+				outbound = null;
+			}
+
 			// flush and close open uploads
 			for (FileUploadHandler upload : uploads.values()) {
 
@@ -315,7 +323,10 @@ public class StructrWebSocket implements WebSocketListener {
                             securityContext.clearCustomView();
                         }
 
-			session.getRemote().sendString(msg);
+			// all messages of a client are sent through its outbound queue
+			if (outbound != null) {
+				outbound.send(msg);
+			}
 
 			tx.success();
 
@@ -417,6 +428,10 @@ public class StructrWebSocket implements WebSocketListener {
 
 	}
 
+	public OutboundQueue getOutboundQueue() {
+		return outbound;
+	}
+
 	public HttpServletRequest getRequest() {
 
 		return request;
@@ -20,21 +20,26 @@ package org.structr.websocket;
 
 import com.google.gson.Gson;
 import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import org.eclipse.jetty.util.ConcurrentHashSet;
 import org.eclipse.jetty.util.URIUtil;
 import org.eclipse.jetty.websocket.api.Session;
-import org.eclipse.jetty.websocket.api.WebSocketException;
 import org.structr.api.graph.RelationshipType;
 import org.structr.common.SecurityContext;
 import org.structr.common.error.FrameworkException;
 import org.structr.core.GraphObject;
+import org.structr.core.Services;
 import org.structr.core.StructrTransactionListener;
 import org.structr.core.TransactionSource;
 import org.structr.core.app.StructrApp;
@@ -50,6 +55,12 @@ import org.structr.web.entity.dom.DOMNode;
 import org.structr.websocket.message.WebSocketMessage;
 
 /**
+ * Broadcasts modifications to all connected websocket clients.
+ *
+ * Each broadcast message is converted to JSON once per distinct set of
+ * visible result objects and delivered asynchronously through the bounded
+ * {@link OutboundQueue} of each client, so committing transactions does
+ * not wait for the clients.
  *
  *
  */
@@ -58,12 +69,24 @@ public class WebsocketController implements StructrTransactionListener {
 	private static final Logger logger = Logger.getLogger(WebsocketController.class.getName());
 
 	private final Set<StructrWebSocket> clients = new ConcurrentHashSet<>();
-	private Gson gson = null;
+	private final LongAdder broadcasts          = new LongAdder();
+	private final LongAdder serializations      = new LongAdder();
+	private final LongAdder recipients          = new LongAdder();
+	private final LongAdder fanoutNanos         = new LongAdder();
+	private final LongAdder delivered           = new LongAdder();
+	private final LongAdder latencyNanos        = new LongAdder();
+	private final LongAdder coalesced           = new LongAdder();
+	private final LongAdder dropped             = new LongAdder();
+	private final AtomicLong maxLatencyNanos    = new AtomicLong();
+	private Gson gson                           = null;
+	private int queueSize                       = 1000;
+	private int maxDropped                      = 1000;
 
 	public WebsocketController(final Gson gson) {
 
-		this.gson = gson;
-
+		this.gson       = gson;
+		this.queueSize  = Services.parseInt(StructrApp.getConfigurationValue(Services.WEBSOCKET_OUTBOUND_QUEUE_SIZE), 1000);
+		this.maxDropped = Services.parseInt(StructrApp.getConfigurationValue(Services.WEBSOCKET_OUTBOUND_MAX_DROPPED), 1000);
 	}
 
 	public void registerClient(final StructrWebSocket client) {
@@ -74,109 +97,201 @@ public class WebsocketController implements StructrTransactionListener {
 
 	public void unregisterClient(final StructrWebSocket client) {
 
-		clients.remove(client);
+		if (clients.remove(client)) {
+
+			final OutboundQueue outbound = client.getOutboundQueue();
+			if (outbound != null) {
 
+				outbound.close();
+			}
+		}
 	}
 
-	// ----- private methods -----
-	private void broadcast(final WebSocketMessage webSocketData) {
+	/**
+	 * Creates the outbound queue for a newly connected client.
+	 *
+	 * @param socket
+	 * @param session
+	 * @return the outbound queue
+	 */
+	public OutboundQueue createOutboundQueue(final StructrWebSocket socket, final Session session) {
+		return new OutboundQueue(this, socket, session, queueSize, maxDropped);
+	}
 
-		//logger.log(Level.FINE, "Broadcasting message to {0} clients..", clients.size());
-		// session must be valid to be received by the client
-		webSocketData.setSessionValid(true);
+	/**
+	 * Returns fan-out statistics of all broadcasts since the last call
+	 * of this method.
+	 *
+	 * @return a map of statistics
+	 */
+	public Map<String, Object> getStatistics() {
+
+		final Map<String, Object> stats = new LinkedHashMap<>();
+		final long count                = broadcasts.sumThenReset();
+		final long deliveries           = delivered.sumThenReset();
+
+		stats.put("clients",                 clients.size());
+		stats.put("broadcasts",              count);
+		stats.put("serializations",          serializations.sumThenReset());
+		stats.put("recipients",              recipients.sumThenReset());
+		stats.put("avgFanoutMicros",         count > 0 ? fanoutNanos.sumThenReset() / count / 1000 : 0L);
+		stats.put("delivered",               deliveries);
+		stats.put("avgDeliveryLatencyMicros", deliveries > 0 ? latencyNanos.sumThenReset() / deliveries / 1000 : 0L);
+		stats.put("maxDeliveryLatencyMicros", maxLatencyNanos.getAndSet(0L) / 1000);
+		stats.put("coalesced",               coalesced.sumThenReset());
+		stats.put("dropped",                 dropped.sumThenReset());
+
+		return stats;
+	}
+
+	// ----- package-private methods -----
+	void recordLatency(final long nanos) {
+
+		delivered.increment();
+		latencyNanos.add(nanos);
+		maxLatencyNanos.accumulateAndGet(nanos, Math::max);
+	}
+
+	void recordCoalesced() {
+		coalesced.increment();
+	}
+
+	void recordDropped() {
+		dropped.increment();
+	}
+
+	/**
+	 * Adds the given callback as the first member of the given serialized
+	 * message, which must be a JSON object without a callback.
+	 */
+	String addCallback(final String message, final String callback) {
+
+		if (callback == null) {
+			return message;
+		}
+
+		final String members    = message.substring(message.indexOf('{') + 1);
+		final StringBuilder buf = new StringBuilder(message.length() + callback.length() + 16);
+
+		buf.append("{\"callback\":");
+		buf.append(gson.toJson(callback));
+
+		if (!members.trim().startsWith("}")) {
+			buf.append(",");
+		}
+
+		buf.append(members);
 
-		String message;
-		String pagePath = (String) webSocketData.getNodeData().get("pagePath");
+		return buf.toString();
+	}
 
-		List<StructrWebSocket> clientsToRemove = new LinkedList<>();
+	// ----- private methods -----
+	/**
+	 * Converts the given message to JSON once per distinct set of visible
+	 * result objects and hands it over to the outbound queues of all
+	 * clients that are allowed to see it. The per-client callback is
+	 * spliced into the serialized message, so the message itself is only
+	 * serialized once.
+	 */
+	private void broadcast(final WebSocketMessage webSocketData) {
 
-		// create message
-		for (StructrWebSocket socket : clients) {
+		final long start = System.nanoTime();
 
-			String clientPagePath = socket.getPagePath();
-			if (clientPagePath != null && !clientPagePath.equals(URIUtil.encodePath(pagePath))) {
+		//logger.log(Level.FINE, "Broadcasting message to {0} clients..", clients.size());
+		final Map<String, String> messages        = new HashMap<>();
+		final String pagePath                     = (String) webSocketData.getNodeData().get("pagePath");
+		final String encodedPagePath              = URIUtil.encodePath(pagePath);
+		final GraphObject graphObject             = webSocketData.getGraphObject();
+		final List<? extends GraphObject> result  = webSocketData.getResult();
+		final String command                      = webSocketData.getCommand();
+		final boolean filterResult                = (result != null) && (result.size() > 0) && ("UPDATE".equals(command) || "ADD".equals(command) || "CREATE".equals(command));
+		int recipientCount                        = 0;
+
+		for (final StructrWebSocket socket : clients) {
+
+			final String clientPagePath = socket.getPagePath();
+			if (clientPagePath != null && !clientPagePath.equals(encodedPagePath)) {
 				continue;
 			}
 
-			Session session = socket.getSession();
+			final OutboundQueue outbound = socket.getOutboundQueue();
 
-			webSocketData.setCallback(socket.getCallback());
+			if (outbound != null && socket.isAuthenticated()) {
 
-			if (session != null && socket.isAuthenticated()) {
-
-				List<? extends GraphObject> result = webSocketData.getResult();
-				SecurityContext securityContext = socket.getSecurityContext();
+				final SecurityContext securityContext = socket.getSecurityContext();
 
 				// if the object IS NOT of type AbstractNode AND the client is NOT priviledged
 				// OR
 				// if the object IS of type AbstractNode AND the client has no access to the node
 				// THEN skip sending a message
 				if (
-						( !(webSocketData.getGraphObject() instanceof AbstractNode) && !socket.isPriviledgedUser(socket.getCurrentUser()) )
-						|| (webSocketData.getGraphObject() instanceof AbstractNode && !securityContext.isVisible((AbstractNode) webSocketData.getGraphObject()))
+						( !(graphObject instanceof AbstractNode) && !socket.isPriviledgedUser(socket.getCurrentUser()) )
+						|| (graphObject instanceof AbstractNode && !securityContext.isVisible((AbstractNode) graphObject))
 					) {
 					continue;
 				}
 
-				if ((result != null) && (result.size() > 0)
-					&& (webSocketData.getCommand().equals("UPDATE") || webSocketData.getCommand().equals("ADD") || webSocketData.getCommand().equals("CREATE"))) {
-
-					WebSocketMessage clientData = webSocketData.copy();
-
-					clientData.setResult(filter(securityContext, result));
+				BitSet visible = null;
+				String key     = "";
 
-					message = gson.toJson(clientData, WebSocketMessage.class);
-
-				} else {
+				if (filterResult) {
 
-					message = gson.toJson(webSocketData, WebSocketMessage.class);
+					visible = getVisibleResults(securityContext, result);
+					key     = visible.toString();
 				}
 
-				//logger.log(Level.INFO, "############################################################ SENDING \n{0}", message);
-				try {
+				String message = messages.get(key);
+				if (message == null) {
 
-					session.getRemote().sendString(message);
+					final WebSocketMessage clientData = webSocketData.copy();
 
-				} catch (Throwable t) {
+					// session must be valid to be received by the client
+					clientData.setSessionValid(true);
+					clientData.setCallback(null);
 
-					if (t instanceof WebSocketException) {
+					if (filterResult) {
 
-						WebSocketException wse = (WebSocketException) t;
+						final List<GraphObject> filtered = new LinkedList<>();
 
-						if ("RemoteEndpoint unavailable, current state [CLOSED], expecting [OPEN or CONNECTED]".equals(wse.getMessage())) {
-							clientsToRemove.add(socket);
+						for (int i = visible.nextSetBit(0); i >= 0; i = visible.nextSetBit(i + 1)) {
+							filtered.add(result.get(i));
 						}
+
+						clientData.setResult(filtered);
 					}
 
-					logger.log(Level.FINE, "Error sending message to client.", t);
+					message = gson.toJson(clientData, WebSocketMessage.class);
+
+					messages.put(key, message);
 				}
 
+				outbound.broadcast(addCallback(message, socket.getCallback()), start);
+				recipientCount++;
 			}
-
-		}
-
-		for (StructrWebSocket s : clientsToRemove) {
-
-			unregisterClient(s);
-
-			logger.log(Level.WARNING, "Client removed from broadcast list: {0}", s);
 		}
 
+		broadcasts.increment();
+		serializations.add(messages.size());
+		recipients.add(recipientCount);
+		fanoutNanos.add(System.nanoTime() - start);
 	}
 
-	private <T extends GraphObject> List<T> filter(final SecurityContext securityContext, final List<T> all) {
+	private BitSet getVisibleResults(final SecurityContext securityContext, final List<? extends GraphObject> all) {
+
+		final BitSet visible = new BitSet(all.size());
+		int index            = 0;
 
-		List<T> filteredResult = new LinkedList<>();
-		for (T obj : all) {
+		for (final GraphObject obj : all) {
 
 			if (securityContext.isVisible((AbstractNode) obj)) {
 
-				filteredResult.add(obj);
+				visible.set(index);
 			}
-		}
 
-		return filteredResult;
+			index++;
+		}
 
+		return visible;
 	}
 
 	// ----- interface StructrTransactionListener -----
@@ -19,8 +19,13 @@
 package org.structr.websocket.command;
 
 import java.util.Map;
-
+import org.structr.common.Permission;
+import org.structr.common.SecurityContext;
+import org.structr.common.error.FrameworkException;
+import org.structr.core.app.StructrApp;
 import org.structr.core.entity.AbstractNode;
+import org.structr.core.property.PropertyKey;
+import org.structr.core.property.RelationProperty;
 import org.structr.web.entity.dom.DOMNode;
 import org.structr.websocket.StructrWebSocket;
 import org.structr.websocket.message.MessageBuilder;
@@ -43,6 +48,7 @@ public class AppendChildCommand extends AbstractCommand {
 		String id                    = webSocketData.getId();
 		Map<String, Object> nodeData = webSocketData.getNodeData();
 		String parentId              = (String) nodeData.get("parentId");
+		String keyString             = (String) nodeData.get("key");
 
 		// check node to append
 		if (id == null) {
@@ -93,6 +99,10 @@ public class AppendChildCommand extends AbstractCommand {
 				parentDOMNode.appendChild(node);
 			}
 
+		} else if (keyString != null) {
+
+			appendToCollection(parentNode, keyString, id);
+
 		} else {
 
 			// send exception
@@ -108,4 +118,43 @@ public class AppendChildCommand extends AbstractCommand {
 
 	}
 
+	// ----- private methods -----
+	/**
+	 * Adds the node with the given id to the relationship collection with
+	 * the given key of the given parent node, creating only the new
+	 * relationship.
+	 */
+	private void appendToCollection(final AbstractNode parentNode, final String keyString, final String id) {
+
+		final SecurityContext securityContext = getWebSocket().getSecurityContext();
+
+		if (!parentNode.isGranted(Permission.write, securityContext)) {
+
+			getWebSocket().send(MessageBuilder.status().code(403).message("No write permission").build(), true);
+			return;
+		}
+
+		final PropertyKey key = StructrApp.getConfiguration().getPropertyKeyForJSONName(parentNode.getClass(), keyString);
+		if (!(key instanceof RelationProperty) || !key.isCollection()) {
+
+			getWebSocket().send(MessageBuilder.status().code(422).message("Cannot append node, " + keyString + " is no collection").build(), true);
+			return;
+		}
+
+		final AbstractNode node = getNode(id);
+		if (node == null) {
+
+			getWebSocket().send(MessageBuilder.status().code(404).message("Node not found").build(), true);
+			return;
+		}
+
+		try {
+
+			((RelationProperty)key).addSingleElement(securityContext, parentNode, node);
+
+		} catch (FrameworkException fex) {
+
+			getWebSocket().send(MessageBuilder.status().code(fex.getStatus()).message(fex.getMessage()).build(), true);
+		}
+	}
 }
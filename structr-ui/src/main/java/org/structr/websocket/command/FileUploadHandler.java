@@ -134,6 +134,7 @@ public class FileUploadHandler {
 				this.privateFileChannel = null;
 
 				//file.increaseVersion();
+				FileHelper.deduplicate(file);
 				file.notifyUploadCompletion();
 
 			}
@@ -153,6 +154,16 @@ public class FileUploadHandler {
 
 		if (this.privateFileChannel == null) {
 
+			// shared content must not be modified, write to a private copy
+			try {
+
+				FileHelper.detachContent(file, append);
+
+			} catch (FrameworkException fex) {
+
+				throw new IOException(fex);
+			}
+
 			String relativeFilePath = file.getRelativeFilePath();
 
 			if (relativeFilePath != null) {
@@ -27,6 +27,7 @@ import org.structr.core.GraphObject;
 import org.structr.core.app.StructrApp;
 import org.structr.core.entity.AbstractNode;
 import org.structr.core.property.PropertyKey;
+import org.structr.core.property.RelationProperty;
 import org.structr.websocket.StructrWebSocket;
 import org.structr.websocket.message.MessageBuilder;
 import org.structr.websocket.message.WebSocketMessage;
@@ -93,7 +94,12 @@ public class RemoveFromCollectionCommand extends AbstractCommand {
 			try {
 
 				PropertyKey key = StructrApp.getConfiguration().getPropertyKeyForJSONName(obj.getClass(), keyString);
-				if (key != null) {
+				if (key instanceof RelationProperty) {
+
+					// remove the relationship to the given object only
+					((RelationProperty)key).removeSingleElement(getWebSocket().getSecurityContext(), obj, objToRemove);
+
+				} else if (key != null) {
 
 					List collection = (List) obj.getProperty(key);
 					collection.remove(objToRemove);
@@ -0,0 +1,141 @@
+/**
+ * Copyright (C) 2010-2016 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.cloud.sync;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import junit.framework.TestCase;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.structr.cloud.sync.ReplicationLog.Entry;
+import org.structr.cloud.sync.ReplicationLog.Reader;
+import org.structr.cloud.sync.ReplicationLog.Record;
+
+/**
+ *
+ *
+ */
+public class ReplicationLogTest extends TestCase {
+
+	private File directory = null;
+
+	@Override
+	protected void setUp() throws Exception {
+		directory = Files.createTempDirectory("replication-log").toFile();
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		FileUtils.deleteDirectory(directory);
+	}
+
+	public void testTruncatedTailEntry() throws IOException {
+
+		final ReplicationLog log = new ReplicationLog(directory, false);
+		final Reader reader      = log.openReader("slave");
+
+		log.append(1L, records("a"));
+		log.append(2L, records("b"));
+		log.append(3L, records("c"));
+
+		// simulate an entry that is not completely written yet
+		final File segment = getSegments()[0];
+		final byte[] data  = Files.readAllBytes(segment.toPath());
+
+		truncate(segment, data.length - 5);
+
+		final List<Entry> entries = reader.read(10);
+
+		assertEquals("Incomplete entry must not be returned", 2, entries.size());
+		assertEquals(0L, entries.get(0).getSequence());
+		assertEquals(1L, entries.get(1).getSequence());
+
+		reader.acknowledge(entries.get(1));
+
+		assertTrue("Incomplete entry must not be returned", reader.read(10).isEmpty());
+
+		// complete the entry
+		try (final FileOutputStream out = new FileOutputStream(segment, true)) {
+			out.write(data, data.length - 5, 5);
+		}
+
+		final List<Entry> remaining = reader.read(10);
+
+		assertEquals("Completed entry must be returned", 1, remaining.size());
+		assertEquals(2L, remaining.get(0).getSequence());
+		assertEquals(3L, remaining.get(0).getTimestamp());
+
+		log.close();
+	}
+
+	public void testTruncatedEntryInSealedSegment() throws IOException {
+
+		final ReplicationLog log = new ReplicationLog(directory, false);
+		final Reader reader      = log.openReader("slave");
+		final String largeKey    = StringUtils.repeat("x", 60000);
+		long count               = 0L;
+
+		while (getSegments().length < 2) {
+
+			log.append(++count, records(largeKey));
+		}
+
+		// the last entry opened the second segment, cut off the last entry of the first one
+		final File first = getSegments()[0];
+		truncate(first, first.length() - 5);
+
+		final List<Entry> entries = reader.read((int)count);
+
+		assertEquals("Reader must stop at the unreadable entry", count - 2, entries.size());
+		assertEquals(count - 3, entries.get(entries.size() - 1).getSequence());
+
+		log.close();
+	}
+
+	// ----- private methods -----
+	private List<Record> records(final String key) {
+
+		final Set<String> keys = new LinkedHashSet<>(Collections.singletonList(key));
+
+		return Arrays.asList(new Record(Record.NODE, "0123456789abcdef0123456789abcdef", keys));
+	}
+
+	private File[] getSegments() {
+
+		final File[] files = directory.listFiles((dir, name) -> name.endsWith(".log"));
+		Arrays.sort(files);
+
+		return files;
+	}
+
+	private void truncate(final File file, final long length) throws IOException {
+
+		try (final RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+			raf.setLength(length);
+		}
+	}
+}
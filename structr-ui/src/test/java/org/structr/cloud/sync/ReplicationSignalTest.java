@@ -0,0 +1,120 @@
+/**
+ * Copyright (C) 2010-2016 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.cloud.sync;
+
+import java.util.concurrent.TimeUnit;
+import junit.framework.TestCase;
+
+/**
+ *
+ *
+ */
+public class ReplicationSignalTest extends TestCase {
+
+	public void testSignalEndsIdleWait() throws InterruptedException {
+
+		final ReplicationSignal signal = new ReplicationSignal();
+
+		// a signal that arrived before is not lost
+		signal.signal();
+
+		assertTrue(signal.awaitSignal(10000));
+
+		final Thread committer = new Thread(() -> {
+
+			sleep(50);
+			signal.signal();
+		});
+
+		final long start = System.nanoTime();
+
+		committer.start();
+
+		assertTrue(signal.awaitSignal(10000));
+		assertTrue("Idle wait must end when a signal arrives", elapsed(start) < 5000);
+
+		committer.join();
+
+		assertFalse("Signal must be consumed", signal.awaitSignal(10));
+	}
+
+	public void testSignalsDoNotShortenBackoff() throws InterruptedException {
+
+		final ReplicationSignal signal = new ReplicationSignal();
+		final long backoff             = 500;
+
+		// simulate a commit every 10 ms
+		final Thread committer = new Thread(() -> {
+
+			while (!signal.isClosed()) {
+
+				signal.signal();
+				sleep(10);
+			}
+		});
+
+		committer.start();
+
+		final long start = System.nanoTime();
+
+		signal.backoff(backoff);
+
+		final long elapsed = elapsed(start);
+
+		signal.close();
+		committer.join();
+
+		assertTrue("Backoff was cut short after " + elapsed + " ms", elapsed >= backoff);
+
+		// signals that arrived during the backoff are seen afterwards
+		assertTrue(signal.awaitSignal(0));
+	}
+
+	public void testCloseEndsBackoff() throws InterruptedException {
+
+		final ReplicationSignal signal = new ReplicationSignal();
+
+		final Thread stopper = new Thread(() -> {
+
+			sleep(50);
+			signal.close();
+		});
+
+		final long start = System.nanoTime();
+
+		stopper.start();
+		signal.backoff(60000);
+		stopper.join();
+
+		assertTrue("Backoff must end when the service is stopped", elapsed(start) < 30000);
+	}
+
+	// ----- private methods -----
+	private long elapsed(final long start) {
+		return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+	}
+
+	private static void sleep(final long millis) {
+
+		try {
+			Thread.sleep(millis);
+
+		} catch (InterruptedException ignore) {}
+	}
+}
@@ -0,0 +1,272 @@
+/**
+ * Copyright (C) 2010-2016 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.web.common;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.structr.common.error.FrameworkException;
+import org.structr.core.Services;
+import org.structr.core.graph.Tx;
+import org.structr.dynamic.File;
+import org.structr.web.entity.FileBase;
+
+/**
+ * Tests that shared file contents in the {@link BlobStore} are kept as
+ * long as they are referenced, and collected afterwards.
+ *
+ *
+ */
+public class BlobStoreTest extends StructrUiTest {
+
+	private static final long PAST = System.currentTimeMillis() - TimeUnit.HOURS.toMillis(1);
+
+	public void test01SharedBlobKeptWhileReferenced() {
+
+		try {
+
+			final File file1 = createFile("file1.txt", "shared content");
+			final File file2 = createFile("file2.txt", "shared content");
+			final java.io.File blob;
+
+			try (final Tx tx = app.tx()) {
+
+				assertEquals("Identical content must be stored once", file1.getRelativeFilePath(), file2.getRelativeFilePath());
+				assertEquals(file1.getProperty(FileBase.contentHash), file2.getProperty(FileBase.contentHash));
+
+				blob = file1.getFileOnDisk();
+				tx.success();
+			}
+
+			// move the blob out of the grace period
+			assertTrue(blob.setLastModified(PAST));
+
+			try (final Tx tx = app.tx()) {
+
+				app.delete(file1);
+				tx.success();
+			}
+
+			assertTrue("Referenced blob must not be collected", blob.exists());
+
+			try (final Tx tx = app.tx()) {
+
+				assertEquals("shared content", read(file2));
+
+				app.delete(file2);
+				tx.success();
+			}
+
+			assertFalse("Unreferenced blob must be collected", blob.exists());
+
+		} catch (FrameworkException | IOException ex) {
+
+			ex.printStackTrace();
+			fail("Unexpected exception");
+		}
+	}
+
+	public void test02RecentBlobKeptDuringGracePeriod() {
+
+		try {
+
+			final File file = createFile("file.txt", "recent content");
+			final java.io.File blob;
+
+			try (final Tx tx = app.tx()) {
+
+				blob = file.getFileOnDisk();
+
+				app.delete(file);
+				tx.success();
+			}
+
+			assertTrue("Recently stored blob must not be collected", blob.exists());
+
+		} catch (FrameworkException ex) {
+
+			ex.printStackTrace();
+			fail("Unexpected exception");
+		}
+	}
+
+	public void test03BlobStoredAgainAfterRelease() {
+
+		try {
+
+			final File file1 = createFile("file1.txt", "reused content");
+			final java.io.File blob;
+
+			try (final Tx tx = app.tx()) {
+
+				blob = file1.getFileOnDisk();
+				tx.success();
+			}
+
+			assertTrue(blob.setLastModified(PAST));
+
+			// the blob is released and stored again in the same transaction
+			final File file2;
+
+			try (final Tx tx = app.tx()) {
+
+				app.delete(file1);
+
+				file2 = FileHelper.createFile(securityContext, "reused content".getBytes(StandardCharsets.UTF_8), null, File.class, "file2.txt");
+				tx.success();
+			}
+
+			assertTrue("Blob that was stored again must not be collected", blob.exists());
+
+			try (final Tx tx = app.tx()) {
+
+				assertEquals(blob, file2.getFileOnDisk());
+				assertEquals("reused content", read(file2));
+				tx.success();
+			}
+
+		} catch (FrameworkException | IOException ex) {
+
+			ex.printStackTrace();
+			fail("Unexpected exception");
+		}
+	}
+
+	public void test04PrivateContentDeletedAfterCommit() {
+
+		try {
+
+			final File file = createFile("file.txt", "private content");
+			final java.io.File privateFile;
+
+			// give the file a private copy of its content
+			try (final Tx tx = app.tx()) {
+
+				FileHelper.detachContent(file, true);
+
+				privateFile = file.getFileOnDisk();
+				tx.success();
+			}
+
+			assertTrue(privateFile.exists());
+
+			try (final Tx tx = app.tx()) {
+
+				FileHelper.deduplicate(file);
+				tx.success();
+			}
+
+			assertFalse("Replaced private content must be deleted after commit", privateFile.exists());
+
+			try (final Tx tx = app.tx()) {
+
+				assertNotNull(file.getProperty(FileBase.contentHash));
+				assertEquals("private content", read(file));
+				tx.success();
+			}
+
+		} catch (FrameworkException | IOException ex) {
+
+			ex.printStackTrace();
+			fail("Unexpected exception");
+		}
+	}
+
+	public void test05PrivateContentKeptAfterRollback() {
+
+		try {
+
+			final File file = createFile("file.txt", "private content");
+			final java.io.File privateFile;
+
+			try (final Tx tx = app.tx()) {
+
+				FileHelper.detachContent(file, true);
+
+				privateFile = file.getFileOnDisk();
+				tx.success();
+			}
+
+			// rolled back
+			try (final Tx tx = app.tx()) {
+
+				FileHelper.deduplicate(file);
+			}
+
+			// commit another transaction to run the collector
+			createFile("other.txt", "other content");
+
+			assertTrue("Private content must be kept after rollback", privateFile.exists());
+
+			try (final Tx tx = app.tx()) {
+
+				assertNull(file.getProperty(FileBase.contentHash));
+				assertEquals(privateFile, file.getFileOnDisk());
+				assertEquals("private content", read(file));
+				tx.success();
+			}
+
+			// the release is recorded until its grace period has expired
+			final java.io.File journal = new java.io.File(FileHelper.getFilePath("blobs/released"));
+			final String relativePath  = privateFile.getAbsolutePath().substring(FileHelper.getFilePath("").length());
+
+			assertTrue("Released private content must be recorded", journal.exists());
+			assertTrue(new String(Files.readAllBytes(journal.toPath()), StandardCharsets.UTF_8).contains(relativePath));
+
+		} catch (FrameworkException | IOException ex) {
+
+			ex.printStackTrace();
+			fail("Unexpected exception");
+		}
+	}
+
+	@Override
+	protected void setUp() throws Exception {
+
+		final Map<String, Object> additionalConfig = new HashMap<>();
+
+		additionalConfig.put(Services.APPLICATION_FILESYSTEM_DEDUPLICATION, "true");
+
+		setUp(additionalConfig);
+	}
+
+	// ----- private methods -----
+	private File createFile(final String name, final String content) throws FrameworkException {
+
+		try (final Tx tx = app.tx()) {
+
+			final File file = FileHelper.createFile(securityContext, content.getBytes(StandardCharsets.UTF_8), null, File.class, name);
+
+			tx.success();
+
+			return file;
+
+		} catch (IOException ioex) {
+
+			throw new FrameworkException(500, ioex.getMessage());
+		}
+	}
+
+	private String read(final File file) throws IOException {
+		return new String(Files.readAllBytes(file.getFileOnDisk().toPath()), StandardCharsets.UTF_8);
+	}
+}
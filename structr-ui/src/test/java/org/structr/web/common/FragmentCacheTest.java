@@ -0,0 +1,205 @@
+/**
+ * Copyright (C) 2010-2016 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.web.common;
+
+import org.structr.common.AccessMode;
+import org.structr.common.Permission;
+import org.structr.common.SecurityContext;
+import org.structr.common.error.FrameworkException;
+import org.structr.core.GraphObject;
+import org.structr.core.app.StructrApp;
+import org.structr.core.graph.Tx;
+import org.structr.web.entity.User;
+import org.structr.web.entity.dom.Content;
+import org.structr.web.entity.dom.DOMElement;
+import org.structr.web.entity.dom.DOMNode;
+import org.structr.web.entity.dom.Page;
+
+/**
+ * Tests that rendered fragments of static DOM subtrees are reused, and
+ * removed when a node they depend on is modified.
+ *
+ *
+ */
+public class FragmentCacheTest extends StructrUiTest {
+
+	public void test01CacheHit() {
+
+		try {
+
+			final Page page;
+			final Content text;
+
+			try (final Tx tx = app.tx()) {
+
+				page = Page.createNewPage(securityContext, "test");
+				text = createStaticPage(page, "hello");
+
+				tx.success();
+			}
+
+			final String first = render(page, securityContext);
+			final int size     = FragmentCache.getInstance().size();
+
+			assertTrue(first.contains("hello"));
+			assertTrue("Static subtree must be cached", size > 0);
+
+			// a change that is not reported to the cache is not seen
+			try (final Tx tx = app.tx()) {
+
+				text.getNode().setProperty("content", "unreported");
+				tx.success();
+			}
+
+			assertEquals("Cached fragment must be reused", first, render(page, securityContext));
+			assertEquals(size, FragmentCache.getInstance().size());
+
+		} catch (FrameworkException fex) {
+
+			fex.printStackTrace();
+			fail("Unexpected exception");
+		}
+	}
+
+	public void test02InvalidationThroughParents() {
+
+		try {
+
+			final Page page;
+			final Content text;
+
+			try (final Tx tx = app.tx()) {
+
+				page = Page.createNewPage(securityContext, "test");
+				text = createStaticPage(page, "hello");
+
+				tx.success();
+			}
+
+			assertTrue(render(page, securityContext).contains("hello"));
+
+			// the fragment is cached for an ancestor of the modified node
+			try (final Tx tx = app.tx()) {
+
+				text.setProperty(Content.content, "changed");
+				tx.success();
+			}
+
+			final String output = render(page, securityContext);
+
+			assertTrue("Fragment of an ancestor must be invalidated", output.contains("changed"));
+			assertFalse(output.contains("hello"));
+
+		} catch (FrameworkException fex) {
+
+			fex.printStackTrace();
+			fail("Unexpected exception");
+		}
+	}
+
+	public void test03UserSpecificFragments() {
+
+		try {
+
+			final User user1 = createTestNodes(User.class, 1).get(0);
+			final User user2 = createTestNodes(User.class, 1).get(0);
+			final Page page;
+
+			try (final Tx tx = app.tx()) {
+
+				page = Page.createNewPage(securityContext, "test");
+
+				final Content text   = createStaticPage(page, "hello");
+				final DOMNode body   = (DOMNode)text.getParent().getParent().getParent();
+				final DOMElement div = (DOMElement)page.createElement("div");
+				final Content secret = (Content)page.createTextNode("secret");
+
+				body.appendChild(div);
+				div.appendChild(secret);
+
+				// only the first user can see the secret
+				div.grant(Permission.read, user1);
+				secret.grant(Permission.read, user1);
+
+				for (final DOMNode node : new DOMNode[] { page, text, (DOMNode)text.getParent(), (DOMNode)text.getParent().getParent(), body, (DOMNode)body.getParent() }) {
+					node.setProperty(GraphObject.visibleToAuthenticatedUsers, true);
+				}
+
+				tx.success();
+			}
+
+			final SecurityContext context1 = SecurityContext.getInstance(user1, AccessMode.Frontend);
+			final SecurityContext context2 = SecurityContext.getInstance(user2, AccessMode.Frontend);
+
+			assertTrue(render(page, context1).contains("secret"));
+			assertFalse("Fragments must not be shared between users", render(page, context2).contains("secret"));
+
+			// both fragments are reused for their own user
+			assertTrue(render(page, context1).contains("secret"));
+			assertFalse(render(page, context2).contains("secret"));
+
+			// the visibility of user-specific fragments depends on the principals
+			final int size = FragmentCache.getInstance().size();
+
+			try (final Tx tx = app.tx()) {
+
+				user1.setProperty(User.name, "renamed");
+				tx.success();
+			}
+
+			assertTrue("User-specific fragments must be removed", FragmentCache.getInstance().size() <= size - 2);
+			assertTrue(render(page, context1).contains("secret"));
+
+		} catch (FrameworkException fex) {
+
+			fex.printStackTrace();
+			fail("Unexpected exception");
+		}
+	}
+
+	// ----- private methods -----
+	private Content createStaticPage(final Page page, final String content) throws FrameworkException {
+
+		final DOMElement html = (DOMElement)page.createElement("html");
+		final DOMElement body = (DOMElement)page.createElement("body");
+		final DOMElement div  = (DOMElement)page.createElement("div");
+		final DOMElement p    = (DOMElement)page.createElement("p");
+		final Content text    = (Content)page.createTextNode(content);
+
+		page.appendChild(html);
+		html.appendChild(body);
+		body.appendChild(div);
+		div.appendChild(p);
+		p.appendChild(text);
+
+		return text;
+	}
+
+	private String render(final Page page, final SecurityContext context) throws FrameworkException {
+
+		try (final Tx tx = app.tx()) {
+
+			final String output = StructrApp.getInstance(context).get(Page.class, page.getUuid()).getContent(RenderContext.EditMode.NONE);
+
+			tx.success();
+
+			return output;
+		}
+	}
+}
@@ -0,0 +1,93 @@
+/**
+ * Copyright (C) 2010-2016 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.web.common;
+
+import static junit.framework.TestCase.assertEquals;
+import static junit.framework.TestCase.assertTrue;
+import org.junit.Test;
+
+/**
+ * Test the subsampling factor used to decode large images for thumbnails.
+ *
+ *
+ */
+public class ImageHelperTest {
+
+	@Test
+	public void testSubsampling() {
+
+		// no subsampling for images that are smaller than twice the thumbnail size
+		assertEquals("Invalid subsampling", 1, ImageHelper.getSubsampling(100, 100, 200, 200, false));
+		assertEquals("Invalid subsampling", 1, ImageHelper.getSubsampling(400, 400, 200, 200, false));
+		assertEquals("Invalid subsampling", 1, ImageHelper.getSubsampling(800, 600, 200, 200, true));
+		assertEquals("Invalid subsampling", 1, ImageHelper.getSubsampling(0, 0, 200, 200, false));
+
+		// the larger scale factor is used when the image is fitted into the thumbnail..
+		assertEquals("Invalid subsampling", 2, ImageHelper.getSubsampling(800, 600, 200, 200, false));
+		assertEquals("Invalid subsampling", 6, ImageHelper.getSubsampling(4000, 3000, 300, 300, false));
+		assertEquals("Invalid subsampling", 5, ImageHelper.getSubsampling(1000, 10, 100, 100, false));
+
+		// ..and the smaller one when the thumbnail is cropped
+		assertEquals("Invalid subsampling", 5, ImageHelper.getSubsampling(4000, 3000, 300, 300, true));
+		assertEquals("Invalid subsampling", 1, ImageHelper.getSubsampling(1000, 10, 100, 100, true));
+	}
+
+	@Test
+	public void testSubsamplingWithoutBounds() {
+
+		assertEquals("Invalid subsampling", 1, ImageHelper.getSubsampling(4000, 3000, 0, 300, false));
+		assertEquals("Invalid subsampling", 1, ImageHelper.getSubsampling(4000, 3000, 300, 0, true));
+		assertEquals("Invalid subsampling", 1, ImageHelper.getSubsampling(4000, 3000, -1, -1, false));
+	}
+
+	@Test
+	public void testSubsampledImageIsLargeEnough() {
+
+		final int[] sizes    = new int[] { 1, 16, 100, 255, 640, 1024, 3000, 4321, 10000 };
+		final int[] maxSizes = new int[] { 16, 100, 200, 300, 800 };
+
+		for (final int sourceWidth : sizes) {
+
+			for (final int sourceHeight : sizes) {
+
+				for (final int maxSize : maxSizes) {
+
+					final int fit  = ImageHelper.getSubsampling(sourceWidth, sourceHeight, maxSize, maxSize, false);
+					final int crop = ImageHelper.getSubsampling(sourceWidth, sourceHeight, maxSize, maxSize, true);
+
+					assertTrue(fit >= 1);
+					assertTrue(crop >= 1);
+					assertTrue(crop <= fit);
+
+					if (fit > 1) {
+
+						// the decoded image is at least twice as large as the thumbnail in the larger dimension
+						assertTrue(Math.max(1.0f * sourceWidth / fit, 1.0f * sourceHeight / fit) >= 2 * maxSize);
+					}
+
+					if (crop > 1) {
+
+						// a cropped thumbnail needs twice its size in both dimensions
+						assertTrue(Math.min(1.0f * sourceWidth / crop, 1.0f * sourceHeight / crop) >= 2 * maxSize);
+					}
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,171 @@
+/**
+ * Copyright (C) 2010-2016 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.web.common;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import org.structr.common.error.FrameworkException;
+import org.structr.core.GraphObject;
+import org.structr.core.entity.AbstractNode;
+import org.structr.core.graph.TransactionCommand;
+import org.structr.core.graph.Tx;
+import org.structr.dynamic.File;
+import org.structr.web.entity.dom.Page;
+
+/**
+ * Tests that the routing table resolves the same files and pages after
+ * its initial build and after incremental updates.
+ *
+ *
+ */
+public class RoutingTableTest extends StructrUiTest {
+
+	public void test01HiddenFiles() {
+
+		final RoutingTable routingTable = new RoutingTable();
+
+		TransactionCommand.registerTransactionListener(routingTable);
+
+		try {
+
+			final File visible = createFile("visible.txt");
+			final File hidden  = createFile("hidden.txt");
+
+			try (final Tx tx = app.tx()) {
+
+				hidden.setProperty(GraphObject.hidden, true);
+				tx.success();
+			}
+
+			// initial build
+			try (final Tx tx = app.tx()) {
+
+				assertEquals(visible, routingTable.getFile(securityContext, "/visible.txt"));
+				assertNull("Hidden files must not be routed", routingTable.getFile(securityContext, "/hidden.txt"));
+				assertNull("Hidden files must not be routed", routingTable.getFile(securityContext, hidden.getUuid()));
+				tx.success();
+			}
+
+			// incremental update
+			try (final Tx tx = app.tx()) {
+
+				visible.setProperty(GraphObject.hidden, true);
+				hidden.setProperty(GraphObject.hidden, false);
+				tx.success();
+			}
+
+			try (final Tx tx = app.tx()) {
+
+				assertNull("Hidden files must not be routed", routingTable.getFile(securityContext, "/visible.txt"));
+				assertEquals(hidden, routingTable.getFile(securityContext, "/hidden.txt"));
+				tx.success();
+			}
+
+			// a new table must see the same files
+			final RoutingTable rebuilt = new RoutingTable();
+
+			try (final Tx tx = app.tx()) {
+
+				assertNull("Hidden files must not be routed", rebuilt.getFile(securityContext, "/visible.txt"));
+				assertEquals(hidden, rebuilt.getFile(securityContext, "/hidden.txt"));
+				tx.success();
+			}
+
+		} catch (FrameworkException fex) {
+
+			fex.printStackTrace();
+			fail("Unexpected exception");
+
+		} finally {
+
+			TransactionCommand.removeTransactionListener(routingTable);
+		}
+	}
+
+	public void test02PageChanges() {
+
+		final RoutingTable routingTable = new RoutingTable();
+
+		TransactionCommand.registerTransactionListener(routingTable);
+
+		try {
+
+			final Page page;
+
+			try (final Tx tx = app.tx()) {
+
+				page = Page.createSimplePage(securityContext, "first");
+				tx.success();
+			}
+
+			try (final Tx tx = app.tx()) {
+
+				assertEquals(page, routingTable.getPage(securityContext, null, "/first", true));
+				tx.success();
+			}
+
+			// a page that is created and renamed in one transaction
+			try (final Tx tx = app.tx()) {
+
+				Page.createSimplePage(securityContext, "other").setProperty(AbstractNode.name, "second");
+				tx.success();
+			}
+
+			try (final Tx tx = app.tx()) {
+
+				page.setProperty(AbstractNode.name, "renamed");
+				tx.success();
+			}
+
+			try (final Tx tx = app.tx()) {
+
+				assertNull(routingTable.getPage(securityContext, null, "/first", true));
+				assertEquals(page, routingTable.getPage(securityContext, null, "/renamed", true));
+				assertNotNull(routingTable.getPage(securityContext, null, "/second", true));
+				tx.success();
+			}
+
+		} catch (FrameworkException fex) {
+
+			fex.printStackTrace();
+			fail("Unexpected exception");
+
+		} finally {
+
+			TransactionCommand.removeTransactionListener(routingTable);
+		}
+	}
+
+	// ----- private methods -----
+	private File createFile(final String name) throws FrameworkException {
+
+		try (final Tx tx = app.tx()) {
+
+			final File file = FileHelper.createFile(securityContext, name.getBytes(StandardCharsets.UTF_8), null, File.class, name);
+
+			tx.success();
+
+			return file;
+
+		} catch (IOException ioex) {
+
+			throw new FrameworkException(500, ioex.getMessage());
+		}
+	}
+}
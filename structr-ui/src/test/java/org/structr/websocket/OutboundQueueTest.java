@@ -0,0 +1,210 @@
+/**
+ * Copyright (C) 2010-2016 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.websocket;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import java.lang.reflect.Proxy;
+import java.net.InetSocketAddress;
+import java.util.LinkedList;
+import java.util.List;
+import org.eclipse.jetty.websocket.api.RemoteEndpoint;
+import org.eclipse.jetty.websocket.api.Session;
+import org.eclipse.jetty.websocket.api.WriteCallback;
+import org.structr.web.common.StructrUiTest;
+
+/**
+ * Tests the coalescing, dropping and back-pressure behaviour of the
+ * {@link OutboundQueue} with a client that does not acknowledge its
+ * messages until told to.
+ *
+ *
+ */
+public class OutboundQueueTest extends StructrUiTest {
+
+	private final List<WriteCallback> pending = new LinkedList<>();
+	private final List<String> sent           = new LinkedList<>();
+	private boolean disconnected              = false;
+
+	public void test01DropOldestBroadcast() {
+
+		final WebsocketController controller = new WebsocketController(new Gson());
+		final OutboundQueue queue            = new OutboundQueue(controller, new StructrWebSocket(), createSession(), 3, 100);
+
+		// the first message is sent immediately and not acknowledged
+		for (int i=0; i<6; i++) {
+			queue.broadcast("m" + i, System.nanoTime());
+		}
+
+		assertEquals(3, queue.size());
+
+		acknowledgeAll();
+
+		assertEquals("[m0, m3, m4, m5]", sent.toString());
+		assertEquals(2L, controller.getStatistics().get("dropped"));
+		assertFalse(disconnected);
+	}
+
+	public void test02DirectResponsesAreNeverDropped() {
+
+		final WebsocketController controller = new WebsocketController(new Gson());
+		final OutboundQueue queue            = new OutboundQueue(controller, new StructrWebSocket(), createSession(), 1, 100);
+
+		queue.broadcast("b0", System.nanoTime());
+		queue.send("r1");
+		queue.broadcast("b1", System.nanoTime());
+		queue.send("r2");
+		queue.broadcast("b2", System.nanoTime());
+
+		acknowledgeAll();
+
+		assertEquals("[b0, r1, r2, b2]", sent.toString());
+	}
+
+	public void test03CoalesceIdenticalBroadcasts() {
+
+		final WebsocketController controller = new WebsocketController(new Gson());
+		final OutboundQueue queue            = new OutboundQueue(controller, new StructrWebSocket(), createSession(), 10, 100);
+
+		queue.broadcast("b0", System.nanoTime());
+		queue.broadcast("b1", System.nanoTime());
+		queue.broadcast("b1", System.nanoTime());
+		queue.broadcast("b2", System.nanoTime());
+		queue.broadcast("b1", System.nanoTime());
+
+		acknowledgeAll();
+
+		assertEquals("[b0, b1, b2, b1]", sent.toString());
+		assertEquals(1L, controller.getStatistics().get("coalesced"));
+	}
+
+	public void test04DisconnectSlowClient() {
+
+		final WebsocketController controller = new WebsocketController(new Gson());
+		final OutboundQueue queue            = new OutboundQueue(controller, new StructrWebSocket(), createSession(), 1, 1);
+
+		queue.broadcast("b0", System.nanoTime());
+		queue.broadcast("b1", System.nanoTime());
+		queue.broadcast("b2", System.nanoTime());
+
+		assertFalse(disconnected);
+
+		// the second drop without catching up in between disconnects the client
+		queue.broadcast("b3", System.nanoTime());
+
+		assertTrue(disconnected);
+
+		queue.broadcast("b4", System.nanoTime());
+		acknowledgeAll();
+
+		assertEquals("[b0]", sent.toString());
+	}
+
+	public void test05CatchingUpResetsDropCount() {
+
+		final WebsocketController controller = new WebsocketController(new Gson());
+		final OutboundQueue queue            = new OutboundQueue(controller, new StructrWebSocket(), createSession(), 1, 1);
+
+		for (int round=0; round<3; round++) {
+
+			queue.broadcast("a" + round, System.nanoTime());
+			queue.broadcast("b" + round, System.nanoTime());
+			queue.broadcast("c" + round, System.nanoTime());
+
+			acknowledgeAll();
+		}
+
+		assertFalse(disconnected);
+		assertEquals("[a0, c0, a1, c1, a2, c2]", sent.toString());
+	}
+
+	public void test06AddCallback() {
+
+		final WebsocketController controller = new WebsocketController(new Gson());
+		final String message                 = new Gson().toJson(new JsonParser().parse("{ \"command\": \"UPDATE\", \"id\": \"abc\" }"));
+
+		assertEquals(message, controller.addCallback(message, null));
+
+		final JsonObject withCallback = new JsonParser().parse(controller.addCallback(message, "cb\"1")).getAsJsonObject();
+
+		assertEquals("cb\"1", withCallback.get("callback").getAsString());
+		assertEquals("UPDATE", withCallback.get("command").getAsString());
+		assertEquals("abc", withCallback.get("id").getAsString());
+
+		final JsonObject empty = new JsonParser().parse(controller.addCallback("{}", "cb")).getAsJsonObject();
+
+		assertEquals(1, empty.entrySet().size());
+		assertEquals("cb", empty.get("callback").getAsString());
+	}
+
+	@Override
+	protected void setUp() throws Exception {
+
+		super.setUp();
+
+		pending.clear();
+		sent.clear();
+
+		disconnected = false;
+	}
+
+	// ----- private methods -----
+	private void acknowledgeAll() {
+
+		while (!pending.isEmpty()) {
+			pending.remove(0).writeSuccess();
+		}
+	}
+
+	private Session createSession() {
+
+		final RemoteEndpoint remote = (RemoteEndpoint)Proxy.newProxyInstance(getClass().getClassLoader(), new Class[] { RemoteEndpoint.class }, (proxy, method, args) -> {
+
+			if ("sendString".equals(method.getName()) && args.length == 2) {
+
+				sent.add((String)args[0]);
+				pending.add((WriteCallback)args[1]);
+			}
+
+			return null;
+		});
+
+		return (Session)Proxy.newProxyInstance(getClass().getClassLoader(), new Class[] { Session.class }, (proxy, method, args) -> {
+
+			switch (method.getName()) {
+
+				case "getRemote":
+					return remote;
+
+				case "getRemoteAddress":
+					return new InetSocketAddress("localhost", 0);
+
+				case "close":
+					disconnected = true;
+					return null;
+
+				case "isOpen":
+					return !disconnected;
+			}
+
+			return null;
+		});
+	}
+}